@@ -14,6 +14,7 @@ import lombok.ToString;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
@@ -84,6 +85,44 @@ public class SdData {
      */
     private Map<String, HashSet<String>> cacheNodeEvent = Maps.newConcurrentMap();
 
+    /**
+     * 数据使用的定义注册表，为空时使用默认注册表{@link UXDFLoader#getRegistry()}
+     */
+    @ToString.Exclude
+    private UXDFRegistry registry;
+
+    public SdData() {
+    }
+
+    /**
+     * 创建绑定到指定注册表的{@link SdData}。添加到其中的{@link SdEntity}也会绑定到该注册表。
+     *
+     * @param registry 定义注册表
+     */
+    public SdData(final UXDFRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 获取数据使用的定义注册表
+     *
+     * @return 定义注册表，未绑定时返回默认注册表
+     */
+    @JSONField(serialize = false, deserialize = false)
+    public UXDFRegistry getRegistry() {
+        return this.registry != null ? this.registry : UXDFLoader.getRegistry();
+    }
+
+    /**
+     * 设置数据使用的定义注册表
+     *
+     * @param registry 定义注册表
+     */
+    @JSONField(serialize = false, deserialize = false)
+    public void setRegistry(final UXDFRegistry registry) {
+        this.registry = registry;
+    }
+
     /**
      * 获取所有{@link NodeEntity}，的一个深度copy集合。<br />
      * 对此集合的操作都不会反映在当前{@link SdData}中。<br />
@@ -267,6 +306,35 @@ public class SdData {
         return Collections.unmodifiableList(Lists.newArrayList(cacheEventName.getOrDefault(eventSd, Sets.newLinkedHashSet())));
     }
 
+    /**
+     * 获取一个不可修改的集合，包含与{@link NodeEntity}关联的所有{@link EventEntity}。<br />
+     * <p>
+     * 通过Node和Event之间的索引获取，不复制{@link EventEntity}，此方法获取效率较高。<br />
+     * 与{@link #getUnmodifiableEvent()}相同，不建议直接修改其中的{@link EventEntity}。
+     * </p>
+     *
+     * @param nodeEntity Node
+     * @return EventEntity集合
+     */
+    @JSONField(serialize = false, deserialize = false)
+    public List<EventEntity> getUnmodifiableEvent(final NodeEntity nodeEntity) {
+        if (nodeEntity == null || !nodeEntity.isEffective()) {
+            return Collections.emptyList();
+        }
+        final Set<String> eventLogicIds = this.cacheNodeEvent.get(nodeEntity.getLogicId());
+        if (eventLogicIds == null || eventLogicIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<EventEntity> results = Lists.newArrayListWithCapacity(eventLogicIds.size());
+        eventLogicIds.forEach(eventLogicId -> {
+            final EventEntity eventEntity = this.cacheEventLogicId.get(eventLogicId);
+            if (eventEntity != null) {
+                results.add(eventEntity);
+            }
+        });
+        return Collections.unmodifiableList(results);
+    }
+
     /**
      * 重新设置{@link SdData}的所有{@link EventEntity}。<br />
      * <p>
@@ -323,9 +391,29 @@ public class SdData {
         }
 
         // 合并Node
-        sdData.cacheNodeLogicId.values().forEach(this::addNodeIfAbsent);
+        sdData.forEachNode(this::addNodeIfAbsent);
         // 合并Event
-        sdData.cacheEventLogicId.values().forEach(this::addEventIfAbsent);
+        sdData.forEachEvent(this::addEventIfAbsent);
+    }
+
+    /**
+     * 按加入顺序遍历所有{@link NodeEntity}，不创建集合副本。<br />
+     * 与{@link #getUnmodifiableNode()}相同，不建议直接修改其中的{@link NodeEntity}。
+     *
+     * @param action 对每个Node执行的操作
+     */
+    public void forEachNode(final Consumer<NodeEntity> action) {
+        this.cacheNodeLogicId.values().forEach(action);
+    }
+
+    /**
+     * 按加入顺序遍历所有{@link EventEntity}，不创建集合副本。<br />
+     * 与{@link #getUnmodifiableEvent()}相同，不建议直接修改其中的{@link EventEntity}。
+     *
+     * @param action 对每个Event执行的操作
+     */
+    public void forEachEvent(final Consumer<EventEntity> action) {
+        this.cacheEventLogicId.values().forEach(action);
     }
 
     /**
@@ -381,6 +469,9 @@ public class SdData {
         if (overwrite) {
             this.removeNode(nodeEntity);
         }
+        if (this.registry != null) {
+            nodeEntity.setRegistry(this.registry);
+        }
         // UUID缓存
         String uuid = nodeEntity.generateUUID();
         // 可以生成有效的UUID
@@ -661,12 +752,15 @@ public class SdData {
         if (overwrite) {
             this.removeEvent(eventEntity);
         }
+        if (this.registry != null) {
+            eventEntity.setRegistry(this.registry);
+        }
 
         // UUID缓存
         final String uuid = eventEntity.generateUUID();
 
         //isMember属性
-        SdEventDefinition sdEvent = UXDFLoader.getEvent(eventEntity.get__Sd(), eventEntity.get__LeftSd(), eventEntity.get__RightSd());
+        SdEventDefinition sdEvent = this.getRegistry().getEvent(eventEntity.get__Sd(), eventEntity.get__LeftSd(), eventEntity.get__RightSd());
         eventEntity.set__Member(sdEvent != null && sdEvent.getIsMember());
 
         // 可以生成业务主键
@@ -1030,7 +1124,9 @@ public class SdData {
     @Override
     public SdData clone() {
         // TODO 此处需要处理超大数据集情况
-        return JSON.parseObject(JSON.toJSONString(this), this.getClass());
+        SdData sdData = JSON.parseObject(JSON.toJSONString(this), this.getClass());
+        sdData.setRegistry(this.registry);
+        return sdData;
     }
 
     /**
@@ -0,0 +1,142 @@
+package info.ralab.uxdf;
+
+import com.google.common.collect.Sets;
+import info.ralab.uxdf.definition.SdBaseType;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.SdEntity;
+import info.ralab.uxdf.persistence.SdEntityCodec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * UXDF二进制格式，由{@link UXDFCompactWriter}写出，{@link UXDFCompactReader}读取。
+ * <p>
+ * 文件依次为：
+ * <ol>
+ * <li>头：魔数、版本和JSON格式的sd部分；</li>
+ * <li>字典：sd名称字典、属性名字典，以及每个sd名称下属性的{@link SdBaseType}；</li>
+ * <li>node部分：多个块，块中是连续的相同sd名称的Node；</li>
+ * <li>event部分：每个Event名称一组，每组多个块；</li>
+ * <li>结束标记。</li>
+ * </ol>
+ * 块依次为：块标记、sd名称序号、实例数量、内容长度和内容，读取时可以按内容长度跳过整块。
+ * 数字都是变长整数，sd名称序号加1保存，0表示没有sd名称。
+ * </p>
+ * <p>
+ * 实例依次为：属性数量，每个属性的属性名序号和值。属性名序号左移一位，最低位表示值的编码方式：
+ * <ul>
+ * <li>1：sd名称属性的值是sd名称序号，其它属性的值按属性定义的{@link SdBaseType}编码，不带类型标记；</li>
+ * <li>0：值的类型和定义不一致或属性没有定义，使用{@link SdEntityCodec#writeValue}编码，带类型标记。</li>
+ * </ul>
+ * 值的Java类型在读取后保持不变，和JSON格式互相转换不丢失信息。
+ * </p>
+ */
+final class UXDFCompactFormat {
+
+    /**
+     * 魔数"UXDB"
+     */
+    static final int MAGIC = 0x55584442;
+    static final byte VERSION = 1;
+
+    static final byte SECTION_END = 0;
+    static final byte SECTION_NODE = 1;
+    static final byte SECTION_EVENT = 2;
+
+    static final byte BLOCK_END = 0;
+    static final byte BLOCK = 1;
+
+    /**
+     * 块内容超过此大小时开始新的块
+     */
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * 值是sd名称的属性
+     */
+    static final Set<String> SD_NAME_KEYS = Sets.newHashSet(
+            SdEntity.ATTR_SD,
+            EventEntity.ATTR_LEFT_SD,
+            EventEntity.ATTR_RIGHT_SD
+    );
+
+    private UXDFCompactFormat() {
+    }
+
+    /**
+     * 判断值是否可以按定义的类型编码
+     *
+     * @param base  属性定义的类型
+     * @param value 属性值
+     * @return 是否可以按定义的类型编码
+     */
+    static boolean isTyped(final SdBaseType base, final Object value) {
+        if (base == null || value == null) {
+            return false;
+        }
+        switch (base) {
+            case String:
+                return value instanceof String;
+            case Integer:
+                return value instanceof Integer;
+            case Float:
+                return value instanceof BigDecimal;
+            case Boolean:
+                return value instanceof Boolean;
+            case Datetime:
+                return value instanceof Date;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 按定义的类型编码值，调用前使用{@link #isTyped(SdBaseType, Object)}判断
+     */
+    static void writeTyped(final DataOutput output, final SdBaseType base, final Object value) throws IOException {
+        switch (base) {
+            case String:
+                SdEntityCodec.writeString(output, (String) value);
+                break;
+            case Integer:
+                SdEntityCodec.writeVarLong(output, (Integer) value);
+                break;
+            case Float:
+                SdEntityCodec.writeString(output, value.toString());
+                break;
+            case Boolean:
+                output.writeBoolean((Boolean) value);
+                break;
+            case Datetime:
+                SdEntityCodec.writeVarLong(output, ((Date) value).getTime());
+                break;
+            default:
+                throw new UXDFException(String.format("类型[%s]不支持无标记编码。", base));
+        }
+    }
+
+    /**
+     * 按定义的类型解码值
+     */
+    static Object readTyped(final DataInput input, final SdBaseType base) throws IOException {
+        switch (base) {
+            case String:
+                return SdEntityCodec.readString(input);
+            case Integer:
+                return (int) SdEntityCodec.readVarLong(input);
+            case Float:
+                return new BigDecimal(SdEntityCodec.readString(input));
+            case Boolean:
+                return input.readBoolean();
+            case Datetime:
+                return new Date(SdEntityCodec.readVarLong(input));
+            default:
+                throw new UXDFException(String.format("类型[%s]不支持无标记编码。", base));
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package info.ralab.uxdf;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.parser.Feature;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import info.ralab.uxdf.definition.SdBaseType;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.instance.SdEntity;
+import info.ralab.uxdf.persistence.SdEntityCodec;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 基于输入流读取{@link UXDFCompactWriter}写出的UXDF二进制格式，格式见{@link UXDFCompactFormat}。<br />
+ * 读取方式和通知的{@link UXDFReaderListener}与{@link UXDFReader}一致。
+ */
+public class UXDFCompactReader implements Closeable {
+
+    private final DataInputStream input;
+
+    private String[] sdNames;
+    private String[] keys;
+    private boolean[] sdNameKeys;
+    private Map<Integer, Map<Integer, SdBaseType>> types;
+
+    /**
+     * 构造UXDF二进制格式读取对象。
+     *
+     * @param inputStream 输入流
+     */
+    public UXDFCompactReader(final InputStream inputStream) {
+        this.input = new DataInputStream(new BufferedInputStream(inputStream));
+    }
+
+    /**
+     * 一次性读取UXDF信息。
+     * <p>
+     * 读取data时会基于{@link SdData}校验数据合法性。
+     * 当超大数据时，有可能引起内存溢出异常。
+     * 超大数据建议使用{@link UXDFCompactReader#readUXDF(UXDFReaderListener)}。
+     * </p>
+     *
+     * @return 读取到的UXDF对象
+     */
+    public UXDF readUXDF() {
+        final UXDF uxdf = new UXDF();
+        final List<NodeEntity> nodeEntities = Lists.newArrayList();
+        final Map<String, List<EventEntity>> eventEntities = Maps.newLinkedHashMap();
+        final Throwable[] error = new Throwable[1];
+        this.readUXDF(new UXDFReaderListener() {
+            @Override
+            public void startReadUXDF() {
+            }
+
+            @Override
+            public void readSd(final Sd sd) {
+                uxdf.setSd(sd);
+            }
+
+            @Override
+            public void startReadNode() {
+            }
+
+            @Override
+            public void readNode(final NodeEntity nodeEntity) {
+                nodeEntities.add(nodeEntity);
+            }
+
+            @Override
+            public void endReadNode() {
+            }
+
+            @Override
+            public void startReadEvent() {
+            }
+
+            @Override
+            public void readEvent(final EventEntity eventEntity) {
+                eventEntities.computeIfAbsent(eventEntity.get__Sd(), key -> Lists.newArrayList()).add(eventEntity);
+            }
+
+            @Override
+            public void endReadEvent() {
+            }
+
+            @Override
+            public void endReadUXDF(final Throwable readError) {
+                error[0] = readError;
+            }
+        });
+        if (error[0] instanceof UXDFException) {
+            throw (UXDFException) error[0];
+        } else if (error[0] != null) {
+            throw new UXDFException("读取UXDF二进制格式失败。", (Exception) error[0]);
+        }
+        final SdData sdData = new SdData();
+        sdData.setNode(nodeEntities);
+        sdData.setEvent(eventEntities);
+        uxdf.setData(sdData);
+        return uxdf;
+    }
+
+    /**
+     * 流式读取UXDF信息。
+     * <p>
+     * 依次读取sd，和data中每一个Node和Event，
+     * 在和{@link UXDFReader#readUXDF(UXDFReaderListener)}相同的切点通知{@link UXDFReaderListener}。
+     * </p>
+     *
+     * @param uxdfReaderListener UXDF流式读取监听器
+     */
+    public void readUXDF(final UXDFReaderListener uxdfReaderListener) {
+        this.readUXDF(uxdfReaderListener, sdName -> true);
+    }
+
+    /**
+     * 流式读取UXDF信息，只读取sd名称满足条件的Node和Event。
+     * <p>
+     * 不满足条件的实例按块跳过，不解码。
+     * </p>
+     *
+     * @param uxdfReaderListener UXDF流式读取监听器
+     * @param sdFilter           sd名称条件
+     */
+    public void readUXDF(final UXDFReaderListener uxdfReaderListener, final Predicate<String> sdFilter) {
+        assert uxdfReaderListener != null;
+
+        // 读取过程中产生的错误
+        Throwable readError = null;
+
+        try {
+            uxdfReaderListener.startReadUXDF();
+            if (input.readInt() != UXDFCompactFormat.MAGIC) {
+                throw new UXDFException("输入不是UXDF二进制格式。");
+            }
+            final byte version = input.readByte();
+            if (version != UXDFCompactFormat.VERSION) {
+                throw new UXDFException(String.format("不支持的UXDF二进制格式版本[%s]。", version));
+            }
+            final String sd = SdEntityCodec.readString(input);
+            uxdfReaderListener.readSd(sd == null ? null : JSON.parseObject(
+                    sd,
+                    Sd.class,
+                    Feature.OrderedField,
+                    Feature.AllowISO8601DateFormat,
+                    Feature.DisableCircularReferenceDetect
+            ));
+            this.readDictionary();
+
+            byte section;
+            while ((section = input.readByte()) != UXDFCompactFormat.SECTION_END) {
+                if (section == UXDFCompactFormat.SECTION_NODE) {
+                    uxdfReaderListener.startReadNode();
+                    this.readBlocks(sdFilter, NodeEntity::wrap, uxdfReaderListener::readNode);
+                    uxdfReaderListener.endReadNode();
+                } else if (section == UXDFCompactFormat.SECTION_EVENT) {
+                    // Event名称，和块中的sd名称一致
+                    SdEntityCodec.readVarInt(input);
+                    uxdfReaderListener.startReadEvent();
+                    this.readBlocks(sdFilter, EventEntity::wrap, uxdfReaderListener::readEvent);
+                    uxdfReaderListener.endReadEvent();
+                } else {
+                    throw new UXDFException(String.format("无法识别的UXDF二进制格式部分[%s]。", section));
+                }
+            }
+        } catch (Exception e) {
+            readError = e;
+        } finally {
+            uxdfReaderListener.endReadUXDF(readError);
+        }
+    }
+
+    private void readDictionary() throws IOException {
+        sdNames = new String[SdEntityCodec.readVarInt(input)];
+        for (int i = 0; i < sdNames.length; i++) {
+            sdNames[i] = SdEntityCodec.readString(input);
+        }
+        keys = new String[SdEntityCodec.readVarInt(input)];
+        sdNameKeys = new boolean[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = SdEntityCodec.readString(input);
+            sdNameKeys[i] = UXDFCompactFormat.SD_NAME_KEYS.contains(keys[i]);
+        }
+        types = Maps.newHashMap();
+        final SdBaseType[] baseTypes = SdBaseType.values();
+        final int typeCount = SdEntityCodec.readVarInt(input);
+        for (int i = 0; i < typeCount; i++) {
+            final int sdRef = SdEntityCodec.readVarInt(input);
+            final int keyId = SdEntityCodec.readVarInt(input);
+            final int base = input.readUnsignedByte();
+            if (base >= baseTypes.length) {
+                throw new UXDFException(String.format("无法识别的属性类型[%s]。", base));
+            }
+            types.computeIfAbsent(sdRef, key -> Maps.newHashMap()).put(keyId, baseTypes[base]);
+        }
+    }
+
+    private <T extends SdEntity> void readBlocks(
+            final Predicate<String> sdFilter,
+            final Function<Map<String, Object>, T> factory,
+            final Consumer<T> action
+    ) throws IOException {
+        byte marker;
+        while ((marker = input.readByte()) != UXDFCompactFormat.BLOCK_END) {
+            if (marker != UXDFCompactFormat.BLOCK) {
+                throw new UXDFException(String.format("无法识别的UXDF二进制格式块[%s]。", marker));
+            }
+            final int sdRef = SdEntityCodec.readVarInt(input);
+            final int count = SdEntityCodec.readVarInt(input);
+            final int length = SdEntityCodec.readVarInt(input);
+            if (!sdFilter.test(sdRef == 0 ? null : this.sdName(sdRef - 1))) {
+                this.skipFully(length);
+                continue;
+            }
+            final Map<Integer, SdBaseType> keyTypes = types.get(sdRef);
+            for (int i = 0; i < count; i++) {
+                action.accept(this.readEntity(factory.apply(Maps.newLinkedHashMap()), keyTypes));
+            }
+        }
+    }
+
+    private <T extends SdEntity> T readEntity(final T sdEntity, final Map<Integer, SdBaseType> keyTypes) throws IOException {
+        final int count = SdEntityCodec.readVarInt(input);
+        for (int i = 0; i < count; i++) {
+            final int header = SdEntityCodec.readVarInt(input);
+            final int keyId = header >>> 1;
+            if (keyId >= keys.length) {
+                throw new UXDFException(String.format("属性名序号[%s]不在字典中。", keyId));
+            }
+            final Object value;
+            if ((header & 1) == 0) {
+                value = SdEntityCodec.readValue(input);
+            } else if (sdNameKeys[keyId]) {
+                value = this.sdName(SdEntityCodec.readVarInt(input));
+            } else {
+                final SdBaseType base = keyTypes == null ? null : keyTypes.get(keyId);
+                if (base == null) {
+                    throw new UXDFException(String.format("属性[%s]没有类型。", keys[keyId]));
+                }
+                value = UXDFCompactFormat.readTyped(input, base);
+            }
+            sdEntity.put(keys[keyId], value);
+        }
+        return sdEntity;
+    }
+
+    private String sdName(final int index) {
+        if (index >= sdNames.length) {
+            throw new UXDFException(String.format("sd名称序号[%s]不在字典中。", index));
+        }
+        return sdNames[index];
+    }
+
+    private void skipFully(final int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            final int skipped = input.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,291 @@
+package info.ralab.uxdf;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.google.common.collect.Maps;
+import info.ralab.uxdf.definition.SdBaseType;
+import info.ralab.uxdf.definition.SdEventDefinition;
+import info.ralab.uxdf.definition.SdNodeDefinition;
+import info.ralab.uxdf.definition.SdProperty;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.instance.SdEntity;
+import info.ralab.uxdf.persistence.SdEntityCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * UXDF二进制格式写出对象。将UXDF写出到流，格式见{@link UXDFCompactFormat}。<br />
+ * 属性名和sd名称只在字典中写出一次，通常比{@link UXDFWriter}写出的JSON小得多。
+ * 写出的内容使用{@link UXDFCompactReader}读取。
+ */
+public class UXDFCompactWriter implements Closeable, Flushable {
+
+    private final DataOutputStream output;
+
+    /**
+     * 构造UXDF二进制格式写出对象。
+     *
+     * @param outputStream 输出流
+     */
+    public UXDFCompactWriter(final OutputStream outputStream) {
+        this.output = new DataOutputStream(new BufferedOutputStream(outputStream));
+    }
+
+    /**
+     * 写出UXDF数据，数据按照先sd后data的顺序写出，data中的Node和Event顺序不变。
+     * <p>
+     * 属性值按照UXDF中sd部分的定义编码，sd部分没有的定义使用数据的注册表{@link SdData#getRegistry()}。
+     * </p>
+     *
+     * @param uxdf UXDF数据
+     */
+    public void writeUXDF(final UXDF uxdf) {
+        final SdData sdData = uxdf.getData() != null ? uxdf.getData() : new SdData();
+        final List<NodeEntity> nodeEntities = sdData.getUnmodifiableNode();
+        final Map<String, List<EventEntity>> eventEntities = sdData.getUnmodifiableEvent();
+
+        final Dictionary dictionary = new Dictionary();
+        nodeEntities.forEach(dictionary::collect);
+        eventEntities.forEach((eventName, entities) -> {
+            dictionary.sdName(eventName);
+            entities.forEach(dictionary::collect);
+        });
+        final TypeResolver typeResolver = new TypeResolver(uxdf.getSd(), sdData.getRegistry());
+        nodeEntities.forEach(nodeEntity -> dictionary.types(nodeEntity, typeResolver::nodeTypes));
+        eventEntities.values().forEach(entities -> entities.forEach(
+                eventEntity -> dictionary.types(eventEntity, typeResolver::eventTypes)
+        ));
+
+        try {
+            output.writeInt(UXDFCompactFormat.MAGIC);
+            output.writeByte(UXDFCompactFormat.VERSION);
+            SdEntityCodec.writeString(
+                    output,
+                    uxdf.getSd() == null ? null : JSON.toJSONString(
+                            uxdf.getSd(),
+                            SerializerFeature.UseISO8601DateFormat,
+                            SerializerFeature.DisableCircularReferenceDetect
+                    )
+            );
+            dictionary.write(output);
+
+            output.writeByte(UXDFCompactFormat.SECTION_NODE);
+            this.writeBlocks(nodeEntities, dictionary);
+            for (Map.Entry<String, List<EventEntity>> entry : eventEntities.entrySet()) {
+                output.writeByte(UXDFCompactFormat.SECTION_EVENT);
+                SdEntityCodec.writeVarInt(output, dictionary.sdRef(entry.getKey()));
+                this.writeBlocks(entry.getValue(), dictionary);
+            }
+            output.writeByte(UXDFCompactFormat.SECTION_END);
+        } catch (IOException e) {
+            throw new UXDFException(e);
+        }
+    }
+
+    /**
+     * 按块写出实例，连续的相同sd名称的实例写在同一个块中
+     */
+    private void writeBlocks(final List<? extends SdEntity> sdEntities, final Dictionary dictionary) throws IOException {
+        final ByteArrayOutputStream block = new ByteArrayOutputStream();
+        final DataOutputStream blockOutput = new DataOutputStream(block);
+        int blockSdRef = 0;
+        int count = 0;
+        for (SdEntity sdEntity : sdEntities) {
+            final int sdRef = dictionary.sdRef(sdEntity.get(SdEntity.ATTR_SD));
+            if (count > 0 && (sdRef != blockSdRef || block.size() >= UXDFCompactFormat.BLOCK_SIZE)) {
+                this.writeBlock(blockSdRef, count, block);
+                count = 0;
+            }
+            blockSdRef = sdRef;
+            dictionary.writeEntity(blockOutput, sdRef, sdEntity);
+            count++;
+        }
+        if (count > 0) {
+            this.writeBlock(blockSdRef, count, block);
+        }
+        output.writeByte(UXDFCompactFormat.BLOCK_END);
+    }
+
+    private void writeBlock(final int sdRef, final int count, final ByteArrayOutputStream block) throws IOException {
+        output.writeByte(UXDFCompactFormat.BLOCK);
+        SdEntityCodec.writeVarInt(output, sdRef);
+        SdEntityCodec.writeVarInt(output, count);
+        SdEntityCodec.writeVarInt(output, block.size());
+        block.writeTo(output);
+        block.reset();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    /**
+     * sd名称字典、属性名字典和属性类型
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> sdNames = Maps.newLinkedHashMap();
+        private final Map<String, Integer> keys = Maps.newLinkedHashMap();
+        /**
+         * sd名称序号（加1）到属性名序号和类型
+         */
+        private final Map<Integer, Map<Integer, SdBaseType>> types = Maps.newLinkedHashMap();
+
+        private void sdName(final String sdName) {
+            sdNames.putIfAbsent(sdName, sdNames.size());
+        }
+
+        private void collect(final SdEntity sdEntity) {
+            sdEntity.forEach((key, value) -> {
+                keys.putIfAbsent(key, keys.size());
+                if (UXDFCompactFormat.SD_NAME_KEYS.contains(key) && value instanceof String) {
+                    this.sdName((String) value);
+                }
+            });
+        }
+
+        private void types(final SdEntity sdEntity, final Function<String, Map<String, SdBaseType>> resolver) {
+            final Object sdName = sdEntity.get(SdEntity.ATTR_SD);
+            final int sdRef = this.sdRef(sdName);
+            if (sdRef == 0 || types.containsKey(sdRef)) {
+                return;
+            }
+            final Map<Integer, SdBaseType> keyTypes = Maps.newLinkedHashMap();
+            resolver.apply((String) sdName).forEach((key, base) -> {
+                final Integer keyId = keys.get(key);
+                if (keyId != null && base != SdBaseType.Binary) {
+                    keyTypes.put(keyId, base);
+                }
+            });
+            types.put(sdRef, keyTypes);
+        }
+
+        /**
+         * @return sd名称序号加1，不是字典中的sd名称时返回0
+         */
+        private int sdRef(final Object sdName) {
+            final Integer index = sdName instanceof String ? sdNames.get(sdName) : null;
+            return index == null ? 0 : index + 1;
+        }
+
+        private void write(final DataOutput output) throws IOException {
+            SdEntityCodec.writeVarInt(output, sdNames.size());
+            for (String sdName : sdNames.keySet()) {
+                SdEntityCodec.writeString(output, sdName);
+            }
+            SdEntityCodec.writeVarInt(output, keys.size());
+            for (String key : keys.keySet()) {
+                SdEntityCodec.writeString(output, key);
+            }
+            SdEntityCodec.writeVarInt(output, types.values().stream().mapToInt(Map::size).sum());
+            for (Map.Entry<Integer, Map<Integer, SdBaseType>> entry : types.entrySet()) {
+                for (Map.Entry<Integer, SdBaseType> keyType : entry.getValue().entrySet()) {
+                    SdEntityCodec.writeVarInt(output, entry.getKey());
+                    SdEntityCodec.writeVarInt(output, keyType.getKey());
+                    output.writeByte(keyType.getValue().ordinal());
+                }
+            }
+        }
+
+        private void writeEntity(final DataOutput output, final int sdRef, final SdEntity sdEntity) throws IOException {
+            final Map<Integer, SdBaseType> keyTypes = types.get(sdRef);
+            SdEntityCodec.writeVarInt(output, sdEntity.size());
+            for (Map.Entry<String, Object> entry : sdEntity.entrySet()) {
+                final int keyId = keys.get(entry.getKey());
+                final Object value = entry.getValue();
+                if (UXDFCompactFormat.SD_NAME_KEYS.contains(entry.getKey()) && value instanceof String) {
+                    SdEntityCodec.writeVarInt(output, keyId << 1 | 1);
+                    SdEntityCodec.writeVarInt(output, sdNames.get(value));
+                    continue;
+                }
+                final SdBaseType base = keyTypes == null ? null : keyTypes.get(keyId);
+                if (UXDFCompactFormat.isTyped(base, value)) {
+                    SdEntityCodec.writeVarInt(output, keyId << 1 | 1);
+                    UXDFCompactFormat.writeTyped(output, base, value);
+                } else {
+                    SdEntityCodec.writeVarInt(output, keyId << 1);
+                    SdEntityCodec.writeValue(output, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * 从sd部分和注册表中查找属性类型，sd部分优先
+     */
+    private static final class TypeResolver {
+        private final Sd sd;
+        private final UXDFRegistry registry;
+
+        private TypeResolver(final Sd sd, final UXDFRegistry registry) {
+            this.sd = sd;
+            this.registry = registry;
+        }
+
+        private Map<String, SdBaseType> nodeTypes(final String nodeName) {
+            final Map<String, SdBaseType> types = Maps.newHashMap();
+            final Sd registrySd = registry.getSd();
+            if (registrySd != null && registrySd.getNode() != null) {
+                addTypes(types, registrySd.getNode().getAttr());
+            }
+            if (sd != null && sd.getNode() != null) {
+                addTypes(types, sd.getNode().getAttr());
+            }
+            SdNodeDefinition sdNode = sd != null && sd.getNode() != null ? sd.getNode().getImpl().get(nodeName) : null;
+            if (sdNode == null) {
+                sdNode = registry.getNode(nodeName);
+            }
+            if (sdNode != null) {
+                addTypes(types, sdNode.getProp());
+            }
+            return types;
+        }
+
+        private Map<String, SdBaseType> eventTypes(final String eventName) {
+            final Map<String, SdBaseType> types = Maps.newHashMap();
+            final Sd registrySd = registry.getSd();
+            if (registrySd != null && registrySd.getEvent() != null) {
+                addTypes(types, registrySd.getEvent().getAttr());
+            }
+            if (sd != null && sd.getEvent() != null) {
+                addTypes(types, sd.getEvent().getAttr());
+            }
+            Map<String, Map<String, SdEventDefinition>> sdEvents = sd != null && sd.getEvent() != null ?
+                    sd.getEvent().getImpl().get(eventName) : null;
+            if (sdEvents == null) {
+                sdEvents = registry.getEvent(eventName);
+            }
+            if (sdEvents != null) {
+                sdEvents.values().forEach(rights -> rights.values().forEach(sdEvent -> addTypes(types, sdEvent.getProp())));
+            }
+            return types;
+        }
+
+        private static void addTypes(final Map<String, SdBaseType> types, final Map<String, SdProperty> properties) {
+            if (properties == null) {
+                return;
+            }
+            properties.forEach((key, property) -> {
+                if (property != null && property.getBase() != null) {
+                    types.put(key, property.getBase());
+                }
+            });
+        }
+    }
+}
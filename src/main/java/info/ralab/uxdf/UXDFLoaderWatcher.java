@@ -0,0 +1,552 @@
+package info.ralab.uxdf;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import info.ralab.uxdf.definition.SdEventDefinition;
+import info.ralab.uxdf.definition.SdEventKey;
+import info.ralab.uxdf.definition.SdNodeDefinition;
+import info.ralab.uxdf.utils.UXDFDefinitionCache;
+import info.ralab.uxdf.utils.UXDFFileInfo;
+import info.ralab.uxdf.utils.UXDFHelper;
+import info.ralab.uxdf.utils.UXDFLoaderListener;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static info.ralab.uxdf.UXDF.FILE_EXTENSION;
+
+/**
+ * UXDF定义文件监听器，定义文件发生变化时热加载变化的定义。
+ * <p>
+ * 通过{@link WatchService}监听Node定义和Event定义所在的目录，只重新解析发生变化的文件。
+ * 新的定义在{@link UXDFRegistry}的缓存副本上构建，不阻塞读取，构建完成后一次性替换。
+ * 构建时每个变化的定义先经过{@link UXDFLoaderListener}的<b>on*Before</b>方法，监听器可以取消或改写变化，
+ * 监听器抛出异常时放弃本次加载。每个变化只通知一次<b>on*Before</b>方法，缓存被其他操作修改而重新构建时复用监听器处理后的变化。
+ * 替换成功后，在替换缓存的同一个写锁内按实际的变化通知<b>on*After</b>方法，与其他变更的通知顺序保持一致。
+ * </p>
+ * <p>
+ * 构建失败时保留原有定义，变化的文件在下一次变化时重新处理。
+ * 只能监听文件系统中的目录，Jar包或War包中的定义不会被监听。
+ * </p>
+ */
+@Slf4j
+public class UXDFLoaderWatcher implements Closeable {
+
+    /**
+     * 收集变化的静默时间，在静默时间内没有新的变化才进行加载
+     */
+    private static final long QUIET_MILLIS = 200;
+
+    /**
+     * 缓存被其他操作修改时，重新构建的最大次数
+     */
+    private static final int MAX_RETRY = 3;
+
+    /**
+     * 热加载的目标注册表
+     */
+    private final UXDFRegistry registry;
+
+    private final WatchService watchService;
+
+    /**
+     * 监听的Node定义目录
+     */
+    private final Set<Path> nodeDirs = Sets.newHashSet();
+
+    /**
+     * 监听的Event定义目录
+     */
+    private final Set<Path> eventDirs = Sets.newHashSet();
+
+    /**
+     * 等待处理的Node定义文件
+     */
+    private final Set<Path> pendingNodeFiles = Sets.newLinkedHashSet();
+
+    /**
+     * 等待处理的Event定义文件
+     */
+    private final Set<Path> pendingEventFiles = Sets.newLinkedHashSet();
+
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    private UXDFLoaderWatcher(
+            final UXDFRegistry registry,
+            final Collection<File> nodeDirs,
+            final Collection<File> eventDirs
+    ) throws IOException {
+        this.registry = registry;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        for (File nodeDir : nodeDirs) {
+            this.nodeDirs.add(this.register(nodeDir));
+        }
+        for (File eventDir : eventDirs) {
+            this.eventDirs.add(this.register(eventDir));
+        }
+        this.thread = new Thread(this::watch, "uxdf-loader-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * 监听class path中文件系统下的Node定义和Event定义目录，热加载到默认注册表
+     *
+     * @return 已经开始监听的监听器
+     * @throws IOException 目录监听异常
+     */
+    public static UXDFLoaderWatcher start() throws IOException {
+        return start(UXDFLoader.getRegistry());
+    }
+
+    /**
+     * 监听注册表class path中文件系统下的Node定义和Event定义目录
+     *
+     * @param registry 热加载的目标注册表
+     * @return 已经开始监听的监听器
+     * @throws IOException 目录监听异常
+     */
+    public static UXDFLoaderWatcher start(final UXDFRegistry registry) throws IOException {
+        return start(
+                registry,
+                registry.findDefinitionDirs(UXDFRegistry.PATH_NODE_DIR),
+                registry.findDefinitionDirs(UXDFRegistry.PATH_EVENT_DIR)
+        );
+    }
+
+    /**
+     * 监听指定的Node定义和Event定义目录，热加载到默认注册表
+     *
+     * @param nodeDirs  Node定义目录
+     * @param eventDirs Event定义目录
+     * @return 已经开始监听的监听器
+     * @throws IOException 目录监听异常
+     */
+    public static UXDFLoaderWatcher start(
+            final Collection<File> nodeDirs,
+            final Collection<File> eventDirs
+    ) throws IOException {
+        return start(UXDFLoader.getRegistry(), nodeDirs, eventDirs);
+    }
+
+    /**
+     * 监听指定的Node定义和Event定义目录
+     *
+     * @param registry  热加载的目标注册表
+     * @param nodeDirs  Node定义目录
+     * @param eventDirs Event定义目录
+     * @return 已经开始监听的监听器
+     * @throws IOException 目录监听异常
+     */
+    public static UXDFLoaderWatcher start(
+            final UXDFRegistry registry,
+            final Collection<File> nodeDirs,
+            final Collection<File> eventDirs
+    ) throws IOException {
+        UXDFLoaderWatcher watcher = new UXDFLoaderWatcher(registry, nodeDirs, eventDirs);
+        watcher.thread.start();
+        return watcher;
+    }
+
+    /**
+     * 停止监听
+     */
+    @Override
+    public void close() throws IOException {
+        this.running = false;
+        this.thread.interrupt();
+        this.watchService.close();
+    }
+
+    /**
+     * 注册监听目录
+     *
+     * @param dir 目录
+     * @return 目录路径
+     * @throws IOException 目录监听异常
+     */
+    private Path register(final File dir) throws IOException {
+        Path path = dir.toPath().toAbsolutePath();
+        path.register(
+                this.watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE
+        );
+        log.debug("watch uxdf dir: {}", path);
+        return path;
+    }
+
+    /**
+     * 监听循环
+     */
+    private void watch() {
+        try {
+            while (this.running) {
+                // 等待第一个变化
+                WatchKey watchKey = this.watchService.take();
+                // 收集静默时间内的所有变化
+                while (watchKey != null) {
+                    this.collect(watchKey);
+                    watchKey = this.watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                this.apply();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("uxdf loader watcher stopped.");
+        }
+    }
+
+    /**
+     * 收集变化的定义文件
+     *
+     * @param watchKey 监听键
+     */
+    private void collect(final WatchKey watchKey) {
+        final Path dir = (Path) watchKey.watchable();
+        for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+            if (watchEvent.kind() == StandardWatchEventKinds.OVERFLOW) {
+                log.warn("uxdf loader watcher overflow: {}", dir);
+                continue;
+            }
+            final Path file = dir.resolve((Path) watchEvent.context());
+            if (!file.getFileName().toString().endsWith(FILE_EXTENSION)) {
+                continue;
+            }
+            if (this.nodeDirs.contains(dir)) {
+                this.pendingNodeFiles.add(file);
+            } else if (this.eventDirs.contains(dir)) {
+                this.pendingEventFiles.add(file);
+            }
+        }
+        watchKey.reset();
+    }
+
+    /**
+     * 加载所有等待处理的定义文件，成功后清空等待处理的文件。
+     * <p>
+     * 每个变化只通知一次<b>on*Before</b>方法，缓存在构建期间被其他操作修改时，将监听器处理后的变化重新应用到新的缓存副本上。
+     * </p>
+     */
+    private void apply() {
+        if (this.pendingNodeFiles.isEmpty() && this.pendingEventFiles.isEmpty()) {
+            return;
+        }
+        try {
+            final PendingChanges changes = this.prepare();
+            for (int i = 0; i < MAX_RETRY; i++) {
+                if (this.tryApply(changes)) {
+                    this.pendingNodeFiles.clear();
+                    this.pendingEventFiles.clear();
+                    return;
+                }
+            }
+            log.warn("uxdf definition changed during hot reload, retry on next change.");
+        } catch (Exception e) {
+            log.error("uxdf hot reload fail: " + e.getLocalizedMessage(), e);
+        }
+    }
+
+    /**
+     * 解析变化的定义文件，通知<b>on*Before</b>方法，收集监听器处理后的变化。
+     * <p>
+     * 变化在缓存副本上依次应用，后续文件基于之前的变化判断定义是否存在和是否变化。
+     * </p>
+     *
+     * @return 监听器处理后的变化
+     */
+    private PendingChanges prepare() {
+        final UXDFDefinitionCache cache = this.registry.copyCache();
+        final PendingChanges changes = new PendingChanges();
+
+        // Node定义变化
+        for (Path file : this.pendingNodeFiles) {
+            final String nodeName = UXDFHelper.getNameWithoutExtension(file.toString());
+            if (!Files.exists(file)) {
+                if (!cache.getCACHE_NODE().containsKey(nodeName)) {
+                    continue;
+                }
+                // 修改前事件通知，监听器可以取消或改变删除的Node定义
+                final String handledName = this.registry.notifyBefore(nodeName, UXDFLoaderListener::onRemoveNodeBefore);
+                if (handledName != null) {
+                    changes.addNode(new NodeChange(handledName, null), cache);
+                }
+                continue;
+            }
+            SdNodeDefinition nodeDefinition = UXDFRegistry.parseNodeDefinition(toFileInfo(nodeName, file));
+            final boolean exist = cache.getCACHE_NODE().containsKey(nodeName);
+            if (exist && isSameNode(cache, nodeDefinition)) {
+                continue;
+            }
+            // 修改前事件通知，监听器可以取消或改写变化的Node定义
+            nodeDefinition = this.registry.notifyBefore(
+                    nodeDefinition,
+                    exist ? UXDFLoaderListener::onUpdateNodeBefore : UXDFLoaderListener::onAddNodeBefore
+            );
+            if (nodeDefinition != null) {
+                changes.addNode(new NodeChange(null, nodeDefinition), cache);
+            }
+        }
+
+        // Event定义变化
+        for (Path file : this.pendingEventFiles) {
+            final String eventName = UXDFHelper.getNameWithoutExtension(file.toString());
+            final List<SdEventDefinition> eventDefinitions = Files.exists(file) ?
+                    UXDFRegistry.parseEventDefinitions(toFileInfo(eventName, file)) :
+                    Collections.emptyList();
+            final Set<SdEventKey> eventKeys = Sets.newHashSet();
+            eventDefinitions.forEach(eventDefinition -> eventKeys.add(SdEventKey.of(eventDefinition)));
+
+            // 移除文件中已经不存在的Event定义，监听器可以取消或改变删除的Event定义
+            Lists.newArrayList(cache.getCACHE_EVENT().keySet()).stream()
+                    .filter(eventKey -> eventName.equals(eventKey.getEventName()) && !eventKeys.contains(eventKey))
+                    .map(eventKey -> this.registry.notifyBefore(new String[]{
+                            eventKey.getEventName(), eventKey.getLeftNodeName(), eventKey.getRightNodeName()
+                    }, UXDFLoaderListener::onRemoveEventBefore))
+                    .filter(Objects::nonNull)
+                    .forEach(removedName -> changes.addEvent(new EventChange(removedName, null), cache));
+
+            // 加入新增或修改的Event定义
+            for (SdEventDefinition eventDefinition : eventDefinitions) {
+                SdEventDefinition existEventDefinition = cache.getEventDefinition(
+                        eventDefinition.getEventName(),
+                        eventDefinition.getLeftNodeName(),
+                        eventDefinition.getRightNodeName()
+                );
+                if (existEventDefinition != null && isSameEvent(existEventDefinition, eventDefinition)) {
+                    continue;
+                }
+                // 修改前事件通知，监听器可以取消或改写变化的Event定义
+                final SdEventDefinition handledDefinition = this.registry.notifyBefore(
+                        eventDefinition,
+                        existEventDefinition != null ?
+                                UXDFLoaderListener::onUpdateEventBefore : UXDFLoaderListener::onAddEventBefore
+                );
+                if (handledDefinition != null) {
+                    changes.addEvent(new EventChange(null, handledDefinition), cache);
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * 在缓存副本上应用监听器处理后的变化并替换缓存，替换后在同一个写锁内通知<b>on*After</b>方法
+     *
+     * @param changes 监听器处理后的变化
+     * @return 是否替换成功，缓存在构建期间被其他操作修改时返回false
+     */
+    private boolean tryApply(final PendingChanges changes) {
+        final UXDFDefinitionCache cache = this.registry.copyCache();
+        final long baseVersion = cache.getVersion();
+        final Set<String> oldNodeNames = Sets.newHashSet(cache.getCACHE_NODE().keySet());
+        final Map<SdEventKey, SdEventDefinition> oldEvents = Maps.newHashMap(cache.getCACHE_EVENT());
+
+        // 应用Node定义变化
+        final Set<String> changedNodeNames = Sets.newLinkedHashSet();
+        final Set<String> removedNodeNames = Sets.newLinkedHashSet();
+        for (NodeChange change : changes.nodeChanges) {
+            if (change.apply(cache)) {
+                (change.removedName != null ? removedNodeNames : changedNodeNames).add(change.getNodeName());
+            }
+        }
+        final Set<String> resolvedNodeNames = cache.resolveNodeDefinition(
+                Sets.union(changedNodeNames, removedNodeNames)
+        );
+
+        // 应用Event定义变化
+        changes.eventChanges.forEach(change -> change.apply(cache));
+        cache.initUXDFAll();
+
+        // 替换缓存并通知变化
+        return this.registry.swapCache(cache, baseVersion, () -> {
+            this.notifyNode(oldNodeNames, cache, changedNodeNames, removedNodeNames, resolvedNodeNames);
+            this.notifyEvent(oldEvents, cache.getCACHE_EVENT());
+        });
+    }
+
+    /**
+     * 通知Node定义变化。继承了变化的Node定义的子Node定义，作为修改通知。
+     */
+    private void notifyNode(
+            final Set<String> oldNodeNames,
+            final UXDFDefinitionCache cache,
+            final Set<String> changedNodeNames,
+            final Set<String> removedNodeNames,
+            final Set<String> resolvedNodeNames
+    ) {
+        final List<SdNodeDefinition> resolvedDefinitions = Lists.newArrayList();
+        resolvedNodeNames.forEach(nodeName -> resolvedDefinitions.add(cache.getCACHE_NODE().get(nodeName)));
+        this.registry.notifyAfter(resolvedDefinitions, (listener, nodeDefinition) -> {
+            final String nodeName = nodeDefinition.getNodeName();
+            if (changedNodeNames.contains(nodeName) && !oldNodeNames.contains(nodeName)) {
+                listener.onAddNodeAfter(nodeDefinition);
+            } else {
+                listener.onUpdateNodeAfter(nodeDefinition);
+            }
+        });
+        this.registry.notifyAfter(removedNodeNames, UXDFLoaderListener::onRemoveNodeAfter);
+    }
+
+    /**
+     * 通知Event定义变化，包括因Node定义移除而移除的Event定义
+     */
+    private void notifyEvent(
+            final Map<SdEventKey, SdEventDefinition> oldEvents,
+            final Map<SdEventKey, SdEventDefinition> newEvents
+    ) {
+        // 未变化的Event定义与原缓存共享同一实例
+        final List<SdEventDefinition> changedDefinitions = Lists.newArrayList();
+        newEvents.forEach((eventKey, eventDefinition) -> {
+            if (oldEvents.get(eventKey) != eventDefinition) {
+                changedDefinitions.add(eventDefinition);
+            }
+        });
+        this.registry.notifyAfter(changedDefinitions, (listener, eventDefinition) -> {
+            if (oldEvents.containsKey(SdEventKey.of(eventDefinition))) {
+                listener.onUpdateEventAfter(eventDefinition);
+            } else {
+                listener.onAddEventAfter(eventDefinition);
+            }
+        });
+
+        final List<String[]> removedNames = Lists.newArrayList();
+        oldEvents.keySet().stream().filter(eventKey -> !newEvents.containsKey(eventKey)).forEach(eventKey ->
+                removedNames.add(new String[]{
+                        eventKey.getEventName(), eventKey.getLeftNodeName(), eventKey.getRightNodeName()
+                })
+        );
+        this.registry.notifyAfter(removedNames, UXDFLoaderListener::onRemoveEventAfter);
+    }
+
+    /**
+     * 新的Node定义与缓存中的Node定义是否相同，比较自身声明的属性
+     */
+    private static boolean isSameNode(final UXDFDefinitionCache cache, final SdNodeDefinition nodeDefinition) {
+        final String nodeName = nodeDefinition.getNodeName();
+        JSONObject oldNodeJSON = (JSONObject) JSON.toJSON(cache.getCACHE_NODE().get(nodeName));
+        oldNodeJSON.put("prop", JSON.toJSON(cache.getCACHE_NODE_DECLARED_PROP().get(nodeName)));
+        JSONObject newNodeJSON = (JSONObject) JSON.toJSON(nodeDefinition);
+        newNodeJSON.put("prop", JSON.toJSON(nodeDefinition.getProp() == null ? Maps.newHashMap() : nodeDefinition.getProp()));
+        return oldNodeJSON.equals(newNodeJSON);
+    }
+
+    /**
+     * 新的Event定义与缓存中的Event定义是否相同
+     */
+    private static boolean isSameEvent(final SdEventDefinition oldEventDefinition, final SdEventDefinition eventDefinition) {
+        return JSON.toJSON(oldEventDefinition).equals(JSON.toJSON(eventDefinition));
+    }
+
+    /**
+     * 创建定义文件信息
+     */
+    private static UXDFFileInfo toFileInfo(final String name, final Path file) {
+        return new UXDFFileInfo(name, () -> new FileInputStream(file.toFile()), file.toString());
+    }
+
+    /**
+     * 经过<b>on*Before</b>方法处理后的变化，按处理顺序排列
+     */
+    private static final class PendingChanges {
+
+        private final List<NodeChange> nodeChanges = Lists.newArrayList();
+
+        private final List<EventChange> eventChanges = Lists.newArrayList();
+
+        /**
+         * 记录Node定义变化，并应用到收集变化使用的缓存副本上
+         */
+        private void addNode(final NodeChange change, final UXDFDefinitionCache cache) {
+            this.nodeChanges.add(change);
+            change.apply(cache);
+        }
+
+        /**
+         * 记录Event定义变化，并应用到收集变化使用的缓存副本上
+         */
+        private void addEvent(final EventChange change, final UXDFDefinitionCache cache) {
+            this.eventChanges.add(change);
+            change.apply(cache);
+        }
+    }
+
+    /**
+     * Node定义变化，删除的Node定义名称和添加或修改的Node定义只有一个不为NULL
+     */
+    private static final class NodeChange {
+
+        private final String removedName;
+
+        private final SdNodeDefinition nodeDefinition;
+
+        private NodeChange(final String removedName, final SdNodeDefinition nodeDefinition) {
+            this.removedName = removedName;
+            this.nodeDefinition = nodeDefinition;
+        }
+
+        private String getNodeName() {
+            return this.removedName != null ? this.removedName : this.nodeDefinition.getNodeName();
+        }
+
+        /**
+         * 应用到缓存，删除的Node定义不存在时忽略，添加或修改的Node定义已存在时覆盖
+         *
+         * @return 缓存是否发生变化
+         */
+        private boolean apply(final UXDFDefinitionCache cache) {
+            final boolean exist = cache.getCACHE_NODE().containsKey(this.getNodeName());
+            if (this.removedName != null) {
+                if (exist) {
+                    cache.removeNodeDefinition(this.removedName);
+                }
+                return exist;
+            }
+            // 解析继承关系会替换定义中的属性，每次应用使用新的副本
+            cache.putNodeDefinition(this.nodeDefinition.copy(), exist);
+            return true;
+        }
+    }
+
+    /**
+     * Event定义变化，删除的Event定义名称和添加或修改的Event定义只有一个不为NULL
+     */
+    private static final class EventChange {
+
+        private final String[] removedName;
+
+        private final SdEventDefinition eventDefinition;
+
+        private EventChange(final String[] removedName, final SdEventDefinition eventDefinition) {
+            this.removedName = removedName;
+            this.eventDefinition = eventDefinition;
+        }
+
+        /**
+         * 应用到缓存，删除的Event定义不存在时忽略
+         */
+        private void apply(final UXDFDefinitionCache cache) {
+            if (this.removedName != null) {
+                if (cache.getEventDefinition(this.removedName[0], this.removedName[1], this.removedName[2]) != null) {
+                    cache.removeEventDefinition(this.removedName);
+                }
+                return;
+            }
+            cache.putEventDefinition(this.eventDefinition, cache.getEventDefinition(
+                    this.eventDefinition.getEventName(),
+                    this.eventDefinition.getLeftNodeName(),
+                    this.eventDefinition.getRightNodeName()
+            ) != null);
+        }
+    }
+}
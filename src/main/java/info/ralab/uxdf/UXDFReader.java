@@ -146,7 +146,8 @@ public class UXDFReader extends JSONReader {
      * </p>
      * <p>
      * 读取UXDF时，会优先基于UXDF文件中的sd部分校验。
-     * 如果在UXDF内容中sd内未找到，则会查找{@link UXDFLoader}中的sd定义内容。
+     * 如果在UXDF内容中sd内未找到，则会查找{@link UXDFLoader}中的sd定义内容。<br />
+     * 需要校验数据时，使用{@link info.ralab.uxdf.validation.UXDFValidatingReaderListener}装饰监听器。
      * </p>
      * <p>
      * 流式读会依次读取sd，和data中每一个Node和Event。<br />
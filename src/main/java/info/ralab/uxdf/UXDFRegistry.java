@@ -0,0 +1,1823 @@
+package info.ralab.uxdf;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.JSONWriter;
+import com.alibaba.fastjson.parser.Feature;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.google.common.cache.Cache;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import info.ralab.uxdf.chain.UXDFChain;
+import info.ralab.uxdf.definition.SdEventDefinition;
+import info.ralab.uxdf.definition.SdEventKey;
+import info.ralab.uxdf.definition.SdNodeDefinition;
+import info.ralab.uxdf.definition.SdProperty;
+import info.ralab.uxdf.utils.UXDFDefinitionCache;
+import info.ralab.uxdf.utils.UXDFFileInfo;
+import info.ralab.uxdf.utils.UXDFHelper;
+import info.ralab.uxdf.utils.UXDFListenerMetrics;
+import info.ralab.uxdf.utils.UXDFLoaderListener;
+import info.ralab.uxdf.utils.UXDFSchemaDocument;
+import info.ralab.uxdf.utils.UXDFSchemaGraph;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+
+import static info.ralab.uxdf.UXDF.FILE_EXTENSION;
+
+/**
+ * UXDF定义注册表，加载并维护一套UXDF相关定义。处理Sd之间的继承关系等。
+ * <p>
+ * 每个注册表实例拥有独立的定义缓存、监听器和读写锁，可以在同一JVM中加载多套互不影响的定义，
+ * 例如为不同租户分别创建注册表。注册表从自身的{@link ClassLoader}中查找定义文件，未指定时使用当前线程的上下文{@link ClassLoader}。<br />
+ * {@link UXDFLoader}是默认注册表的静态门面。
+ * </p>
+ *
+ * @see info.ralab.uxdf.definition.SdDefinition
+ * @see info.ralab.uxdf.definition.SdProperty
+ * @see SdNodeDefinition
+ * @see SdEventDefinition
+ */
+@Slf4j
+public class UXDFRegistry implements AutoCloseable {
+
+    /**
+     * 缓存读写锁
+     */
+    private final ReadWriteLock LOCK_CACHE = new ReentrantReadWriteLock();
+
+    /**
+     * 重新加载锁，保证同一时间只有一个线程在构建新的缓存
+     */
+    private final Lock LOCK_RELOAD = new ReentrantLock();
+
+    /**
+     * 加载UXDF核心定义的相对路径
+     */
+    private static final String PATH_UXDF_DIR = "uxdf";
+    /**
+     * UXDF基本结构文件，包含了Attr部分
+     */
+    private static final String PATH_UXDF_FILE = PATH_UXDF_DIR + "/uxdf.json";
+    /**
+     * 预编译的UXDF定义包文件，包含了基本结构、所有Node定义和Event定义
+     */
+    private static final String PATH_BUNDLE_FILE = PATH_UXDF_DIR + "/uxdf.bundle.json";
+    /**
+     * 定义包中基本结构的键
+     */
+    private static final String KEY_BUNDLE_UXDF = "uxdf";
+    /**
+     * 定义包中Node定义的键
+     */
+    private static final String KEY_BUNDLE_NODE = "node";
+    /**
+     * 定义包中Event定义的键
+     */
+    private static final String KEY_BUNDLE_EVENT = "event";
+    /**
+     * 定义包中Node定义自身声明属性的键，位于每个Node定义中
+     */
+    private static final String KEY_BUNDLE_DECLARED_PROP = "declaredProp";
+    /**
+     * Node定义存放路径
+     */
+    static final String PATH_NODE_DIR = PATH_UXDF_DIR + "/node";
+    /**
+     * Event定义存放路径
+     */
+    static final String PATH_EVENT_DIR = PATH_UXDF_DIR + "/event";
+    /**
+     * 读取UXDF时的协议判断
+     */
+    private static final String PROTOCOL_FILE = "FILE";
+    /**
+     * 自定义Node保存路径，默认使用用户目录下的数据路径：$HOME/.truedata/uxdf/node
+     */
+    @Getter
+    @Setter
+    private String uxdfNodeDir;
+
+    /**
+     * 自定义Event保存路径，默认使用用户目录下的数据路径：$HOME/.truedata/uxdf/event
+     */
+    @Getter
+    @Setter
+    private String uxdfEventDir;
+
+    /**
+     * Node定义文件解析器，定义文件名称作为Node定义名称
+     */
+    private static final UXDFFileParser<SdNodeDefinition> PARSER_NODE = (fileInfo, reader) -> {
+        SdNodeDefinition nodeDefinition = reader.readObject(SdNodeDefinition.class);
+        nodeDefinition.setNodeName(fileInfo.getName());
+        return nodeDefinition;
+    };
+    /**
+     * Event定义文件解析器，定义文件名称作为Event定义名称
+     */
+    private static final UXDFFileParser<List<SdEventDefinition>> PARSER_EVENT = (fileInfo, reader) ->
+            toEventDefinitions(fileInfo.getName(), reader.readObject(JSONObject.class));
+
+    /**
+     * 开启并行解析定义文件的系统属性
+     */
+    public static final String PROPERTY_PARALLEL = "uxdf.loader.parallel";
+
+    /**
+     * 开启异步通知修改后事件的系统属性
+     */
+    public static final String PROPERTY_ASYNC_NOTIFICATION = "uxdf.loader.asyncNotification";
+
+    /**
+     * 是否并行解析定义文件，默认由系统属性{@link #PROPERTY_PARALLEL}决定
+     */
+    private volatile boolean parallel = Boolean.getBoolean(PROPERTY_PARALLEL);
+
+    /**
+     * 所有注册表共享的定义文件解析线程池。线程池中的线程是守护线程，空闲后自动回收
+     */
+    private static final ForkJoinPool POOL_PARSE = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * 缓存集合，用于统一处理缓存清空。或判断缓存是否创建
+     */
+    private volatile UXDFDefinitionCache CACHE = new UXDFDefinitionCache();
+
+    /**
+     * 监听器集合
+     */
+    private final Set<UXDFLoaderListener> LISTENERS = Sets.newConcurrentHashSet();
+
+    /**
+     * 监听器调用统计，通过监听器索引
+     */
+    private final Map<UXDFLoaderListener, UXDFListenerMetrics> LISTENER_METRICS = Maps.newConcurrentMap();
+
+    /**
+     * 修改后事件的通知线程，为NULL时在修改定义的线程中同步通知
+     */
+    private volatile ExecutorService notifyExecutor;
+
+    /**
+     * 解析后的关系链缓存，通过关系链字符串索引，随注册表一起回收
+     */
+    @Getter
+    private final Cache<String, UXDFChain> chainCache = UXDFChain.newCache();
+
+    /**
+     * 查找定义文件使用的{@link ClassLoader}，为NULL时使用当前线程的上下文{@link ClassLoader}
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * 创建从当前线程的上下文{@link ClassLoader}中加载定义的注册表
+     */
+    public UXDFRegistry() {
+        this(null);
+    }
+
+    /**
+     * 创建从指定{@link ClassLoader}中加载定义的注册表
+     *
+     * @param classLoader 查找定义文件使用的{@link ClassLoader}
+     */
+    public UXDFRegistry(final ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        this.setAsyncNotification(Boolean.getBoolean(PROPERTY_ASYNC_NOTIFICATION));
+    }
+
+    /**
+     * 获取查找定义文件使用的{@link ClassLoader}
+     *
+     * @return 指定的{@link ClassLoader}，未指定时返回当前线程的上下文{@link ClassLoader}
+     */
+    public ClassLoader getClassLoader() {
+        return classLoader == null ? Thread.currentThread().getContextClassLoader() : classLoader;
+    }
+
+    /**
+     * 添加{@link UXDFLoaderListener}到{@link UXDFRegistry}
+     *
+     * @param listener 监听器
+     * @return 是否添加成功
+     */
+    public boolean registerListener(final UXDFLoaderListener listener) {
+        return LISTENERS.add(listener);
+    }
+
+    /**
+     * 从{@link UXDFRegistry}移除{@link UXDFLoaderListener}
+     *
+     * @param listener 监听器
+     * @return 是否移除成功
+     */
+    public boolean unregisterListener(final UXDFLoaderListener listener) {
+        // 先移除监听器，正在执行的调用不会再创建调用统计
+        final boolean removed = LISTENERS.remove(listener);
+        LISTENER_METRICS.remove(listener);
+        return removed;
+    }
+
+    /**
+     * 获取监听器调用统计
+     *
+     * @return 通过监听器索引的调用统计，不可修改
+     */
+    public Map<UXDFLoaderListener, UXDFListenerMetrics> getListenerMetrics() {
+        return Collections.unmodifiableMap(LISTENER_METRICS);
+    }
+
+    /**
+     * 是否异步通知修改后事件
+     *
+     * @return 是否异步通知
+     */
+    public boolean isAsyncNotification() {
+        return notifyExecutor != null;
+    }
+
+    /**
+     * 设置是否异步通知修改后事件，默认由系统属性{@link #PROPERTY_ASYNC_NOTIFICATION}决定。
+     * <p>
+     * 开启后，{@link UXDFLoaderListener}的<b>on*After</b>方法在专用的通知线程中按变更顺序执行，
+     * 不再阻塞定义的读取，监听器异常只记录日志，不会引起变更回滚。<br />
+     * <b>on*Before</b>和<b>on*Error</b>方法始终在修改定义的线程中同步执行。<br />
+     * 关闭时，已经提交的通知仍会执行完成。
+     * </p>
+     *
+     * @param asyncNotification 是否异步通知
+     */
+    public synchronized void setAsyncNotification(final boolean asyncNotification) {
+        if (asyncNotification && notifyExecutor == null) {
+            notifyExecutor = Executors.newSingleThreadExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("uxdf-listener-notify-%d").setDaemon(true).build()
+            );
+        } else if (!asyncNotification && notifyExecutor != null) {
+            notifyExecutor.shutdown();
+            notifyExecutor = null;
+        }
+    }
+
+    /**
+     * 关闭注册表，停止异步通知线程。已经提交的通知仍会执行完成，之后的修改后事件改为同步通知。
+     */
+    @Override
+    public void close() {
+        this.setAsyncNotification(false);
+    }
+
+    /**
+     * 等待已经提交的异步通知执行完成。未开启异步通知时立即返回。
+     *
+     * @param timeout 最长等待时间
+     * @param unit    时间单位
+     * @return 是否在等待时间内执行完成
+     * @throws InterruptedException 等待被中断
+     */
+    public boolean awaitNotification(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final ExecutorService executor = this.notifyExecutor;
+        if (executor == null) {
+            return true;
+        }
+        try {
+            executor.submit(() -> {
+            }).get(timeout, unit);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return executor.awaitTermination(timeout, unit);
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 替换缓存后，按新旧缓存中定义的差异通知修改后事件。
+     * <p>
+     * 新旧缓存中都存在，但实例不同并且内容不同的定义作为修改通知。
+     * 通知顺序为添加Node、修改Node、添加Event、修改Event、删除Event、删除Node。
+     * </p>
+     *
+     * @param oldCache 替换前的缓存
+     * @param newCache 替换后的缓存
+     */
+    void notifyChange(final UXDFDefinitionCache oldCache, final UXDFDefinitionCache newCache) {
+        final Map<String, SdNodeDefinition> oldNodes = oldCache.getCACHE_NODE();
+        final Map<String, SdNodeDefinition> newNodes = newCache.getCACHE_NODE();
+        final List<SdNodeDefinition> addedNodes = Lists.newArrayList();
+        final List<SdNodeDefinition> updatedNodes = Lists.newArrayList();
+        newNodes.forEach((nodeName, nodeDefinition) -> {
+            final SdNodeDefinition oldNodeDefinition = oldNodes.get(nodeName);
+            if (oldNodeDefinition == null) {
+                addedNodes.add(nodeDefinition);
+            } else if (isChanged(oldNodeDefinition, nodeDefinition)) {
+                updatedNodes.add(nodeDefinition);
+            }
+        });
+        final List<String> removedNodes = oldNodes.keySet().stream()
+                .filter(nodeName -> !newNodes.containsKey(nodeName))
+                .collect(Collectors.toList());
+
+        final Map<SdEventKey, SdEventDefinition> oldEvents = oldCache.getCACHE_EVENT();
+        final Map<SdEventKey, SdEventDefinition> newEvents = newCache.getCACHE_EVENT();
+        final List<SdEventDefinition> addedEvents = Lists.newArrayList();
+        final List<SdEventDefinition> updatedEvents = Lists.newArrayList();
+        newEvents.forEach((eventKey, eventDefinition) -> {
+            final SdEventDefinition oldEventDefinition = oldEvents.get(eventKey);
+            if (oldEventDefinition == null) {
+                addedEvents.add(eventDefinition);
+            } else if (isChanged(oldEventDefinition, eventDefinition)) {
+                updatedEvents.add(eventDefinition);
+            }
+        });
+        final List<String[]> removedEvents = oldEvents.keySet().stream()
+                .filter(eventKey -> !newEvents.containsKey(eventKey))
+                .map(eventKey -> new String[]{
+                        eventKey.getEventName(), eventKey.getLeftNodeName(), eventKey.getRightNodeName()
+                })
+                .collect(Collectors.toList());
+
+        this.notifyAfter(addedNodes, UXDFLoaderListener::onAddNodeAfter);
+        this.notifyAfter(updatedNodes, UXDFLoaderListener::onUpdateNodeAfter);
+        this.notifyAfter(addedEvents, UXDFLoaderListener::onAddEventAfter);
+        this.notifyAfter(updatedEvents, UXDFLoaderListener::onUpdateEventAfter);
+        this.notifyAfter(removedEvents, UXDFLoaderListener::onRemoveEventAfter);
+        this.notifyAfter(removedNodes, UXDFLoaderListener::onRemoveNodeAfter);
+    }
+
+    /**
+     * 定义是否发生变化，未变化的定义通常与原缓存共享同一实例
+     */
+    private static boolean isChanged(final Object oldDefinition, final Object newDefinition) {
+        return oldDefinition != newDefinition && !JSON.toJSON(oldDefinition).equals(JSON.toJSON(newDefinition));
+    }
+
+    /**
+     * 依次调用所有监听器的<b>on*Before</b>方法，前一个监听器的返回值作为后一个监听器的参数。
+     * 监听器返回NULL时不再调用后续监听器，表示不执行此变更。
+     *
+     * @param value 变更内容
+     * @param hook  监听器方法
+     * @param <T>   变更内容类型
+     * @return 监听器处理后的变更内容，不执行此变更时返回NULL
+     */
+    <T> T notifyBefore(final T value, final BiFunction<UXDFLoaderListener, T, T> hook) {
+        T handled = value;
+        for (UXDFLoaderListener listener : LISTENERS) {
+            // 跳过空监听器
+            if (listener == null) {
+                continue;
+            }
+            handled = this.callListener(listener, handled, hook);
+            if (handled == null) {
+                break;
+            }
+        }
+        return handled;
+    }
+
+    /**
+     * 调用监听器的<b>on*Before</b>方法，并记录调用统计
+     *
+     * @param listener 监听器
+     * @param value    变更内容
+     * @param hook     监听器方法
+     * @param <T>      变更内容类型
+     * @return 监听器处理后的变更内容
+     */
+    private <T> T callListener(
+            final UXDFLoaderListener listener,
+            final T value,
+            final BiFunction<UXDFLoaderListener, T, T> hook
+    ) {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final T result = hook.apply(listener, value);
+            failed = false;
+            return result;
+        } finally {
+            // 监听器已经移除时不再记录，避免与移除调用统计并发时重新创建
+            final UXDFListenerMetrics metrics = LISTENER_METRICS.compute(listener, (key, metric) ->
+                    LISTENERS.contains(key) ? (metric == null ? new UXDFListenerMetrics() : metric) : null
+            );
+            if (metrics != null) {
+                metrics.record(System.nanoTime() - start, failed);
+            }
+        }
+    }
+
+    /**
+     * 调用监听器的<b>on*After</b>方法，并记录调用统计
+     *
+     * @param listener 监听器
+     * @param value    变更内容
+     * @param hook     监听器方法
+     * @param <T>      变更内容类型
+     */
+    private <T> void notifyListener(
+            final UXDFLoaderListener listener,
+            final T value,
+            final BiConsumer<UXDFLoaderListener, T> hook
+    ) {
+        this.callListener(listener, value, (target, change) -> {
+            hook.accept(target, change);
+            return null;
+        });
+    }
+
+    /**
+     * 通知修改后事件。
+     * <p>
+     * 同步通知时在当前线程中执行，监听器异常向上抛出。<br />
+     * 异步通知时，在持有写锁期间提交到通知线程，保证通知顺序与变更顺序一致，释放锁后才会读取到变更后的定义。
+     * 监听器异常只记录日志，不影响其他监听器。
+     * </p>
+     *
+     * @param changes 变更内容集合
+     * @param hook    监听器方法
+     * @param <T>     变更内容类型
+     */
+    <T> void notifyAfter(final Collection<T> changes, final BiConsumer<UXDFLoaderListener, T> hook) {
+        final ExecutorService executor = this.notifyExecutor;
+        if (executor != null) {
+            final List<T> changeList = Lists.newArrayList(changes);
+            final List<UXDFLoaderListener> listeners = Lists.newArrayList(LISTENERS);
+            try {
+                executor.execute(() -> changeList.forEach(change -> listeners.forEach(listener -> {
+                    try {
+                        this.notifyListener(listener, change, hook);
+                    } catch (Exception e) {
+                        log.error(e.getLocalizedMessage(), e);
+                    }
+                })));
+                return;
+            } catch (RejectedExecutionException e) {
+                // 异步通知已关闭，改为同步通知
+                log.debug("notify executor is shutdown, notify listeners synchronously.");
+            }
+        }
+        changes.forEach(change -> LISTENERS.forEach(listener -> {
+            // 跳过空监听器ε=ε=ε=(~￣▽￣)~
+            if (listener != null) {
+                this.notifyListener(listener, change, hook);
+            }
+        }));
+    }
+
+    /**
+     * 是否并行解析定义文件
+     *
+     * @return 是否并行解析
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * 设置是否并行解析定义文件。开启后，加载定义时在{@link ForkJoinPool}中并行解析Node和Event定义文件。
+     *
+     * @param parallel 是否并行解析
+     */
+    public void setParallel(final boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * 缓存是否已经建立
+     *
+     * @return 是否已经创建缓存
+     */
+    public boolean isCached() {
+        LOCK_CACHE.readLock().lock();
+        try {
+            return CACHE.isCached();
+        } finally {
+            LOCK_CACHE.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取定义版本。定义每次变更后版本都会变化，可以用于判断基于定义生成的内容是否需要重新生成。
+     *
+     * @return 定义版本
+     */
+    public long getDefinitionVersion() {
+        reload();
+        return CACHE.getVersion();
+    }
+
+    /**
+     * 清空{@link UXDF}中所有已缓存数据
+     */
+    public void clear() {
+        LOCK_CACHE.readLock().lock();
+        try {
+            CACHE.clear();
+        } finally {
+            LOCK_CACHE.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取基本Sd定义。只包括attr部分。
+     *
+     * @return 一个UXDF对象副本
+     */
+    public UXDF getBaseUXDF() {
+        reload();
+        LOCK_CACHE.readLock().lock();
+        try {
+            return JSON.toJavaObject(CACHE.getCACHE_UXDF_BASE(), UXDF.class);
+        } finally {
+            LOCK_CACHE.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取全部SD定义。包括impl部分。
+     *
+     * @return 一个UXDF对象副本
+     */
+    public Sd getSd() {
+        reload();
+        LOCK_CACHE.readLock().lock();
+        try {
+            Sd sd = getBaseUXDF().getSd();
+            sd.getNode().setImpl(CACHE.getCACHE_NODE());
+            sd.getEvent().setImpl(CACHE.getCACHE_EVENT_LEFT());
+            return sd;
+        } finally {
+            LOCK_CACHE.readLock().unlock();
+        }
+    }
+
+    /**
+     * 根据Node Sd名称获取Node Sd定义{@link SdNodeDefinition}
+     *
+     * @param nodeName Node Sd名称
+     * @return Node Sd定义
+     */
+    public SdNodeDefinition getNode(final String nodeName) {
+        reload();
+        LOCK_CACHE.readLock().lock();
+        try {
+            return CACHE.getCACHE_NODE().get(nodeName);
+        } finally {
+            LOCK_CACHE.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取全部Node Sd定义{@link SdNodeDefinition}
+     *
+     * @return Node Sd定义集合
+     */
+    public Collection<SdNodeDefinition> getNodes() {
+        LOCK_CACHE.readLock().lock();
+        try {
+            return CACHE.getCACHE_NODE().values();
+        } finally {
+            LOCK_CACHE.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取Event名称对应的所有{@link SdEventDefinition}集合
+     *
+     * @param eventName Event名称
+     * @return Event定义集合
+     */
+    public Map<String, Map<String, SdEventDefinition>> getEvent(final String eventName) {
+        reload();
+        LOCK_CACHE.readLock().lock();
+        try {
+            return CACHE.getCACHE_EVENT_LEFT().get(eventName);
+        } finally {
+            LOCK_CACHE.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取所有{@link SdEventDefinition}
+     *
+     * @return Event定义集合
+     */
+    public Map<String, Map<String, Map<String, SdEventDefinition>>> getEvents() {
+        reload();
+        LOCK_CACHE.readLock().lock();
+        try {
+            return CACHE.getCACHE_EVENT_LEFT();
+        } finally {
+            LOCK_CACHE.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取符合Event Sd定义名称、左Node Sd定义名称和右Node Sd定义名的{@link SdEventDefinition}
+     *
+     * @param eventName     Event Sd定义名称
+     * @param leftNodeName  左Node Sd定义名
+     * @param rightNodeName 右Node Sd定义名称
+     * @return Event定义
+     */
+    public SdEventDefinition getEvent(final String eventName, final String leftNodeName, final String rightNodeName) {
+        reload();
+        LOCK_CACHE.readLock().lock();
+        try {
+            if (eventName == null) {
+                return null;
+            }
+
+            return CACHE.getEventDefinition(eventName, leftNodeName, rightNodeName);
+        } finally {
+            LOCK_CACHE.readLock().unlock();
+        }
+    }
+
+    /**
+     * 根据Node名称获取关联的Event集合
+     *
+     * @param nodeName Node 名称
+     * @return 关联的Event集合
+     */
+    public Set<SdEventDefinition> getEventsByNodeName(final String nodeName) {
+        reload();
+        LOCK_CACHE.readLock().lock();
+        try {
+            return CACHE.getCACHE_NODE_EVENT().getOrDefault(nodeName, Sets.newHashSet());
+        } finally {
+            LOCK_CACHE.readLock().unlock();
+        }
+    }
+
+    /**
+     * 重新加载Sd定义，如果已经加载过。则不重新加载。<br />
+     * 如果重新加载，同一时间只有一个线程进行加载，其他线程等待加载完成。
+     */
+    public void reload() {
+        // 缓存存在不重新加载
+        if (isCached()) {
+            return;
+        }
+        LOCK_RELOAD.lock();
+        try {
+            // 等待期间其他线程已经完成加载
+            if (isCached()) {
+                return;
+            }
+            reloadForced();
+        } finally {
+            LOCK_RELOAD.unlock();
+        }
+    }
+
+    /**
+     * 重新加载Sd定义。新的缓存在锁外构建，构建完成后替换已有缓存，只在替换时对缓存的读写请求锁定。
+     */
+    public void reloadForced() {
+        LOCK_RELOAD.lock();
+        try {
+            swapCache(loadDefinition(Boolean.TRUE));
+        } catch (IOException e) {
+            throw new UXDFException(e);
+        } finally {
+            LOCK_RELOAD.unlock();
+        }
+    }
+
+    /**
+     * 替换当前缓存
+     *
+     * @param cache 新的缓存
+     */
+    private void swapCache(final UXDFDefinitionCache cache) {
+        LOCK_CACHE.writeLock().lock();
+        try {
+            CACHE = cache;
+        } finally {
+            LOCK_CACHE.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 当前缓存版本未发生变化时，替换当前缓存。
+     * <p>
+     * 替换成功后，在持有写锁期间执行修改后事件通知，保证通知顺序与其他变更的顺序一致。
+     * </p>
+     *
+     * @param cache           新的缓存
+     * @param expectedVersion 构建新缓存时基于的缓存版本
+     * @param notification    替换成功后执行的修改后事件通知
+     * @return 是否替换成功
+     */
+    boolean swapCache(final UXDFDefinitionCache cache, final long expectedVersion, final Runnable notification) {
+        LOCK_CACHE.writeLock().lock();
+        try {
+            if (CACHE.getVersion() != expectedVersion) {
+                return false;
+            }
+            CACHE = cache;
+            // 修改后事件通知，异步通知时释放锁后执行
+            notification.run();
+            return true;
+        } finally {
+            LOCK_CACHE.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 获取当前缓存的副本，用于在锁外构建新的缓存。
+     * <p>
+     * 副本保留Node定义自身声明的属性，修改副本不影响注册表。
+     * </p>
+     *
+     * @return 缓存副本
+     */
+    public UXDFDefinitionCache copyCache() {
+        reload();
+        LOCK_CACHE.readLock().lock();
+        try {
+            return CACHE.copy();
+        } finally {
+            LOCK_CACHE.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取所有监听器
+     *
+     * @return 监听器集合
+     */
+    Set<UXDFLoaderListener> getListeners() {
+        return LISTENERS;
+    }
+
+    /**
+     * 构建新的缓存并加载Sd定义。
+     * <p>
+     * 如果允许使用定义包，并且class path中所有的定义文件都已包含在预编译的定义包中，则只从定义包中加载。
+     * 存在多个定义包时合并所有定义包；存在定义包中没有的定义文件时，忽略定义包，扫描class path中的定义文件。
+     * </p>
+     *
+     * @param useBundle 是否允许使用预编译的定义包
+     * @return 加载完成的缓存
+     * @throws IOException 定义文件读取异常
+     */
+    private UXDFDefinitionCache loadDefinition(final boolean useBundle) throws IOException {
+        // 存在定义包时，从定义包加载
+        UXDFDefinitionCache cache = useBundle ? loadBundle() : null;
+        if (cache == null) {
+            cache = new UXDFDefinitionCache();
+
+            // 加载UXDF基本定义文件
+            loadBaseUXDF(cache);
+
+            // 加载UXDF Node定义文件
+            loadNodeDefinition(cache);
+
+            // 加载所有的Event
+            loadEventDefinition(cache);
+        }
+
+        // 生成UXDF完整缓存
+        cache.initUXDFAll();
+        return cache;
+    }
+
+    /**
+     * 扫描class path中的定义文件，将所有定义编译为一个定义包，写入{@link OutputStream}。
+     * <p>
+     * 定义包中Node定义保存解析继承关系后的属性和自身声明的属性，加载时不再解析继承关系。
+     * 写入定义包后，当前{@link UXDFRegistry}的缓存为扫描得到的定义，并按变化通知{@link UXDFLoaderListener}的<b>on*After</b>方法。
+     * </p>
+     *
+     * @param outputStream 定义包输出流
+     * @see info.ralab.uxdf.utils.UXDFBundleWriter
+     */
+    public void writeBundle(final OutputStream outputStream) {
+        LOCK_RELOAD.lock();
+        try {
+            // 忽略已有的定义包，重新扫描定义文件
+            final UXDFDefinitionCache cache = loadDefinition(Boolean.FALSE);
+
+            JSONWriter writer = new JSONWriter(new OutputStreamWriter(outputStream, UXDF.CHARSET));
+            writer.config(SerializerFeature.DisableCircularReferenceDetect, Boolean.TRUE);
+            writer.config(SerializerFeature.MapSortField, Boolean.TRUE);
+            writer.startObject();
+
+            // 基本结构
+            writer.writeKey(KEY_BUNDLE_UXDF);
+            writer.writeObject(cache.getCACHE_UXDF_BASE());
+
+            // Node定义，保存解析后的属性和自身声明的属性
+            writer.writeKey(KEY_BUNDLE_NODE);
+            writer.startObject();
+            Map<String, SdNodeDefinition> nodes = new TreeMap<>(cache.getCACHE_NODE());
+            for (Map.Entry<String, SdNodeDefinition> entry : nodes.entrySet()) {
+                JSONObject nodeJSON = (JSONObject) JSON.toJSON(entry.getValue());
+                nodeJSON.put(KEY_BUNDLE_DECLARED_PROP, cache.getCACHE_NODE_DECLARED_PROP().get(entry.getKey()));
+                writer.writeKey(entry.getKey());
+                writer.writeObject(nodeJSON);
+            }
+            writer.endObject();
+
+            // Event定义，与Event定义文件结构相同
+            writer.writeKey(KEY_BUNDLE_EVENT);
+            writer.writeObject(cache.getCACHE_EVENT_LEFT());
+
+            writer.endObject();
+            writer.flush();
+
+            LOCK_CACHE.writeLock().lock();
+            try {
+                final UXDFDefinitionCache oldCache = CACHE;
+                CACHE = cache;
+                // 修改后事件通知，异步通知时释放锁后执行
+                this.notifyChange(oldCache, cache);
+            } finally {
+                LOCK_CACHE.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            throw new UXDFException(e);
+        } finally {
+            LOCK_RELOAD.unlock();
+        }
+    }
+
+    /**
+     * 从class path中所有预编译的定义包加载定义，每个定义包只读取一次。
+     * <p>
+     * 只有一个定义包时直接使用其中解析后的属性。存在多个定义包时按class path顺序合并，
+     * 已经从之前的定义包加载的定义不再重复加载，合并后按自身声明的属性重新解析继承关系。
+     * class path中存在任何定义包中都没有的Node或Event定义文件时，返回NULL，由调用方扫描定义文件。
+     * </p>
+     *
+     * @return 加载的缓存，没有定义包或定义包不完整时返回NULL
+     * @throws IOException 定义包读取异常
+     */
+    private UXDFDefinitionCache loadBundle() throws IOException {
+        final List<URL> bundleUrls = Collections.list(this.getClassLoader().getResources(PATH_BUNDLE_FILE));
+        if (bundleUrls.isEmpty()) {
+            return null;
+        }
+
+        final UXDFDefinitionCache cache = new UXDFDefinitionCache();
+        final boolean merge = bundleUrls.size() > 1;
+        boolean unresolved = merge;
+        for (URL bundleUrl : bundleUrls) {
+            unresolved |= readBundle(bundleUrl, cache, merge);
+        }
+        // 合并的定义包或早期的定义包只保存自身声明的属性，解析所有Node的继承关系
+        if (unresolved) {
+            cache.resolveNodeDefinition(Lists.newArrayList(cache.getCACHE_NODE().keySet()));
+        }
+
+        // 存在定义包之外的定义文件
+        for (String nodeName : findUxdfFileNames(PATH_NODE_DIR)) {
+            if (!cache.getCACHE_NODE().containsKey(nodeName)) {
+                log.info("uxdf node [{}] not in bundle, scan uxdf files.", nodeName);
+                return null;
+            }
+        }
+        for (String eventName : findUxdfFileNames(PATH_EVENT_DIR)) {
+            if (!cache.getCACHE_EVENT_LEFT().containsKey(eventName)) {
+                log.info("uxdf event [{}] not in bundle, scan uxdf files.", eventName);
+                return null;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * 读取一个预编译的定义包，加入缓存
+     *
+     * @param bundleUrl 定义包位置
+     * @param cache     加载的目标缓存
+     * @param merge     是否合并多个定义包。合并时跳过缓存中已有的定义，Node定义只加入自身声明的属性
+     * @return 是否有Node定义需要解析继承关系
+     * @throws IOException 定义包读取异常
+     */
+    private static boolean readBundle(
+            final URL bundleUrl,
+            final UXDFDefinitionCache cache,
+            final boolean merge
+    ) throws IOException {
+        log.debug("load uxdf bundle: {}", bundleUrl);
+        boolean unresolved = false;
+        try (
+                JSONReader reader = new JSONReader(
+                        new InputStreamReader(bundleUrl.openStream(), UXDF.CHARSET),
+                        Feature.OrderedField
+                )
+        ) {
+            reader.startObject();
+            while (reader.hasNext()) {
+                final String key = reader.readString();
+                switch (key) {
+                    case KEY_BUNDLE_UXDF:
+                        cache.getCACHE_UXDF_BASE().putAll(reader.readObject(JSONObject.class));
+                        break;
+                    case KEY_BUNDLE_NODE:
+                        reader.startObject();
+                        while (reader.hasNext()) {
+                            final String nodeName = reader.readString();
+                            final JSONObject nodeJSON = reader.readObject(JSONObject.class);
+                            final JSONObject declaredJSON = (JSONObject) nodeJSON.remove(KEY_BUNDLE_DECLARED_PROP);
+                            if (merge && cache.getCACHE_NODE().containsKey(nodeName)) {
+                                continue;
+                            }
+                            SdNodeDefinition nodeDefinition = nodeJSON.toJavaObject(SdNodeDefinition.class);
+                            nodeDefinition.setNodeName(nodeName);
+                            // 没有自身声明属性的Node定义，需要解析继承关系
+                            if (declaredJSON == null) {
+                                cache.putNodeDefinition(nodeDefinition, Boolean.FALSE);
+                                unresolved = true;
+                                continue;
+                            }
+                            final LinkedHashMap<String, SdProperty> declaredProp = Maps.newLinkedHashMap();
+                            declaredJSON.forEach((propName, property) -> declaredProp.put(
+                                    propName, ((JSONObject) property).toJavaObject(SdProperty.class)
+                            ));
+                            if (merge) {
+                                nodeDefinition.setProp(declaredProp);
+                                cache.putNodeDefinition(nodeDefinition, Boolean.FALSE);
+                            } else {
+                                cache.putResolvedNodeDefinition(nodeDefinition, declaredProp);
+                            }
+                        }
+                        reader.endObject();
+                        break;
+                    case KEY_BUNDLE_EVENT:
+                        reader.startObject();
+                        while (reader.hasNext()) {
+                            toEventDefinitions(reader.readString(), reader.readObject(JSONObject.class)).forEach(
+                                    eventDefinition -> {
+                                        if (merge && cache.getEventDefinition(
+                                                eventDefinition.getEventName(),
+                                                eventDefinition.getLeftNodeName(),
+                                                eventDefinition.getRightNodeName()
+                                        ) != null) {
+                                            return;
+                                        }
+                                        cache.putEventDefinition(eventDefinition, Boolean.FALSE);
+                                    }
+                            );
+                        }
+                        reader.endObject();
+                        break;
+                    default:
+                        throw new UXDFException(String.format("Unknown uxdf bundle key [%s].", key));
+                }
+            }
+            reader.endObject();
+        }
+        return unresolved;
+    }
+
+    /**
+     * 向当前{@link UXDFRegistry}中添加{@link SdNodeDefinition}。
+     * <p>
+     * 此操作会对所有缓存读写加锁。<br />
+     * 如果出现添加的{@link SdNodeDefinition}已经在缓存中存在，则会引起异常。
+     * </p>
+     *
+     * @param nodeDefinitions Node定义集合
+     */
+    public void addNodeDefinition(final List<SdNodeDefinition> nodeDefinitions) {
+        LOCK_CACHE.writeLock().lock();
+        // 变更在缓存副本上执行，成功后替换缓存
+        final UXDFDefinitionCache oldCache = CACHE;
+        try {
+            if (nodeDefinitions == null || nodeDefinitions.isEmpty()) {
+                return;
+            }
+
+            // 修改前事件通知
+            // 变更集合，用于存放事件处理后的定义
+            List<SdNodeDefinition> handledDefinitions = Lists.newArrayList();
+            nodeDefinitions.forEach(sdNodeDefinition -> {
+                // 创建监听器处理的定义
+                SdNodeDefinition listenerHandleDefinition = sdNodeDefinition;
+                // 遍历监听器开始通知
+                for (UXDFLoaderListener listener : LISTENERS) {
+                    // 跳过空监听器ε=ε=ε=(~￣▽￣)~
+                    if (listener == null) {
+                        continue;
+                    }
+                    listenerHandleDefinition = this.callListener(listener, listenerHandleDefinition, UXDFLoaderListener::onAddNodeBefore);
+                    // 如果监听器返回了NULL，则跳出监听器循环。
+                    if (listenerHandleDefinition == null) {
+                        break;
+                    }
+                }
+                // 监听器处理后不为NULL，加入变更集合
+                if (listenerHandleDefinition != null) {
+                    handledDefinitions.add(listenerHandleDefinition);
+                }
+            });
+
+            // 执行变更
+            final UXDFDefinitionCache cache = oldCache.copy();
+            handledDefinitions.forEach(sdNodeDefinition -> cache.putNodeDefinition(sdNodeDefinition, Boolean.FALSE));
+            // 解析受影响Node的继承关系
+            cache.resolveNodeDefinition(
+                    handledDefinitions.stream().map(SdNodeDefinition::getNodeName).collect(Collectors.toList())
+            );
+            CACHE = cache;
+
+            // 修改后事件通知，异步通知时释放锁后执行
+            this.notifyAfter(handledDefinitions, UXDFLoaderListener::onAddNodeAfter);
+        } catch (Exception e) {
+            // 异常通知
+            LISTENERS.forEach(uxdfLoaderListener -> {
+                try {
+                    uxdfLoaderListener.onAddNodeError(e);
+                } catch (Exception listenerError) {
+                    log.error(listenerError.getLocalizedMessage(), listenerError);
+                }
+            });
+            // 恢复变更前的缓存
+            CACHE = oldCache;
+            throw new UXDFException(e);
+        } finally {
+            LOCK_CACHE.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 更新当前{@link UXDFRegistry}中{@link SdNodeDefinition}。
+     * <p>
+     * 此操作会对所有缓存读写加锁。<br />
+     * 如果出现需要更新的{@link SdNodeDefinition}未在缓存中存在，则会引起异常。
+     * </p>
+     *
+     * @param nodeDefinitions Node定义集合
+     */
+    public void updateNodeDefinition(final List<SdNodeDefinition> nodeDefinitions) {
+        LOCK_CACHE.writeLock().lock();
+        // 变更在缓存副本上执行，成功后替换缓存
+        final UXDFDefinitionCache oldCache = CACHE;
+        try {
+            if (nodeDefinitions == null || nodeDefinitions.isEmpty()) {
+                return;
+            }
+
+            // 修改前事件通知
+            // 变更集合，用于存放事件处理后的定义
+            List<SdNodeDefinition> handledDefinitions = Lists.newArrayList();
+            nodeDefinitions.forEach(sdNodeDefinition -> {
+                // 创建监听器处理的定义
+                SdNodeDefinition listenerHandleDefinition = sdNodeDefinition;
+                // 遍历监听器开始通知
+                for (UXDFLoaderListener listener : LISTENERS) {
+                    // 跳过空监听器ε=ε=ε=(~￣▽￣)~
+                    if (listener == null) {
+                        continue;
+                    }
+                    listenerHandleDefinition = this.callListener(listener, listenerHandleDefinition, UXDFLoaderListener::onUpdateNodeBefore);
+                    // 如果监听器返回了NULL，则跳出监听器循环。
+                    if (listenerHandleDefinition == null) {
+                        break;
+                    }
+                }
+                // 监听器处理后不为NULL，加入变更集合
+                if (listenerHandleDefinition != null) {
+                    handledDefinitions.add(listenerHandleDefinition);
+                }
+            });
+
+            // 执行变更
+            final UXDFDefinitionCache cache = oldCache.copy();
+            handledDefinitions.forEach(sdNodeDefinition -> cache.putNodeDefinition(sdNodeDefinition, Boolean.TRUE));
+            // 解析受影响Node的继承关系
+            cache.resolveNodeDefinition(
+                    handledDefinitions.stream().map(SdNodeDefinition::getNodeName).collect(Collectors.toList())
+            );
+            CACHE = cache;
+
+            // 修改后事件通知，异步通知时释放锁后执行
+            this.notifyAfter(handledDefinitions, UXDFLoaderListener::onUpdateNodeAfter);
+        } catch (Exception e) {
+            // 异常通知
+            LISTENERS.forEach(uxdfLoaderListener -> {
+                try {
+                    uxdfLoaderListener.onUpdateNodeError(e);
+                } catch (Exception listenerError) {
+                    log.error(listenerError.getLocalizedMessage(), listenerError);
+                }
+            });
+            // 恢复变更前的缓存
+            CACHE = oldCache;
+            throw new UXDFException(e);
+        } finally {
+            LOCK_CACHE.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除当前{@link UXDFRegistry}中{@link SdNodeDefinition}。
+     * <p>
+     * 此操作会对所有缓存读写加锁。
+     * </p>
+     *
+     * @param nodeNames Node定义名称集合
+     */
+    public void removeNodeDefinition(final List<String> nodeNames) {
+        LOCK_CACHE.writeLock().lock();
+        // 变更在缓存副本上执行，成功后替换缓存
+        final UXDFDefinitionCache oldCache = CACHE;
+        try {
+            if (nodeNames == null || nodeNames.isEmpty()) {
+                return;
+            }
+
+            // 修改前事件通知
+            // 变更集合，用于存放事件处理后的定义
+            List<String> handledNames = Lists.newArrayList();
+            nodeNames.forEach(nodeName -> {
+                // 创建监听器处理的定义
+                String listenerHandleName = nodeName;
+                // 遍历监听器开始通知
+                for (UXDFLoaderListener listener : LISTENERS) {
+                    // 跳过空监听器ε=ε=ε=(~￣▽￣)~
+                    if (listener == null) {
+                        continue;
+                    }
+                    listenerHandleName = this.callListener(listener, listenerHandleName, UXDFLoaderListener::onRemoveNodeBefore);
+                    // 如果监听器返回了NULL，则跳出监听器循环。
+                    if (listenerHandleName == null) {
+                        break;
+                    }
+                }
+                // 监听器处理后不为NULL，加入变更集合
+                if (listenerHandleName != null) {
+                    handledNames.add(listenerHandleName);
+                }
+            });
+
+            // 执行变更
+            final UXDFDefinitionCache cache = oldCache.copy();
+            handledNames.forEach(cache::removeNodeDefinition);
+            // 解析受影响Node的继承关系
+            cache.resolveNodeDefinition(handledNames);
+            CACHE = cache;
+
+            // 修改后事件通知，异步通知时释放锁后执行
+            this.notifyAfter(handledNames, UXDFLoaderListener::onRemoveNodeAfter);
+        } catch (Exception e) {
+            // 异常通知
+            LISTENERS.forEach(uxdfLoaderListener -> {
+                try {
+                    uxdfLoaderListener.onRemoveNodeError(e);
+                } catch (Exception listenerError) {
+                    log.error(listenerError.getLocalizedMessage(), listenerError);
+                }
+            });
+            // 恢复变更前的缓存
+            CACHE = oldCache;
+            throw new UXDFException(e);
+        } finally {
+            LOCK_CACHE.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 向当前{@link UXDFRegistry}中添加{@link SdEventDefinition}。
+     * <p>
+     * 此操作会对所有缓存读写加锁。<br />
+     *
+     * <ol>
+     * <li>如果出现添加的{@link SdEventDefinition}已经在缓存中存在，则会引起异常。</li>
+     * <li>{@link SdEventDefinition#getLeftNodeName()}对应的{@link SdNodeDefinition}不存在。</li>
+     * <li>{@link SdEventDefinition#getRightNodeName()}对应的{@link SdNodeDefinition}不存在。</li>
+     * </ol>
+     * </p>
+     *
+     * @param eventDefinitions Node定义集合
+     */
+    public void addEventDefinition(final List<SdEventDefinition> eventDefinitions) {
+        LOCK_CACHE.writeLock().lock();
+        // 变更在缓存副本上执行，成功后替换缓存
+        final UXDFDefinitionCache oldCache = CACHE;
+        try {
+            if (eventDefinitions == null || eventDefinitions.isEmpty()) {
+                return;
+            }
+
+            // 修改前事件通知
+            // 变更集合，用于存放事件处理后的定义
+            List<SdEventDefinition> handledDefinitions = Lists.newArrayList();
+            eventDefinitions.forEach(sdEventDefinition -> {
+                // 创建监听器处理的定义
+                SdEventDefinition listenerHandleDefinition = sdEventDefinition;
+                // 遍历监听器开始通知
+                for (UXDFLoaderListener listener : LISTENERS) {
+                    // 跳过空监听器ε=ε=ε=(~￣▽￣)~
+                    if (listener == null) {
+                        continue;
+                    }
+                    listenerHandleDefinition = this.callListener(listener, listenerHandleDefinition, UXDFLoaderListener::onAddEventBefore);
+                    // 如果监听器返回了NULL，则跳出监听器循环。
+                    if (listenerHandleDefinition == null) {
+                        break;
+                    }
+                }
+                // 监听器处理后不为NULL，加入变更集合
+                if (listenerHandleDefinition != null) {
+                    handledDefinitions.add(listenerHandleDefinition);
+                }
+            });
+
+            // 执行变更
+            final UXDFDefinitionCache cache = oldCache.copy();
+            handledDefinitions.forEach(sdEventDefinition -> cache.putEventDefinition(sdEventDefinition, Boolean.FALSE));
+            CACHE = cache;
+
+            // 修改后事件通知，异步通知时释放锁后执行
+            this.notifyAfter(handledDefinitions, UXDFLoaderListener::onAddEventAfter);
+        } catch (Exception e) {
+            // 异常通知
+            LISTENERS.forEach(uxdfLoaderListener -> {
+                try {
+                    uxdfLoaderListener.onAddEventError(e);
+                } catch (Exception listenerError) {
+                    log.error(listenerError.getLocalizedMessage(), listenerError);
+                }
+            });
+            // 恢复变更前的缓存
+            CACHE = oldCache;
+            throw new UXDFException(e);
+        } finally {
+            LOCK_CACHE.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 更新当前{@link UXDFRegistry}中{@link SdEventDefinition}。
+     * <p>
+     * 此操作会对所有缓存读写加锁。<br />
+     * <ol>
+     * <li>如果出现需要更新的{@link SdEventDefinition}未在缓存中存在，则会引起异常。</li>
+     * <li>{@link SdEventDefinition#getLeftNodeName()}对应的{@link SdNodeDefinition}不存在。</li>
+     * <li>{@link SdEventDefinition#getRightNodeName()}对应的{@link SdNodeDefinition}不存在。</li>
+     * </ol>
+     *
+     * </p>
+     *
+     * @param eventDefinitions Event定义集合
+     */
+    public void updateEventDefinition(final List<SdEventDefinition> eventDefinitions) {
+        LOCK_CACHE.writeLock().lock();
+        // 变更在缓存副本上执行，成功后替换缓存
+        final UXDFDefinitionCache oldCache = CACHE;
+        try {
+            if (eventDefinitions == null || eventDefinitions.isEmpty()) {
+                return;
+            }
+
+            // 修改前事件通知
+            // 变更集合，用于存放事件处理后的定义
+            List<SdEventDefinition> handledDefinitions = Lists.newArrayList();
+            eventDefinitions.forEach(sdEventDefinition -> {
+                // 创建监听器处理的定义
+                SdEventDefinition listenerHandleDefinition = sdEventDefinition;
+                // 遍历监听器开始通知
+                for (UXDFLoaderListener listener : LISTENERS) {
+                    // 跳过空监听器ε=ε=ε=(~￣▽￣)~
+                    if (listener == null) {
+                        continue;
+                    }
+                    listenerHandleDefinition = this.callListener(listener, listenerHandleDefinition, UXDFLoaderListener::onUpdateEventBefore);
+                    // 如果监听器返回了NULL，则跳出监听器循环。
+                    if (listenerHandleDefinition == null) {
+                        break;
+                    }
+                }
+                // 监听器处理后不为NULL，加入变更集合
+                if (listenerHandleDefinition != null) {
+                    handledDefinitions.add(listenerHandleDefinition);
+                }
+            });
+
+            // 执行变更
+            final UXDFDefinitionCache cache = oldCache.copy();
+            eventDefinitions.forEach(sdEventDefinition -> cache.putEventDefinition(sdEventDefinition, Boolean.TRUE));
+            CACHE = cache;
+
+            // 修改后事件通知，异步通知时释放锁后执行
+            this.notifyAfter(handledDefinitions, UXDFLoaderListener::onUpdateEventAfter);
+        } catch (Exception e) {
+            // 异常通知
+            LISTENERS.forEach(uxdfLoaderListener -> {
+                try {
+                    uxdfLoaderListener.onUpdateEventError(e);
+                } catch (Exception listenerError) {
+                    log.error(listenerError.getLocalizedMessage(), listenerError);
+                }
+            });
+            // 恢复变更前的缓存
+            CACHE = oldCache;
+            throw new UXDFException(e);
+        } finally {
+            LOCK_CACHE.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除当前{@link UXDFRegistry}中{@link SdEventDefinition}。
+     * <p>
+     * 此操作会对所有缓存读写加锁。
+     * </p>
+     *
+     * @param eventNames Event定义名称集合，每一项名称顺序为eventName，leftNodeName，rightNodeName。
+     */
+    public void removeEventDefinition(final List<String[]> eventNames) {
+        LOCK_CACHE.writeLock().lock();
+        // 变更在缓存副本上执行，成功后替换缓存
+        final UXDFDefinitionCache oldCache = CACHE;
+        try {
+            if (eventNames == null || eventNames.isEmpty()) {
+                return;
+            }
+
+            // 修改前事件通知
+            // 变更集合，用于存放事件处理后的定义
+            List<String[]> handledNames = Lists.newArrayList();
+            eventNames.forEach(eventNameArray -> {
+                // 创建监听器处理的定义
+                String[] listenerHandleName = eventNameArray;
+                // 遍历监听器开始通知
+                for (UXDFLoaderListener listener : LISTENERS) {
+                    // 跳过空监听器ε=ε=ε=(~￣▽￣)~
+                    if (listener == null) {
+                        continue;
+                    }
+                    listenerHandleName = this.callListener(listener, listenerHandleName, UXDFLoaderListener::onRemoveEventBefore);
+                    // 如果监听器返回了NULL，则跳出监听器循环。
+                    if (listenerHandleName == null) {
+                        break;
+                    }
+                }
+                // 监听器处理后不为NULL，加入变更集合
+                if (listenerHandleName != null) {
+                    handledNames.add(listenerHandleName);
+                }
+            });
+
+            // 执行变更
+            final UXDFDefinitionCache cache = oldCache.copy();
+            handledNames.forEach(cache::removeEventDefinition);
+            CACHE = cache;
+
+            // 修改后事件通知，异步通知时释放锁后执行
+            this.notifyAfter(handledNames, UXDFLoaderListener::onRemoveEventAfter);
+        } catch (Exception e) {
+            // 异常通知
+            LISTENERS.forEach(uxdfLoaderListener -> {
+                try {
+                    uxdfLoaderListener.onRemoveEventError(e);
+                } catch (Exception listenerError) {
+                    log.error(listenerError.getLocalizedMessage(), listenerError);
+                }
+            });
+            // 恢复变更前的缓存
+            CACHE = oldCache;
+            throw new UXDFException(e);
+        } finally {
+            LOCK_CACHE.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 获取完整UXDF定义的JSON字符串
+     *
+     * @return UXDF定义的JSON字符串
+     */
+    public String getAllUxdfJSON() {
+        return getSchemaDocument().toJSONString();
+    }
+
+    /**
+     * 获取完整UXDF定义文档。
+     * <p>
+     * 文档内容已经编码为UTF-8，并包含内容摘要ETag。定义未变更时返回同一个文档，定义变更后第一次获取时重新生成。
+     * </p>
+     *
+     * @return 完整UXDF定义文档
+     */
+    public UXDFSchemaDocument getSchemaDocument() {
+        reload();
+        LOCK_CACHE.readLock().lock();
+        try {
+            return CACHE.getSchemaDocument();
+        } finally {
+            LOCK_CACHE.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取Sd定义关系图，用于直接查找Node定义的出边、入边以及多跳可达的Node定义。
+     * <p>
+     * 定义未变更时返回同一个关系图，定义变更后第一次获取时重新生成。
+     * </p>
+     *
+     * @return Sd定义关系图
+     */
+    public UXDFSchemaGraph getSchemaGraph() {
+        reload();
+        LOCK_CACHE.readLock().lock();
+        try {
+            return CACHE.getSchemaGraph();
+        } finally {
+            LOCK_CACHE.readLock().unlock();
+        }
+    }
+
+    /**
+     * 将完整UXDF定义的JSON内容写入输出流，不关闭输出流
+     *
+     * @param outputStream 输出流
+     * @throws IOException 写入异常
+     */
+    public void writeAllUxdfJSON(final OutputStream outputStream) throws IOException {
+        getSchemaDocument().writeTo(outputStream);
+    }
+
+
+    /**
+     * 通过约定的class path加载{@link SdEventDefinition}定义
+     *
+     * @param cache 加载的目标缓存
+     */
+    private void loadEventDefinition(final UXDFDefinitionCache cache) throws IOException {
+        // 解析所有Event定义文件
+        final List<List<SdEventDefinition>> eventDefinitionsList = parseUxdfFile(PATH_EVENT_DIR, PARSER_EVENT);
+
+        // 按文件发现顺序加入缓存
+        eventDefinitionsList.forEach(eventDefinitions -> eventDefinitions.forEach(
+                eventDefinition -> cache.putEventDefinition(eventDefinition, Boolean.FALSE)
+        ));
+    }
+
+    /**
+     * 将一个Event定义名称下的所有Event定义转换为{@link SdEventDefinition}集合
+     *
+     * @param eventName Event定义名称
+     * @param eventLeft 按左Node定义名称、右Node定义名称分组的Event定义
+     * @return Event定义集合
+     */
+    private static List<SdEventDefinition> toEventDefinitions(final String eventName, final JSONObject eventLeft) {
+        List<SdEventDefinition> eventDefinitions = Lists.newArrayList();
+        // 遍历左Node对应的所有右Node
+        eventLeft.keySet().forEach((leftNodeName) -> {
+            JSONObject eventRight = eventLeft.getJSONObject(leftNodeName);
+            // 遍历所有的右Node对应的Event具体定义
+            eventRight.keySet().forEach((rightNodeName) -> {
+                // 创建Event定义
+                SdEventDefinition eventDefinition = eventRight.getJSONObject(rightNodeName).toJavaObject(SdEventDefinition.class);
+                eventDefinition.setLeftNodeName(leftNodeName);
+                eventDefinition.setRightNodeName(rightNodeName);
+                eventDefinition.setEventName(eventName);
+
+                eventDefinitions.add(eventDefinition);
+            });
+        });
+        return eventDefinitions;
+    }
+
+    /**
+     * 通过约定的class path加载{@link SdNodeDefinition}定义
+     *
+     * @param cache 加载的目标缓存
+     */
+    private void loadNodeDefinition(final UXDFDefinitionCache cache) throws IOException {
+        // 解析所有Node定义文件
+        final List<SdNodeDefinition> nodeDefinitions = parseUxdfFile(PATH_NODE_DIR, PARSER_NODE);
+
+        // 按文件发现顺序加入缓存
+        nodeDefinitions.forEach(nodeDefinition -> cache.putNodeDefinition(nodeDefinition, Boolean.FALSE));
+
+        // 解析所有Node的继承关系
+        cache.resolveNodeDefinition(Lists.newArrayList(cache.getCACHE_NODE().keySet()));
+    }
+
+    /**
+     * 解析单个Node定义文件
+     *
+     * @param fileInfo 定义文件信息
+     * @return Node定义
+     */
+    static SdNodeDefinition parseNodeDefinition(final UXDFFileInfo fileInfo) {
+        return parseUxdfFile(fileInfo, PARSER_NODE);
+    }
+
+    /**
+     * 解析单个Event定义文件
+     *
+     * @param fileInfo 定义文件信息
+     * @return 文件中的所有Event定义
+     */
+    static List<SdEventDefinition> parseEventDefinitions(final UXDFFileInfo fileInfo) {
+        return parseUxdfFile(fileInfo, PARSER_EVENT);
+    }
+
+    /**
+     * 获取约定class path路径在文件系统中的所有目录，不包括Jar包或War包中的路径
+     *
+     * @param classPath 约定的class path路径
+     * @return 文件系统中的目录集合
+     * @throws IOException 异常
+     */
+    List<File> findDefinitionDirs(final String classPath) throws IOException {
+        List<File> dirs = Lists.newArrayList();
+        Enumeration<URL> dirPaths = this.getClassLoader().getResources(classPath);
+        while (dirPaths.hasMoreElements()) {
+            final String dirPath = dirPaths.nextElement().getPath();
+            File dir = new File(dirPath);
+            if (!dirPath.contains("!") && dir.isDirectory()) {
+                dirs.add(dir);
+            }
+        }
+        return dirs;
+    }
+
+    /**
+     * 解析约定class path路径下的所有uxdf定义文件。
+     * <p>
+     * 发现定义文件时不打开文件，每个文件在解析时打开，解析后立即关闭。
+     * 开启并行解析{@link #setParallel(boolean)}时，在共享的{@link ForkJoinPool}中按class path根路径并行发现定义文件，
+     * 所有根路径发现完成后，将全部文件作为一个整体并行解析，只有一个根路径时文件也会并行解析。
+     * 无论哪个文件先解析完成，返回结果的顺序都与文件发现的顺序一致。
+     * </p>
+     *
+     * @param classPath 加载路径
+     * @param parser    定义文件解析器
+     * @param <T>       解析结果类型
+     * @return 按文件发现顺序排列的解析结果
+     * @throws IOException 定义文件读取异常
+     */
+    private <T> List<T> parseUxdfFile(final String classPath, final UXDFFileParser<T> parser) throws IOException {
+        final List<JarFile> jarFiles = new CopyOnWriteArrayList<>();
+        try {
+            // 所有class path根路径
+            final List<String> dirPaths = Lists.newArrayList();
+            Enumeration<URL> urls = this.getClassLoader().getResources(classPath);
+            while (urls.hasMoreElements()) {
+                dirPaths.add(urls.nextElement().getPath());
+            }
+
+            // 串行发现和解析
+            if (!parallel) {
+                final List<T> results = Lists.newArrayList();
+                for (String dirPath : dirPaths) {
+                    for (UXDFFileInfo fileInfo : loadUxdfFileInfo(dirPath, classPath, jarFiles)) {
+                        results.add(parseUxdfFile(fileInfo, parser));
+                    }
+                }
+                return results;
+            }
+
+            // 并行发现所有根路径中的定义文件，再将所有文件作为一个整体并行解析
+            try {
+                final List<UXDFFileInfo> fileInfoList = POOL_PARSE.submit(() -> dirPaths.parallelStream()
+                        .map(dirPath -> {
+                            try {
+                                return loadUxdfFileInfo(dirPath, classPath, jarFiles);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        })
+                        .flatMap(List::stream)
+                        .collect(Collectors.toList())
+                ).get();
+                return POOL_PARSE.submit(() -> fileInfoList.parallelStream()
+                        .map(fileInfo -> parseUxdfFile(fileInfo, parser))
+                        .collect(Collectors.toList())
+                ).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UXDFException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new UXDFException(e);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            // 关闭发现定义文件时打开的Jar文件
+            closeJarFiles(jarFiles);
+        }
+    }
+
+    /**
+     * 发现约定class path路径下的所有uxdf定义文件，只返回定义文件名称，不解析文件
+     *
+     * @param classPath 加载路径
+     * @return 按文件发现顺序排列的定义文件名称
+     * @throws IOException 定义文件读取异常
+     */
+    private List<String> findUxdfFileNames(final String classPath) throws IOException {
+        final List<JarFile> jarFiles = Lists.newArrayList();
+        try {
+            final List<String> names = Lists.newArrayList();
+            Enumeration<URL> urls = this.getClassLoader().getResources(classPath);
+            while (urls.hasMoreElements()) {
+                for (UXDFFileInfo fileInfo : loadUxdfFileInfo(urls.nextElement().getPath(), classPath, jarFiles)) {
+                    names.add(fileInfo.getName());
+                }
+            }
+            return names;
+        } finally {
+            closeJarFiles(jarFiles);
+        }
+    }
+
+    /**
+     * 关闭发现定义文件时打开的Jar文件
+     *
+     * @param jarFiles Jar文件集合
+     */
+    private static void closeJarFiles(final List<JarFile> jarFiles) {
+        for (JarFile jarFile : jarFiles) {
+            try {
+                jarFile.close();
+            } catch (IOException e) {
+                log.error(e.getLocalizedMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 解析单个uxdf定义文件，解析后关闭文件
+     *
+     * @param fileInfo 定义文件信息
+     * @param parser   定义文件解析器
+     * @param <T>      解析结果类型
+     * @return 解析结果
+     */
+    private static <T> T parseUxdfFile(final UXDFFileInfo fileInfo, final UXDFFileParser<T> parser) {
+        try (
+                JSONReader reader = new JSONReader(new InputStreamReader(
+                        fileInfo.openInputStream(), UXDF.CHARSET
+                ), Feature.OrderedField)
+        ) {
+            return parser.parse(fileInfo, reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (JSONException e) {
+            throw new UXDFException(String.format("Parse uxdf file [%s] fail.", fileInfo.getPath()), e);
+        }
+    }
+
+    /**
+     * 从一个class path根路径下发现所有uxdf定义文件
+     *
+     * @param dirPath   class path根路径
+     * @param classPath 加载路径
+     * @param jarFiles  发现过程中打开的Jar文件，由调用方在解析完成后关闭
+     * @return 定义文件信息集合
+     * @throws IOException 异常
+     */
+    private static List<UXDFFileInfo> loadUxdfFileInfo(
+            final String dirPath,
+            final String classPath,
+            final List<JarFile> jarFiles
+    ) throws IOException {
+        List<UXDFFileInfo> uxdfFileInfoList = Lists.newArrayList();
+        loadInnerUXDFInfoFile(uxdfFileInfoList, jarFiles, dirPath, classPath);
+        return uxdfFileInfoList;
+    }
+
+    /**
+     * 从约定的class path中加载UXDF基本定义{@link Sd}。
+     * 其中只包括Node和Event的attr部分。
+     *
+     * @param cache 加载的目标缓存
+     */
+    private void loadBaseUXDF(final UXDFDefinitionCache cache) throws UnsupportedEncodingException {
+        JSONObject uxdfJSON;
+        try (
+                JSONReader reader = new JSONReader(
+                        new InputStreamReader(
+                                this.getClassLoader().getResourceAsStream(PATH_UXDF_FILE),
+                                UXDF.CHARSET
+                        ),
+                        Feature.OrderedField
+                )
+        ) {
+            uxdfJSON = reader.readObject(JSONObject.class);
+        }
+        // 替换缓存
+        cache.getCACHE_UXDF_BASE().putAll(uxdfJSON);
+    }
+
+    /**
+     * 加载UXDF定义，{@link SdNodeDefinition}或{@link SdEventDefinition}。
+     * <p>
+     * 在<b>UXDF定义存放目录路径</b>中查找所有匹配<b>UXDF定义类型路径，Node路径或Event路径</b>的位置。
+     * 从其中读取定义文件创建{@link UXDFFileInfo}，并加入<b>UXDF定义文件信息集合</b>中。
+     * </p>
+     *
+     * @param uxdfFileInfoList UXDF定义文件信息集合
+     * @param jarFiles         打开的Jar文件集合
+     * @param uxdfFileDirPath  UXDF定义存放目录路径
+     * @param uxdfTypePath     UXDF定义类型路径，Node路径或Event路径
+     * @throws IOException 定义文件读取异常
+     */
+    private static void loadInnerUXDFInfoFile(
+            final List<UXDFFileInfo> uxdfFileInfoList,
+            final List<JarFile> jarFiles,
+            final String uxdfFileDirPath,
+            final String uxdfTypePath
+    ) throws IOException {
+        log.debug("uxdf file dir path: {}", uxdfFileDirPath);
+        log.debug("uxdf type path: {}", uxdfTypePath);
+        if (uxdfFileDirPath.contains("!")) { // 在War包或Jar包中
+            log.debug("uxdf dir path in war.");
+            // 截取jar包或war包路径
+            String jarFilePath = uxdfFileDirPath.substring(0, uxdfFileDirPath.lastIndexOf("!"));
+            // 如果路径开头有协议部分，去掉协议部分只保留文件路径。
+            if (jarFilePath.toUpperCase().startsWith(PROTOCOL_FILE)) {
+                jarFilePath = new URL(jarFilePath).getPath();
+            }
+            log.debug("war file path: {}", jarFilePath);
+            // 创建Jar文件
+            JarFile jarFile = new JarFile(jarFilePath);
+            jarFiles.add(jarFile);
+            // 遍历jar文件中所有资源
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry jarEntry = entries.nextElement();
+                final String jarPath = jarEntry.getName();
+                log.debug("uxdf file path: {}", jarPath);
+                // 根据路径匹配和文件后缀读取UXDF定义文件
+                if (jarPath.startsWith(uxdfTypePath) && jarPath.endsWith(FILE_EXTENSION)) {
+                    String path = jarFilePath + "!" + jarPath;
+                    String name = UXDFHelper.getNameWithoutExtension(path);
+                    uxdfFileInfoList.add(new UXDFFileInfo(name, () -> jarFile.getInputStream(jarEntry), path));
+                }
+            }
+        } else { // 在文件系统中
+
+            File uxdfDir = new File(uxdfFileDirPath);
+            File[] innerEventFiles = uxdfDir.listFiles(jsonFilenameFilter);
+            if (innerEventFiles != null) {
+                // 按文件名排序，保证发现顺序稳定
+                Arrays.sort(innerEventFiles, Comparator.comparing(File::getName));
+                for (File innerEventFile : innerEventFiles) {
+                    String path = innerEventFile.getAbsolutePath();
+                    String name = UXDFHelper.getNameWithoutExtension(path);
+                    uxdfFileInfoList.add(new UXDFFileInfo(name, () -> new FileInputStream(innerEventFile), path));
+                }
+            }
+        }
+    }
+
+    /**
+     * JSON文件过滤器
+     */
+    private static FilenameFilter jsonFilenameFilter = (dir, name) -> {
+        // 只返回JSON文件
+        return name.endsWith(FILE_EXTENSION);
+    };
+
+
+    /**
+     * UXDF定义文件解析器
+     *
+     * @param <T> 解析结果类型
+     */
+    @FunctionalInterface
+    private interface UXDFFileParser<T> {
+        /**
+         * 解析定义文件
+         *
+         * @param fileInfo 定义文件信息
+         * @param reader   定义文件读取器
+         * @return 解析结果
+         */
+        T parse(UXDFFileInfo fileInfo, JSONReader reader);
+    }
+}
@@ -1,8 +1,13 @@
 package info.ralab.uxdf.chain;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.UXDFRegistry;
 
 import java.util.*;
 import java.util.regex.Matcher;
@@ -10,6 +15,16 @@ import java.util.regex.Pattern;
 
 /**
  * UXDF关系链
+ * <p>
+ * 解析时只生成每一跳的关系链项目模板，包含通配的项目在遍历时才根据Sd定义展开。
+ * 遍历按深度优先的顺序逐个生成具体路径，相同前缀只展开一次，通配没有匹配定义的前缀直接丢弃，不作为路径返回。
+ * 同一跳中相同起始Node的展开结果会被记录，多条路径共享。
+ * </p>
+ * <p>
+ * 通过{@link #getInstance(String, UXDFRegistry)}获取的关系链按注册表和关系链字符串缓存，解析后不可修改，可以在多个线程中共享。
+ * 通配解析依赖注册表中的Sd定义，缓存的关系链记录解析时的定义版本{@link UXDFRegistry#getDefinitionVersion()}，定义变更后重新解析。
+ * 缓存有容量上限，默认{@link #DEFAULT_CACHE_MAXIMUM_SIZE}，可以通过系统属性{@link #PROPERTY_CACHE_MAXIMUM_SIZE}设置。
+ * </p>
  */
 public class UXDFChain implements Iterable<List<UXDFChainItem>> {
 
@@ -31,39 +46,86 @@ public class UXDFChain implements Iterable<List<UXDFChainItem>> {
     private final static Pattern PATH_PATTERN = Pattern.compile("[" + PATH_RIGHT + PATH_LEFT + PATH_LINE + "]");
 
     /**
-     * 解析后的关系链项目集合
+     * 设置关系链缓存容量上限的系统属性
      */
-    private List<List<UXDFChainItem>> items;
+    public static final String PROPERTY_CACHE_MAXIMUM_SIZE = "uxdf.chain.cache.maximumSize";
 
     /**
-     * 标签和Sd映射
+     * 默认关系链缓存容量上限
      */
-    private Map<String, String> labelSdMapping = Maps.newHashMap();
+    public static final int DEFAULT_CACHE_MAXIMUM_SIZE = 1024;
+
+    /**
+     * 解析使用的定义注册表
+     */
+    private final UXDFRegistry registry;
+
+    /**
+     * 解析时的定义版本
+     */
+    private final long definitionVersion;
+
+    /**
+     * 解析后每一跳的关系链项目模板
+     */
+    private final List<UXDFChainItem> templates;
+
+    /**
+     * 每一跳展开后的关系链项目，通过起始Node名称索引
+     */
+    private final List<Map<String, List<UXDFChainItem>>> expanded;
+
+    /**
+     * 标签和Sd映射，第一次获取时遍历所有路径生成
+     */
+    private volatile Map<String, String> labelSdMapping;
+
+    /**
+     * 关系链字符串
+     */
+    private final String chainString;
 
     /**
      * 获取标签和Sd名称的映射关系{@link Map}，其中标签作为键。
+     * <p>
+     * 第一次获取时会展开所有路径。
+     * </p>
      *
      * @return 标签和Sd映射关系的Map
      */
     public Map<String, String> getLabelSdMapping() {
-        return Collections.unmodifiableMap(this.labelSdMapping);
+        Map<String, String> mapping = this.labelSdMapping;
+        if (mapping == null) {
+            synchronized (this) {
+                mapping = this.labelSdMapping;
+                if (mapping == null) {
+                    mapping = Collections.unmodifiableMap(this.createLabelSdMapping());
+                    this.labelSdMapping = mapping;
+                }
+            }
+        }
+        return mapping;
     }
 
     /**
      * 基于关系链字符串生成关系链{@link UXDFChain}
      *
-     * @param chainString 关系链字符串
+     * @param chainString       关系链字符串
+     * @param registry          定义注册表
+     * @param definitionVersion 解析时的定义版本
      */
-    private UXDFChain(final String chainString) {
-        // 初始化关系链项目集合。先加入一个空的项目集合
-        items = Lists.newArrayList();
-        items.add(Lists.newArrayList(new UXDFChainItem()));
+    private UXDFChain(final String chainString, final UXDFRegistry registry, final long definitionVersion) {
+        this.chainString = chainString;
+        this.registry = registry;
+        this.definitionVersion = definitionVersion;
+        final List<UXDFChainItem> parsed = Lists.newArrayList();
 
         // 从当前关系链字符串中查找匹配的项
         Matcher matcher = PATH_PATTERN.matcher(chainString);
 
         // 截取起始位置，通过匹配位置获取
         int begin = 0;
+        UXDFChainItem item = new UXDFChainItem();
         while (matcher.find()) {
             // 截取串当中的Sd名称和路径方向
             int start = matcher.start();
@@ -71,155 +133,165 @@ public class UXDFChain implements Iterable<List<UXDFChainItem>> {
             begin = start + 1;
             String path = chainString.substring(start, begin);
 
-            // 如果一个item设置完成，则新建一个item，并且把当前sd放入新建的item中
-            UXDFChainItem lastItem = null;
-            boolean itemFinished = true;
-            // 遍历关系链集合，并像最后一个关系链中，添加截取出的Sd和路径
-            for (List<UXDFChainItem> itemList : items) {
-                UXDFChainItem item = itemList.get(itemList.size() - 1);
-                // 获取是否最后一个关系链已经完整
-                itemFinished = item.addSd(sd);
-                // 记录最后一次设置的关系链
-                lastItem = item;
-            }
-
-            // 是否结束
-            if (itemFinished) {
-                // 检查是否通配
-                if (lastItem != null && lastItem.hasWildcards()) { // 包含通配
-                    Set<UXDFChainItem> itemSet = lastItem.createItemsByWildcards();
-
-                    // 通配集合为空，清除最后一个Item，并且终止chain的解析。
-                    if (itemSet.isEmpty()) {
-                        for (List<UXDFChainItem> itemList : items) {
-                            itemList.remove(itemList.size() - 1);
-                        }
-                        break;
-                    }
-                    // 扩展item集合
-                    List<List<UXDFChainItem>> wildcardsItems = Lists.newArrayList();
-                    itemSet.forEach(wildcardsItem -> {
-                        // 遍历已有关系链集合，将通配的集合加入其中
-                        this.items.forEach(itemList -> {
-                            // 替换末尾的Chain Item
-                            itemList.set(itemList.size() - 1, wildcardsItem);
-
-                            // 创建新的chain集合
-                            List<UXDFChainItem> copyItemList = Lists.newArrayList(itemList);
-                            wildcardsItems.add(copyItemList);
-
-                            // 末尾添加下一个解析Item
-                            UXDFChainItem nextItem = new UXDFChainItem();
-                            nextItem.setFirstNode(wildcardsItem.getLastNode());
-                            copyItemList.add(nextItem);
-                        });
-                    });
-                    // 替换items
-                    this.items = wildcardsItems;
-                } else {
-                    // 末尾添加下一个解析Item
-                    for (List<UXDFChainItem> itemList : items) {
-                        UXDFChainItem nextItem = new UXDFChainItem();
-                        nextItem.addSd(sd);
-                        itemList.add(nextItem);
-                    }
-                }
+            // 一个item设置完成，则新建一个item，上一个item的结束Node作为新item的起始Node
+            if (item.addSd(sd)) {
+                parsed.add(item);
+                item = new UXDFChainItem(item.getLastNode(), item.getLastLabel());
             }
 
             // 设置路径方向
-            for (List<UXDFChainItem> itemList : items) {
-                UXDFChainItem item = itemList.get(itemList.size() - 1);
-                item.addPath(path);
-            }
+            item.addPath(path);
         }
-        // 最后一个Sd名称
-        if (begin < chainString.length()) {
-            // 截取SD名称
-            String sd = chainString.substring(begin);
-            UXDFChainItem lastItem = null;
-            for (List<UXDFChainItem> itemList : items) {
-                // 获取结尾的关系串
-                UXDFChainItem item = itemList.get(itemList.size() - 1);
-                boolean itemFinished = item.addSd(sd);
-                // 最后一个名称如果不是结束，则认为路径错误
-                if (!itemFinished) {
-                    throw new UXDFException(String.format("uxdf chain [%s] incomplete.", chainString));
-                }
-                lastItem = item;
-            }
-            // 检查是否通配
-            if (lastItem != null && lastItem.hasWildcards()) { // 包含通配
-                Set<UXDFChainItem> itemSet = lastItem.createItemsByWildcards();
-                // 通配集合为空，清除最后一个Item，并且终止chain的解析
-                if (itemSet.isEmpty()) {
-                    for (List<UXDFChainItem> itemList : items) {
-                        itemList.remove(itemList.size() - 1);
-                    }
-                } else {
-                    // 扩展item集合
-                    List<List<UXDFChainItem>> wildcardsItems = Lists.newArrayList();
-                    itemSet.forEach(wildcardsItem -> {
-                        // 遍历已有关系链集合
-                        this.items.forEach(itemList -> {
-                            // 替换末尾的关系链
-                            itemList.set(itemList.size() - 1, wildcardsItem);
-
-                            // 创建新的chain集合
-                            List<UXDFChainItem> copyItemList = Lists.newArrayList(itemList);
-                            wildcardsItems.add(copyItemList);
-                        });
-                    });
-                    // 替换items
-                    this.items = wildcardsItems;
-                }
-            }
+        // 最后一个Sd名称，如果不是结束，则认为路径错误
+        if (begin >= chainString.length() || !item.addSd(chainString.substring(begin))) {
+            throw new UXDFException(String.format("uxdf chain [%s] incomplete.", chainString));
         }
+        parsed.add(item);
 
-        // 遍历所有chainItem设置链表属性 设置标签和Sd名称的映射关系
-        this.items.forEach(chainItemList -> {
-            for (int i = 0; i < chainItemList.size(); i++) {
-                UXDFChainItem chainItem = chainItemList.get(i);
-                // 设置当前ChainItem位于关系链中位置
-                chainItem.setItemList(i, chainItemList);
-                // 获取当前ChainItem的标签和Sd名称映射关系
-                List<Map.Entry<String, String>> labelSd = Lists.newArrayList(
-                        new AbstractMap.SimpleEntry<>(chainItem.getFirstLabel(), chainItem.getFirstNode()),
-                        new AbstractMap.SimpleEntry<>(chainItem.getLastLabel(), chainItem.getLastNode()),
-                        new AbstractMap.SimpleEntry<>(chainItem.getEventLabel(), chainItem.getEvent())
-                );
-                labelSd.forEach((labelSdMap) -> {
-                    String label = labelSdMap.getKey();
-                    String sd = labelSdMap.getValue();
-                    // 检查映射关系是否已经存在
-                    labelSdMapping.compute(label, (key, value) -> {
-                        // 对应当前标签的value不存在 或 和当前标签及Sd名称完全一致 认为正确
-                        if (value == null || sd.equals(value)) {
-                            return sd;
-                        } else {
-                            throw new UXDFException(String.format(
-                                    "标签[%s]在关系链[%s]中重复出现。",
-                                    label,
-                                    chainString
-                            ));
-                        }
-                    });
-                });
+        this.templates = Collections.unmodifiableList(parsed);
+        this.expanded = Lists.newArrayListWithCapacity(parsed.size());
+        parsed.forEach(template -> this.expanded.add(Maps.newConcurrentMap()));
+
+        // 起始Node确定，第一跳立即展开，起始Node未定义时抛出异常
+        this.expand(0, null);
+    }
+
+    /**
+     * 获取某一跳展开后的关系链项目
+     *
+     * @param index    跳的位置
+     * @param previous 上一跳的关系链项目，第一跳为NULL
+     * @return 展开后的关系链项目
+     */
+    private List<UXDFChainItem> expand(final int index, final UXDFChainItem previous) {
+        final UXDFChainItem template = this.templates.get(index);
+        final String firstNode = previous == null ? template.getFirstNode() : previous.getLastNode();
+        return this.expanded.get(index).computeIfAbsent(firstNode, key -> {
+            final UXDFChainItem item = previous == null ?
+                    template :
+                    template.withFirst(previous.getLastNode(), previous.getLastLabel());
+            if (!item.hasWildcards()) {
+                return Collections.singletonList(item);
             }
+            return Collections.unmodifiableList(Lists.newArrayList(item.createItemsByWildcards(this.registry)));
         });
     }
 
+    /**
+     * 遍历所有路径，生成标签和Sd名称的映射关系
+     *
+     * @return 标签和Sd映射
+     */
+    private Map<String, String> createLabelSdMapping() {
+        final Map<String, String> mapping = Maps.newHashMap();
+        this.forEach(chainItemList -> chainItemList.forEach(chainItem -> {
+            // 获取当前ChainItem的标签和Sd名称映射关系
+            List<Map.Entry<String, String>> labelSd = Lists.newArrayList(
+                    new AbstractMap.SimpleEntry<>(chainItem.getFirstLabel(), chainItem.getFirstNode()),
+                    new AbstractMap.SimpleEntry<>(chainItem.getLastLabel(), chainItem.getLastNode()),
+                    new AbstractMap.SimpleEntry<>(chainItem.getEventLabel(), chainItem.getEvent())
+            );
+            labelSd.forEach((labelSdMap) -> {
+                String label = labelSdMap.getKey();
+                String sd = labelSdMap.getValue();
+                // 检查映射关系是否已经存在
+                mapping.compute(label, (key, value) -> {
+                    // 对应当前标签的value不存在 或 和当前标签及Sd名称完全一致 认为正确
+                    if (value == null || sd.equals(value)) {
+                        return sd;
+                    } else {
+                        throw new UXDFException(String.format(
+                                "标签[%s]在关系链[%s]中重复出现。",
+                                label,
+                                chainString
+                        ));
+                    }
+                });
+            });
+        }));
+        return mapping;
+    }
 
     /**
-     * 通过一个表达式，创建UXDF链实例
+     * 通过一个表达式，使用默认注册表{@link UXDFLoader#getRegistry()}创建UXDF链实例
      *
      * @param chainString 关系链字符串
      * @return 关系链
      */
     public static UXDFChain getInstance(final String chainString) throws UXDFException {
+        return getInstance(chainString, UXDFLoader.getRegistry());
+    }
+
+    /**
+     * 通过一个表达式，使用指定注册表中的定义创建UXDF链实例
+     *
+     * @param chainString 关系链字符串
+     * @param registry    定义注册表
+     * @return 关系链
+     */
+    public static UXDFChain getInstance(final String chainString, final UXDFRegistry registry) throws UXDFException {
         if (chainString == null || chainString.isEmpty()) {
             return null;
         }
-        return new UXDFChain(chainString);
+        final long definitionVersion = registry.getDefinitionVersion();
+        final Cache<String, UXDFChain> cache = registry.getChainCache();
+        UXDFChain chain = cache.getIfPresent(chainString);
+        if (chain == null || chain.definitionVersion != definitionVersion) {
+            // 解析失败时抛出异常，不缓存
+            chain = new UXDFChain(chainString, registry, definitionVersion);
+            cache.put(chainString, chain);
+        }
+        return chain;
+    }
+
+    /**
+     * 创建关系链缓存，每个注册表持有一个，随注册表一起回收。
+     * <p>
+     * 缓存容量上限由系统属性{@link #PROPERTY_CACHE_MAXIMUM_SIZE}决定，默认为{@link #DEFAULT_CACHE_MAXIMUM_SIZE}。
+     * </p>
+     *
+     * @return 通过关系链字符串索引的关系链缓存
+     */
+    public static Cache<String, UXDFChain> newCache() {
+        return CacheBuilder.newBuilder()
+                .maximumSize(Integer.getInteger(PROPERTY_CACHE_MAXIMUM_SIZE, DEFAULT_CACHE_MAXIMUM_SIZE))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 获取默认注册表的关系链缓存统计，包括命中率{@link CacheStats#hitRate()}
+     *
+     * @return 缓存统计
+     */
+    public static CacheStats getCacheStats() {
+        return getCacheStats(UXDFLoader.getRegistry());
+    }
+
+    /**
+     * 获取指定注册表的关系链缓存统计，包括命中率{@link CacheStats#hitRate()}
+     *
+     * @param registry 定义注册表
+     * @return 缓存统计
+     */
+    public static CacheStats getCacheStats(final UXDFRegistry registry) {
+        return registry.getChainCache().stats();
+    }
+
+    /**
+     * 清空默认注册表的关系链缓存
+     */
+    public static void clearCache() {
+        clearCache(UXDFLoader.getRegistry());
+    }
+
+    /**
+     * 清空指定注册表的关系链缓存
+     *
+     * @param registry 定义注册表
+     */
+    public static void clearCache(final UXDFRegistry registry) {
+        registry.getChainCache().invalidateAll();
     }
 
     /**
@@ -232,16 +304,21 @@ public class UXDFChain implements Iterable<List<UXDFChainItem>> {
         return PATH_PATTERN.matcher(string).find();
     }
 
+    /**
+     * 按深度优先的顺序逐个生成路径，每条路径中的关系链项目都是独立的实例
+     *
+     * @return 路径迭代器
+     */
     @Override
     public Iterator<List<UXDFChainItem>> iterator() {
-        return items.iterator();
+        return new PathIterator();
     }
 
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
         builder.append("[");
-        this.items.forEach(uxdfChainItems -> {
+        this.forEach(uxdfChainItems -> {
             builder.append("[");
             uxdfChainItems.forEach(chainItem -> {
                 builder.append("(");
@@ -253,4 +330,78 @@ public class UXDFChain implements Iterable<List<UXDFChainItem>> {
         builder.append("]");
         return builder.toString();
     }
+
+    /**
+     * 路径迭代器，保存每一跳待遍历的关系链项目
+     */
+    private final class PathIterator implements Iterator<List<UXDFChainItem>> {
+        private final UXDFChainItem[] path = new UXDFChainItem[templates.size()];
+        private final List<Iterator<UXDFChainItem>> levels = Lists.newArrayListWithCapacity(templates.size());
+        private boolean started;
+        private List<UXDFChainItem> nextPath;
+
+        @Override
+        public boolean hasNext() {
+            if (nextPath == null) {
+                nextPath = this.computeNext();
+            }
+            return nextPath != null;
+        }
+
+        @Override
+        public List<UXDFChainItem> next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final List<UXDFChainItem> result = nextPath;
+            nextPath = null;
+            return result;
+        }
+
+        private List<UXDFChainItem> computeNext() {
+            if (!started) {
+                started = true;
+                final Iterator<UXDFChainItem> first = expand(0, null).iterator();
+                // 第一跳没有匹配的定义，返回一个空路径
+                if (!first.hasNext()) {
+                    return this.emit(0);
+                }
+                levels.add(first);
+            }
+            while (!levels.isEmpty()) {
+                final int depth = levels.size() - 1;
+                final Iterator<UXDFChainItem> level = levels.get(depth);
+                if (!level.hasNext()) {
+                    levels.remove(depth);
+                    continue;
+                }
+                path[depth] = level.next();
+                if (depth + 1 == templates.size()) {
+                    return this.emit(depth + 1);
+                }
+                final Iterator<UXDFChainItem> nextLevel = expand(depth + 1, path[depth]).iterator();
+                // 下一跳没有匹配的定义，丢弃此前缀
+                if (!nextLevel.hasNext()) {
+                    continue;
+                }
+                levels.add(nextLevel);
+            }
+            return null;
+        }
+
+        /**
+         * 复制路径中的关系链项目，设置所在关系链的位置
+         */
+        private List<UXDFChainItem> emit(final int length) {
+            final List<UXDFChainItem> itemList = Lists.newArrayListWithCapacity(length);
+            for (int i = 0; i < length; i++) {
+                itemList.add(path[i].copy());
+            }
+            final List<UXDFChainItem> unmodifiableItemList = Collections.unmodifiableList(itemList);
+            for (int i = 0; i < length; i++) {
+                unmodifiableItemList.get(i).setItemList(i, unmodifiableItemList);
+            }
+            return unmodifiableItemList;
+        }
+    }
 }
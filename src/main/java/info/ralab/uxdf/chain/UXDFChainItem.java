@@ -3,10 +3,15 @@ package info.ralab.uxdf.chain;
 import com.google.common.collect.Sets;
 import info.ralab.uxdf.UXDFException;
 import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.UXDFRegistry;
 import info.ralab.uxdf.definition.SdEventDefinition;
-import lombok.*;
+import info.ralab.uxdf.utils.UXDFSchemaGraph;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
@@ -18,10 +23,14 @@ import static info.ralab.uxdf.chain.UXDFChain.PATH_RIGHT;
 
 /**
  * UXDF语法链解析结果项
+ * <p>
+ * 通过{@link #addSd(String)}和{@link #addPath(String)}按顺序解析，解析完成后不可修改。
+ * 解析完成时生成规范字符串和散列值，{@link #toString()}和{@link #hashCode()}不再重复拼接字符串，
+ * {@link #equals(Object)}按Sd名称、标签和路径逐项比较。
+ * </p>
  */
-@Data
+@Getter
 @NoArgsConstructor
-@RequiredArgsConstructor(staticName = "valueOf")
 public class UXDFChainItem {
 
     public static final String SD_WILDCARDS = "*";
@@ -33,35 +42,77 @@ public class UXDFChainItem {
         return "L_" + LABEL_SEQ.getAndIncrement();
     }
 
-    @NonNull
     private String firstNode;
 
     private String firstLabel;
 
-    @NonNull
     private String leftPath;
 
-    @NonNull
     private String event;
 
     private String eventLabel;
 
-    @NonNull
     private String rightPath;
 
-    @NonNull
     private String lastNode;
 
     private String lastLabel;
 
     private ChainPath chainPath;
 
-    @Getter
     private int itemIndex;
 
-    @Getter
     private List<UXDFChainItem> chainItems;
 
+    /**
+     * 规范字符串，解析完成后生成
+     */
+    @Getter(AccessLevel.NONE)
+    private String key;
+
+    /**
+     * 散列值，解析完成后生成
+     */
+    @Getter(AccessLevel.NONE)
+    private int hash;
+
+    /**
+     * 创建起始Node已经确定的关系链项目，起始Node可以是通配符
+     *
+     * @param firstNode  起始Node名称
+     * @param firstLabel 起始Node标签
+     */
+    UXDFChainItem(final String firstNode, final String firstLabel) {
+        this.firstNode = firstNode;
+        this.firstLabel = firstLabel;
+    }
+
+    /**
+     * 通过Sd名称和路径创建关系链项目
+     *
+     * @param firstNode 起始Node
+     * @param leftPath  左路径
+     * @param event     Event
+     * @param rightPath 右路径
+     * @param lastNode  结束Node
+     * @return 解析完成的关系链项目
+     */
+    public static UXDFChainItem valueOf(
+            final String firstNode,
+            final String leftPath,
+            final String event,
+            final String rightPath,
+            final String lastNode
+    ) {
+        final UXDFChainItem item = new UXDFChainItem();
+        item.addSd(firstNode);
+        item.addPath(leftPath);
+        item.addSd(event);
+        item.addPath(rightPath);
+        item.addSd(lastNode);
+        return item;
+    }
+
     /**
      * 添加SD，必须按照Node、Event、Node的顺序添加。
      *
@@ -69,6 +120,7 @@ public class UXDFChainItem {
      * @return 返回当前ChainItem添加SD是否完成
      */
     public boolean addSd(final String sd) {
+        this.checkMutable();
         if (sd == null || sd.isEmpty()) {
             throw new UXDFException("uxdf chain sd is not null or empty.");
         }
@@ -114,6 +166,11 @@ public class UXDFChainItem {
             if (this.lastLabel.equals(SD_WILDCARDS)) { // 通配符没有别名，生成临时别名
                 this.lastLabel = tempTabel();
             }
+            // 路径必须在结束Node之前设置完成
+            if (this.chainPath == null) {
+                throw new UXDFException(String.format("uxdf chain item [%s] path incomplete.", this.buildKey()));
+            }
+            this.freeze();
             return true;
         } else {
             return true;
@@ -126,6 +183,7 @@ public class UXDFChainItem {
      * @param path 路径字符串
      */
     public void addPath(final String path) {
+        this.checkMutable();
         // 无效路径
         if (!PATH_LEFT.equals(path) && !PATH_RIGHT.equals(path) && !PATH_LINE.equals(path)) {
             throw new UXDFException(String.format(
@@ -253,39 +311,47 @@ public class UXDFChainItem {
     }
 
     /**
-     * 基于通配符创建{@link UXDFChainItem}集合
+     * 基于通配符创建{@link UXDFChainItem}集合。
+     * <p>
+     * 通过{@link UXDFSchemaGraph}直接查找第一个Node的出边和入边，不遍历Node关联的所有Event定义。
+     * 双向时先填充从左向右的关系链，再填充从右向左的关系链。
+     * </p>
      *
      * @return 关系链集合
      */
     public Set<UXDFChainItem> createItemsByWildcards() {
+        return this.createItemsByWildcards(UXDFLoader.getRegistry());
+    }
+
+    /**
+     * 基于指定注册表中的定义和通配符创建{@link UXDFChainItem}集合
+     *
+     * @param registry 定义注册表
+     * @return 关系链集合
+     */
+    public Set<UXDFChainItem> createItemsByWildcards(final UXDFRegistry registry) {
+        final UXDFSchemaGraph graph = registry.getSchemaGraph();
         // Node未配置
-        if (UXDFLoader.getNode(this.firstNode) == null) {
+        if (!graph.containsNode(this.firstNode)) {
             throw new UXDFException(String.format("node [%s] not defined.", this.firstNode));
         }
         // 通配之后的所有关系链集合
-        Set<UXDFChainItem> items = Sets.newHashSet();
-        // 由第一个Node获取所有相关的Event
-        Set<SdEventDefinition> events = UXDFLoader.getEventsByNodeName(this.firstNode);
-
-        // Node没有任何关联Event，返回空的关系链集合
-        if (events == null || events.isEmpty()) {
-            return items;
-        }
+        Set<UXDFChainItem> items = Sets.newLinkedHashSet();
 
         // 基于当前关系链的方向进行通配
         switch (this.chainPath) {
             case LEFT:
                 // 从左向右
-                fillWildcardsItemWithLeft(items, events);
+                fillWildcardsItemWithLeft(items, graph);
                 break;
             case RIGHT:
                 // 从右向左
-                fillWildcardsItemWithRight(items, events);
+                fillWildcardsItemWithRight(items, graph);
                 break;
             case BOTH:
                 // 双向
-                fillWildcardsItemWithLeft(items, events);
-                fillWildcardsItemWithRight(items, events);
+                fillWildcardsItemWithLeft(items, graph);
+                fillWildcardsItemWithRight(items, graph);
                 break;
         }
 
@@ -293,119 +359,47 @@ public class UXDFChainItem {
     }
 
     /**
-     * 从左向右填充
+     * 从左向右填充，第一个Node作为左Node
      *
-     * @param items  通配填充后的关系链集合
-     * @param events 需要进行填充Event集合
+     * @param items 通配填充后的关系链集合
+     * @param graph Sd定义关系图
      */
-    private void fillWildcardsItemWithLeft(Set<UXDFChainItem> items, Set<SdEventDefinition> events) {
-        if (this.event.equals(SD_WILDCARDS) && this.lastNode.equals(SD_WILDCARDS)) {
-            // Event和RightNode都是通配符
-            // 遍历所有Event定义
-            events.forEach(sdEventDefinition -> {
-                // 如果LeftNode和当前不匹配则跳过
-                if (!sdEventDefinition.getLeftNodeName().equals(this.getFirstNode())) {
-                    return;
-                }
-                // 构建新的ChainItem
-                items.add(this.cloneBySdWithLeft(sdEventDefinition));
-            });
-        } else if (this.event.equals(SD_WILDCARDS)) {
-            // Event是通配符
-            // 遍历所有Event定义
-            events.forEach(sdEventImpl -> {
-                // 如果LeftNode，RightNode和当前不匹配则跳过
-                if (!sdEventImpl.getLeftNodeName().equals(this.getFirstNode())
-                        || !sdEventImpl.getRightNodeName().equals(this.getLastNode())) {
-                    return;
-                }
-                // 构建新的ChainItem
-                items.add(this.cloneBySdWithLeft(sdEventImpl));
-            });
-        } else if (this.lastNode.equals(SD_WILDCARDS)) {
-            // RightNode是通配符
-            // 遍历所有Event定义
-            events.forEach(sdEventImpl -> {
-                // 如果LeftNode，Event和当前不匹配则跳过
-                if (!sdEventImpl.getLeftNodeName().equals(this.getFirstNode())
-                        || !sdEventImpl.getEventName().equals(this.getEvent())) {
-                    return;
-                }
-                // 构建新的ChainItem
-                items.add(this.cloneBySdWithLeft(sdEventImpl));
-            });
-        } else {
-            // 没有通配符，只是方向是双向
-            // 遍历所有Event定义
-            events.forEach(sdEventImpl -> {
-                // 如果LeftNode，Event，RightNode和当前不匹配则跳过
-                if (!sdEventImpl.getLeftNodeName().equals(this.getFirstNode())
-                        || !sdEventImpl.getEventName().equals(this.getEvent())
-                        || !sdEventImpl.getRightNodeName().equals(this.getLastNode())) {
-                    return;
-                }
-                // 构建新的ChainItem
-                items.add(this.cloneBySdWithLeft(sdEventImpl));
-            });
-        }
+    private void fillWildcardsItemWithLeft(Set<UXDFChainItem> items, UXDFSchemaGraph graph) {
+        // Event是通配符时获取所有出边，否则只获取名称符合的出边
+        final List<SdEventDefinition> events = this.event.equals(SD_WILDCARDS) ?
+                graph.getOutgoing(this.firstNode) :
+                graph.getOutgoing(this.firstNode, this.event);
+        final boolean anyLastNode = this.lastNode.equals(SD_WILDCARDS);
+        events.forEach(sdEventDefinition -> {
+            // 如果RightNode和当前不匹配则跳过
+            if (!anyLastNode && !sdEventDefinition.getRightNodeName().equals(this.lastNode)) {
+                return;
+            }
+            // 构建新的ChainItem
+            items.add(this.cloneBySdWithLeft(sdEventDefinition));
+        });
     }
 
     /**
-     * 从右向左填充
+     * 从右向左填充，第一个Node作为右Node
      *
-     * @param items  通配填充后的关系链集合
-     * @param events 需要进行填充Event集合
+     * @param items 通配填充后的关系链集合
+     * @param graph Sd定义关系图
      */
-    private void fillWildcardsItemWithRight(Set<UXDFChainItem> items, Set<SdEventDefinition> events) {
-        if (this.event.equals(SD_WILDCARDS) && this.lastNode.equals(SD_WILDCARDS)) {
-            // Event和RightNode都是通配符
-            // 遍历所有Event定义
-            events.forEach(sdEventImpl -> {
-                // 如果RightNode和当前不匹配则跳过
-                if (!sdEventImpl.getRightNodeName().equals(this.getFirstNode())) {
-                    return;
-                }
-                // 构建新的ChainItem
-                items.add(this.cloneBySdWithRight(sdEventImpl));
-            });
-        } else if (this.event.equals(SD_WILDCARDS)) {
-            // Event是通配符
-            // 遍历所有Event定义
-            events.forEach(sdEventImpl -> {
-                // 如果LeftNode，RightNode和当前不匹配则跳过
-                if (!sdEventImpl.getLeftNodeName().equals(this.getLastNode()) ||
-                        !sdEventImpl.getRightNodeName().equals(this.getFirstNode())) {
-                    return;
-                }
-                // 构建新的ChainItem
-                items.add(this.cloneBySdWithRight(sdEventImpl));
-            });
-        } else if (this.lastNode.equals(SD_WILDCARDS)) {
-            // RightNode是通配符
-            // 遍历所有Event定义
-            events.forEach(sdEventImpl -> {
-                // 如果RightNode，Event和当前不匹配则跳过
-                if (!sdEventImpl.getRightNodeName().equals(this.getFirstNode()) ||
-                        !sdEventImpl.getEventName().equals(this.getEvent())) {
-                    return;
-                }
-                // 构建新的ChainItem
-                items.add(this.cloneBySdWithRight(sdEventImpl));
-            });
-        } else {
-            // 没有通配符，只是方向是双向
-            // 遍历所有Event定义
-            events.forEach(sdEventImpl -> {
-                // 如果LeftNode，Event，RightNode和当前不匹配则跳过
-                if (!sdEventImpl.getRightNodeName().equals(this.getFirstNode())
-                        || !sdEventImpl.getEventName().equals(this.getEvent())
-                        || !sdEventImpl.getLeftNodeName().equals(this.getLastNode())) {
-                    return;
-                }
-                // 构建新的ChainItem
-                items.add(this.cloneBySdWithRight(sdEventImpl));
-            });
-        }
+    private void fillWildcardsItemWithRight(Set<UXDFChainItem> items, UXDFSchemaGraph graph) {
+        // Event是通配符时获取所有入边，否则只获取名称符合的入边
+        final List<SdEventDefinition> events = this.event.equals(SD_WILDCARDS) ?
+                graph.getIncoming(this.firstNode) :
+                graph.getIncoming(this.firstNode, this.event);
+        final boolean anyLastNode = this.lastNode.equals(SD_WILDCARDS);
+        events.forEach(sdEventDefinition -> {
+            // 如果LeftNode和当前不匹配则跳过
+            if (!anyLastNode && !sdEventDefinition.getLeftNodeName().equals(this.lastNode)) {
+                return;
+            }
+            // 构建新的ChainItem
+            items.add(this.cloneBySdWithRight(sdEventDefinition));
+        });
     }
 
     /**
@@ -430,6 +424,7 @@ public class UXDFChainItem {
         targetItem.lastNode = sdEventDefinition.getRightNodeName();
         // 目标关系链的方向为左向右
         targetItem.chainPath = ChainPath.LEFT;
+        targetItem.freeze();
         return targetItem;
     }
 
@@ -455,6 +450,7 @@ public class UXDFChainItem {
         item.lastNode = sdEventDefinition.getLeftNodeName();
         // 目标关系链的方向为右向左
         item.chainPath = ChainPath.RIGHT;
+        item.freeze();
         return item;
     }
 
@@ -471,11 +467,94 @@ public class UXDFChainItem {
         targetItem.lastLabel = this.lastLabel;
     }
 
-    public void setItemList(final int index, final List<UXDFChainItem> chainItemList) {
+    /**
+     * 复制当前关系链项目，不包含所在关系链的位置。复制的项目共享规范字符串和散列值
+     *
+     * @return 复制的关系链项目
+     */
+    UXDFChainItem copy() {
+        UXDFChainItem item = new UXDFChainItem();
+        item.firstNode = this.firstNode;
+        item.firstLabel = this.firstLabel;
+        item.leftPath = this.leftPath;
+        item.event = this.event;
+        item.eventLabel = this.eventLabel;
+        item.rightPath = this.rightPath;
+        item.lastNode = this.lastNode;
+        item.lastLabel = this.lastLabel;
+        item.chainPath = this.chainPath;
+        item.key = this.key;
+        item.hash = this.hash;
+        return item;
+    }
+
+    /**
+     * 复制当前关系链项目，并替换起始Node和标签
+     *
+     * @param firstNode  起始Node名称
+     * @param firstLabel 起始Node标签
+     * @return 解析完成的关系链项目
+     */
+    UXDFChainItem withFirst(final String firstNode, final String firstLabel) {
+        if (Objects.equals(this.firstNode, firstNode) && Objects.equals(this.firstLabel, firstLabel)) {
+            return this.copy();
+        }
+        UXDFChainItem item = this.copy();
+        item.firstNode = firstNode;
+        item.firstLabel = firstLabel;
+        item.key = null;
+        item.freeze();
+        return item;
+    }
+
+    /**
+     * 设置所在关系链的位置，只能设置一次
+     *
+     * @param index         所在位置
+     * @param chainItemList 所在关系链
+     */
+    void setItemList(final int index, final List<UXDFChainItem> chainItemList) {
+        if (this.chainItems != null) {
+            throw new UXDFException("uxdf chain item already in chain.");
+        }
         this.itemIndex = index;
         this.chainItems = chainItemList;
     }
 
+    /**
+     * 解析完成，生成规范字符串和散列值
+     */
+    private void freeze() {
+        if (this.key == null) {
+            this.key = this.buildKey();
+            this.hash = this.key.hashCode();
+        }
+    }
+
+    /**
+     * 检查是否可以修改
+     */
+    private void checkMutable() {
+        if (this.key != null) {
+            throw new UXDFException(String.format("uxdf chain item [%s] is immutable.", this.key));
+        }
+    }
+
+    private String buildKey() {
+        final StringBuilder builder = new StringBuilder(64);
+        appendLabel(builder, this.firstLabel).append(this.firstNode).append(this.leftPath);
+        appendLabel(builder, this.eventLabel).append(this.event).append(this.rightPath);
+        appendLabel(builder, this.lastLabel).append(this.lastNode);
+        return builder.toString();
+    }
+
+    private static StringBuilder appendLabel(final StringBuilder builder, final String label) {
+        if (label != null) {
+            builder.append(label).append(DELIMITER_LABEL);
+        }
+        return builder;
+    }
+
     /**
      * 当前{@link UXDFChainItem}之后是否还有{@link UXDFChainItem}
      *
@@ -496,28 +575,31 @@ public class UXDFChainItem {
 
     @Override
     public int hashCode() {
-        return this.toString().hashCode();
+        return this.key != null ? this.hash : this.buildKey().hashCode();
     }
 
     @Override
     public boolean equals(Object obj) {
-        return obj != null &&
-                obj.getClass().equals(this.getClass()) &&
-                obj.hashCode() == this.hashCode();
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || !obj.getClass().equals(this.getClass())) {
+            return false;
+        }
+        final UXDFChainItem other = (UXDFChainItem) obj;
+        return this.hashCode() == other.hashCode()
+                && Objects.equals(this.firstNode, other.firstNode)
+                && Objects.equals(this.firstLabel, other.firstLabel)
+                && Objects.equals(this.leftPath, other.leftPath)
+                && Objects.equals(this.event, other.event)
+                && Objects.equals(this.eventLabel, other.eventLabel)
+                && Objects.equals(this.rightPath, other.rightPath)
+                && Objects.equals(this.lastNode, other.lastNode)
+                && Objects.equals(this.lastLabel, other.lastLabel);
     }
 
     @Override
     public String toString() {
-        String content = "";
-        content += (this.firstLabel == null ? "" : this.firstLabel + DELIMITER_LABEL);
-        content += (this.firstNode);
-        content += (this.leftPath);
-        content += (this.eventLabel == null ? "" : this.eventLabel + DELIMITER_LABEL);
-        content += (this.event);
-        content += (this.rightPath);
-        content += (this.lastLabel == null ? "" : this.lastLabel + DELIMITER_LABEL);
-        content += (this.lastNode);
-        return content;
+        return this.key != null ? this.key : this.buildKey();
     }
 }
-
@@ -0,0 +1,131 @@
+package info.ralab.uxdf.definition;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.Objects;
+
+/**
+ * Event定义复合键，由Event定义名称、左Node定义名称和右Node定义名称组成。
+ * <p>
+ * 通过{@link #of(String, String, String)}获取的键会被驻留，相同内容的键共享同一个实例，
+ * 用于缓存索引中的存储。<br />
+ * 通过{@link #probe(String, String, String)}获取的键不会被驻留，仅用于一次性的查找。
+ * </p>
+ */
+public final class SdEventKey {
+
+    /**
+     * 键驻留池，使用弱引用，不再被缓存引用的键可以被回收
+     */
+    private static final Interner<SdEventKey> INTERNER = Interners.newWeakInterner();
+
+    /**
+     * Event定义名称
+     */
+    private final String eventName;
+    /**
+     * 左Node定义名称
+     */
+    private final String leftNodeName;
+    /**
+     * 右Node定义名称
+     */
+    private final String rightNodeName;
+    /**
+     * 预先计算的hash值
+     */
+    private final int hash;
+
+    private SdEventKey(final String eventName, final String leftNodeName, final String rightNodeName) {
+        this.eventName = eventName;
+        this.leftNodeName = leftNodeName;
+        this.rightNodeName = rightNodeName;
+        this.hash = Objects.hash(eventName, leftNodeName, rightNodeName);
+    }
+
+    /**
+     * 获取驻留的Event定义复合键
+     *
+     * @param eventName     Event定义名称
+     * @param leftNodeName  左Node定义名称
+     * @param rightNodeName 右Node定义名称
+     * @return 驻留的复合键
+     */
+    public static SdEventKey of(final String eventName, final String leftNodeName, final String rightNodeName) {
+        return INTERNER.intern(new SdEventKey(eventName, leftNodeName, rightNodeName));
+    }
+
+    /**
+     * 获取{@link SdEventDefinition}对应的驻留复合键
+     *
+     * @param eventDefinition Event定义
+     * @return 驻留的复合键
+     */
+    public static SdEventKey of(final SdEventDefinition eventDefinition) {
+        return of(
+                eventDefinition.getEventName(),
+                eventDefinition.getLeftNodeName(),
+                eventDefinition.getRightNodeName()
+        );
+    }
+
+    /**
+     * 获取一个不驻留的复合键，用于查找
+     *
+     * @param eventName     Event定义名称
+     * @param leftNodeName  左Node定义名称
+     * @param rightNodeName 右Node定义名称
+     * @return 查找使用的复合键
+     */
+    public static SdEventKey probe(final String eventName, final String leftNodeName, final String rightNodeName) {
+        return new SdEventKey(eventName, leftNodeName, rightNodeName);
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public String getLeftNodeName() {
+        return leftNodeName;
+    }
+
+    public String getRightNodeName() {
+        return rightNodeName;
+    }
+
+    /**
+     * 获取目标Node名称
+     *
+     * @param nodeName Node名称
+     * @return 另一侧的Node名称
+     */
+    public String getTargetNodeName(final String nodeName) {
+        return Objects.equals(nodeName, leftNodeName) ? rightNodeName : leftNodeName;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SdEventKey)) {
+            return false;
+        }
+        SdEventKey other = (SdEventKey) obj;
+        return hash == other.hash &&
+                Objects.equals(eventName, other.eventName) &&
+                Objects.equals(leftNodeName, other.leftNodeName) &&
+                Objects.equals(rightNodeName, other.rightNodeName);
+    }
+
+    @Override
+    public String toString() {
+        return leftNodeName + "-" + eventName + ">" + rightNodeName;
+    }
+}
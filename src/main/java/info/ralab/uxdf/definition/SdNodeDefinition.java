@@ -19,6 +19,9 @@ public class SdNodeDefinition extends SdDefinition {
     @JSONField(name = "buildProcess")
     private Object buildProcessDetail;
 
+    /**
+     * 属性定义，包含继承的属性。由{@link info.ralab.uxdf.utils.UXDFDefinitionCache}解析继承后替换为不可修改的新实例
+     */
     private LinkedHashMap<String, SdProperty> prop;
 
     @JSONField(deserialize = false)
@@ -38,6 +41,25 @@ public class SdNodeDefinition extends SdDefinition {
         return obj instanceof SdNodeDefinition && obj.hashCode() == this.hashCode();
     }
 
+    /**
+     * 创建当前Node定义的浅拷贝，属性集合等内容与当前Node定义共享
+     *
+     * @return Node定义副本
+     */
+    public SdNodeDefinition copy() {
+        SdNodeDefinition nodeDefinition = new SdNodeDefinition();
+        nodeDefinition.setTitle(this.getTitle());
+        nodeDefinition.setDisplay(this.getDisplay());
+        nodeDefinition.setNamespace(this.getNamespace());
+        nodeDefinition.setExtend(this.getExtend());
+        nodeDefinition.setUniqueIndex(this.getUniqueIndex());
+        nodeDefinition.setBuildProcessDetail(this.buildProcessDetail);
+        nodeDefinition.setProp(this.prop);
+        nodeDefinition.setNodeName(this.nodeName);
+        nodeDefinition.setBuildProcess(this.buildProcess);
+        return nodeDefinition;
+    }
+
     /**
      * 检查属性在当前Node中是否作为索引使用
      *
@@ -1,6 +1,8 @@
 package info.ralab.uxdf.definition;
 
+import com.alibaba.fastjson.annotation.JSONField;
 import info.ralab.uxdf.instance.SdEntity;
+import info.ralab.uxdf.utils.UXDFPatternCache;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
@@ -22,7 +24,16 @@ public class SdPropertyValidRule {
     private Object value;
     private String message;
 
-    private Pattern regexPattern = null;
+    /**
+     * 编译后的正则，从{@link UXDFPatternCache}中获取，{@link #value}变化时重置
+     */
+    @JSONField(serialize = false, deserialize = false)
+    private volatile Pattern regexPattern = null;
+
+    public void setValue(final Object value) {
+        this.value = value;
+        this.regexPattern = null;
+    }
 
     /**
      * 根据{@link SdBaseType}检查数据有效性
@@ -34,13 +45,19 @@ public class SdPropertyValidRule {
     public boolean check(final SdBaseType baseType, final Object checkValue) {
         switch (type) {
             case regex: // 正则
-                if (checkValue == null) {
+                if (checkValue == null || this.value == null) {
                     return false;
                 }
-                if (regexPattern == null) {
-                    regexPattern = Pattern.compile(this.value.toString());
+                Pattern pattern = this.regexPattern;
+                if (pattern == null) {
+                    pattern = UXDFPatternCache.get(this.value.toString());
+                    // 无法编译的正则不通过检查
+                    if (pattern == null) {
+                        return false;
+                    }
+                    this.regexPattern = pattern;
                 }
-                return regexPattern.matcher(checkValue.toString()).matches();
+                return pattern.matcher(checkValue.toString()).matches();
             case eq: // 等于
                 return checkEqual(baseType, checkValue);
             case ne: // 不等于
@@ -3,10 +3,10 @@ package info.ralab.uxdf.instance;
 import com.alibaba.fastjson.JSONObject;
 import com.google.common.collect.Sets;
 import info.ralab.uxdf.UXDFException;
-import info.ralab.uxdf.UXDFLoader;
 import info.ralab.uxdf.definition.SdEventDefinition;
 import info.ralab.uxdf.utils.UXDFHelper;
 
+import java.util.Map;
 import java.util.Set;
 
 public class EventEntity extends SdEntity {
@@ -61,6 +61,20 @@ public class EventEntity extends SdEntity {
         this.putAll(json);
     }
 
+    protected EventEntity(final Map<String, Object> map) {
+        super(map);
+    }
+
+    /**
+     * 使用给定的Map作为属性存储创建Event，不复制属性，对Event的修改直接作用在Map上
+     *
+     * @param map 属性存储
+     * @return Event
+     */
+    public static EventEntity wrap(final Map<String, Object> map) {
+        return new EventEntity(map);
+    }
+
     public String get__Left() {
         return this.getString(ATTR_LEFT);
     }
@@ -111,7 +125,7 @@ public class EventEntity extends SdEntity {
      */
     @Override
     public String getEntityDisplay() {
-        SdEventDefinition sdEvent = UXDFLoader.getEvent(this.get__Sd(), this.get__LeftSd(), this.get__RightSd());
+        SdEventDefinition sdEvent = this.getRegistry().getEvent(this.get__Sd(), this.get__LeftSd(), this.get__RightSd());
         return this.makeEntityDisplay(sdEvent);
     }
 
@@ -229,7 +243,7 @@ public class EventEntity extends SdEntity {
             );
         }
 
-        SdEventDefinition sdEvent = UXDFLoader.getEvent(this.get__Sd(), this.get__LeftSd(), this.get__RightSd());
+        SdEventDefinition sdEvent = this.getRegistry().getEvent(this.get__Sd(), this.get__LeftSd(), this.get__RightSd());
         StringBuilder uuidBuilder = this.makeBaseProperties();
         if (sdEvent != null && sdEvent.getUniqueIndex() != null && sdEvent.getUniqueIndex().length > 0) {
             for (String index : sdEvent.getUniqueIndex()) {
@@ -273,6 +287,7 @@ public class EventEntity extends SdEntity {
         EventEntity cloneEvent = new EventEntity(this);
         // 移除uuid，方式唯一属性变更后，uuid发生错误
         cloneEvent.remove(SdEntity.ATTR_UUID);
+        cloneEvent.setRegistry(this.registry);
         return cloneEvent;
     }
 }
@@ -6,7 +6,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import info.ralab.uxdf.UXDFException;
-import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.UXDFRegistry;
 import info.ralab.uxdf.chain.UXDFChain;
 import info.ralab.uxdf.definition.SdEventDefinition;
 import info.ralab.uxdf.definition.SdNodeDefinition;
@@ -53,6 +53,20 @@ public class NodeEntity extends SdEntity {
         super(sd, id);
     }
 
+    protected NodeEntity(final Map<String, Object> map) {
+        super(map);
+    }
+
+    /**
+     * 使用给定的Map作为属性存储创建Node，不复制属性，对Node的修改直接作用在Map上
+     *
+     * @param map 属性存储
+     * @return Node
+     */
+    public static NodeEntity wrap(final Map<String, Object> map) {
+        return new NodeEntity(map);
+    }
+
     /**
      * 获取实体展示内容
      *
@@ -60,7 +74,7 @@ public class NodeEntity extends SdEntity {
      */
     @Override
     public String getEntityDisplay() {
-        SdNodeDefinition sdNode = UXDFLoader.getNode(this.get__Sd());
+        SdNodeDefinition sdNode = this.getRegistry().getNode(this.get__Sd());
         return makeEntityDisplay(sdNode);
     }
 
@@ -125,7 +139,8 @@ public class NodeEntity extends SdEntity {
                     )
             );
         }
-        SdNodeDefinition sdNode = UXDFLoader.getNode(this.get__Sd());
+        final UXDFRegistry registry = this.getRegistry();
+        SdNodeDefinition sdNode = registry.getNode(this.get__Sd());
         StringBuilder uuidBuilder = this.makeBaseProperties();
         if (sdNode == null || sdNode.getUniqueIndex() == null || sdNode.getUniqueIndex().length == 0) {
             // 无唯一属性，默认唯一属性为版本信息和__id
@@ -138,7 +153,7 @@ public class NodeEntity extends SdEntity {
                     // 唯一属性不完整，不能生成UUID
                     if (UXDFChain.haveRelationship(index)) {
                         // 唯一属性有关系表达式，获取关联唯一属性值
-                        final String uniqueProperty = AssociateUniquePropertyUtil.getPropertyName(sdNode);
+                        final String uniqueProperty = AssociateUniquePropertyUtil.getPropertyName(sdNode, registry);
                         // 无法获取属性名
                         if (uniqueProperty == null) {
                             return null;
@@ -196,6 +211,7 @@ public class NodeEntity extends SdEntity {
         NodeEntity cloneNode = new NodeEntity(this);
         // 移除uuid，防止唯一属性变更后，uuid发生错误
         cloneNode.remove(SdEntity.ATTR_UUID);
+        cloneNode.setRegistry(this.registry);
         return cloneNode;
     }
 
@@ -1,7 +1,10 @@
 package info.ralab.uxdf.instance;
 
 import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.annotation.JSONField;
 import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.UXDFRegistry;
 import info.ralab.uxdf.definition.SdDefinition;
 import info.ralab.uxdf.definition.SdOperateType;
 import info.ralab.uxdf.utils.UXDFBinaryFileInfo;
@@ -15,6 +18,7 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Map;
 
 @Slf4j
 public abstract class SdEntity extends JSONObject {
@@ -82,16 +86,50 @@ public abstract class SdEntity extends JSONObject {
     public final static DateFormat DATE_FORMAT_MILLISECOND = new SimpleDateFormat(PATTERN_DATE_MILLISECOND);
     public final static DateFormat DATE_FORMAT_ISO = new SimpleDateFormat(PATTERN_DATE_MILLISECOND_ISO);
 
+    /**
+     * 实体使用的定义注册表，为空时使用默认注册表{@link UXDFLoader#getRegistry()}
+     */
+    transient UXDFRegistry registry;
+
     public SdEntity() {
         super();
     }
 
+    /**
+     * 使用给定的Map保存属性，不复制属性
+     *
+     * @param map 属性存储
+     */
+    protected SdEntity(final Map<String, Object> map) {
+        super(map);
+    }
+
     public SdEntity(final String sd, final String id) {
         this();
         this.set__Sd(sd);
         this.set__Id(id);
     }
 
+    /**
+     * 获取实体使用的定义注册表
+     *
+     * @return 定义注册表，未绑定时返回默认注册表
+     */
+    @JSONField(serialize = false, deserialize = false)
+    public UXDFRegistry getRegistry() {
+        return this.registry != null ? this.registry : UXDFLoader.getRegistry();
+    }
+
+    /**
+     * 设置实体使用的定义注册表
+     *
+     * @param registry 定义注册表
+     */
+    @JSONField(serialize = false, deserialize = false)
+    public void setRegistry(final UXDFRegistry registry) {
+        this.registry = registry;
+    }
+
     /**
      * 转换获取基本类型String
      *
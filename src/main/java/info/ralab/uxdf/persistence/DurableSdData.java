@@ -0,0 +1,675 @@
+package info.ralab.uxdf.persistence;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.annotation.JSONField;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFRegistry;
+import info.ralab.uxdf.definition.SdOperateType;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.instance.SdEntity;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * 持久化的{@link SdData}。
+ * <p>
+ * 每次变更（{@link #addNodeIfAbsent(NodeEntity)}、{@link #updateNode(String, String, NodeEntity)}、
+ * {@link #removeEvent(EventEntity)}等）在内存生效后，以二进制记录追加到写前日志，
+ * 变更方法在日志按{@link SdDataFsyncPolicy}写入完成后返回。
+ * {@link #setNode(List)}、{@link #merge(SdData)}、compute等组合方法以及{@link #batch(Runnable)}中的变更只提交一次。
+ * </p>
+ * <p>
+ * 日志写入失败时，内存中的数据恢复为快照和日志中已写入的内容，之后不能再变更，变更方法直接抛出异常。
+ * </p>
+ * <p>
+ * 日志长度超过{@link #getCheckpointSize()}时写入快照并清空日志。
+ * 打开时先通过{@link #setNode(List)}、{@link #setEvent(Map)}加载快照，再按顺序重放日志中快照之后的记录。
+ * </p>
+ * <p>
+ * 只记录通过{@link SdData}方法进行的变更。直接修改已加入的{@link SdEntity}属性不会写入日志，
+ * 需要持久化时应该使用{@link #overwriteNode(NodeEntity)}等方法。
+ * </p>
+ * <p>
+ * 同步策略默认从系统属性{@link #PROPERTY_FSYNC_POLICY}、{@link #PROPERTY_FSYNC_INTERVAL}读取，
+ * 快照阈值从{@link #PROPERTY_CHECKPOINT_SIZE}读取。
+ * </p>
+ */
+@Slf4j
+public class DurableSdData extends SdData implements Closeable {
+
+    /**
+     * 同步策略的系统属性，值为{@link SdDataFsyncPolicy}的名称
+     */
+    public static final String PROPERTY_FSYNC_POLICY = "uxdf.sddata.fsync";
+    /**
+     * {@link SdDataFsyncPolicy#INTERVAL}同步间隔的系统属性，单位毫秒
+     */
+    public static final String PROPERTY_FSYNC_INTERVAL = "uxdf.sddata.fsync.interval";
+    /**
+     * 快照阈值的系统属性，单位字节
+     */
+    public static final String PROPERTY_CHECKPOINT_SIZE = "uxdf.sddata.checkpoint.size";
+
+    public static final long DEFAULT_FSYNC_INTERVAL = 1000;
+    public static final long DEFAULT_CHECKPOINT_SIZE = 64L * 1024 * 1024;
+
+    static final String SNAPSHOT_FILE = "sddata.snapshot";
+    static final String LOG_FILE = "sddata.wal";
+
+    private static final int SNAPSHOT_MAGIC = 0x53444453;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final byte OP_ADD_NODE = 1;
+    private static final byte OP_OVERWRITE_NODE = 2;
+    private static final byte OP_UPDATE_NODE = 3;
+    private static final byte OP_REMOVE_NODE = 4;
+    private static final byte OP_REMOVE_NODE_UUID = 5;
+    private static final byte OP_CLEAR_NODE = 6;
+    private static final byte OP_ADD_EVENT = 7;
+    private static final byte OP_OVERWRITE_EVENT = 8;
+    private static final byte OP_UPDATE_EVENT = 9;
+    private static final byte OP_REMOVE_EVENT = 10;
+    private static final byte OP_REMOVE_EVENT_UUID = 11;
+    private static final byte OP_CLEAR_EVENT = 12;
+    private static final byte OP_SET_OPERATE = 13;
+
+    private final File directory;
+    private final UXDFRegistry registry;
+    private final SdDataFsyncPolicy fsyncPolicy;
+    private final SdDataWriteAheadLog writeAheadLog;
+
+    private volatile long checkpointSize = Long.getLong(PROPERTY_CHECKPOINT_SIZE, DEFAULT_CHECKPOINT_SIZE);
+
+    /**
+     * 正在执行的变更方法层数，只记录最外层的变更
+     */
+    private int depth;
+    /**
+     * 正在执行的批量变更层数，批量变更结束时统一提交
+     */
+    private int batchDepth;
+    /**
+     * 是否正在恢复，恢复时不记录日志
+     */
+    private boolean recovering;
+    /**
+     * 日志写入失败后是否已经恢复内存中的数据
+     */
+    private boolean restored;
+
+    /**
+     * 使用默认注册表和系统属性中的同步策略打开数据目录
+     *
+     * @param directory 数据目录
+     */
+    public DurableSdData(final File directory) {
+        this(
+                directory,
+                null,
+                SdDataFsyncPolicy.valueOf(System.getProperty(PROPERTY_FSYNC_POLICY, SdDataFsyncPolicy.INTERVAL.name())),
+                Long.getLong(PROPERTY_FSYNC_INTERVAL, DEFAULT_FSYNC_INTERVAL)
+        );
+    }
+
+    /**
+     * 打开数据目录，目录中已有数据时恢复
+     *
+     * @param directory      数据目录
+     * @param registry       定义注册表，为NULL时使用默认注册表
+     * @param fsyncPolicy    同步策略
+     * @param fsyncInterval  {@link SdDataFsyncPolicy#INTERVAL}的同步间隔，单位毫秒
+     */
+    public DurableSdData(
+            final File directory,
+            final UXDFRegistry registry,
+            final SdDataFsyncPolicy fsyncPolicy,
+            final long fsyncInterval
+    ) {
+        super(registry);
+        this.directory = directory;
+        this.registry = registry;
+        this.fsyncPolicy = fsyncPolicy;
+        this.recovering = true;
+        try {
+            Files.createDirectories(directory.toPath());
+            final long snapshotLsn = this.loadSnapshot();
+            this.writeAheadLog = new SdDataWriteAheadLog(
+                    new File(directory, LOG_FILE),
+                    fsyncPolicy,
+                    fsyncInterval,
+                    snapshotLsn,
+                    (lsn, payload) -> this.replay(payload)
+            );
+        } catch (IOException e) {
+            throw new UXDFException(String.format("打开数据目录[%s]失败。", directory), e);
+        } finally {
+            this.recovering = false;
+        }
+    }
+
+    @JSONField(serialize = false, deserialize = false)
+    public File getDirectory() {
+        return directory;
+    }
+
+    @JSONField(serialize = false, deserialize = false)
+    public SdDataFsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    /**
+     * 获取快照阈值，日志超过该长度时自动写入快照，小于等于0时不自动写入
+     *
+     * @return 快照阈值，单位字节
+     */
+    @JSONField(serialize = false, deserialize = false)
+    public long getCheckpointSize() {
+        return checkpointSize;
+    }
+
+    @JSONField(serialize = false, deserialize = false)
+    public void setCheckpointSize(final long checkpointSize) {
+        this.checkpointSize = checkpointSize;
+    }
+
+    @Override
+    public void setNode(final List<NodeEntity> node) {
+        this.batch(() -> super.setNode(node));
+    }
+
+    @Override
+    public void setEvent(final Map<String, List<EventEntity>> event) {
+        this.batch(() -> super.setEvent(event));
+    }
+
+    @Override
+    public void merge(final SdData sdData) {
+        this.batch(() -> super.merge(sdData));
+    }
+
+    @Override
+    public void setOperate(final SdOperateType operate) {
+        this.apply(() -> {
+            super.setOperate(operate);
+            return Boolean.TRUE;
+        }, result -> record(OP_SET_OPERATE, operate == null ? null : operate.name(), null, null));
+    }
+
+    @Override
+    public boolean addNodeIfAbsent(final NodeEntity nodeEntity) {
+        return this.apply(
+                () -> super.addNodeIfAbsent(nodeEntity),
+                added -> added ? record(OP_ADD_NODE, null, null, nodeEntity) : null
+        );
+    }
+
+    @Override
+    public boolean overwriteNode(final NodeEntity nodeEntity) {
+        return this.apply(
+                () -> super.overwriteNode(nodeEntity),
+                added -> added ? record(OP_OVERWRITE_NODE, null, null, nodeEntity) : null
+        );
+    }
+
+    @Override
+    public NodeEntity updateNode(final String sourceLogicId, final String sourceId, final NodeEntity targetNode) {
+        final boolean[] unchanged = new boolean[1];
+        return this.apply(
+                () -> {
+                    unchanged[0] = isUnchanged(this.getNodeByLogicId(sourceLogicId), sourceLogicId, targetNode);
+                    return super.updateNode(sourceLogicId, sourceId, targetNode);
+                },
+                updated -> unchanged[0] ? null : record(OP_UPDATE_NODE, sourceLogicId, sourceId, targetNode)
+        );
+    }
+
+    @Override
+    public NodeEntity removeNode(final NodeEntity nodeEntity) {
+        return this.apply(
+                () -> super.removeNode(nodeEntity),
+                removed -> removed != null ? record(OP_REMOVE_NODE, null, null, nodeEntity) : null
+        );
+    }
+
+    @Override
+    public NodeEntity removeNode(final String uuid) {
+        return this.apply(
+                () -> super.removeNode(uuid),
+                removed -> removed != null ? record(OP_REMOVE_NODE_UUID, uuid, null, null) : null
+        );
+    }
+
+    @Override
+    public void clearNode() {
+        this.apply(() -> {
+            super.clearNode();
+            return Boolean.TRUE;
+        }, result -> record(OP_CLEAR_NODE, null, null, null));
+    }
+
+    @Override
+    public boolean addEventIfAbsent(final EventEntity eventEntity) {
+        return this.apply(
+                () -> super.addEventIfAbsent(eventEntity),
+                added -> added ? record(OP_ADD_EVENT, null, null, eventEntity) : null
+        );
+    }
+
+    @Override
+    public boolean overwriteEvent(final EventEntity eventEntity) {
+        return this.apply(
+                () -> super.overwriteEvent(eventEntity),
+                added -> added ? record(OP_OVERWRITE_EVENT, null, null, eventEntity) : null
+        );
+    }
+
+    @Override
+    public EventEntity updateEvent(final String sourceLogicId, final String sourceId, final EventEntity targetEvent) {
+        final boolean[] unchanged = new boolean[1];
+        return this.apply(
+                () -> {
+                    unchanged[0] = isUnchanged(this.getEvent(targetEvent), sourceLogicId, targetEvent);
+                    return super.updateEvent(sourceLogicId, sourceId, targetEvent);
+                },
+                updated -> unchanged[0] ? null : record(OP_UPDATE_EVENT, sourceLogicId, sourceId, targetEvent)
+        );
+    }
+
+    @Override
+    public EventEntity removeEvent(final EventEntity eventEntity) {
+        return this.apply(
+                () -> super.removeEvent(eventEntity),
+                removed -> removed != null ? record(OP_REMOVE_EVENT, null, null, eventEntity) : null
+        );
+    }
+
+    @Override
+    public EventEntity removeEvent(final String uuid) {
+        return this.apply(
+                () -> super.removeEvent(uuid),
+                removed -> removed != null ? record(OP_REMOVE_EVENT_UUID, uuid, null, null) : null
+        );
+    }
+
+    @Override
+    public void clearEvent() {
+        this.apply(() -> {
+            super.clearEvent();
+            return Boolean.TRUE;
+        }, result -> record(OP_CLEAR_EVENT, null, null, null));
+    }
+
+    @Override
+    public void computeNode(final NodeEntity newNodeEntity, final Function<NodeEntity, NodeEntity> nodeFunction) {
+        this.batch(() -> super.computeNode(newNodeEntity, nodeFunction));
+    }
+
+    @Override
+    public void computeNode(final String uuid, final Function<NodeEntity, NodeEntity> nodeFunction) {
+        this.batch(() -> super.computeNode(uuid, nodeFunction));
+    }
+
+    @Override
+    public void computeEvent(final EventEntity newEventEntity, final Function<EventEntity, EventEntity> eventFunction) {
+        this.batch(() -> super.computeEvent(newEventEntity, eventFunction));
+    }
+
+    @Override
+    public void computeEvent(final String uuid, final Function<EventEntity, EventEntity> eventFunction) {
+        this.batch(() -> super.computeEvent(uuid, eventFunction));
+    }
+
+    /**
+     * 执行一组变更，所有变更的日志在结束时统一提交
+     *
+     * @param mutations 变更
+     */
+    public void batch(final Runnable mutations) {
+        final long lsn;
+        synchronized (this) {
+            if (batchDepth == 0 && !recovering) {
+                this.checkWritable();
+            }
+            batchDepth++;
+            try {
+                mutations.run();
+            } finally {
+                batchDepth--;
+            }
+            if (batchDepth > 0 || recovering) {
+                return;
+            }
+            lsn = writeAheadLog.getLastLsn();
+        }
+        this.commit(lsn);
+    }
+
+    /**
+     * 写入快照并清空日志
+     */
+    public synchronized void checkpoint() {
+        try {
+            this.writeSnapshot(writeAheadLog.getLastLsn());
+            writeAheadLog.truncate();
+        } catch (IOException e) {
+            throw new UXDFException(String.format("写入数据目录[%s]的快照失败。", directory), e);
+        }
+    }
+
+    /**
+     * 强制把所有变更写入磁盘
+     */
+    public void sync() {
+        try {
+            writeAheadLog.sync();
+        } catch (IOException e) {
+            throw new UXDFException(String.format("同步数据目录[%s]的日志失败。", directory), e);
+        }
+    }
+
+    /**
+     * 同步日志后关闭，关闭后不能再变更
+     */
+    @Override
+    public void close() {
+        try {
+            writeAheadLog.close();
+        } catch (IOException e) {
+            throw new UXDFException(String.format("关闭数据目录[%s]的日志失败。", directory), e);
+        }
+    }
+
+    /**
+     * 复制为普通的{@link SdData}，副本的变更不会持久化
+     *
+     * @return 副本
+     */
+    @Override
+    public SdData clone() {
+        final SdData sdData = JSON.parseObject(JSON.toJSONString(this), SdData.class);
+        sdData.setRegistry(this.registry);
+        return sdData;
+    }
+
+    /**
+     * 执行变更，最外层的变更生效后追加日志，不在批量变更中时等待提交。
+     * 日志已经失败时不执行变更，追加或提交失败时恢复内存中的数据
+     *
+     * @param mutation 变更
+     * @param record   根据变更结果生成日志记录，返回NULL时表示没有变更
+     */
+    private <T> T apply(final Supplier<T> mutation, final Function<T, byte[]> record) {
+        final T result;
+        final long lsn;
+        synchronized (this) {
+            if (depth == 0 && !recovering) {
+                this.checkWritable();
+            }
+            depth++;
+            try {
+                result = mutation.get();
+            } finally {
+                depth--;
+            }
+            if (depth > 0 || recovering) {
+                return result;
+            }
+            final byte[] payload = record.apply(result);
+            if (payload == null) {
+                return result;
+            }
+            try {
+                lsn = writeAheadLog.append(payload);
+            } catch (IOException e) {
+                throw this.restore(e);
+            }
+            if (batchDepth > 0) {
+                return result;
+            }
+        }
+        this.commit(lsn);
+        return result;
+    }
+
+    private void commit(final long lsn) {
+        try {
+            writeAheadLog.commit(lsn);
+        } catch (IOException e) {
+            throw this.restore(e);
+        }
+        final long threshold = this.checkpointSize;
+        if (threshold > 0 && writeAheadLog.getLength() >= threshold) {
+            synchronized (this) {
+                if (writeAheadLog.getLength() >= threshold) {
+                    this.checkpoint();
+                }
+            }
+        }
+    }
+
+    private void checkWritable() {
+        try {
+            writeAheadLog.checkWritable();
+        } catch (IOException e) {
+            throw new UXDFException(String.format("数据目录[%s]的日志不可写入，不能变更。", directory), e);
+        }
+    }
+
+    /**
+     * 日志写入失败后，把内存中的数据恢复为快照和日志中已写入的内容，撤销未写入日志的变更。
+     * 日志失败后不再接受变更，只需要恢复一次
+     *
+     * @param cause 日志写入异常
+     * @return 抛给调用者的异常
+     */
+    private synchronized UXDFException restore(final IOException cause) {
+        if (!restored) {
+            restored = true;
+            recovering = true;
+            try {
+                super.clearEvent();
+                super.clearNode();
+                final long snapshotLsn = this.loadSnapshot();
+                SdDataWriteAheadLog.read(new File(directory, LOG_FILE), snapshotLsn, (lsn, payload) -> this.replay(payload));
+            } catch (IOException | RuntimeException e) {
+                cause.addSuppressed(e);
+                log.error(String.format("数据目录[%s]的日志写入失败后恢复数据失败。", directory), e);
+            } finally {
+                recovering = false;
+            }
+        }
+        return new UXDFException(String.format("写入数据目录[%s]的日志失败，未写入的变更已撤销。", directory), cause);
+    }
+
+    /**
+     * 目标和源是不同的实例且内容相同时，更新不改变数据。
+     * 同一个实例可能已被直接修改，仍然需要记录
+     */
+    private static boolean isUnchanged(final SdEntity source, final String sourceLogicId, final SdEntity target) {
+        return source != null && target != null && source != target
+                && sourceLogicId.equals(target.getLogicId())
+                && source.equals(target);
+    }
+
+    /**
+     * 日志记录为：操作类型、两个字符串参数、实例
+     */
+    private static byte[] record(final byte op, final String first, final String second, final SdEntity sdEntity) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(op);
+            SdEntityCodec.writeString(output, first);
+            SdEntityCodec.writeString(output, second);
+            output.writeBoolean(sdEntity != null);
+            if (sdEntity != null) {
+                SdEntityCodec.writeEntity(output, sdEntity);
+            }
+        } catch (IOException e) {
+            throw new UXDFException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void replay(final byte[] payload) throws IOException {
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        final byte op = input.readByte();
+        final String first = SdEntityCodec.readString(input);
+        final String second = SdEntityCodec.readString(input);
+        final boolean hasEntity = input.readBoolean();
+        final NodeEntity nodeEntity;
+        final EventEntity eventEntity;
+        if (op < OP_ADD_EVENT) {
+            nodeEntity = hasEntity ? SdEntityCodec.readEntity(input, new NodeEntity()) : null;
+            eventEntity = null;
+        } else {
+            nodeEntity = null;
+            eventEntity = hasEntity ? SdEntityCodec.readEntity(input, new EventEntity()) : null;
+        }
+        switch (op) {
+            case OP_ADD_NODE:
+                this.addNodeIfAbsent(nodeEntity);
+                break;
+            case OP_OVERWRITE_NODE:
+                this.overwriteNode(nodeEntity);
+                break;
+            case OP_UPDATE_NODE:
+                this.updateNode(first, second, nodeEntity);
+                break;
+            case OP_REMOVE_NODE:
+                this.removeNode(nodeEntity);
+                break;
+            case OP_REMOVE_NODE_UUID:
+                this.removeNode(first);
+                break;
+            case OP_CLEAR_NODE:
+                this.clearNode();
+                break;
+            case OP_ADD_EVENT:
+                this.addEventIfAbsent(eventEntity);
+                break;
+            case OP_OVERWRITE_EVENT:
+                this.overwriteEvent(eventEntity);
+                break;
+            case OP_UPDATE_EVENT:
+                this.updateEvent(first, second, eventEntity);
+                break;
+            case OP_REMOVE_EVENT:
+                this.removeEvent(eventEntity);
+                break;
+            case OP_REMOVE_EVENT_UUID:
+                this.removeEvent(first);
+                break;
+            case OP_CLEAR_EVENT:
+                this.clearEvent();
+                break;
+            case OP_SET_OPERATE:
+                this.setOperate(first == null ? null : SdOperateType.valueOf(first));
+                break;
+            default:
+                throw new IOException(String.format("无法识别的日志操作类型[%s]。", op));
+        }
+    }
+
+    /**
+     * 快照为：标识、版本、包含的最后日志序号、所有Node、所有Event、CRC32
+     */
+    private void writeSnapshot(final long lsn) throws IOException {
+        final File snapshotFile = new File(directory, SNAPSHOT_FILE);
+        final File tempFile = new File(directory, SNAPSHOT_FILE + ".tmp");
+        final List<NodeEntity> nodes = this.getUnmodifiableNode();
+        final List<EventEntity> events = Lists.newArrayList();
+        this.getUnmodifiableEvent().values().forEach(events::addAll);
+        try (FileOutputStream fileOutput = new FileOutputStream(tempFile)) {
+            final CheckedOutputStream checkedOutput = new CheckedOutputStream(
+                    new BufferedOutputStream(fileOutput),
+                    new CRC32()
+            );
+            final DataOutputStream output = new DataOutputStream(checkedOutput);
+            output.writeInt(SNAPSHOT_MAGIC);
+            output.writeInt(SNAPSHOT_VERSION);
+            output.writeLong(lsn);
+            output.writeInt(nodes.size());
+            for (NodeEntity nodeEntity : nodes) {
+                SdEntityCodec.writeEntity(output, nodeEntity);
+            }
+            output.writeInt(events.size());
+            for (EventEntity eventEntity : events) {
+                SdEntityCodec.writeEntity(output, eventEntity);
+            }
+            output.writeInt((int) checkedOutput.getChecksum().getValue());
+            output.flush();
+            fileOutput.getFD().sync();
+        }
+        Files.move(
+                tempFile.toPath(),
+                snapshotFile.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING
+        );
+        log.debug("数据目录[{}]写入快照，日志序号[{}]，Node[{}]，Event[{}]。", directory, lsn, nodes.size(), events.size());
+    }
+
+    /**
+     * 通过批量加载方法加载快照
+     *
+     * @return 快照包含的最后日志序号，没有快照时返回0
+     */
+    private long loadSnapshot() throws IOException {
+        final File snapshotFile = new File(directory, SNAPSHOT_FILE);
+        if (!snapshotFile.exists()) {
+            return 0;
+        }
+        final List<NodeEntity> nodes = Lists.newArrayList();
+        final Map<String, List<EventEntity>> events = Maps.newLinkedHashMap();
+        final long lsn;
+        try (InputStream fileInput = new BufferedInputStream(new FileInputStream(snapshotFile))) {
+            final CheckedInputStream checkedInput = new CheckedInputStream(fileInput, new CRC32());
+            final DataInputStream input = new DataInputStream(checkedInput);
+            if (input.readInt() != SNAPSHOT_MAGIC || input.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException(String.format("无法识别的快照文件[%s]。", snapshotFile));
+            }
+            lsn = input.readLong();
+            final int nodeSize = input.readInt();
+            for (int i = 0; i < nodeSize; i++) {
+                nodes.add(SdEntityCodec.readEntity(input, new NodeEntity()));
+            }
+            final int eventSize = input.readInt();
+            for (int i = 0; i < eventSize; i++) {
+                final EventEntity eventEntity = SdEntityCodec.readEntity(input, new EventEntity());
+                events.computeIfAbsent(eventEntity.get__Sd(), key -> Lists.newArrayList()).add(eventEntity);
+            }
+            final int checksum = (int) checkedInput.getChecksum().getValue();
+            if (input.readInt() != checksum) {
+                throw new IOException(String.format("快照文件[%s]校验失败。", snapshotFile));
+            }
+        }
+        super.setNode(nodes);
+        super.setEvent(events);
+        return lsn;
+    }
+}
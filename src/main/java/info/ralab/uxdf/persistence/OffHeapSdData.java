@@ -0,0 +1,934 @@
+package info.ralab.uxdf.persistence;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.annotation.JSONField;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFRegistry;
+import info.ralab.uxdf.definition.SdEventDefinition;
+import info.ralab.uxdf.definition.SdOperateType;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.instance.SdEntity;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 实例内容和索引都保存在堆外内存中的{@link SdData}，用于减少大数据集的堆内存占用和GC压力。
+ * <p>
+ * 实例按{@link SdEntityLayout}编码后追加到段中，指定目录时段是内存映射文件，否则是直接内存。
+ * logicId到位置、uuid到logicId、Event名称和Node与Event的关联都是直接内存中的哈希表和链表，
+ * 堆内存中只有每个Event名称的一个索引对象。
+ * </p>
+ * <p>
+ * 方法和{@link SdData}一致，以下情况有区别：
+ * <ul>
+ * <li>添加时保存的是实例的内容，不保留传入的实例对象；</li>
+ * <li>获取的实例是记录的视图，每次获取都是新的对象，读取属性时按需解码单个属性；</li>
+ * <li>修改视图的属性在下一次调用数据集的方法时写回，同一视图的多次修改只写入一次，
+ * 修改logicId或uuid应该使用{@link #updateNode(String, String, NodeEntity)}等方法；</li>
+ * <li>实例被替换或移除后，之前获取的视图对它的修改不再写回；</li>
+ * <li>{@link #getDetachedNode()}等方法返回的是堆内存中的副本，添加到其它{@link SdData}时应该使用副本。</li>
+ * </ul>
+ * </p>
+ * <p>
+ * 所有方法都是同步方法。被替换或移除的记录超过一个段的大小并且超过已写入字节的一半时，
+ * 在下一次调用时把仍在使用的记录复制到新的段并释放原来的段。{@link #close()}时释放所有空间并删除段文件。
+ * </p>
+ * <p>
+ * 写入多个索引前先预留空间，索引超过容量上限时抛出异常且不修改数据。
+ * </p>
+ */
+public class OffHeapSdData extends SdData implements Closeable {
+
+    /**
+     * 段大小的系统属性，单位字节
+     */
+    public static final String PROPERTY_SEGMENT_SIZE = "uxdf.sddata.offheap.segmentSize";
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int INDEX_SEGMENT_SIZE = 1024 * 1024;
+    private static final int EVENT_NAME_SEGMENT_SIZE = 64 * 1024;
+
+    private final File directory;
+    private final int segmentSize;
+    private SdEntitySegments segments;
+    /**
+     * 压缩的次数，用于区分段文件名称
+     */
+    private int generation;
+    /**
+     * 最后写入的记录版本，每条记录开头保存写入时的版本
+     */
+    private long recordVersion;
+    private final SdEntityLayout layout;
+    private UXDFRegistry registry;
+
+    private final SdOffHeapIndex nodeLocations = new SdOffHeapIndex(INDEX_SEGMENT_SIZE);
+    private final SdOffHeapIndex eventLocations = new SdOffHeapIndex(INDEX_SEGMENT_SIZE);
+    /**
+     * uuid到logicId的键引用
+     */
+    private final SdOffHeapIndex nodeUUIDs = new SdOffHeapIndex(INDEX_SEGMENT_SIZE);
+    private final SdOffHeapIndex eventUUIDs = new SdOffHeapIndex(INDEX_SEGMENT_SIZE);
+    /**
+     * Event名称到Event的logicId
+     */
+    private final Map<String, SdOffHeapIndex> eventNames = Maps.newLinkedHashMap();
+    private final SdOffHeapAdjacency nodeEvents = new SdOffHeapAdjacency(INDEX_SEGMENT_SIZE);
+    /**
+     * 有未写回修改的视图
+     */
+    private final List<SdEntityView> dirtyViews = Lists.newArrayList();
+
+    /**
+     * 使用默认注册表，实例保存在直接内存中
+     */
+    public OffHeapSdData() {
+        this(null, null, Integer.getInteger(PROPERTY_SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE));
+    }
+
+    /**
+     * @param registry    定义注册表，为NULL时使用默认注册表
+     * @param directory   段文件目录，为NULL时实例保存在直接内存中
+     * @param segmentSize 段大小，单位字节
+     */
+    public OffHeapSdData(final UXDFRegistry registry, final File directory, final int segmentSize) {
+        super(registry);
+        if (directory != null) {
+            try {
+                Files.createDirectories(directory.toPath());
+            } catch (IOException e) {
+                throw new UXDFException(String.format("创建段文件目录[%s]失败。", directory), e);
+            }
+        }
+        this.registry = registry;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.segments = new SdEntitySegments(directory, segmentSize);
+        this.layout = new SdEntityLayout(this.getRegistry());
+    }
+
+    @JSONField(serialize = false, deserialize = false)
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return 段中已写入的字节数，包括被替换或移除的记录
+     */
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized long getStoredBytes() {
+        this.settle();
+        return segments.getWrittenBytes();
+    }
+
+    /**
+     * @return 段中被替换或移除的记录字节数
+     */
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized long getGarbageBytes() {
+        this.settle();
+        return segments.getGarbageBytes();
+    }
+
+    /**
+     * @return 索引占用的堆外内存字节数
+     */
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized long getIndexBytes() {
+        this.settle();
+        long indexBytes = nodeLocations.getOffHeapBytes() +
+                eventLocations.getOffHeapBytes() +
+                nodeUUIDs.getOffHeapBytes() +
+                eventUUIDs.getOffHeapBytes() +
+                nodeEvents.getOffHeapBytes();
+        for (SdOffHeapIndex logicIds : eventNames.values()) {
+            indexBytes += logicIds.getOffHeapBytes();
+        }
+        return indexBytes;
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized void setRegistry(final UXDFRegistry registry) {
+        super.setRegistry(registry);
+        this.registry = registry;
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized List<NodeEntity> getDetachedNode() {
+        this.settle();
+        final List<NodeEntity> nodeEntities = Lists.newArrayListWithCapacity(nodeLocations.size());
+        nodeLocations.forEach((logicId, location) -> nodeEntities.add(this.read(location, new NodeEntity())));
+        return nodeEntities;
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized List<NodeEntity> getDetachedNode(final EventEntity eventEntity) {
+        this.settle();
+        final List<NodeEntity> results = Lists.newArrayList();
+        if (eventEntity == null || !eventEntity.isEffective()) {
+            return results;
+        }
+        for (String logicId : new String[]{eventEntity.leftLogicId(), eventEntity.rightLogicId()}) {
+            final long location = nodeLocations.get(logicId);
+            if (location != SdOffHeapIndex.NO_VALUE) {
+                results.add(this.read(location, new NodeEntity()));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    @JSONField(name = "node", deserialize = false)
+    public synchronized List<NodeEntity> getUnmodifiableNode() {
+        this.settle();
+        final List<NodeEntity> nodeEntities = Lists.newArrayListWithCapacity(nodeLocations.size());
+        this.forEachNode(nodeEntities::add);
+        return Collections.unmodifiableList(nodeEntities);
+    }
+
+    @Override
+    public synchronized void forEachNode(final Consumer<NodeEntity> action) {
+        this.settle();
+        nodeLocations.forEach((logicId, location) -> action.accept(this.nodeView(logicId, location)));
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized Map<String, List<EventEntity>> getDetachedEvent() {
+        this.settle();
+        final Map<String, List<EventEntity>> event = Maps.newHashMap();
+        eventNames.keySet().forEach(eventName -> event.put(eventName, this.getDetachedEvent(eventName)));
+        return event;
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized List<EventEntity> getDetachedEvent(final String eventSd) {
+        this.settle();
+        final List<EventEntity> eventEntities = Lists.newArrayList();
+        final SdOffHeapIndex logicIds = eventNames.get(eventSd);
+        if (logicIds != null) {
+            logicIds.forEach((logicId, eventRef) ->
+                    eventEntities.add(this.read(eventLocations.get(logicId), new EventEntity()))
+            );
+        }
+        return eventEntities;
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized List<EventEntity> getDetachedEvent(final NodeEntity nodeEntity) {
+        this.settle();
+        final List<EventEntity> results = Lists.newArrayList();
+        if (nodeEntity == null || !nodeEntity.isEffective()) {
+            return results;
+        }
+        nodeEvents.forEach(nodeEntity.getLogicId(), eventRef -> results.add(
+                this.read(eventLocations.get(eventLocations.key(eventRef)), new EventEntity())
+        ));
+        return results;
+    }
+
+    @Override
+    @JSONField(name = "event", deserialize = false)
+    public synchronized Map<String, List<EventEntity>> getUnmodifiableEvent() {
+        this.settle();
+        final Map<String, List<EventEntity>> event = Maps.newHashMap();
+        eventNames.keySet().forEach(eventName -> event.put(eventName, this.getUnmodifiableEvent(eventName)));
+        return Collections.unmodifiableMap(event);
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized List<EventEntity> getUnmodifiableEvent(final String eventSd) {
+        this.settle();
+        final List<EventEntity> eventEntities = Lists.newArrayList();
+        final SdOffHeapIndex logicIds = eventNames.get(eventSd);
+        if (logicIds != null) {
+            logicIds.forEach((logicId, eventRef) -> eventEntities.add(this.eventView(logicId)));
+        }
+        return Collections.unmodifiableList(eventEntities);
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized List<EventEntity> getUnmodifiableEvent(final NodeEntity nodeEntity) {
+        this.settle();
+        if (nodeEntity == null || !nodeEntity.isEffective()) {
+            return Collections.emptyList();
+        }
+        final List<EventEntity> results = Lists.newArrayList();
+        nodeEvents.forEach(nodeEntity.getLogicId(), eventRef -> results.add(this.eventView(eventLocations.key(eventRef))));
+        return Collections.unmodifiableList(results);
+    }
+
+    @Override
+    public synchronized void forEachEvent(final Consumer<EventEntity> action) {
+        this.settle();
+        eventLocations.forEach((logicId, location) -> action.accept(this.eventView(logicId, location)));
+    }
+
+    @Override
+    public synchronized boolean isNodeEmpty() {
+        this.settle();
+        return nodeLocations.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean isEventEmpty() {
+        this.settle();
+        return eventLocations.isEmpty();
+    }
+
+    @Override
+    public synchronized void setOperate(final SdOperateType operate) {
+        this.settle();
+        this.rewriteAll(nodeLocations, NodeEntity::new, nodeEntity -> nodeEntity.setOperate(operate));
+        this.rewriteAll(eventLocations, EventEntity::new, eventEntity -> eventEntity.setOperate(operate));
+    }
+
+    @Override
+    public boolean addNodeIfAbsent(final NodeEntity nodeEntity) {
+        return this.addNode(nodeEntity, false);
+    }
+
+    @Override
+    public boolean overwriteNode(final NodeEntity nodeEntity) {
+        return this.addNode(nodeEntity, true);
+    }
+
+    private synchronized boolean addNode(final NodeEntity nodeEntity, final boolean overwrite) {
+        this.settle();
+        if (nodeEntity == null ||
+                !nodeEntity.isEffective() ||
+                !overwrite && nodeLocations.containsKey(nodeEntity.getLogicId())) {
+            return false;
+        }
+        if (overwrite) {
+            this.removeNode(nodeEntity);
+        }
+        if (this.registry != null) {
+            nodeEntity.setRegistry(this.registry);
+        }
+        final String logicId = nodeEntity.getLogicId();
+        final String uuid = nodeEntity.generateUUID();
+        if (uuid != null) {
+            final long existRef = nodeUUIDs.get(uuid);
+            if (existRef != SdOffHeapIndex.NO_VALUE && !nodeLocations.key(existRef).equals(logicId)) {
+                throw new UXDFException(
+                        String.format(
+                                "当前数据集中已经存在uuid和要添加Node[%s]相同的数据[%s]。",
+                                nodeEntity,
+                                this.nodeView(nodeLocations.key(existRef))
+                        )
+                );
+            }
+        }
+        this.storeNode(nodeEntity);
+        return true;
+    }
+
+    @Override
+    public synchronized NodeEntity updateNode(final String sourceLogicId, final String sourceId, final NodeEntity targetNode) {
+        this.settle();
+        if (targetNode == null || !targetNode.isEffective()) {
+            throw new UXDFException("更新的目标NodeEntity无效。");
+        }
+        final NodeEntity sourceNode = this.nodeView(sourceLogicId);
+        if (sourceNode == null) {
+            throw new UXDFException(String.format("更新Node的源[%s]不存在。", sourceLogicId));
+        }
+        if (!sourceId.equals(sourceNode.get__Id())) {
+            throw new UXDFException(String.format("更新Node的源id[%s]不匹配。", sourceId));
+        }
+        final String targetLogicId = targetNode.getLogicId();
+        if (!sourceLogicId.equals(targetLogicId) && nodeLocations.containsKey(targetLogicId)) {
+            throw new UXDFException(String.format("更新Node的目标[%s]已经存在。", targetLogicId));
+        }
+        if (!sourceNode.get__Sd().equals(targetNode.get__Sd())) {
+            throw new UXDFException(String.format("源Node[%s]和目标Node[%s]的类型或版本信息不一致。", sourceNode, targetNode));
+        }
+
+        if (this.registry != null) {
+            targetNode.setRegistry(this.registry);
+        }
+        targetNode.generateUUID();
+        this.reserveNode(targetNode);
+        this.detachNode(sourceLogicId);
+        this.storeNode(targetNode);
+
+        // 更新关联Event的端点
+        for (long eventRef : nodeEvents.removeAll(sourceLogicId)) {
+            final EventEntity eventEntity = this.detachEvent(eventLocations.key(eventRef));
+            if (eventEntity == null) {
+                continue;
+            }
+            if (sourceLogicId.equals(eventEntity.leftLogicId())) {
+                eventEntity.leftNode(targetNode);
+            }
+            if (sourceLogicId.equals(eventEntity.rightLogicId())) {
+                eventEntity.rightNode(targetNode);
+            }
+            eventEntity.generateUUID();
+            this.storeEvent(eventEntity);
+        }
+
+        return targetNode;
+    }
+
+    @Override
+    public synchronized NodeEntity removeNode(final NodeEntity nodeEntity) {
+        this.settle();
+        if (nodeEntity == null || !nodeEntity.isEffective()) {
+            return null;
+        }
+        return this.detachNode(nodeEntity.getLogicId());
+    }
+
+    @Override
+    public synchronized NodeEntity removeNode(final String uuid) {
+        this.settle();
+        final long nodeRef = nodeUUIDs.get(uuid);
+        return nodeRef == SdOffHeapIndex.NO_VALUE ? null : this.detachNode(nodeLocations.key(nodeRef));
+    }
+
+    @Override
+    public synchronized NodeEntity getNode(final NodeEntity nodeEntity) {
+        this.settle();
+        return nodeEntity == null || !nodeEntity.isEffective() ? null : this.nodeView(nodeEntity.getLogicId());
+    }
+
+    @Override
+    public synchronized NodeEntity getNodeByLogicId(final String logicId) {
+        this.settle();
+        return StringUtils.isBlank(logicId) ? null : this.nodeView(logicId);
+    }
+
+    @Override
+    public synchronized NodeEntity getNode(final String uuid) {
+        this.settle();
+        final long nodeRef = nodeUUIDs.get(uuid);
+        return nodeRef == SdOffHeapIndex.NO_VALUE ? null : this.nodeView(nodeLocations.key(nodeRef));
+    }
+
+    @Override
+    public synchronized void clearNode() {
+        this.settle();
+        nodeLocations.forEach((logicId, location) -> segments.release(location));
+        nodeLocations.clear();
+        nodeUUIDs.clear();
+    }
+
+    @Override
+    public boolean addEventIfAbsent(final EventEntity eventEntity) {
+        return this.addEvent(eventEntity, false);
+    }
+
+    @Override
+    public boolean overwriteEvent(final EventEntity eventEntity) {
+        return this.addEvent(eventEntity, true);
+    }
+
+    private synchronized boolean addEvent(final EventEntity eventEntity, final boolean overwrite) {
+        this.settle();
+        if (eventEntity == null ||
+                !eventEntity.isEffective() ||
+                !overwrite && eventLocations.containsKey(eventEntity.getLogicId())) {
+            return false;
+        }
+        if (overwrite) {
+            this.removeEvent(eventEntity);
+        }
+        if (this.registry != null) {
+            eventEntity.setRegistry(this.registry);
+        }
+        final String logicId = eventEntity.getLogicId();
+        final String uuid = eventEntity.generateUUID();
+
+        final SdEventDefinition sdEvent = this.getRegistry().getEvent(
+                eventEntity.get__Sd(),
+                eventEntity.get__LeftSd(),
+                eventEntity.get__RightSd()
+        );
+        eventEntity.set__Member(sdEvent != null && sdEvent.getIsMember());
+
+        if (uuid != null) {
+            final long existRef = eventUUIDs.get(uuid);
+            if (existRef != SdOffHeapIndex.NO_VALUE && !eventLocations.key(existRef).equals(logicId)) {
+                throw new UXDFException(
+                        String.format(
+                                "当前数据集中已经存在uuid和要添加Event[%s]相同的数据[%s]。",
+                                eventEntity,
+                                this.eventView(eventLocations.key(existRef))
+                        )
+                );
+            }
+        }
+        this.storeEvent(eventEntity);
+        return true;
+    }
+
+    @Override
+    public synchronized EventEntity updateEvent(final String sourceLogicId, final String sourceId, final EventEntity targetEvent) {
+        this.settle();
+        if (targetEvent == null || !targetEvent.isEffective()) {
+            throw new UXDFException("更新的目标EventEntity无效。");
+        }
+        final EventEntity sourceEvent = this.eventView(sourceLogicId);
+        if (sourceEvent == null) {
+            throw new UXDFException(String.format("更新Event的源[%s]不存在。", sourceLogicId));
+        }
+        if (!sourceId.equals(sourceEvent.get__Id())) {
+            throw new UXDFException(String.format("更新Event的源id[%s]不匹配。", sourceId));
+        }
+        final String targetLogicId = targetEvent.getLogicId();
+        if (!sourceLogicId.equals(targetLogicId) && eventLocations.containsKey(targetLogicId)) {
+            throw new UXDFException(String.format("更新Event的目标[%s]已经存在。", targetLogicId));
+        }
+        if (!sourceEvent.get__Sd().equals(targetEvent.get__Sd())) {
+            throw new UXDFException(String.format("源Event[%s]和目标Event[%s]的类型或版本信息不一致。", sourceEvent, targetEvent));
+        }
+
+        if (this.registry != null) {
+            targetEvent.setRegistry(this.registry);
+        }
+        targetEvent.generateUUID();
+        this.reserveEvent(targetEvent);
+        this.detachEvent(sourceLogicId);
+        this.storeEvent(targetEvent);
+        return targetEvent;
+    }
+
+    @Override
+    public synchronized EventEntity removeEvent(final EventEntity eventEntity) {
+        this.settle();
+        if (eventEntity == null || !eventEntity.isEffective()) {
+            return null;
+        }
+        final String logicId = eventEntity.getLogicId();
+        if (eventLocations.containsKey(logicId)) {
+            return this.detachEvent(logicId);
+        }
+        final long eventRef = eventUUIDs.get(eventEntity.getUUID());
+        return eventRef == SdOffHeapIndex.NO_VALUE ? null : this.detachEvent(eventLocations.key(eventRef));
+    }
+
+    @Override
+    public synchronized EventEntity removeEvent(final String uuid) {
+        this.settle();
+        final long eventRef = eventUUIDs.get(uuid);
+        return eventRef == SdOffHeapIndex.NO_VALUE ? null : this.detachEvent(eventLocations.key(eventRef));
+    }
+
+    @Override
+    public synchronized EventEntity getEvent(final EventEntity eventEntity) {
+        this.settle();
+        return eventEntity == null || !eventEntity.isEffective() ? null : this.eventView(eventEntity.getLogicId());
+    }
+
+    @Override
+    public synchronized EventEntity getEvent(final String uuid) {
+        this.settle();
+        final long eventRef = eventUUIDs.get(uuid);
+        return eventRef == SdOffHeapIndex.NO_VALUE ? null : this.eventView(eventLocations.key(eventRef));
+    }
+
+    @Override
+    public synchronized void clearEvent() {
+        this.settle();
+        eventLocations.forEach((logicId, location) -> segments.release(location));
+        eventLocations.clear();
+        eventUUIDs.clear();
+        eventNames.values().forEach(SdOffHeapIndex::close);
+        eventNames.clear();
+        nodeEvents.clear();
+    }
+
+    @Override
+    public synchronized void computeNode(final NodeEntity newNodeEntity, final Function<NodeEntity, NodeEntity> nodeFunction) {
+        this.settle();
+        final NodeEntity nodeEntity = nodeFunction.apply(this.nodeView(newNodeEntity.getLogicId()));
+        if (nodeEntity == null) {
+            this.removeNode(newNodeEntity);
+        } else {
+            this.overwriteNode(nodeEntity);
+        }
+    }
+
+    @Override
+    public synchronized void computeNode(final String uuid, final Function<NodeEntity, NodeEntity> nodeFunction) {
+        this.settle();
+        final NodeEntity nodeEntity = nodeFunction.apply(this.getNode(uuid));
+        if (nodeEntity == null) {
+            this.removeNode(uuid);
+        } else {
+            this.overwriteNode(nodeEntity);
+        }
+    }
+
+    @Override
+    public synchronized void computeEvent(final EventEntity newEventEntity, final Function<EventEntity, EventEntity> eventFunction) {
+        this.settle();
+        final EventEntity eventEntity = eventFunction.apply(this.eventView(newEventEntity.getLogicId()));
+        if (eventEntity == null) {
+            this.removeEvent(newEventEntity);
+        } else {
+            this.overwriteEvent(eventEntity);
+        }
+    }
+
+    @Override
+    public synchronized void computeEvent(final String uuid, final Function<EventEntity, EventEntity> eventFunction) {
+        this.settle();
+        final EventEntity eventEntity = eventFunction.apply(this.getEvent(uuid));
+        if (eventEntity == null) {
+            this.removeEvent(uuid);
+        } else {
+            this.overwriteEvent(eventEntity);
+        }
+    }
+
+    /**
+     * 复制为普通的{@link SdData}，副本的所有实例都在堆内存中
+     *
+     * @return 副本
+     */
+    @Override
+    public synchronized SdData clone() {
+        this.settle();
+        final SdData sdData = JSON.parseObject(JSON.toJSONString(this), SdData.class);
+        sdData.setRegistry(this.registry);
+        return sdData;
+    }
+
+    @Override
+    public synchronized boolean containsNode(final NodeEntity nodeEntity) {
+        this.settle();
+        return nodeEntity != null && nodeEntity.isEffective() && nodeLocations.containsKey(nodeEntity.getLogicId());
+    }
+
+    @Override
+    public synchronized boolean containsNode(final String uuid) {
+        this.settle();
+        return uuid != null && nodeUUIDs.containsKey(uuid);
+    }
+
+    @Override
+    public synchronized boolean containsEvent(final EventEntity eventEntity) {
+        this.settle();
+        return eventEntity != null && eventEntity.isEffective() && eventLocations.containsKey(eventEntity.getLogicId());
+    }
+
+    @Override
+    public synchronized boolean containsEvent(final String uuid) {
+        this.settle();
+        return uuid != null && eventUUIDs.containsKey(uuid);
+    }
+
+    @Override
+    public synchronized boolean containsEventSd(final String eventSd) {
+        this.settle();
+        return eventNames.containsKey(eventSd);
+    }
+
+    /**
+     * 清空数据，释放堆外内存并删除段文件
+     */
+    @Override
+    public synchronized void close() {
+        dirtyViews.clear();
+        this.clearEvent();
+        nodeLocations.close();
+        nodeUUIDs.close();
+        segments.close();
+    }
+
+    SdEntityLayout layout() {
+        return layout;
+    }
+
+    /**
+     * 记录视图有未写回的修改，下一次调用时写回
+     *
+     * @param view 视图
+     */
+    synchronized void markDirty(final SdEntityView view) {
+        if (view.markDirty()) {
+            dirtyViews.add(view);
+        }
+    }
+
+    /**
+     * 写回视图的修改，垃圾记录较多时压缩段。在每个方法开始时调用
+     */
+    private void settle() {
+        if (!dirtyViews.isEmpty()) {
+            final List<SdEntityView> views = Lists.newArrayList(dirtyViews);
+            dirtyViews.clear();
+            views.forEach(view -> {
+                view.markClean();
+                this.writeBack(view);
+            });
+        }
+        final long garbageBytes = segments.getGarbageBytes();
+        if (garbageBytes >= segmentSize && garbageBytes * 2 >= segments.getWrittenBytes()) {
+            this.compact();
+        }
+    }
+
+    /**
+     * 把视图修改后的属性写入新记录，记录已经被替换或移除时忽略
+     */
+    private void writeBack(final SdEntityView view) {
+        final SdOffHeapIndex locations = view.isNode() ? nodeLocations : eventLocations;
+        final long current = locations.get(view.logicId());
+        if (current == SdOffHeapIndex.NO_VALUE || this.version(current) != view.version()) {
+            return;
+        }
+        final long location = this.append(layout.encode(view.properties()));
+        segments.release(current);
+        locations.put(view.logicId(), location);
+        view.relocate(view.logicId(), this.version(location), this.content(location));
+    }
+
+    /**
+     * 把仍在使用的记录复制到新的段，记录版本不变，复制失败时不修改索引
+     */
+    private void compact() {
+        final SdEntitySegments compacted = new SdEntitySegments(
+                directory,
+                String.format("segment%d", generation + 1),
+                segmentSize
+        );
+        final long[] nodeTargets = new long[nodeLocations.size()];
+        final long[] eventTargets = new long[eventLocations.size()];
+        try {
+            this.copyRecords(nodeLocations, compacted, nodeTargets);
+            this.copyRecords(eventLocations, compacted, eventTargets);
+        } catch (RuntimeException e) {
+            compacted.close();
+            throw e;
+        }
+        this.updateLocations(nodeLocations, nodeTargets);
+        this.updateLocations(eventLocations, eventTargets);
+        segments.close();
+        segments = compacted;
+        generation++;
+    }
+
+    private void copyRecords(final SdOffHeapIndex locations, final SdEntitySegments target, final long[] targets) {
+        final int[] index = {0};
+        locations.forEach((logicId, location) -> targets[index[0]++] = target.append(segments.read(location)));
+    }
+
+    private void updateLocations(final SdOffHeapIndex locations, final long[] targets) {
+        final int[] index = {0};
+        locations.forEach((logicId, location) -> locations.put(logicId, targets[index[0]++]));
+    }
+
+    /**
+     * 追加记录，记录开头是新的版本
+     */
+    private long append(final byte[] content) {
+        final ByteBuffer record = ByteBuffer.allocate(Long.BYTES + content.length);
+        record.putLong(++recordVersion).put(content);
+        return segments.append(record.array());
+    }
+
+    /**
+     * 获取记录中的实例内容
+     */
+    private ByteBuffer content(final long location) {
+        final ByteBuffer record = segments.record(location);
+        record.position(Long.BYTES);
+        return record.slice();
+    }
+
+    private long version(final long location) {
+        return segments.record(location).getLong(0);
+    }
+
+    /**
+     * 预留保存Node需要的索引空间
+     */
+    private void reserveNode(final NodeEntity nodeEntity) {
+        nodeLocations.reserve(1);
+        if (nodeEntity.getString(SdEntity.ATTR_UUID) != null) {
+            nodeUUIDs.reserve(1);
+        }
+    }
+
+    /**
+     * 预留保存Event需要的索引空间
+     */
+    private SdOffHeapIndex reserveEvent(final EventEntity eventEntity) {
+        eventLocations.reserve(1);
+        if (eventEntity.getString(SdEntity.ATTR_UUID) != null) {
+            eventUUIDs.reserve(1);
+        }
+        final SdOffHeapIndex logicIds = eventNames.computeIfAbsent(
+                eventEntity.get__Sd(),
+                key -> new SdOffHeapIndex(EVENT_NAME_SEGMENT_SIZE)
+        );
+        logicIds.reserve(1);
+        nodeEvents.reserve(2);
+        return logicIds;
+    }
+
+    /**
+     * 保存Node，调用前已经生成uuid并检查冲突
+     */
+    private void storeNode(final NodeEntity nodeEntity) {
+        this.reserveNode(nodeEntity);
+        final String logicId = nodeEntity.getLogicId();
+        final long location = this.append(layout.encode(nodeEntity));
+        nodeLocations.put(logicId, location);
+        final String uuid = nodeEntity.getString(SdEntity.ATTR_UUID);
+        if (uuid != null) {
+            nodeUUIDs.put(uuid, nodeLocations.keyRef(logicId));
+        }
+        this.relocate(nodeEntity, logicId, location);
+    }
+
+    /**
+     * 从索引中移除Node
+     *
+     * @return 被移除的Node的副本
+     */
+    private NodeEntity detachNode(final String logicId) {
+        final long location = nodeLocations.remove(logicId);
+        if (location == SdOffHeapIndex.NO_VALUE) {
+            return null;
+        }
+        final NodeEntity removedNode = this.read(location, new NodeEntity());
+        segments.release(location);
+        final String uuid = removedNode.getString(SdEntity.ATTR_UUID);
+        if (uuid != null) {
+            nodeUUIDs.remove(uuid);
+        }
+        return removedNode;
+    }
+
+    /**
+     * 保存Event并建立关联，调用前已经生成uuid并检查冲突
+     */
+    private void storeEvent(final EventEntity eventEntity) {
+        final SdOffHeapIndex logicIds = this.reserveEvent(eventEntity);
+        final String logicId = eventEntity.getLogicId();
+        final long location = this.append(layout.encode(eventEntity));
+        eventLocations.put(logicId, location);
+        final long eventRef = eventLocations.keyRef(logicId);
+        final String uuid = eventEntity.getString(SdEntity.ATTR_UUID);
+        if (uuid != null) {
+            eventUUIDs.put(uuid, eventRef);
+        }
+        logicIds.put(logicId, eventRef);
+        final String leftLogicId = eventEntity.leftLogicId();
+        final String rightLogicId = eventEntity.rightLogicId();
+        nodeEvents.add(leftLogicId, eventRef);
+        if (!leftLogicId.equals(rightLogicId)) {
+            nodeEvents.add(rightLogicId, eventRef);
+        }
+        this.relocate(eventEntity, logicId, location);
+    }
+
+    /**
+     * 从索引中移除Event和关联
+     *
+     * @return 被移除的Event的副本
+     */
+    private EventEntity detachEvent(final String logicId) {
+        final long eventRef = eventLocations.keyRef(logicId);
+        if (eventRef == SdOffHeapIndex.NO_VALUE) {
+            return null;
+        }
+        final long location = eventLocations.remove(logicId);
+        final EventEntity removedEvent = this.read(location, new EventEntity());
+        segments.release(location);
+        final String uuid = removedEvent.getString(SdEntity.ATTR_UUID);
+        if (uuid != null) {
+            eventUUIDs.remove(uuid);
+        }
+        final SdOffHeapIndex logicIds = eventNames.get(removedEvent.get__Sd());
+        if (logicIds != null) {
+            logicIds.remove(logicId);
+        }
+        nodeEvents.remove(removedEvent.leftLogicId(), eventRef);
+        nodeEvents.remove(removedEvent.rightLogicId(), eventRef);
+        return removedEvent;
+    }
+
+    /**
+     * 添加的实例是当前数据集的视图时，指向新记录，之后对它的修改继续写回
+     */
+    private void relocate(final SdEntity sdEntity, final String logicId, final long location) {
+        final Map<String, Object> innerMap = sdEntity.getInnerMap();
+        if (innerMap instanceof SdEntityView && ((SdEntityView) innerMap).owner() == this) {
+            ((SdEntityView) innerMap).relocate(logicId, this.version(location), this.content(location));
+        }
+    }
+
+    private <T extends SdEntity> void rewriteAll(
+            final SdOffHeapIndex locations,
+            final Supplier<T> factory,
+            final Consumer<T> action
+    ) {
+        locations.forEach((logicId, location) -> {
+            final T sdEntity = this.read(location, factory.get());
+            action.accept(sdEntity);
+            segments.release(location);
+            locations.put(logicId, this.append(layout.encode(sdEntity)));
+        });
+    }
+
+    private NodeEntity nodeView(final String logicId) {
+        final long location = nodeLocations.get(logicId);
+        return location == SdOffHeapIndex.NO_VALUE ? null : this.nodeView(logicId, location);
+    }
+
+    private NodeEntity nodeView(final String logicId, final long location) {
+        return this.bind(NodeEntity.wrap(new SdEntityView(this, true, logicId, this.version(location), this.content(location))));
+    }
+
+    private EventEntity eventView(final String logicId) {
+        final long location = eventLocations.get(logicId);
+        return location == SdOffHeapIndex.NO_VALUE ? null : this.eventView(logicId, location);
+    }
+
+    private EventEntity eventView(final String logicId, final long location) {
+        return this.bind(EventEntity.wrap(new SdEntityView(this, false, logicId, this.version(location), this.content(location))));
+    }
+
+    /**
+     * 读取记录到堆内存中的实例
+     */
+    private <T extends SdEntity> T read(final long location, final T sdEntity) {
+        return this.bind(layout.decode(this.content(location), sdEntity));
+    }
+
+    private <T extends SdEntity> T bind(final T sdEntity) {
+        if (this.registry != null) {
+            sdEntity.setRegistry(this.registry);
+        }
+        return sdEntity;
+    }
+}
@@ -0,0 +1,23 @@
+package info.ralab.uxdf.persistence;
+
+/**
+ * {@link DurableSdData}写前日志的磁盘同步策略。
+ * <p>
+ * 所有策略下，变更返回前日志都已经写入操作系统，进程异常退出不会丢失已返回的变更；
+ * 策略只决定断电等情况下可能丢失的范围。
+ * </p>
+ */
+public enum SdDataFsyncPolicy {
+    /**
+     * 变更返回前强制写入磁盘。并发的变更合并为一次写入和一次强制同步。
+     */
+    ALWAYS,
+    /**
+     * 按固定间隔强制写入磁盘，断电时最多丢失一个间隔内的变更。
+     */
+    INTERVAL,
+    /**
+     * 不主动强制写入磁盘，由操作系统决定。
+     */
+    NONE
+}
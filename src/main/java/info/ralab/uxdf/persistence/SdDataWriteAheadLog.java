@@ -0,0 +1,419 @@
+package info.ralab.uxdf.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * {@link DurableSdData}和{@link info.ralab.uxdf.service.MemoryStorageService}共用的写前日志。
+ * <p>
+ * 每条记录为：内容长度(4字节)、CRC32(4字节)、日志序号(8字节)和内容，CRC32覆盖日志序号和内容。
+ * 打开时按顺序读取记录，遇到不完整或校验失败的记录时认为之后的内容未提交，截断文件；
+ * 校验失败的记录之后还有校验通过的记录时视为日志损坏，不截断并抛出异常。
+ * </p>
+ * <p>
+ * 追加只写入内存缓冲，提交时由第一个等待的线程把缓冲中所有记录一次写入文件，
+ * 按{@link SdDataFsyncPolicy}决定是否强制同步，其它线程等待这一次写入完成（group commit）。
+ * 写入失败时截断本次写入的部分内容，之后不能继续追加。
+ * </p>
+ */
+@Slf4j
+public final class SdDataWriteAheadLog implements Closeable {
+
+    private static final int HEADER_LENGTH = 16;
+    private static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+
+    /**
+     * 按顺序接收日志记录
+     */
+    public interface RecordConsumer {
+        void accept(long lsn, byte[] payload) throws IOException;
+    }
+
+    private final File file;
+    private final SdDataFsyncPolicy policy;
+    private final long intervalNanos;
+    private final FileChannel channel;
+    private final Object monitor = new Object();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final ScheduledExecutorService syncExecutor;
+
+    private long lastLsn;
+    private long writtenLsn;
+    private long durableLsn;
+    private long length;
+    private long lastForceTime = System.nanoTime();
+    private boolean flushing;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * 打开日志，把序号大于fromLsn的记录按顺序交给consumer，之后等待追加
+     *
+     * @param file           日志文件
+     * @param policy         磁盘同步策略
+     * @param intervalMillis {@link SdDataFsyncPolicy#INTERVAL}的同步间隔，单位毫秒
+     * @param fromLsn        已经包含在快照中的最后序号
+     * @param consumer       记录接收者
+     * @throws IOException IO异常
+     */
+    public SdDataWriteAheadLog(
+            final File file,
+            final SdDataFsyncPolicy policy,
+            final long intervalMillis,
+            final long fromLsn,
+            final RecordConsumer consumer
+    ) throws IOException {
+        this.file = file;
+        this.policy = policy;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.lastLsn = fromLsn;
+
+        final long validLength = read(file, fromLsn, (lsn, payload) -> {
+            consumer.accept(lsn, payload);
+            this.lastLsn = lsn;
+        });
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() > validLength) {
+            log.warn("截断日志[{}]中未完成的记录，长度[{}]->[{}]。", file, channel.size(), validLength);
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+        this.length = validLength;
+        this.writtenLsn = this.lastLsn;
+        this.durableLsn = this.lastLsn;
+
+        if (policy == SdDataFsyncPolicy.INTERVAL) {
+            this.syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "uxdf-sddata-wal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncExecutor.scheduleWithFixedDelay(this::syncQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.syncExecutor = null;
+        }
+    }
+
+    /**
+     * 读取日志文件，把序号大于fromLsn的记录按顺序交给consumer，返回有效内容的长度
+     *
+     * @param file     日志文件
+     * @param fromLsn  已经包含在快照中的最后序号
+     * @param consumer 记录接收者
+     * @return 有效内容的长度，文件不存在时返回0
+     * @throws IOException IO异常，或校验失败的记录之后还有已提交的记录
+     */
+    public static long read(final File file, final long fromLsn, final RecordConsumer consumer) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        long validLength = 0;
+        long lastLsn = fromLsn;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                final int payloadLength;
+                final int checksum;
+                final long lsn;
+                final byte[] payload;
+                try {
+                    payloadLength = input.readInt();
+                    if (payloadLength < 0 || payloadLength > MAX_RECORD_LENGTH) {
+                        log.warn("日志[{}]在位置[{}]的记录长度[{}]无效，忽略之后的内容。", file, validLength, payloadLength);
+                        break;
+                    }
+                    checksum = input.readInt();
+                    lsn = input.readLong();
+                    payload = new byte[payloadLength];
+                    input.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (checksum != checksum(lsn, payload)) {
+                    if (hasCommittedRecord(input, lastLsn)) {
+                        throw new IOException(String.format(
+                                "日志[%s]在位置[%s]的记录校验失败，之后仍有已提交的记录。", file, validLength
+                        ));
+                    }
+                    log.warn("日志[{}]在位置[{}]的记录校验失败，忽略之后的内容。", file, validLength);
+                    break;
+                }
+                validLength += HEADER_LENGTH + payloadLength;
+                if (lsn <= lastLsn) {
+                    continue;
+                }
+                consumer.accept(lsn, payload);
+                lastLsn = lsn;
+            }
+        }
+        return validLength;
+    }
+
+    /**
+     * 校验失败的记录之后是否紧跟一条校验通过且序号更大的记录。
+     * 写入中断只会留下末尾的不完整内容，此时截断会丢失已经提交的记录。
+     */
+    private static boolean hasCommittedRecord(final DataInputStream input, final long lastLsn) throws IOException {
+        try {
+            final int payloadLength = input.readInt();
+            if (payloadLength < 0 || payloadLength > MAX_RECORD_LENGTH) {
+                return false;
+            }
+            final int checksum = input.readInt();
+            final long lsn = input.readLong();
+            final byte[] payload = new byte[payloadLength];
+            input.readFully(payload);
+            return lsn > lastLsn && checksum == checksum(lsn, payload);
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 追加记录到缓冲，需要调用{@link #commit(long)}写入文件
+     *
+     * @param payload 记录内容
+     * @return 日志序号
+     * @throws IOException 日志已关闭或之前写入失败
+     */
+    public long append(final byte[] payload) throws IOException {
+        synchronized (monitor) {
+            this.checkState();
+            final long lsn = ++this.lastLsn;
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(payload.length).putInt(checksum(lsn, payload)).putLong(lsn);
+            pending.write(header.array());
+            pending.write(payload);
+            return lsn;
+        }
+    }
+
+    /**
+     * 等待记录按同步策略写入完成
+     *
+     * @param lsn 日志序号
+     * @throws IOException IO异常
+     */
+    public void commit(final long lsn) throws IOException {
+        this.flush(lsn, false);
+    }
+
+    /**
+     * 把所有已追加的记录写入文件并强制同步
+     *
+     * @throws IOException IO异常
+     */
+    public void sync() throws IOException {
+        final long lsn;
+        synchronized (monitor) {
+            lsn = this.lastLsn;
+        }
+        this.flush(lsn, true);
+    }
+
+    /**
+     * 快照已经包含所有记录后清空日志，日志序号继续递增
+     *
+     * @throws IOException IO异常
+     */
+    public void truncate() throws IOException {
+        synchronized (monitor) {
+            this.awaitFlushing();
+            this.checkState();
+            pending.reset();
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(false);
+            this.length = 0;
+            this.writtenLsn = this.lastLsn;
+            this.durableLsn = this.lastLsn;
+            this.lastForceTime = System.nanoTime();
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * 检查是否可以继续追加
+     *
+     * @throws IOException 日志已关闭或之前写入失败
+     */
+    public void checkWritable() throws IOException {
+        synchronized (monitor) {
+            this.checkState();
+        }
+    }
+
+    /**
+     * @return 最后追加的日志序号
+     */
+    public long getLastLsn() {
+        synchronized (monitor) {
+            return this.lastLsn;
+        }
+    }
+
+    /**
+     * @return 已写入文件的长度
+     */
+    public long getLength() {
+        synchronized (monitor) {
+            return this.length;
+        }
+    }
+
+    private void flush(final long lsn, final boolean forceRequired) throws IOException {
+        final byte[] batch;
+        final long batchLsn;
+        final long position;
+        final boolean force;
+        synchronized (monitor) {
+            while (true) {
+                this.checkState();
+                if (forceRequired ? durableLsn >= lsn : this.isCommitted(lsn)) {
+                    return;
+                }
+                if (!flushing) {
+                    break;
+                }
+                this.awaitMonitor();
+            }
+            // 成为本次写入的执行线程，带走缓冲中所有记录
+            flushing = true;
+            batch = pending.toByteArray();
+            pending.reset();
+            batchLsn = this.lastLsn;
+            position = this.length;
+            force = forceRequired
+                    || policy == SdDataFsyncPolicy.ALWAYS
+                    || policy == SdDataFsyncPolicy.INTERVAL && System.nanoTime() - lastForceTime >= intervalNanos;
+        }
+
+        IOException error = null;
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(batch);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (force) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            error = e;
+            this.truncateQuietly(position, e);
+        }
+
+        synchronized (monitor) {
+            flushing = false;
+            if (error != null) {
+                this.failure = error;
+            } else {
+                this.length += batch.length;
+                this.writtenLsn = batchLsn;
+                if (force) {
+                    this.durableLsn = batchLsn;
+                    this.lastForceTime = System.nanoTime();
+                }
+            }
+            monitor.notifyAll();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * 截断写入失败的部分内容，使文件中只包含完整写入的批次
+     */
+    private void truncateQuietly(final long position, final IOException cause) {
+        try {
+            channel.truncate(position);
+            channel.position(position);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            log.error(String.format("截断日志[%s]到位置[%s]失败。", file, position), e);
+        }
+    }
+
+    private boolean isCommitted(final long lsn) {
+        return (policy == SdDataFsyncPolicy.ALWAYS ? durableLsn : writtenLsn) >= lsn;
+    }
+
+    private void awaitFlushing() throws IOException {
+        while (flushing) {
+            this.awaitMonitor();
+        }
+    }
+
+    private void awaitMonitor() throws IOException {
+        try {
+            monitor.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待日志写入时被中断。");
+        }
+    }
+
+    private void checkState() throws IOException {
+        if (failure != null) {
+            throw new IOException(String.format("日志[%s]之前写入失败，不能继续写入。", file), failure);
+        }
+        if (closed) {
+            throw new IOException(String.format("日志[%s]已经关闭。", file));
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            this.sync();
+        } catch (IOException e) {
+            log.error(String.format("日志[%s]定时同步失败。", file), e);
+        }
+    }
+
+    private static int checksum(final long lsn, final byte[] payload) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(ByteBuffer.allocate(Long.BYTES).putLong(lsn).array());
+        crc32.update(payload);
+        return (int) crc32.getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (syncExecutor != null) {
+            syncExecutor.shutdownNow();
+        }
+        final boolean failed;
+        synchronized (monitor) {
+            if (closed) {
+                return;
+            }
+            failed = failure != null;
+        }
+        try {
+            if (!failed) {
+                this.sync();
+            }
+        } finally {
+            synchronized (monitor) {
+                this.awaitFlushing();
+                closed = true;
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package info.ralab.uxdf.persistence;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import info.ralab.uxdf.UXDFException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * {@link info.ralab.uxdf.instance.SdEntity}的二进制编码。
+ * <p>
+ * 实例编码为属性数量和依次排列的属性名、属性值。属性值以一个字节的类型开头，
+ * 整数使用zigzag变长编码，字符串使用变长长度加UTF-8内容。
+ * 解码后属性值的类型和编码前一致，集合解码为{@link JSONArray}，Map解码为{@link JSONObject}，
+ * 其它不支持的类型按JSON字符串编码，解码为fastjson解析结果。
+ * </p>
+ */
+public final class SdEntityCodec {
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_FLOAT = 5;
+    private static final byte TYPE_TRUE = 6;
+    private static final byte TYPE_FALSE = 7;
+    private static final byte TYPE_DATE = 8;
+    private static final byte TYPE_DECIMAL = 9;
+    private static final byte TYPE_BIG_INTEGER = 10;
+    private static final byte TYPE_OBJECT = 11;
+    private static final byte TYPE_ARRAY = 12;
+    private static final byte TYPE_BYTES = 13;
+    private static final byte TYPE_SHORT = 14;
+    private static final byte TYPE_BYTE = 15;
+    private static final byte TYPE_JSON = 16;
+
+    private SdEntityCodec() {
+    }
+
+    /**
+     * 编码实例的所有属性
+     *
+     * @param output 输出
+     * @param entity 实例
+     * @throws IOException IO异常
+     */
+    public static void writeEntity(final DataOutput output, final Map<String, Object> entity) throws IOException {
+        writeVarInt(output, entity.size());
+        for (Map.Entry<String, Object> entry : entity.entrySet()) {
+            writeString(output, entry.getKey());
+            writeValue(output, entry.getValue());
+        }
+    }
+
+    /**
+     * 解码实例的所有属性，放入目标实例
+     *
+     * @param input  输入
+     * @param target 目标实例
+     * @param <T>    实例类型
+     * @return 目标实例
+     * @throws IOException IO异常
+     */
+    public static <T extends Map<String, Object>> T readEntity(final DataInput input, final T target) throws IOException {
+        final int size = readVarInt(input);
+        for (int i = 0; i < size; i++) {
+            final String key = readString(input);
+            target.put(key, readValue(input));
+        }
+        return target;
+    }
+
+    /**
+     * 编码属性值
+     *
+     * @param output 输出
+     * @param value  属性值
+     * @throws IOException IO异常
+     */
+    @SuppressWarnings("unchecked")
+    public static void writeValue(final DataOutput output, final Object value) throws IOException {
+        if (value == null) {
+            output.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            output.writeByte(TYPE_STRING);
+            writeString(output, (String) value);
+        } else if (value instanceof Integer) {
+            output.writeByte(TYPE_INTEGER);
+            writeVarLong(output, (Integer) value);
+        } else if (value instanceof Long) {
+            output.writeByte(TYPE_LONG);
+            writeVarLong(output, (Long) value);
+        } else if (value instanceof Double) {
+            output.writeByte(TYPE_DOUBLE);
+            output.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            output.writeByte(TYPE_FLOAT);
+            output.writeFloat((Float) value);
+        } else if (value instanceof Boolean) {
+            output.writeByte((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+        } else if (value instanceof Date) {
+            output.writeByte(TYPE_DATE);
+            writeVarLong(output, ((Date) value).getTime());
+        } else if (value instanceof BigDecimal) {
+            output.writeByte(TYPE_DECIMAL);
+            writeString(output, value.toString());
+        } else if (value instanceof BigInteger) {
+            output.writeByte(TYPE_BIG_INTEGER);
+            writeString(output, value.toString());
+        } else if (value instanceof Short) {
+            output.writeByte(TYPE_SHORT);
+            writeVarLong(output, (Short) value);
+        } else if (value instanceof Byte) {
+            output.writeByte(TYPE_BYTE);
+            output.writeByte((Byte) value);
+        } else if (value instanceof byte[]) {
+            output.writeByte(TYPE_BYTES);
+            writeVarInt(output, ((byte[]) value).length);
+            output.write((byte[]) value);
+        } else if (value instanceof Map && isStringKeyed((Map<?, ?>) value)) {
+            output.writeByte(TYPE_OBJECT);
+            writeEntity(output, (Map<String, Object>) value);
+        } else if (value instanceof Collection) {
+            output.writeByte(TYPE_ARRAY);
+            writeVarInt(output, ((Collection<?>) value).size());
+            for (Object item : (Collection<?>) value) {
+                writeValue(output, item);
+            }
+        } else if (value.getClass().isArray()) {
+            output.writeByte(TYPE_ARRAY);
+            final int length = Array.getLength(value);
+            writeVarInt(output, length);
+            for (int i = 0; i < length; i++) {
+                writeValue(output, Array.get(value, i));
+            }
+        } else if (value instanceof Character || value instanceof Enum) {
+            output.writeByte(TYPE_STRING);
+            writeString(output, value.toString());
+        } else {
+            output.writeByte(TYPE_JSON);
+            writeString(output, JSON.toJSONString(value));
+        }
+    }
+
+    /**
+     * 解码属性值
+     *
+     * @param input 输入
+     * @return 属性值
+     * @throws IOException IO异常
+     */
+    public static Object readValue(final DataInput input) throws IOException {
+        final byte type = input.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readString(input);
+            case TYPE_INTEGER:
+                return (int) readVarLong(input);
+            case TYPE_LONG:
+                return readVarLong(input);
+            case TYPE_DOUBLE:
+                return input.readDouble();
+            case TYPE_FLOAT:
+                return input.readFloat();
+            case TYPE_TRUE:
+                return Boolean.TRUE;
+            case TYPE_FALSE:
+                return Boolean.FALSE;
+            case TYPE_DATE:
+                return new Date(readVarLong(input));
+            case TYPE_DECIMAL:
+                return new BigDecimal(readString(input));
+            case TYPE_BIG_INTEGER:
+                return new BigInteger(readString(input));
+            case TYPE_SHORT:
+                return (short) readVarLong(input);
+            case TYPE_BYTE:
+                return input.readByte();
+            case TYPE_BYTES: {
+                final byte[] bytes = new byte[readVarInt(input)];
+                input.readFully(bytes);
+                return bytes;
+            }
+            case TYPE_OBJECT:
+                return readEntity(input, new JSONObject());
+            case TYPE_ARRAY: {
+                final int size = readVarInt(input);
+                final JSONArray array = new JSONArray(size);
+                for (int i = 0; i < size; i++) {
+                    array.add(readValue(input));
+                }
+                return array;
+            }
+            case TYPE_JSON:
+                return JSON.parse(readString(input));
+            default:
+                throw new UXDFException(String.format("无法识别的属性值类型[%s]。", type));
+        }
+    }
+
+    /**
+     * 编码字符串，NULL和空字符串可以区分
+     *
+     * @param output 输出
+     * @param value  字符串
+     * @throws IOException IO异常
+     */
+    public static void writeString(final DataOutput output, final String value) throws IOException {
+        if (value == null) {
+            writeVarInt(output, 0);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(output, bytes.length + 1);
+        output.write(bytes);
+    }
+
+    /**
+     * 解码字符串
+     *
+     * @param input 输入
+     * @return 字符串
+     * @throws IOException IO异常
+     */
+    public static String readString(final DataInput input) throws IOException {
+        final int length = readVarInt(input);
+        if (length == 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length - 1];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 编码非负整数，每个字节使用低7位
+     *
+     * @param output 输出
+     * @param value  非负整数
+     * @throws IOException IO异常
+     */
+    public static void writeVarInt(final DataOutput output, final int value) throws IOException {
+        if (value < 0) {
+            throw new UXDFException(String.format("变长整数[%s]不能小于0。", value));
+        }
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            output.writeByte((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        output.writeByte(remaining);
+    }
+
+    /**
+     * 解码非负整数
+     *
+     * @param input 输入
+     * @return 非负整数
+     * @throws IOException IO异常
+     */
+    public static int readVarInt(final DataInput input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final byte read = input.readByte();
+            value |= (read & 0x7F) << shift;
+            if ((read & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new UXDFException("变长整数格式错误。");
+    }
+
+    /**
+     * 使用zigzag编码有符号长整数
+     *
+     * @param output 输出
+     * @param value  长整数
+     * @throws IOException IO异常
+     */
+    public static void writeVarLong(final DataOutput output, final long value) throws IOException {
+        long remaining = (value << 1) ^ (value >> 63);
+        while ((remaining & ~0x7FL) != 0) {
+            output.writeByte((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        output.writeByte((int) remaining);
+    }
+
+    /**
+     * 解码zigzag编码的有符号长整数
+     *
+     * @param input 输入
+     * @return 长整数
+     * @throws IOException IO异常
+     */
+    public static long readVarLong(final DataInput input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            final byte read = input.readByte();
+            value |= (long) (read & 0x7F) << shift;
+            if ((read & 0x80) == 0) {
+                return (value >>> 1) ^ -(value & 1);
+            }
+        }
+        throw new UXDFException("变长整数格式错误。");
+    }
+
+    private static boolean isStringKeyed(final Map<?, ?> map) {
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,193 @@
+package info.ralab.uxdf.persistence;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFRegistry;
+import info.ralab.uxdf.definition.SdDefinition;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.SdEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按定义编排的实例记录格式。
+ * <p>
+ * 属性名不写入记录，而是使用属性字典中的序号。字典预先包含系统属性和注册表中所有定义的属性，
+ * 定义之外的属性在第一次写入时加入字典。
+ * 记录为：属性数量，然后每个属性依次为属性序号、值长度和值，数字都是变长整数，
+ * 值使用{@link SdEntityCodec#writeValue}编码。
+ * 值长度使读取单个属性时可以跳过其它属性的值，不需要解码整个实例。
+ * </p>
+ * <p>
+ * 编码只能在一个线程中进行，解码和属性字典是线程安全的。
+ * </p>
+ */
+final class SdEntityLayout {
+
+    /**
+     * 记录中不存在属性
+     */
+    static final Object ABSENT = new Object();
+
+    private static final String[] SYSTEM_KEYS = {
+            SdEntity.ATTR_ID,
+            SdEntity.ATTR_UUID,
+            SdEntity.ATTR_SD,
+            SdEntity.ATTR_CREATE_TIME,
+            SdEntity.ATTR_UPDATE_TIME,
+            SdEntity.DYNA_OPERATE,
+            SdEntity.DYNA_OPERATE_DELETE_ENFORCE,
+            SdEntity.DYNA_OPERATE_CREATE_ORIGINAL_ID,
+            SdEntity.DYNA_AUTHORITY,
+            SdEntity.DYNA_SYNC_LOCK,
+            EventEntity.ATTR_LEFT,
+            EventEntity.ATTR_LEFT_SD,
+            EventEntity.ATTR_RIGHT,
+            EventEntity.ATTR_RIGHT_SD,
+            EventEntity.ATTR_IS_MEMBER
+    };
+
+    private final Map<String, Integer> keyIds = Maps.newHashMap();
+    private final List<String> keys = Lists.newArrayList();
+
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream recordOutput = new DataOutputStream(recordBuffer);
+    private final ByteArrayOutputStream valueBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream valueOutput = new DataOutputStream(valueBuffer);
+
+    /**
+     * @param registry 定义注册表，所有定义的属性预先加入字典
+     */
+    SdEntityLayout(final UXDFRegistry registry) {
+        for (String key : SYSTEM_KEYS) {
+            this.keyId(key);
+        }
+        registry.getNodes().forEach(this::addDefinition);
+        registry.getEvents().values().forEach(lefts -> lefts.values().forEach(
+                rights -> rights.values().forEach(this::addDefinition)
+        ));
+    }
+
+    private void addDefinition(final SdDefinition sdDefinition) {
+        if (sdDefinition.getProp() != null) {
+            sdDefinition.getProp().keySet().forEach(this::keyId);
+        }
+    }
+
+    /**
+     * @return 字典中的属性数量
+     */
+    synchronized int keyCount() {
+        return keys.size();
+    }
+
+    private synchronized int keyId(final String key) {
+        return keyIds.computeIfAbsent(key, k -> {
+            keys.add(k);
+            return keys.size() - 1;
+        });
+    }
+
+    private synchronized int findKeyId(final String key) {
+        return keyIds.getOrDefault(key, -1);
+    }
+
+    private synchronized String key(final int keyId) {
+        if (keyId < 0 || keyId >= keys.size()) {
+            throw new UXDFException(String.format("属性序号[%s]不在字典中。", keyId));
+        }
+        return keys.get(keyId);
+    }
+
+    /**
+     * 编码实例
+     *
+     * @param entity 实例属性
+     * @return 记录内容
+     */
+    byte[] encode(final Map<String, Object> entity) {
+        recordBuffer.reset();
+        try {
+            SdEntityCodec.writeVarInt(recordOutput, entity.size());
+            for (Map.Entry<String, Object> entry : entity.entrySet()) {
+                valueBuffer.reset();
+                SdEntityCodec.writeValue(valueOutput, entry.getValue());
+                SdEntityCodec.writeVarInt(recordOutput, this.keyId(entry.getKey()));
+                SdEntityCodec.writeVarInt(recordOutput, valueBuffer.size());
+                valueBuffer.writeTo(recordOutput);
+            }
+        } catch (IOException e) {
+            throw new UXDFException(e);
+        }
+        return recordBuffer.toByteArray();
+    }
+
+    /**
+     * 解码记录中的所有属性
+     *
+     * @param record 记录内容，不改变位置
+     * @param target 接收属性
+     * @return target
+     */
+    <T extends Map<String, Object>> T decode(final ByteBuffer record, final T target) {
+        final ByteBufferDataInput input = new ByteBufferDataInput(record.duplicate());
+        try {
+            final int count = SdEntityCodec.readVarInt(input);
+            for (int i = 0; i < count; i++) {
+                final String key = this.key(SdEntityCodec.readVarInt(input));
+                SdEntityCodec.readVarInt(input);
+                target.put(key, SdEntityCodec.readValue(input));
+            }
+        } catch (IOException e) {
+            throw new UXDFException(e);
+        }
+        return target;
+    }
+
+    /**
+     * 读取记录中的单个属性，跳过其它属性的值
+     *
+     * @param record 记录内容，不改变位置
+     * @param key    属性名
+     * @return 属性值，不存在时返回{@link #ABSENT}
+     */
+    Object find(final ByteBuffer record, final String key) {
+        final int keyId = this.findKeyId(key);
+        if (keyId < 0) {
+            return ABSENT;
+        }
+        final ByteBufferDataInput input = new ByteBufferDataInput(record.duplicate());
+        try {
+            final int count = SdEntityCodec.readVarInt(input);
+            for (int i = 0; i < count; i++) {
+                final int id = SdEntityCodec.readVarInt(input);
+                final int length = SdEntityCodec.readVarInt(input);
+                if (id == keyId) {
+                    return SdEntityCodec.readValue(input);
+                }
+                input.skipBytes(length);
+            }
+        } catch (IOException e) {
+            throw new UXDFException(e);
+        }
+        return ABSENT;
+    }
+
+    /**
+     * @param record 记录内容，不改变位置
+     * @return 记录中的属性数量
+     */
+    int count(final ByteBuffer record) {
+        try {
+            return SdEntityCodec.readVarInt(new ByteBufferDataInput(record.duplicate()));
+        } catch (IOException e) {
+            throw new UXDFException(e);
+        }
+    }
+}
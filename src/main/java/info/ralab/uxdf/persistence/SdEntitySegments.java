@@ -0,0 +1,211 @@
+package info.ralab.uxdf.persistence;
+
+import com.google.common.collect.Lists;
+import info.ralab.uxdf.UXDFException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * 只追加的段，保存编码后的实例内容。
+ * <p>
+ * 指定目录时每个段是一个内存映射文件，否则是堆外的直接内存。
+ * 记录为：内容长度(4字节)和内容，记录不跨段。
+ * 位置的高24位是段序号，低40位是段内偏移。
+ * 记录写入后不再修改，被替换或删除的记录只计入{@link #getGarbageBytes()}，
+ * 由使用者把仍在使用的记录复制到新的段后关闭当前段来回收空间。
+ * 段文件是临时文件，关闭时删除。
+ * </p>
+ */
+@Slf4j
+final class SdEntitySegments implements Closeable {
+
+    private static final int RECORD_HEADER = Integer.BYTES;
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private final File directory;
+    private final String name;
+    private final int segmentSize;
+    private final List<File> files = Lists.newArrayList();
+    private final List<ByteBuffer> buffers = Lists.newArrayList();
+    private final List<Integer> limits = Lists.newArrayList();
+
+    /**
+     * 当前段的写入位置
+     */
+    private int position;
+
+    /**
+     * 已写入的总字节数
+     */
+    @Getter
+    private long writtenBytes;
+
+    /**
+     * 已被替换或删除的记录字节数
+     */
+    @Getter
+    private long garbageBytes;
+
+    /**
+     * @param directory   段文件目录，为NULL时使用直接内存
+     * @param segmentSize 段大小，单位字节
+     */
+    SdEntitySegments(final File directory, final int segmentSize) {
+        this(directory, "segment", segmentSize);
+    }
+
+    /**
+     * @param directory   段文件目录，为NULL时使用直接内存
+     * @param name        段文件名称前缀，同一目录中的多组段使用不同的前缀
+     * @param segmentSize 段大小，单位字节
+     */
+    SdEntitySegments(final File directory, final String name, final int segmentSize) {
+        this.directory = directory;
+        this.name = name;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * 追加记录
+     *
+     * @param content 记录内容
+     * @return 记录位置
+     */
+    long append(final byte[] content) {
+        final int recordLength = RECORD_HEADER + content.length;
+        if (buffers.isEmpty() || position + recordLength > buffers.get(buffers.size() - 1).capacity()) {
+            this.newSegment(Math.max(segmentSize, recordLength));
+        }
+        final int index = buffers.size() - 1;
+        final ByteBuffer buffer = buffers.get(index).duplicate();
+        buffer.position(position);
+        buffer.putInt(content.length);
+        buffer.put(content);
+        final long location = ((long) index << OFFSET_BITS) | position;
+        position += recordLength;
+        writtenBytes += recordLength;
+        return location;
+    }
+
+    /**
+     * 读取记录
+     *
+     * @param location 记录位置
+     * @return 记录内容
+     */
+    byte[] read(final long location) {
+        final ByteBuffer buffer = this.record(location);
+        final byte[] content = new byte[buffer.remaining()];
+        buffer.get(content);
+        return content;
+    }
+
+    /**
+     * 判断记录内容是否和给定内容相同
+     *
+     * @param location 记录位置
+     * @param content  内容
+     * @return 是否相同
+     */
+    boolean matches(final long location, final byte[] content) {
+        return this.record(location).equals(ByteBuffer.wrap(content));
+    }
+
+    /**
+     * 标记记录不再使用
+     *
+     * @param location 记录位置
+     */
+    void release(final long location) {
+        garbageBytes += RECORD_HEADER + this.record(location).remaining();
+    }
+
+    /**
+     * 获取记录内容的只读视图，从内容开始到内容结束
+     *
+     * @param location 记录位置
+     * @return 记录内容
+     */
+    ByteBuffer record(final long location) {
+        final ByteBuffer buffer = buffers.get((int) (location >>> OFFSET_BITS)).duplicate();
+        final int offset = (int) (location & OFFSET_MASK);
+        final int length = buffer.getInt(offset);
+        buffer.position(offset + RECORD_HEADER);
+        buffer.limit(offset + RECORD_HEADER + length);
+        return buffer.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * 按写入顺序遍历所有记录位置，包括已标记不再使用的记录
+     *
+     * @param consumer 接收记录位置
+     */
+    void forEachRecord(final LongConsumer consumer) {
+        for (int index = 0; index < buffers.size(); index++) {
+            final ByteBuffer buffer = buffers.get(index);
+            final int limit = index == buffers.size() - 1 ? position : limits.get(index);
+            int offset = 0;
+            while (offset < limit) {
+                consumer.accept(((long) index << OFFSET_BITS) | offset);
+                offset += RECORD_HEADER + buffer.getInt(offset);
+            }
+        }
+    }
+
+    private void newSegment(final int size) {
+        if (!buffers.isEmpty()) {
+            limits.add(position);
+        }
+        if (directory == null) {
+            buffers.add(ByteBuffer.allocateDirect(size));
+            position = 0;
+            return;
+        }
+        final File file = new File(directory, String.format("%s-%06d.dat", name, buffers.size()));
+        try (FileChannel channel = FileChannel.open(
+                file.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            // 映射在通道关闭后仍然有效
+            buffers.add(channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            files.add(file);
+            position = 0;
+        } catch (IOException e) {
+            throw new UXDFException(String.format("创建段文件[%s]失败。", file), e);
+        }
+    }
+
+    /**
+     * 删除所有段文件
+     */
+    @Override
+    public void close() {
+        buffers.clear();
+        limits.clear();
+        writtenBytes = 0;
+        garbageBytes = 0;
+        for (File file : files) {
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                log.warn("删除段文件[{}]失败。", file, e);
+            }
+        }
+        files.clear();
+        position = 0;
+    }
+}
@@ -0,0 +1,179 @@
+package info.ralab.uxdf.persistence;
+
+import com.google.common.collect.Maps;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 堆外记录的属性视图，作为{@link OffHeapSdData}返回的实例的属性存储。
+ * <p>
+ * 读取单个属性时直接从记录中解码，不解码其它属性。
+ * 修改属性时先把记录解码到堆内存，之后的修改都在堆内存中进行，
+ * 下一次调用{@link OffHeapSdData}的方法时才写回一次。
+ * 记录已经被其它修改替换或被移除时不再写回。
+ * </p>
+ * 非线程安全。
+ */
+final class SdEntityView extends AbstractMap<String, Object> {
+
+    private final OffHeapSdData owner;
+    private final boolean node;
+    private String logicId;
+    /**
+     * 视图对应记录的版本，记录被替换后版本不同
+     */
+    private long version;
+    private ByteBuffer record;
+    /**
+     * 是否有未写回的修改
+     */
+    private boolean dirty;
+    /**
+     * 修改后解码到堆内存的属性
+     */
+    private Map<String, Object> properties;
+
+    SdEntityView(
+            final OffHeapSdData owner,
+            final boolean node,
+            final String logicId,
+            final long version,
+            final ByteBuffer record
+    ) {
+        this.owner = owner;
+        this.node = node;
+        this.logicId = logicId;
+        this.version = version;
+        this.record = record;
+    }
+
+    OffHeapSdData owner() {
+        return owner;
+    }
+
+    boolean isNode() {
+        return node;
+    }
+
+    String logicId() {
+        return logicId;
+    }
+
+    long version() {
+        return version;
+    }
+
+    /**
+     * 记录被重新写入后指向新记录
+     */
+    void relocate(final String logicId, final long version, final ByteBuffer record) {
+        this.logicId = logicId;
+        this.version = version;
+        this.record = record;
+    }
+
+    /**
+     * 标记有未写回的修改
+     *
+     * @return 之前是否没有未写回的修改
+     */
+    boolean markDirty() {
+        if (dirty) {
+            return false;
+        }
+        dirty = true;
+        return true;
+    }
+
+    void markClean() {
+        dirty = false;
+    }
+
+    /**
+     * @return 修改后的属性，未修改时返回NULL
+     */
+    Map<String, Object> properties() {
+        return properties;
+    }
+
+    @Override
+    public Object get(final Object key) {
+        if (properties != null) {
+            return properties.get(key);
+        }
+        if (!(key instanceof String)) {
+            return null;
+        }
+        final Object value = owner.layout().find(record, (String) key);
+        return value == SdEntityLayout.ABSENT ? null : value;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        if (properties != null) {
+            return properties.containsKey(key);
+        }
+        return key instanceof String && owner.layout().find(record, (String) key) != SdEntityLayout.ABSENT;
+    }
+
+    @Override
+    public int size() {
+        return properties != null ? properties.size() : owner.layout().count(record);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    /**
+     * 未修改时返回临时解码的只读属性，修改属性应该使用{@link #put(String, Object)}等方法
+     */
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (properties != null) {
+            return properties.entrySet();
+        }
+        return Collections.unmodifiableMap(owner.layout().decode(record, Maps.newLinkedHashMap())).entrySet();
+    }
+
+    @Override
+    public Object put(final String key, final Object value) {
+        final Object previous = this.materialize().put(key, value);
+        owner.markDirty(this);
+        return previous;
+    }
+
+    @Override
+    public void putAll(final Map<? extends String, ?> map) {
+        this.materialize().putAll(map);
+        owner.markDirty(this);
+    }
+
+    @Override
+    public Object remove(final Object key) {
+        if (!this.containsKey(key)) {
+            return null;
+        }
+        final Object previous = this.materialize().remove(key);
+        owner.markDirty(this);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        this.materialize().clear();
+        owner.markDirty(this);
+    }
+
+    private Map<String, Object> materialize() {
+        if (properties == null) {
+            properties = owner.layout().decode(record, Maps.newLinkedHashMap());
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,238 @@
+package info.ralab.uxdf.persistence;
+
+import info.ralab.uxdf.UXDFException;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
+/**
+ * 堆外的Node与Event关联表。
+ * <p>
+ * 每个Node的关联Event是直接内存中的单向链表，链表元素依次为：Event的键引用和下一个元素的序号。
+ * Node的logicId通过{@link SdOffHeapIndex}映射到链表的首尾元素序号，新关联追加到链表末尾。
+ * 元素序号加1保存，0表示没有元素。移除的元素进入空闲链表重复使用。
+ * </p>
+ * 非线程安全。
+ */
+final class SdOffHeapAdjacency implements Closeable {
+
+    private static final int EDGE_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int NEXT_OFFSET = Long.BYTES;
+    private static final int NONE = 0;
+    private static final int INITIAL_EDGES = 64;
+    private static final int MAX_EDGES = Integer.MAX_VALUE / EDGE_SIZE;
+
+    /**
+     * Node的logicId到链表首尾元素，高32位是首元素，低32位是尾元素
+     */
+    private final SdOffHeapIndex heads;
+    private ByteBuffer edges;
+    /**
+     * 已使用过的元素数量
+     */
+    private int edgeCount;
+    /**
+     * 空闲链表的首元素
+     */
+    private int free = NONE;
+
+    /**
+     * @param keySegmentSize 保存Node的logicId的段大小，单位字节
+     */
+    SdOffHeapAdjacency(final int keySegmentSize) {
+        this.heads = new SdOffHeapIndex(keySegmentSize);
+        this.edges = ByteBuffer.allocateDirect(INITIAL_EDGES * EDGE_SIZE);
+    }
+
+    /**
+     * @return 占用的堆外内存字节数
+     */
+    long getOffHeapBytes() {
+        return heads.getOffHeapBytes() + edges.capacity();
+    }
+
+    /**
+     * 预留关联的空间，之后添加count个关联时不再扩容
+     *
+     * @param count 关联数量
+     * @throws UXDFException 超过容量上限，关联表不变
+     */
+    void reserve(final int count) {
+        heads.reserve(count);
+        this.growEdges(count);
+    }
+
+    /**
+     * 添加关联
+     *
+     * @param nodeLogicId Node的logicId
+     * @param eventRef    Event的键引用
+     */
+    void add(final String nodeLogicId, final long eventRef) {
+        final int edge = this.allocateEdge();
+        this.setEdge(edge, eventRef, NONE);
+        final long ends = heads.get(nodeLogicId);
+        if (ends == SdOffHeapIndex.NO_VALUE) {
+            heads.put(nodeLogicId, ends(edge, edge));
+            return;
+        }
+        final int tail = tail(ends);
+        edges.putInt(offset(tail) + NEXT_OFFSET, edge);
+        heads.put(nodeLogicId, ends(head(ends), edge));
+    }
+
+    /**
+     * 移除关联
+     *
+     * @param nodeLogicId Node的logicId
+     * @param eventRef    Event的键引用
+     */
+    void remove(final String nodeLogicId, final long eventRef) {
+        final long ends = heads.get(nodeLogicId);
+        if (ends == SdOffHeapIndex.NO_VALUE) {
+            return;
+        }
+        int head = head(ends);
+        int tail = tail(ends);
+        int previous = NONE;
+        for (int edge = head; edge != NONE; previous = edge, edge = this.next(edge)) {
+            if (edges.getLong(offset(edge)) != eventRef) {
+                continue;
+            }
+            final int next = this.next(edge);
+            if (previous == NONE) {
+                head = next;
+            } else {
+                edges.putInt(offset(previous) + NEXT_OFFSET, next);
+            }
+            if (edge == tail) {
+                tail = previous;
+            }
+            this.freeEdge(edge);
+            break;
+        }
+        if (head == NONE) {
+            heads.remove(nodeLogicId);
+        } else {
+            heads.put(nodeLogicId, ends(head, tail));
+        }
+    }
+
+    /**
+     * 按添加顺序遍历Node关联的Event
+     *
+     * @param nodeLogicId Node的logicId
+     * @param action      接收Event的键引用
+     */
+    void forEach(final String nodeLogicId, final LongConsumer action) {
+        final long ends = heads.get(nodeLogicId);
+        if (ends == SdOffHeapIndex.NO_VALUE) {
+            return;
+        }
+        for (int edge = head(ends); edge != NONE; edge = this.next(edge)) {
+            action.accept(edges.getLong(offset(edge)));
+        }
+    }
+
+    /**
+     * 移除Node的所有关联
+     *
+     * @param nodeLogicId Node的logicId
+     * @return 关联的Event的键引用
+     */
+    long[] removeAll(final String nodeLogicId) {
+        final long ends = heads.remove(nodeLogicId);
+        if (ends == SdOffHeapIndex.NO_VALUE) {
+            return new long[0];
+        }
+        int count = 0;
+        for (int edge = head(ends); edge != NONE; edge = this.next(edge)) {
+            count++;
+        }
+        final long[] eventRefs = new long[count];
+        int index = 0;
+        for (int edge = head(ends); edge != NONE; ) {
+            final int next = this.next(edge);
+            eventRefs[index++] = edges.getLong(offset(edge));
+            this.freeEdge(edge);
+            edge = next;
+        }
+        return eventRefs;
+    }
+
+    void clear() {
+        heads.clear();
+        edges = ByteBuffer.allocateDirect(INITIAL_EDGES * EDGE_SIZE);
+        edgeCount = 0;
+        free = NONE;
+    }
+
+    @Override
+    public void close() {
+        this.clear();
+    }
+
+    private int allocateEdge() {
+        if (free != NONE) {
+            final int edge = free;
+            free = this.next(edge);
+            return edge;
+        }
+        this.growEdges(1);
+        return ++edgeCount;
+    }
+
+    /**
+     * 空间不足以再使用count个元素时扩容
+     */
+    private void growEdges(final int count) {
+        final long required = (long) edgeCount + count;
+        int capacity = edges.capacity() / EDGE_SIZE;
+        if (required <= capacity) {
+            return;
+        }
+        if (required > MAX_EDGES) {
+            throw new UXDFException(String.format("关联数量超过上限[%s]。", MAX_EDGES));
+        }
+        while (capacity < required) {
+            capacity = (int) Math.min((long) capacity << 1, MAX_EDGES);
+        }
+        final ByteBuffer grown = ByteBuffer.allocateDirect(capacity * EDGE_SIZE);
+        final ByteBuffer source = edges.duplicate();
+        source.clear();
+        grown.put(source);
+        edges = grown;
+    }
+
+    private void freeEdge(final int edge) {
+        this.setEdge(edge, 0L, free);
+        free = edge;
+    }
+
+    private void setEdge(final int edge, final long eventRef, final int next) {
+        final int offset = offset(edge);
+        edges.putLong(offset, eventRef);
+        edges.putInt(offset + NEXT_OFFSET, next);
+    }
+
+    private int next(final int edge) {
+        return edges.getInt(offset(edge) + NEXT_OFFSET);
+    }
+
+    private static int offset(final int edge) {
+        return (edge - 1) * EDGE_SIZE;
+    }
+
+    private static long ends(final int head, final int tail) {
+        return ((long) head << 32) | (tail & 0xFFFFFFFFL);
+    }
+
+    private static int head(final long ends) {
+        return (int) (ends >>> 32);
+    }
+
+    private static int tail(final long ends) {
+        return (int) ends;
+    }
+}
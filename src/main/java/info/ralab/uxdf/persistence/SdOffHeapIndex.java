@@ -0,0 +1,304 @@
+package info.ralab.uxdf.persistence;
+
+import info.ralab.uxdf.UXDFException;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * 堆外的哈希表，键是字符串，值是long，遍历顺序是键的插入顺序。
+ * <p>
+ * 键以UTF-8编码追加到直接内存的{@link SdEntitySegments}中，键在其中的位置称为键引用，
+ * 键存在期间键引用不变，可以作为其它堆外结构中的紧凑标识。
+ * 槽位表也是直接内存，使用线性探测，每个槽位依次为：键引用、值和键的哈希值。
+ * 槽位表按{@link #SHARD_SLOTS}个槽位分片到多个缓冲区，容量不受单个缓冲区2GB的限制。
+ * 键引用加上{@link #KEY_REF_OFFSET}保存，0表示空槽位，1表示已删除的槽位。
+ * </p>
+ * <p>
+ * 扩容在写入新键之前进行，容量超过上限时抛出异常且不修改索引。
+ * 需要同时写入多个索引时，可以先通过{@link #reserve(int)}预留空间。
+ * </p>
+ * <p>
+ * 删除的键只在槽位表中标记，键的空间不回收。非线程安全。
+ * </p>
+ */
+final class SdOffHeapIndex implements Closeable {
+
+    /**
+     * 键不存在
+     */
+    static final long NO_VALUE = Long.MIN_VALUE;
+
+    private static final int SLOT_SIZE = Long.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int VALUE_OFFSET = Long.BYTES;
+    private static final int HASH_OFFSET = Long.BYTES + Long.BYTES;
+    private static final long EMPTY = 0L;
+    private static final long DELETED = 1L;
+    private static final long KEY_REF_OFFSET = 2L;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int SHARD_SHIFT = 20;
+    /**
+     * 每个分片的槽位数量
+     */
+    private static final int SHARD_SLOTS = 1 << SHARD_SHIFT;
+    private static final int SHARD_MASK = SHARD_SLOTS - 1;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final SdEntitySegments keys;
+    private ByteBuffer[] table;
+    private int capacity;
+    /**
+     * 键数量
+     */
+    private int size;
+    /**
+     * 非空槽位数量，包括已删除的槽位
+     */
+    private int used;
+
+    /**
+     * @param keySegmentSize 保存键的段大小，单位字节
+     */
+    SdOffHeapIndex(final int keySegmentSize) {
+        this.keys = new SdEntitySegments(null, keySegmentSize);
+        this.allocate(INITIAL_CAPACITY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return 占用的堆外内存字节数
+     */
+    long getOffHeapBytes() {
+        return (long) capacity * SLOT_SIZE + keys.getWrittenBytes();
+    }
+
+    /**
+     * @param key 键
+     * @return 值，不存在时返回{@link #NO_VALUE}
+     */
+    long get(final String key) {
+        final int slot = this.lookup(bytes(key), hash(key));
+        return slot < 0 ? NO_VALUE : shard(table, slot).getLong(offset(slot) + VALUE_OFFSET);
+    }
+
+    boolean containsKey(final String key) {
+        return this.lookup(bytes(key), hash(key)) >= 0;
+    }
+
+    /**
+     * @param key 键
+     * @return 键引用，不存在时返回{@link #NO_VALUE}
+     */
+    long keyRef(final String key) {
+        final int slot = this.lookup(bytes(key), hash(key));
+        return slot < 0 ? NO_VALUE : shard(table, slot).getLong(offset(slot)) - KEY_REF_OFFSET;
+    }
+
+    /**
+     * 读取键引用对应的键，键被删除后仍然可以读取
+     *
+     * @param keyRef 键引用
+     * @return 键
+     */
+    String key(final long keyRef) {
+        return new String(keys.read(keyRef), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 设置键的值，键已经存在时键引用不变
+     *
+     * @param key   键
+     * @param value 值
+     * @return 原来的值，不存在时返回{@link #NO_VALUE}
+     */
+    long put(final String key, final long value) {
+        final byte[] bytes = bytes(key);
+        final int hash = hash(key);
+        int slot = this.lookup(bytes, hash);
+        if (slot >= 0) {
+            final ByteBuffer shard = shard(table, slot);
+            final int offset = offset(slot) + VALUE_OFFSET;
+            final long previous = shard.getLong(offset);
+            shard.putLong(offset, value);
+            return previous;
+        }
+        if (this.reserve(1)) {
+            slot = this.lookup(bytes, hash);
+        }
+        slot = -slot - 1;
+        final ByteBuffer shard = shard(table, slot);
+        final int offset = offset(slot);
+        if (shard.getLong(offset) == EMPTY) {
+            used++;
+        }
+        shard.putLong(offset, keys.append(bytes) + KEY_REF_OFFSET);
+        shard.putLong(offset + VALUE_OFFSET, value);
+        shard.putInt(offset + HASH_OFFSET, hash);
+        size++;
+        return NO_VALUE;
+    }
+
+    /**
+     * 预留新键的槽位，之后添加count个新键时不再扩容
+     *
+     * @param count 新键数量
+     * @return 是否重新分配了槽位表
+     * @throws UXDFException 超过容量上限，索引不变
+     */
+    boolean reserve(final int count) {
+        if (used + count <= capacity * LOAD_FACTOR) {
+            return false;
+        }
+        // 删除的槽位较多时只清理，否则扩容
+        final long required = (long) size + count;
+        long newCapacity = capacity;
+        while (required > newCapacity * LOAD_FACTOR / 2) {
+            newCapacity <<= 1;
+        }
+        if (newCapacity > MAX_CAPACITY) {
+            if (required > MAX_CAPACITY * LOAD_FACTOR) {
+                throw new UXDFException(String.format("索引容量超过上限[%s]。", MAX_CAPACITY));
+            }
+            newCapacity = MAX_CAPACITY;
+        }
+        this.rehash((int) newCapacity);
+        return true;
+    }
+
+    /**
+     * @param key 键
+     * @return 原来的值，不存在时返回{@link #NO_VALUE}
+     */
+    long remove(final String key) {
+        final int slot = this.lookup(bytes(key), hash(key));
+        if (slot < 0) {
+            return NO_VALUE;
+        }
+        final ByteBuffer shard = shard(table, slot);
+        final int offset = offset(slot);
+        keys.release(shard.getLong(offset) - KEY_REF_OFFSET);
+        shard.putLong(offset, DELETED);
+        size--;
+        return shard.getLong(offset + VALUE_OFFSET);
+    }
+
+    /**
+     * 按插入顺序遍历键和值。遍历中可以修改已有键的值，新增的键可能被遍历到。
+     *
+     * @param action 接收键和值
+     */
+    void forEach(final ObjLongConsumer<String> action) {
+        keys.forEachRecord(location -> {
+            final byte[] bytes = keys.read(location);
+            final String key = new String(bytes, StandardCharsets.UTF_8);
+            final int slot = this.lookup(bytes, hash(key));
+            // 同一个键删除后重新插入时，只有最后一次插入的记录有效
+            if (slot >= 0 && shard(table, slot).getLong(offset(slot)) - KEY_REF_OFFSET == location) {
+                action.accept(key, shard(table, slot).getLong(offset(slot) + VALUE_OFFSET));
+            }
+        });
+    }
+
+    void clear() {
+        keys.close();
+        this.allocate(INITIAL_CAPACITY);
+    }
+
+    @Override
+    public void close() {
+        this.clear();
+    }
+
+    /**
+     * @return 找到时返回槽位序号，否则返回-(插入位置)-1
+     */
+    private int lookup(final byte[] key, final int hash) {
+        final int mask = capacity - 1;
+        int firstDeleted = -1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final ByteBuffer shard = shard(table, slot);
+            final int offset = offset(slot);
+            final long keyRef = shard.getLong(offset);
+            if (keyRef == EMPTY) {
+                return -(firstDeleted >= 0 ? firstDeleted : slot) - 1;
+            }
+            if (keyRef == DELETED) {
+                if (firstDeleted < 0) {
+                    firstDeleted = slot;
+                }
+            } else if (shard.getInt(offset + HASH_OFFSET) == hash && keys.matches(keyRef - KEY_REF_OFFSET, key)) {
+                return slot;
+            }
+        }
+    }
+
+    private void rehash(final int newCapacity) {
+        final ByteBuffer[] oldTable = table;
+        final int oldCapacity = capacity;
+        this.allocate(newCapacity);
+        final int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            final ByteBuffer oldShard = shard(oldTable, oldSlot);
+            final int oldOffset = offset(oldSlot);
+            final long keyRef = oldShard.getLong(oldOffset);
+            if (keyRef == EMPTY || keyRef == DELETED) {
+                continue;
+            }
+            final int hash = oldShard.getInt(oldOffset + HASH_OFFSET);
+            int slot = hash & mask;
+            while (shard(table, slot).getLong(offset(slot)) != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            final ByteBuffer shard = shard(table, slot);
+            final int offset = offset(slot);
+            shard.putLong(offset, keyRef);
+            shard.putLong(offset + VALUE_OFFSET, oldShard.getLong(oldOffset + VALUE_OFFSET));
+            shard.putInt(offset + HASH_OFFSET, hash);
+            size++;
+            used++;
+        }
+    }
+
+    /**
+     * 分配新的槽位表，分配失败时原来的槽位表不变
+     */
+    private void allocate(final int newCapacity) {
+        // 直接内存分配后内容为0，即所有槽位为空
+        final int shardSlots = Math.min(newCapacity, SHARD_SLOTS);
+        final ByteBuffer[] newTable = new ByteBuffer[Math.max(1, newCapacity >>> SHARD_SHIFT)];
+        for (int index = 0; index < newTable.length; index++) {
+            newTable[index] = ByteBuffer.allocateDirect(shardSlots * SLOT_SIZE);
+        }
+        table = newTable;
+        capacity = newCapacity;
+        size = 0;
+        used = 0;
+    }
+
+    private static ByteBuffer shard(final ByteBuffer[] table, final int slot) {
+        return table[slot >>> SHARD_SHIFT];
+    }
+
+    private static int offset(final int slot) {
+        return (slot & SHARD_MASK) * SLOT_SIZE;
+    }
+
+    private static byte[] bytes(final String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int hash(final String key) {
+        final int hash = key.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
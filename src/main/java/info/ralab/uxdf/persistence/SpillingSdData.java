@@ -0,0 +1,916 @@
+package info.ralab.uxdf.persistence;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.annotation.JSONField;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFRegistry;
+import info.ralab.uxdf.definition.SdEventDefinition;
+import info.ralab.uxdf.definition.SdOperateType;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.instance.SdEntity;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 把实例内容溢出到磁盘的{@link SdData}，用于超过堆内存的数据集。
+ * <p>
+ * 内存中只保留索引（logicId到位置、uuid到logicId、Event名称和Node与Event的关联）
+ * 以及最近使用的{@link #getCacheSize()}个实例。其它实例编码后保存在内存映射的只追加段文件中，按需加载。
+ * 实例被淘汰时，如果内容和段文件中的记录不同则写入新记录。
+ * </p>
+ * <p>
+ * 方法和{@link SdData}一致，以下情况有区别：
+ * <ul>
+ * <li>通过{@link #getNode(String)}等单个获取的实例会进入缓存，修改在淘汰时写回；</li>
+ * <li>{@link #getUnmodifiableNode()}、{@link #forEachNode(Consumer)}等遍历方法中不在缓存的实例是临时加载的副本，
+ * 对它们的修改不会保留，需要修改时应该使用{@link #overwriteNode(NodeEntity)}等方法；</li>
+ * <li>实例被淘汰后，调用方仍持有的引用和{@link SdData}中的数据不再是同一个对象。</li>
+ * </ul>
+ * </p>
+ * <p>
+ * 所有方法都是同步方法。段文件是临时文件，{@link #close()}时删除。
+ * </p>
+ */
+public class SpillingSdData extends SdData implements Closeable {
+
+    /**
+     * 段文件大小的系统属性，单位字节
+     */
+    public static final String PROPERTY_SEGMENT_SIZE = "uxdf.sddata.spill.segmentSize";
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * 实例尚未写入段文件
+     */
+    private static final long UNWRITTEN = -1L;
+
+    private final File directory;
+    private final SdEntitySegments segments;
+    private final int cacheSize;
+    private UXDFRegistry registry;
+
+    private final LinkedHashMap<String, Long> nodeLocations = Maps.newLinkedHashMap();
+    private final LinkedHashMap<String, Long> eventLocations = Maps.newLinkedHashMap();
+    private final Map<String, String> nodeUUIDs = Maps.newHashMap();
+    private final Map<String, String> eventUUIDs = Maps.newHashMap();
+    private final Map<String, LinkedHashSet<String>> eventNames = Maps.newLinkedHashMap();
+    private final Map<String, HashSet<String>> nodeEvents = Maps.newHashMap();
+
+    private final EntityCache<NodeEntity> nodeCache;
+    private final EntityCache<EventEntity> eventCache;
+
+    private final ByteArrayOutputStream encodeBuffer = new ByteArrayOutputStream();
+
+    private long loadCount;
+    private long writeBackCount;
+
+    /**
+     * 使用默认注册表，段文件保存在临时目录
+     *
+     * @param cacheSize Node和Event各自缓存的实例数量
+     */
+    public SpillingSdData(final int cacheSize) {
+        this(null, createTempDirectory(), cacheSize, Integer.getInteger(PROPERTY_SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE));
+    }
+
+    /**
+     * @param registry    定义注册表，为NULL时使用默认注册表
+     * @param directory   段文件目录
+     * @param cacheSize   Node和Event各自缓存的实例数量
+     * @param segmentSize 段文件大小，单位字节
+     */
+    public SpillingSdData(
+            final UXDFRegistry registry,
+            final File directory,
+            final int cacheSize,
+            final int segmentSize
+    ) {
+        super(registry);
+        if (cacheSize <= 0) {
+            throw new UXDFException(String.format("缓存数量[%s]必须大于0。", cacheSize));
+        }
+        try {
+            Files.createDirectories(directory.toPath());
+        } catch (IOException e) {
+            throw new UXDFException(String.format("创建段文件目录[%s]失败。", directory), e);
+        }
+        this.registry = registry;
+        this.directory = directory;
+        this.cacheSize = cacheSize;
+        this.segments = new SdEntitySegments(directory, segmentSize);
+        this.nodeCache = new EntityCache<>(cacheSize, (logicId, nodeEntity) -> this.spill(logicId, nodeEntity, nodeLocations));
+        this.eventCache = new EntityCache<>(cacheSize, (logicId, eventEntity) -> this.spill(logicId, eventEntity, eventLocations));
+    }
+
+    private static File createTempDirectory() {
+        try {
+            return Files.createTempDirectory("uxdf-sddata-").toFile();
+        } catch (IOException e) {
+            throw new UXDFException("创建段文件临时目录失败。", e);
+        }
+    }
+
+    @JSONField(serialize = false, deserialize = false)
+    public File getDirectory() {
+        return directory;
+    }
+
+    @JSONField(serialize = false, deserialize = false)
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * @return 从段文件加载实例的次数
+     */
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized long getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * @return 淘汰时写回段文件的次数
+     */
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized long getWriteBackCount() {
+        return writeBackCount;
+    }
+
+    /**
+     * @return 段文件中已写入的字节数
+     */
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized long getSpilledBytes() {
+        return segments.getWrittenBytes();
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized void setRegistry(final UXDFRegistry registry) {
+        super.setRegistry(registry);
+        this.registry = registry;
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized List<NodeEntity> getDetachedNode() {
+        final List<NodeEntity> nodeEntities = Lists.newArrayListWithCapacity(nodeLocations.size());
+        nodeLocations.keySet().forEach(logicId -> nodeEntities.add(this.detachedNode(logicId)));
+        return nodeEntities;
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized List<NodeEntity> getDetachedNode(final EventEntity eventEntity) {
+        final List<NodeEntity> results = Lists.newArrayList();
+        if (eventEntity == null || !eventEntity.isEffective()) {
+            return results;
+        }
+        final String leftLogicId = eventEntity.leftLogicId();
+        if (nodeLocations.containsKey(leftLogicId)) {
+            results.add(this.detachedNode(leftLogicId));
+        }
+        final String rightLogicId = eventEntity.rightLogicId();
+        if (nodeLocations.containsKey(rightLogicId)) {
+            results.add(this.detachedNode(rightLogicId));
+        }
+        return results;
+    }
+
+    @Override
+    @JSONField(name = "node", deserialize = false)
+    public synchronized List<NodeEntity> getUnmodifiableNode() {
+        final List<NodeEntity> nodeEntities = Lists.newArrayListWithCapacity(nodeLocations.size());
+        this.forEachNode(nodeEntities::add);
+        return Collections.unmodifiableList(nodeEntities);
+    }
+
+    @Override
+    public synchronized void forEachNode(final Consumer<NodeEntity> action) {
+        Lists.newArrayList(nodeLocations.keySet()).forEach(logicId -> action.accept(this.peekNode(logicId)));
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized Map<String, List<EventEntity>> getDetachedEvent() {
+        final Map<String, List<EventEntity>> event = Maps.newHashMap();
+        eventNames.forEach((eventName, logicIds) -> {
+            final List<EventEntity> eventEntities = Lists.newArrayListWithCapacity(logicIds.size());
+            logicIds.forEach(logicId -> eventEntities.add(this.detachedEvent(logicId)));
+            event.put(eventName, eventEntities);
+        });
+        return event;
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized List<EventEntity> getDetachedEvent(final String eventSd) {
+        final List<EventEntity> eventEntities = Lists.newArrayList();
+        eventNames.getOrDefault(eventSd, Sets.newLinkedHashSet())
+                .forEach(logicId -> eventEntities.add(this.detachedEvent(logicId)));
+        return eventEntities;
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized List<EventEntity> getDetachedEvent(final NodeEntity nodeEntity) {
+        final List<EventEntity> results = Lists.newArrayList();
+        if (nodeEntity == null || !nodeEntity.isEffective() || !nodeEvents.containsKey(nodeEntity.getLogicId())) {
+            return results;
+        }
+        nodeEvents.get(nodeEntity.getLogicId()).forEach(logicId -> {
+            if (eventLocations.containsKey(logicId)) {
+                results.add(this.detachedEvent(logicId));
+            }
+        });
+        return results;
+    }
+
+    @Override
+    @JSONField(name = "event", deserialize = false)
+    public synchronized Map<String, List<EventEntity>> getUnmodifiableEvent() {
+        final Map<String, List<EventEntity>> event = Maps.newHashMap();
+        eventNames.forEach((eventName, logicIds) -> event.put(eventName, this.getUnmodifiableEvent(eventName)));
+        return Collections.unmodifiableMap(event);
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized List<EventEntity> getUnmodifiableEvent(final String eventSd) {
+        final List<EventEntity> eventEntities = Lists.newArrayList();
+        eventNames.getOrDefault(eventSd, Sets.newLinkedHashSet())
+                .forEach(logicId -> eventEntities.add(this.peekEvent(logicId)));
+        return Collections.unmodifiableList(eventEntities);
+    }
+
+    @Override
+    @JSONField(serialize = false, deserialize = false)
+    public synchronized List<EventEntity> getUnmodifiableEvent(final NodeEntity nodeEntity) {
+        if (nodeEntity == null || !nodeEntity.isEffective()) {
+            return Collections.emptyList();
+        }
+        final Set<String> logicIds = nodeEvents.get(nodeEntity.getLogicId());
+        if (logicIds == null || logicIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<EventEntity> results = Lists.newArrayListWithCapacity(logicIds.size());
+        logicIds.forEach(logicId -> {
+            if (eventLocations.containsKey(logicId)) {
+                results.add(this.peekEvent(logicId));
+            }
+        });
+        return Collections.unmodifiableList(results);
+    }
+
+    @Override
+    public synchronized void forEachEvent(final Consumer<EventEntity> action) {
+        Lists.newArrayList(eventLocations.keySet()).forEach(logicId -> action.accept(this.peekEvent(logicId)));
+    }
+
+    @Override
+    public synchronized boolean isNodeEmpty() {
+        return nodeLocations.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean isEventEmpty() {
+        return eventLocations.isEmpty();
+    }
+
+    @Override
+    public synchronized void setOperate(final SdOperateType operate) {
+        this.rewriteAll(nodeLocations, nodeCache, NodeEntity::new, nodeEntity -> nodeEntity.setOperate(operate));
+        this.rewriteAll(eventLocations, eventCache, EventEntity::new, eventEntity -> eventEntity.setOperate(operate));
+    }
+
+    @Override
+    public boolean addNodeIfAbsent(final NodeEntity nodeEntity) {
+        return this.addNode(nodeEntity, false);
+    }
+
+    @Override
+    public boolean overwriteNode(final NodeEntity nodeEntity) {
+        return this.addNode(nodeEntity, true);
+    }
+
+    private synchronized boolean addNode(final NodeEntity nodeEntity, final boolean overwrite) {
+        if (nodeEntity == null ||
+                !nodeEntity.isEffective() ||
+                !overwrite && nodeLocations.containsKey(nodeEntity.getLogicId())) {
+            return false;
+        }
+        if (overwrite) {
+            this.removeNode(nodeEntity);
+        }
+        if (this.registry != null) {
+            nodeEntity.setRegistry(this.registry);
+        }
+        final String logicId = nodeEntity.getLogicId();
+        final String uuid = nodeEntity.generateUUID();
+        if (uuid != null) {
+            final String existLogicId = nodeUUIDs.get(uuid);
+            if (existLogicId != null && !existLogicId.equals(logicId)) {
+                throw new UXDFException(
+                        String.format(
+                                "当前数据集中已经存在uuid和要添加Node[%s]相同的数据[%s]。",
+                                nodeEntity,
+                                this.peekNode(existLogicId)
+                        )
+                );
+            }
+            nodeUUIDs.put(uuid, logicId);
+        }
+        nodeLocations.put(logicId, UNWRITTEN);
+        nodeCache.put(logicId, nodeEntity);
+        return true;
+    }
+
+    @Override
+    public synchronized NodeEntity updateNode(final String sourceLogicId, final String sourceId, final NodeEntity targetNode) {
+        if (targetNode == null || !targetNode.isEffective()) {
+            throw new UXDFException("更新的目标NodeEntity无效。");
+        }
+        if (!nodeLocations.containsKey(sourceLogicId)) {
+            throw new UXDFException(String.format("更新Node的源[%s]不存在。", sourceLogicId));
+        }
+        final NodeEntity sourceNode = this.peekNode(sourceLogicId);
+        if (!sourceId.equals(sourceNode.get__Id())) {
+            throw new UXDFException(String.format("更新Node的源id[%s]不匹配。", sourceId));
+        }
+        final String targetLogicId = targetNode.getLogicId();
+        if (!sourceLogicId.equals(targetLogicId) && nodeLocations.containsKey(targetLogicId)) {
+            throw new UXDFException(String.format("更新Node的目标[%s]已经存在。", targetLogicId));
+        }
+        if (!sourceNode.get__Sd().equals(targetNode.get__Sd())) {
+            throw new UXDFException(String.format("源Node[%s]和目标Node[%s]的类型或版本信息不一致。", sourceNode, targetNode));
+        }
+
+        this.detach(sourceLogicId, nodeLocations, nodeCache, NodeEntity::new);
+        nodeLocations.put(targetLogicId, UNWRITTEN);
+        nodeCache.put(targetLogicId, targetNode);
+
+        final String sourceUUID = sourceNode.getUUID();
+        if (sourceUUID != null) {
+            nodeUUIDs.remove(sourceUUID);
+        }
+        final String targetUUID = targetNode.generateUUID();
+        if (targetUUID != null) {
+            nodeUUIDs.put(targetUUID, targetLogicId);
+        }
+
+        // 更新关联Event的端点
+        final Set<String> eventLogicIds = nodeEvents.remove(sourceLogicId);
+        if (eventLogicIds != null) {
+            final HashSet<String> targetEventLogicIds = Sets.newHashSet();
+            for (String eventLogicId : eventLogicIds) {
+                final EventEntity eventEntity = this.peekEvent(eventLogicId);
+                final boolean left = sourceLogicId.equals(eventEntity.leftLogicId());
+                if (!left && !sourceLogicId.equals(eventEntity.rightLogicId())) {
+                    continue;
+                }
+                final String otherLogicId = left ? eventEntity.rightLogicId() : eventEntity.leftLogicId();
+                final String eventSd = eventEntity.get__Sd();
+                this.detach(eventLogicId, eventLocations, eventCache, EventEntity::new);
+                eventUUIDs.remove(eventEntity.getUUID());
+                eventNames.get(eventSd).remove(eventLogicId);
+                nodeEvents.computeIfAbsent(otherLogicId, key -> Sets.newHashSet()).remove(eventLogicId);
+
+                if (left) {
+                    eventEntity.leftNode(targetNode);
+                } else {
+                    eventEntity.rightNode(targetNode);
+                }
+
+                final String newEventLogicId = eventEntity.getLogicId();
+                targetEventLogicIds.add(newEventLogicId);
+                eventLocations.put(newEventLogicId, UNWRITTEN);
+                eventCache.put(newEventLogicId, eventEntity);
+                eventUUIDs.put(eventEntity.generateUUID(), newEventLogicId);
+                eventNames.get(eventSd).add(newEventLogicId);
+                nodeEvents.computeIfAbsent(otherLogicId, key -> Sets.newHashSet()).add(newEventLogicId);
+            }
+            nodeEvents.put(targetLogicId, targetEventLogicIds);
+        }
+
+        // 用目标覆盖源的内容，调用方持有的源实例随之更新
+        sourceNode
+                .fluentClear()
+                .fluentPutAll(targetNode);
+
+        return targetNode;
+    }
+
+    @Override
+    public synchronized NodeEntity removeNode(final NodeEntity nodeEntity) {
+        if (nodeEntity == null || !nodeEntity.isEffective()) {
+            return null;
+        }
+        final String logicId = nodeEntity.getLogicId();
+        if (!nodeLocations.containsKey(logicId)) {
+            return null;
+        }
+        final NodeEntity removedNode = this.detach(logicId, nodeLocations, nodeCache, NodeEntity::new);
+        nodeUUIDs.remove(removedNode.getUUID());
+        return removedNode;
+    }
+
+    @Override
+    public synchronized NodeEntity removeNode(final String uuid) {
+        final String logicId = nodeUUIDs.remove(uuid);
+        if (logicId == null) {
+            return null;
+        }
+        return this.detach(logicId, nodeLocations, nodeCache, NodeEntity::new);
+    }
+
+    @Override
+    public synchronized NodeEntity getNode(final NodeEntity nodeEntity) {
+        return nodeEntity == null || !nodeEntity.isEffective() ? null : this.loadNode(nodeEntity.getLogicId());
+    }
+
+    @Override
+    public synchronized NodeEntity getNodeByLogicId(final String logicId) {
+        return StringUtils.isBlank(logicId) ? null : this.loadNode(logicId);
+    }
+
+    @Override
+    public synchronized NodeEntity getNode(final String uuid) {
+        final String logicId = nodeUUIDs.get(uuid);
+        return logicId == null ? null : this.loadNode(logicId);
+    }
+
+    @Override
+    public synchronized void clearNode() {
+        nodeCache.clear();
+        nodeLocations.values().forEach(this::release);
+        nodeLocations.clear();
+        nodeUUIDs.clear();
+    }
+
+    @Override
+    public boolean addEventIfAbsent(final EventEntity eventEntity) {
+        return this.addEvent(eventEntity, false);
+    }
+
+    @Override
+    public boolean overwriteEvent(final EventEntity eventEntity) {
+        return this.addEvent(eventEntity, true);
+    }
+
+    private synchronized boolean addEvent(final EventEntity eventEntity, final boolean overwrite) {
+        if (eventEntity == null ||
+                !eventEntity.isEffective() ||
+                !overwrite && eventLocations.containsKey(eventEntity.getLogicId())) {
+            return false;
+        }
+        if (overwrite) {
+            this.removeEvent(eventEntity);
+        }
+        if (this.registry != null) {
+            eventEntity.setRegistry(this.registry);
+        }
+        final String logicId = eventEntity.getLogicId();
+        final String uuid = eventEntity.generateUUID();
+
+        final SdEventDefinition sdEvent = this.getRegistry().getEvent(
+                eventEntity.get__Sd(),
+                eventEntity.get__LeftSd(),
+                eventEntity.get__RightSd()
+        );
+        eventEntity.set__Member(sdEvent != null && sdEvent.getIsMember());
+
+        if (uuid != null) {
+            final String existLogicId = eventUUIDs.get(uuid);
+            if (existLogicId != null && !existLogicId.equals(logicId)) {
+                throw new UXDFException(
+                        String.format(
+                                "当前数据集中已经存在uuid和要添加Event[%s]相同的数据[%s]。",
+                                eventEntity,
+                                this.peekEvent(existLogicId)
+                        )
+                );
+            }
+            eventUUIDs.put(uuid, logicId);
+        }
+
+        eventNames.computeIfAbsent(eventEntity.get__Sd(), key -> Sets.newLinkedHashSet()).add(logicId);
+        eventLocations.put(logicId, UNWRITTEN);
+        eventCache.put(logicId, eventEntity);
+        nodeEvents.computeIfAbsent(eventEntity.leftLogicId(), key -> Sets.newHashSet()).add(logicId);
+        nodeEvents.computeIfAbsent(eventEntity.rightLogicId(), key -> Sets.newHashSet()).add(logicId);
+        return true;
+    }
+
+    @Override
+    public synchronized EventEntity updateEvent(final String sourceLogicId, final String sourceId, final EventEntity targetEvent) {
+        if (targetEvent == null || !targetEvent.isEffective()) {
+            throw new UXDFException("更新的目标EventEntity无效。");
+        }
+        if (!eventLocations.containsKey(sourceLogicId)) {
+            throw new UXDFException(String.format("更新Event的源[%s]不存在。", sourceLogicId));
+        }
+        final EventEntity sourceEvent = this.peekEvent(sourceLogicId);
+        if (!sourceId.equals(sourceEvent.get__Id())) {
+            throw new UXDFException(String.format("更新Event的源id[%s]不匹配。", sourceId));
+        }
+        final String targetLogicId = targetEvent.getLogicId();
+        if (!sourceLogicId.equals(targetLogicId) && eventLocations.containsKey(targetLogicId)) {
+            throw new UXDFException(String.format("更新Event的目标[%s]已经存在。", targetLogicId));
+        }
+        if (!sourceEvent.get__Sd().equals(targetEvent.get__Sd())) {
+            throw new UXDFException(String.format("源Event[%s]和目标Event[%s]的类型或版本信息不一致。", sourceEvent, targetEvent));
+        }
+
+        this.detach(sourceLogicId, eventLocations, eventCache, EventEntity::new);
+        eventLocations.put(targetLogicId, UNWRITTEN);
+        eventCache.put(targetLogicId, targetEvent);
+
+        final String sourceUUID = sourceEvent.getUUID();
+        if (sourceUUID != null) {
+            eventUUIDs.remove(sourceUUID);
+        }
+        final String targetUUID = targetEvent.generateUUID();
+        if (targetUUID != null) {
+            eventUUIDs.put(targetUUID, targetLogicId);
+        }
+
+        this.unlinkEvent(sourceEvent.leftLogicId(), sourceLogicId);
+        this.unlinkEvent(sourceEvent.rightLogicId(), sourceLogicId);
+        nodeEvents.computeIfAbsent(targetEvent.leftLogicId(), key -> Sets.newHashSet()).add(targetLogicId);
+        nodeEvents.computeIfAbsent(targetEvent.rightLogicId(), key -> Sets.newHashSet()).add(targetLogicId);
+
+        eventNames.get(sourceEvent.get__Sd()).remove(sourceLogicId);
+        eventNames.get(targetEvent.get__Sd()).add(targetLogicId);
+
+        sourceEvent.fluentClear().fluentPutAll(targetEvent);
+
+        return targetEvent;
+    }
+
+    @Override
+    public synchronized EventEntity removeEvent(final EventEntity eventEntity) {
+        if (eventEntity == null || !eventEntity.isEffective()) {
+            return null;
+        }
+        String logicId = eventEntity.getLogicId();
+        if (!eventLocations.containsKey(logicId)) {
+            logicId = eventUUIDs.get(eventEntity.getUUID());
+        }
+        return logicId == null ? null : this.removeEventByLogicId(logicId);
+    }
+
+    @Override
+    public synchronized EventEntity removeEvent(final String uuid) {
+        final String logicId = eventUUIDs.get(uuid);
+        return logicId == null ? null : this.removeEventByLogicId(logicId);
+    }
+
+    private EventEntity removeEventByLogicId(final String logicId) {
+        final EventEntity removedEvent = this.detach(logicId, eventLocations, eventCache, EventEntity::new);
+        eventUUIDs.remove(removedEvent.getUUID());
+        final Set<String> logicIds = eventNames.get(removedEvent.get__Sd());
+        if (logicIds != null) {
+            logicIds.remove(logicId);
+        }
+        this.unlinkEvent(removedEvent.leftLogicId(), logicId);
+        this.unlinkEvent(removedEvent.rightLogicId(), logicId);
+        return removedEvent;
+    }
+
+    private void unlinkEvent(final String nodeLogicId, final String eventLogicId) {
+        final Set<String> logicIds = nodeEvents.get(nodeLogicId);
+        if (logicIds != null) {
+            logicIds.remove(eventLogicId);
+        }
+    }
+
+    @Override
+    public synchronized EventEntity getEvent(final EventEntity eventEntity) {
+        return eventEntity == null || !eventEntity.isEffective() ? null : this.loadEvent(eventEntity.getLogicId());
+    }
+
+    @Override
+    public synchronized EventEntity getEvent(final String uuid) {
+        final String logicId = eventUUIDs.get(uuid);
+        return logicId == null ? null : this.loadEvent(logicId);
+    }
+
+    @Override
+    public synchronized void clearEvent() {
+        eventCache.clear();
+        eventLocations.values().forEach(this::release);
+        eventLocations.clear();
+        eventUUIDs.clear();
+        eventNames.clear();
+        nodeEvents.clear();
+    }
+
+    @Override
+    public synchronized void computeNode(final NodeEntity newNodeEntity, final Function<NodeEntity, NodeEntity> nodeFunction) {
+        final NodeEntity nodeEntity = nodeFunction.apply(this.loadNode(newNodeEntity.getLogicId()));
+        if (nodeEntity == null) {
+            this.removeNode(newNodeEntity);
+        } else {
+            this.overwriteNode(nodeEntity);
+        }
+    }
+
+    @Override
+    public synchronized void computeNode(final String uuid, final Function<NodeEntity, NodeEntity> nodeFunction) {
+        final NodeEntity nodeEntity = nodeFunction.apply(this.getNode(uuid));
+        if (nodeEntity == null) {
+            this.removeNode(uuid);
+        } else {
+            this.overwriteNode(nodeEntity);
+        }
+    }
+
+    @Override
+    public synchronized void computeEvent(final EventEntity newEventEntity, final Function<EventEntity, EventEntity> eventFunction) {
+        final EventEntity eventEntity = eventFunction.apply(this.loadEvent(newEventEntity.getLogicId()));
+        if (eventEntity == null) {
+            this.removeEvent(newEventEntity);
+        } else {
+            this.overwriteEvent(eventEntity);
+        }
+    }
+
+    @Override
+    public synchronized void computeEvent(final String uuid, final Function<EventEntity, EventEntity> eventFunction) {
+        final EventEntity eventEntity = eventFunction.apply(this.getEvent(uuid));
+        if (eventEntity == null) {
+            this.removeEvent(uuid);
+        } else {
+            this.overwriteEvent(eventEntity);
+        }
+    }
+
+    /**
+     * 复制为普通的{@link SdData}，副本的所有实例都在堆内存中
+     *
+     * @return 副本
+     */
+    @Override
+    public synchronized SdData clone() {
+        final SdData sdData = JSON.parseObject(JSON.toJSONString(this), SdData.class);
+        sdData.setRegistry(this.registry);
+        return sdData;
+    }
+
+    @Override
+    public synchronized boolean containsNode(final NodeEntity nodeEntity) {
+        return nodeEntity != null && nodeEntity.isEffective() && nodeLocations.containsKey(nodeEntity.getLogicId());
+    }
+
+    @Override
+    public synchronized boolean containsNode(final String uuid) {
+        return nodeUUIDs.containsKey(uuid);
+    }
+
+    @Override
+    public synchronized boolean containsEvent(final EventEntity eventEntity) {
+        return eventEntity != null && eventEntity.isEffective() && eventLocations.containsKey(eventEntity.getLogicId());
+    }
+
+    @Override
+    public synchronized boolean containsEvent(final String uuid) {
+        return eventUUIDs.containsKey(uuid);
+    }
+
+    @Override
+    public synchronized boolean containsEventSd(final String eventSd) {
+        return eventNames.containsKey(eventSd);
+    }
+
+    /**
+     * 清空数据并删除段文件
+     */
+    @Override
+    public synchronized void close() {
+        nodeCache.clear();
+        eventCache.clear();
+        nodeLocations.clear();
+        eventLocations.clear();
+        nodeUUIDs.clear();
+        eventUUIDs.clear();
+        eventNames.clear();
+        nodeEvents.clear();
+        segments.close();
+    }
+
+    /**
+     * 获取Node并放入缓存
+     */
+    private NodeEntity loadNode(final String logicId) {
+        return this.load(logicId, nodeLocations, nodeCache, NodeEntity::new, true);
+    }
+
+    /**
+     * 获取Event并放入缓存
+     */
+    private EventEntity loadEvent(final String logicId) {
+        return this.load(logicId, eventLocations, eventCache, EventEntity::new, true);
+    }
+
+    /**
+     * 获取Node，不改变缓存顺序，不在缓存时临时加载，不放入缓存
+     */
+    private NodeEntity peekNode(final String logicId) {
+        return this.load(logicId, nodeLocations, nodeCache, NodeEntity::new, false);
+    }
+
+    /**
+     * 获取Event，不改变缓存顺序，不在缓存时临时加载，不放入缓存
+     */
+    private EventEntity peekEvent(final String logicId) {
+        return this.load(logicId, eventLocations, eventCache, EventEntity::new, false);
+    }
+
+    private NodeEntity detachedNode(final String logicId) {
+        final NodeEntity cached = nodeCache.get(logicId);
+        return cached != null ? cached.clone() : this.peekNode(logicId);
+    }
+
+    private EventEntity detachedEvent(final String logicId) {
+        final EventEntity cached = eventCache.get(logicId);
+        return cached != null ? cached.clone() : this.peekEvent(logicId);
+    }
+
+    private <T extends SdEntity> T load(
+            final String logicId,
+            final Map<String, Long> locations,
+            final EntityCache<T> cache,
+            final Supplier<T> factory,
+            final boolean cached
+    ) {
+        final T cachedEntity = cached ? cache.touch(logicId) : cache.get(logicId);
+        if (cachedEntity != null) {
+            return cachedEntity;
+        }
+        final Long location = locations.get(logicId);
+        if (location == null) {
+            return null;
+        }
+        final T sdEntity = this.decode(segments.read(location), factory.get());
+        loadCount++;
+        if (cached) {
+            cache.put(logicId, sdEntity);
+        }
+        return sdEntity;
+    }
+
+    /**
+     * 从索引和缓存中移除实例
+     *
+     * @return 被移除的实例
+     */
+    private <T extends SdEntity> T detach(
+            final String logicId,
+            final Map<String, Long> locations,
+            final EntityCache<T> cache,
+            final Supplier<T> factory
+    ) {
+        T sdEntity = cache.remove(logicId);
+        final Long location = locations.remove(logicId);
+        if (location != null && location != UNWRITTEN) {
+            if (sdEntity == null) {
+                sdEntity = this.decode(segments.read(location), factory.get());
+            }
+            segments.release(location);
+        }
+        return sdEntity;
+    }
+
+    /**
+     * 修改所有实例，缓存中的实例在淘汰时写回，其它实例修改后直接写入新记录
+     */
+    private <T extends SdEntity> void rewriteAll(
+            final LinkedHashMap<String, Long> locations,
+            final EntityCache<T> cache,
+            final Supplier<T> factory,
+            final Consumer<T> action
+    ) {
+        for (Map.Entry<String, Long> entry : locations.entrySet()) {
+            final T cachedEntity = cache.get(entry.getKey());
+            if (cachedEntity != null) {
+                action.accept(cachedEntity);
+                continue;
+            }
+            final T sdEntity = this.decode(segments.read(entry.getValue()), factory.get());
+            action.accept(sdEntity);
+            segments.release(entry.getValue());
+            entry.setValue(segments.append(this.encode(sdEntity)));
+        }
+    }
+
+    /**
+     * 淘汰实例，内容和段文件中的记录不同时写入新记录
+     */
+    private void spill(final String logicId, final SdEntity sdEntity, final Map<String, Long> locations) {
+        final Long location = locations.get(logicId);
+        if (location == null) {
+            return;
+        }
+        final byte[] content = this.encode(sdEntity);
+        if (location != UNWRITTEN) {
+            if (segments.matches(location, content)) {
+                return;
+            }
+            segments.release(location);
+        }
+        locations.put(logicId, segments.append(content));
+        writeBackCount++;
+    }
+
+    private void release(final Long location) {
+        if (location != UNWRITTEN) {
+            segments.release(location);
+        }
+    }
+
+    private byte[] encode(final SdEntity sdEntity) {
+        encodeBuffer.reset();
+        try {
+            SdEntityCodec.writeEntity(new DataOutputStream(encodeBuffer), sdEntity);
+        } catch (IOException e) {
+            throw new UXDFException(e);
+        }
+        return encodeBuffer.toByteArray();
+    }
+
+    private <T extends SdEntity> T decode(final byte[] content, final T sdEntity) {
+        try {
+            SdEntityCodec.readEntity(new DataInputStream(new ByteArrayInputStream(content)), sdEntity);
+        } catch (IOException e) {
+            throw new UXDFException(e);
+        }
+        if (this.registry != null) {
+            sdEntity.setRegistry(this.registry);
+        }
+        return sdEntity;
+    }
+
+    /**
+     * 最近使用的实例缓存，超过容量时淘汰最久未使用的实例。
+     * 按插入顺序保存，{@link #get(Object)}不改变顺序，通过{@link #touch(String)}标记为最近使用
+     */
+    private static final class EntityCache<T extends SdEntity> extends LinkedHashMap<String, T> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        /**
+         * 淘汰实例时的写回操作
+         */
+        private final transient BiConsumer<String, T> spiller;
+
+        private EntityCache(final int capacity, final BiConsumer<String, T> spiller) {
+            this.capacity = capacity;
+            this.spiller = spiller;
+        }
+
+        /**
+         * 获取实例并标记为最近使用
+         */
+        private T touch(final String key) {
+            final T value = this.remove(key);
+            if (value != null) {
+                this.put(key, value);
+            }
+            return value;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, T> eldest) {
+            if (this.size() <= capacity) {
+                return false;
+            }
+            spiller.accept(eldest.getKey(), eldest.getValue());
+            return true;
+        }
+    }
+}
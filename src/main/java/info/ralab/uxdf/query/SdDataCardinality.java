@@ -0,0 +1,205 @@
+package info.ralab.uxdf.query;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.definition.SdEventKey;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.instance.SdEntity;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于计数的{@link SdDataStatistics}实现。
+ * <p>
+ * 可以通过{@link #of(SdData)}从内存数据统计，也可以由存储实现通过{@link #setNodeCount(String, long)}等方法直接设置。
+ * 统计属性不同值时，每个属性最多记录{@link #getDistinctLimit()}个值，超过后认为属性值基本唯一，返回Node或Event的数量。
+ * </p>
+ */
+public class SdDataCardinality implements SdDataStatistics {
+
+    /**
+     * 默认每个属性记录不同值的上限
+     */
+    public static final int DEFAULT_DISTINCT_LIMIT = 10000;
+
+    /**
+     * 每个属性记录不同值的上限
+     */
+    @Getter
+    @Setter
+    private int distinctLimit = DEFAULT_DISTINCT_LIMIT;
+
+    /**
+     * Node数量，通过Node定义名称索引
+     */
+    private final Map<String, AtomicLong> nodeCount = Maps.newConcurrentMap();
+
+    /**
+     * Event数量，通过Event定义名称、左右Node定义名称索引
+     */
+    private final Map<SdEventKey, AtomicLong> eventCount = Maps.newConcurrentMap();
+
+    /**
+     * 设置的属性不同值数量，通过Sd名称和属性名称索引
+     */
+    private final Map<String, Map<String, Long>> distinctCount = Maps.newConcurrentMap();
+
+    /**
+     * 统计的属性值，通过Sd名称和属性名称索引
+     */
+    private final Map<String, Map<String, Set<Object>>> distinctValues = Maps.newConcurrentMap();
+
+    /**
+     * 统计{@link SdData}中的Node和Event
+     *
+     * @param sdData 数据
+     * @return 基数统计
+     */
+    public static SdDataCardinality of(final SdData sdData) {
+        final SdDataCardinality cardinality = new SdDataCardinality();
+        sdData.getUnmodifiableNode().forEach(cardinality::addNode);
+        sdData.getUnmodifiableEvent().values().forEach(events -> events.forEach(cardinality::addEvent));
+        return cardinality;
+    }
+
+    /**
+     * 统计一个Node
+     *
+     * @param nodeEntity Node实例
+     */
+    public void addNode(final NodeEntity nodeEntity) {
+        nodeCount.computeIfAbsent(nodeEntity.get__Sd(), key -> new AtomicLong()).incrementAndGet();
+        this.addValues(nodeEntity);
+    }
+
+    /**
+     * 统计一个Event
+     *
+     * @param eventEntity Event实例
+     */
+    public void addEvent(final EventEntity eventEntity) {
+        final String eventName = eventEntity.get__Sd();
+        final String leftNodeName = eventEntity.get__LeftSd();
+        final String rightNodeName = eventEntity.get__RightSd();
+        // 已统计的定义直接查找，只在第一次出现时驻留复合键
+        AtomicLong count = eventCount.get(SdEventKey.probe(eventName, leftNodeName, rightNodeName));
+        if (count == null) {
+            count = eventCount.computeIfAbsent(
+                    SdEventKey.of(eventName, leftNodeName, rightNodeName),
+                    key -> new AtomicLong()
+            );
+        }
+        count.incrementAndGet();
+        this.addValues(eventEntity);
+    }
+
+    /**
+     * 设置Node数量
+     *
+     * @param nodeName Node定义名称
+     * @param count    数量
+     */
+    public void setNodeCount(final String nodeName, final long count) {
+        nodeCount.put(nodeName, new AtomicLong(count));
+    }
+
+    /**
+     * 设置Event数量
+     *
+     * @param eventName     Event定义名称
+     * @param leftNodeName  左Node定义名称
+     * @param rightNodeName 右Node定义名称
+     * @param count         数量
+     */
+    public void setEventCount(
+            final String eventName,
+            final String leftNodeName,
+            final String rightNodeName,
+            final long count
+    ) {
+        eventCount.put(SdEventKey.of(eventName, leftNodeName, rightNodeName), new AtomicLong(count));
+    }
+
+    /**
+     * 设置属性不同值的数量，设置后不再使用统计的属性值
+     *
+     * @param sdName   Node或Event定义名称
+     * @param property 属性名称
+     * @param count    不同值的数量
+     */
+    public void setDistinctCount(final String sdName, final String property, final long count) {
+        distinctCount.computeIfAbsent(sdName, key -> Maps.newConcurrentMap()).put(property, count);
+    }
+
+    @Override
+    public long getNodeCount(final String nodeName) {
+        final AtomicLong count = nodeCount.get(nodeName);
+        return count == null ? UNKNOWN : count.get();
+    }
+
+    @Override
+    public long getEventCount(final String eventName, final String leftNodeName, final String rightNodeName) {
+        final AtomicLong count = eventCount.get(SdEventKey.probe(eventName, leftNodeName, rightNodeName));
+        return count == null ? UNKNOWN : count.get();
+    }
+
+    @Override
+    public long getDistinctCount(final String sdName, final String property) {
+        final Long count = distinctCount.getOrDefault(sdName, Maps.newHashMap()).get(property);
+        if (count != null) {
+            return count;
+        }
+        final Set<Object> values = distinctValues.getOrDefault(sdName, Maps.newHashMap()).get(property);
+        if (values == null) {
+            return UNKNOWN;
+        }
+        synchronized (values) {
+            // 超过上限，认为属性值基本唯一
+            if (values.size() > distinctLimit) {
+                return Math.max(values.size(), this.getSdCount(sdName));
+            }
+            return values.size();
+        }
+    }
+
+    /**
+     * 获取Node或Event定义的实例数量
+     */
+    private long getSdCount(final String sdName) {
+        final AtomicLong count = nodeCount.get(sdName);
+        if (count != null) {
+            return count.get();
+        }
+        return eventCount.entrySet().stream()
+                .filter(entry -> entry.getKey().getEventName().equals(sdName))
+                .mapToLong(entry -> entry.getValue().get())
+                .sum();
+    }
+
+    /**
+     * 记录实例的属性值，不记录动态属性
+     */
+    private void addValues(final SdEntity sdEntity) {
+        final Map<String, Set<Object>> properties = distinctValues.computeIfAbsent(
+                sdEntity.get__Sd(),
+                key -> Maps.newConcurrentMap()
+        );
+        sdEntity.forEach((property, value) -> {
+            if (value == null || property.startsWith("$")) {
+                return;
+            }
+            final Set<Object> values = properties.computeIfAbsent(property, key -> Sets.newHashSet());
+            synchronized (values) {
+                if (values.size() <= distinctLimit) {
+                    values.add(value);
+                }
+            }
+        });
+    }
+}
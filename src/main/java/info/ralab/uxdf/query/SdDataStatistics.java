@@ -0,0 +1,43 @@
+package info.ralab.uxdf.query;
+
+/**
+ * {@link info.ralab.uxdf.SdData}基数统计，用于{@link UXDFQueryPlanner}估算查询代价。
+ * <p>
+ * 内存数据可以使用{@link SdDataCardinality}，{@link info.ralab.uxdf.service.StorageService}的实现可以基于自身的表统计和二级索引实现。
+ * 统计只需要大致准确，不要求和数据实时一致。
+ * </p>
+ */
+public interface SdDataStatistics {
+
+    /**
+     * 未知的统计值
+     */
+    long UNKNOWN = -1;
+
+    /**
+     * 获取Node数量
+     *
+     * @param nodeName Node定义名称
+     * @return Node数量，未知时返回{@link #UNKNOWN}
+     */
+    long getNodeCount(String nodeName);
+
+    /**
+     * 获取Event数量
+     *
+     * @param eventName     Event定义名称
+     * @param leftNodeName  左Node定义名称
+     * @param rightNodeName 右Node定义名称
+     * @return Event数量，未知时返回{@link #UNKNOWN}
+     */
+    long getEventCount(String eventName, String leftNodeName, String rightNodeName);
+
+    /**
+     * 获取属性不同值的数量，通常来自属性上的二级索引
+     *
+     * @param sdName   Node或Event定义名称
+     * @param property 属性名称
+     * @return 不同值的数量，未知时返回{@link #UNKNOWN}
+     */
+    long getDistinctCount(String sdName, String property);
+}
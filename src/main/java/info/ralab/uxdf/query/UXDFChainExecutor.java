@@ -0,0 +1,473 @@
+package info.ralab.uxdf.query;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.UXDFRegistry;
+import info.ralab.uxdf.chain.ChainPath;
+import info.ralab.uxdf.chain.UXDFChain;
+import info.ralab.uxdf.chain.UXDFChainItem;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.instance.SdEntity;
+import info.ralab.uxdf.model.SdDataQueryPage;
+import info.ralab.uxdf.model.SdDataQueryParam;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在内存{@link SdData}上并行执行关系链查询。
+ * <p>
+ * 关系链展开后的每条路径，按起始Node定义获取起始Node，并按{@link #getPartitionSize()}分区，
+ * 每个分区作为{@link ForkJoinPool}中的任务，通过{@link SdData#getUnmodifiableEvent(NodeEntity)}逐跳关联。
+ * 分区的结果按起始Node的顺序合并，结果和单线程执行一致。
+ * 相同并行数量的执行器共享同一个{@link ForkJoinPool}，不需要关闭。
+ * </p>
+ * <p>
+ * 设置分页时，按起始Node顺序连续完成的分区已经覆盖分页需要的数量后，之后的分区提前结束，
+ * 返回的仍是单线程执行时的同一页。
+ * 起始Node索引在创建时生成，{@link SdData}中的Node变化后需要调用{@link #refresh()}。
+ * 执行期间不能修改{@link SdData}。
+ * 也可以通过{@link UXDFChainSource}在其它存储结构上执行，此时起始Node由数据源提供。
+ * </p>
+ * <p>
+ * 没有关系的关系链，如"s:Signifier"，直接返回起始Node。
+ * </p>
+ */
+public class UXDFChainExecutor {
+
+    /**
+     * 默认分区大小
+     */
+    public static final int DEFAULT_PARTITION_SIZE = 256;
+
+    /**
+     * 共享的执行线程池，通过并行数量索引。线程池中的线程是守护线程，空闲后自动回收
+     */
+    private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = Maps.newConcurrentMap();
+
+    /**
+     * 执行线程数量
+     */
+    @Getter
+    @Setter
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 分区大小，即每个任务处理的起始Node数量
+     */
+    @Getter
+    @Setter
+    private int partitionSize = DEFAULT_PARTITION_SIZE;
+
+    /**
+     * 执行的数据，通过{@link UXDFChainSource}创建时为NULL
+     */
+    @Getter
+    private final SdData sdData;
+
+    /**
+     * 展开关系链使用的定义注册表
+     */
+    @Getter
+    private final UXDFRegistry registry;
+
+    /**
+     * 数据源
+     */
+    private volatile UXDFChainSource source;
+
+    public UXDFChainExecutor(final SdData sdData) {
+        this.sdData = sdData;
+        this.registry = sdData.getRegistry();
+        this.refresh();
+    }
+
+    public UXDFChainExecutor(final UXDFChainSource source) {
+        this(source, UXDFLoader.getRegistry());
+    }
+
+    public UXDFChainExecutor(final UXDFChainSource source, final UXDFRegistry registry) {
+        this.sdData = null;
+        this.registry = registry;
+        this.source = source;
+    }
+
+    /**
+     * 重新生成起始Node索引。通过{@link UXDFChainSource}创建时不做处理。
+     */
+    public void refresh() {
+        if (sdData == null) {
+            return;
+        }
+        final Map<String, List<NodeEntity>> index = Maps.newHashMap();
+        sdData.getUnmodifiableNode().forEach(nodeEntity ->
+                index.computeIfAbsent(nodeEntity.get__Sd(), key -> Lists.newArrayList()).add(nodeEntity)
+        );
+        this.source = new SdDataSource(sdData, index);
+    }
+
+    /**
+     * 执行关系链查询
+     *
+     * @param chainString 关系链字符串
+     * @return 查询结果
+     */
+    public UXDFChainResult execute(final String chainString) {
+        return this.execute(chainString, Collections.emptyMap(), null);
+    }
+
+    /**
+     * 执行关系链查询
+     *
+     * @param chainString 关系链字符串
+     * @param params      查询参数，通过标签索引
+     * @param page        分页参数，为NULL时返回全部结果
+     * @return 查询结果
+     */
+    public UXDFChainResult execute(
+            final String chainString,
+            final Map<String, List<SdDataQueryParam>> params,
+            final SdDataQueryPage page
+    ) {
+        if (parallelism <= 0 || partitionSize <= 0) {
+            throw new UXDFException("parallelism and partitionSize must be greater than 0.");
+        }
+        if (chainString == null || chainString.isEmpty()) {
+            throw new UXDFException("uxdf chain is null or empty.");
+        }
+        final long needed = page == null ? Long.MAX_VALUE : (long) page.getStart() + page.getLimit();
+        final Execution execution = new Execution(params == null ? Collections.emptyMap() : params, needed);
+        if (!UXDFChain.haveRelationship(chainString)) {
+            return this.executeNode(chainString, execution, page);
+        }
+        final UXDFChain chain = UXDFChain.getInstance(chainString, registry);
+        final List<Map<String, SdEntity>> rows = Lists.newArrayList();
+
+        final ForkJoinPool pool = POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+        for (List<UXDFChainItem> path : chain) {
+            if (path.isEmpty() || execution.isFull()) {
+                continue;
+            }
+            final List<String> labels = labels(path);
+            final List<NodeEntity> starts = source.getNodes(path.get(0).getFirstNode());
+            final List<SdEntity[]> matched = pool.invoke(new PathTask(
+                    new PathExecution(execution, path, starts, needed - execution.found.get())
+            ));
+            execution.found.addAndGet(matched.size());
+            matched.forEach(row -> {
+                final Map<String, SdEntity> binding = Maps.newLinkedHashMap();
+                for (int i = 0; i < row.length; i++) {
+                    binding.put(labels.get(i), row[i]);
+                }
+                rows.add(binding);
+            });
+        }
+
+        return new UXDFChainResult(chain.getLabelSdMapping().keySet(), page(rows, page), execution.isFull());
+    }
+
+    /**
+     * 执行只有一个Node的关系链
+     */
+    private UXDFChainResult executeNode(final String chainString, final Execution execution, final SdDataQueryPage page) {
+        final String[] labelAndSd = UXDFChainItem.PATTERN_LABEL.split(chainString);
+        if (labelAndSd.length > 2) {
+            throw new UXDFException(String.format("Sd只能设置一个别名。[%s]", chainString));
+        }
+        final String label = labelAndSd[0];
+        final String nodeName = labelAndSd[labelAndSd.length - 1];
+        final List<SdDataQueryParam> nodeParams = execution.params.get(label);
+        final List<Map<String, SdEntity>> rows = Lists.newArrayList();
+        for (NodeEntity nodeEntity : source.getNodes(nodeName)) {
+            if (execution.isFull()) {
+                break;
+            }
+            if (UXDFQueryMatcher.matches(nodeEntity, nodeParams)) {
+                rows.add(Collections.singletonMap(label, nodeEntity));
+                execution.found.incrementAndGet();
+            }
+        }
+        return new UXDFChainResult(Collections.singleton(label), page(rows, page), execution.isFull());
+    }
+
+    /**
+     * 截取分页范围内的行
+     */
+    private static List<Map<String, SdEntity>> page(final List<Map<String, SdEntity>> rows, final SdDataQueryPage page) {
+        if (page == null) {
+            return rows;
+        }
+        final int from = Math.min(page.getStart(), rows.size());
+        final int to = (int) Math.min((long) page.getStart() + page.getLimit(), rows.size());
+        return Lists.newArrayList(rows.subList(from, to));
+    }
+
+    /**
+     * 路径中按顺序排列的标签，Node和Event交替
+     */
+    private static List<String> labels(final List<UXDFChainItem> path) {
+        final List<String> labels = Lists.newArrayListWithCapacity(path.size() * 2 + 1);
+        labels.add(path.get(0).getFirstLabel());
+        path.forEach(item -> {
+            labels.add(item.getEventLabel());
+            labels.add(item.getLastLabel());
+        });
+        return labels;
+    }
+
+    /**
+     * 基于{@link SdData}和起始Node索引的数据源
+     */
+    private static final class SdDataSource implements UXDFChainSource {
+        private final SdData sdData;
+        private final Map<String, List<NodeEntity>> nodeIndex;
+
+        private SdDataSource(final SdData sdData, final Map<String, List<NodeEntity>> nodeIndex) {
+            this.sdData = sdData;
+            this.nodeIndex = nodeIndex;
+        }
+
+        @Override
+        public List<NodeEntity> getNodes(final String nodeName) {
+            return nodeIndex.getOrDefault(nodeName, Collections.emptyList());
+        }
+
+        @Override
+        public Collection<EventEntity> getEvents(final NodeEntity nodeEntity) {
+            return sdData.getUnmodifiableEvent(nodeEntity);
+        }
+
+        @Override
+        public NodeEntity getNodeByLogicId(final String logicId) {
+            return sdData.getNodeByLogicId(logicId);
+        }
+    }
+
+    /**
+     * 一次执行的共享状态
+     */
+    private static final class Execution {
+        private final Map<String, List<SdDataQueryParam>> params;
+        private final long needed;
+        private final AtomicLong found = new AtomicLong();
+
+        private Execution(final Map<String, List<SdDataQueryParam>> params, final long needed) {
+            this.params = params;
+            this.needed = needed;
+        }
+
+        private boolean isFull() {
+            return found.get() >= needed;
+        }
+    }
+
+    /**
+     * 一条路径的执行状态。起始Node按{@link #getPartitionSize()}划分为固定的分区，
+     * 记录按顺序连续完成的分区及其匹配行数，用于判断之后的分区是否可以提前结束。
+     */
+    private final class PathExecution {
+        private final Execution execution;
+        private final List<UXDFChainItem> path;
+        private final List<NodeEntity> starts;
+        /**
+         * 当前路径还需要的行数
+         */
+        private final long needed;
+        private final int size;
+        private final int partitionCount;
+        private final long[] partitionRows;
+        private final boolean[] partitionDone;
+        /**
+         * 按顺序连续完成的分区
+         */
+        private volatile CompletedPrefix prefix = new CompletedPrefix(0, 0);
+
+        private PathExecution(
+                final Execution execution,
+                final List<UXDFChainItem> path,
+                final List<NodeEntity> starts,
+                final long needed
+        ) {
+            this.execution = execution;
+            this.path = path;
+            this.starts = starts;
+            this.needed = needed;
+            this.size = partitionSize;
+            this.partitionCount = (int) ((starts.size() + (long) size - 1) / size);
+            this.partitionRows = new long[partitionCount];
+            this.partitionDone = new boolean[partitionCount];
+        }
+
+        /**
+         * 分区是否可以结束。分区自身的行数已经足够，或之前的分区全部完成并且加上自身的行数已经足够
+         *
+         * @param partition 分区序号
+         * @param rows      分区已经匹配的行数
+         * @return 是否可以结束
+         */
+        private boolean isFull(final int partition, final long rows) {
+            if (rows >= needed) {
+                return true;
+            }
+            final CompletedPrefix completed = this.prefix;
+            return completed.partitions >= partition && completed.rows + rows >= needed;
+        }
+
+        /**
+         * 记录完成的分区，推进连续完成的分区
+         *
+         * @param partition 分区序号
+         * @param rows      分区匹配的行数
+         */
+        private synchronized void complete(final int partition, final long rows) {
+            partitionRows[partition] = rows;
+            partitionDone[partition] = true;
+            int partitions = prefix.partitions;
+            long prefixRows = prefix.rows;
+            while (partitions < partitionCount && partitionDone[partitions]) {
+                prefixRows += partitionRows[partitions];
+                partitions++;
+            }
+            this.prefix = new CompletedPrefix(partitions, prefixRows);
+        }
+    }
+
+    /**
+     * 按顺序连续完成的分区数量和匹配行数
+     */
+    private static final class CompletedPrefix {
+        private final int partitions;
+        private final long rows;
+
+        private CompletedPrefix(final int partitions, final long rows) {
+            this.partitions = partitions;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * 并行执行一条路径的所有分区，按分区顺序合并结果，截取需要的行数
+     */
+    private final class PathTask extends RecursiveTask<List<SdEntity[]>> {
+        private final PathExecution pathExecution;
+
+        private PathTask(final PathExecution pathExecution) {
+            this.pathExecution = pathExecution;
+        }
+
+        @Override
+        protected List<SdEntity[]> compute() {
+            final List<PartitionTask> partitions = Lists.newArrayListWithCapacity(pathExecution.partitionCount);
+            for (int i = 0; i < pathExecution.partitionCount; i++) {
+                partitions.add(new PartitionTask(pathExecution, i));
+            }
+            invokeAll(partitions);
+            final List<SdEntity[]> rows = Lists.newArrayList();
+            for (PartitionTask partition : partitions) {
+                for (SdEntity[] row : partition.join()) {
+                    if (rows.size() >= pathExecution.needed) {
+                        return rows;
+                    }
+                    rows.add(row);
+                }
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * 处理一个分区内的起始Node
+     */
+    private final class PartitionTask extends RecursiveTask<List<SdEntity[]>> {
+        private final PathExecution pathExecution;
+        private final Execution execution;
+        private final List<UXDFChainItem> path;
+        private final int partition;
+
+        private PartitionTask(final PathExecution pathExecution, final int partition) {
+            this.pathExecution = pathExecution;
+            this.execution = pathExecution.execution;
+            this.path = pathExecution.path;
+            this.partition = partition;
+        }
+
+        @Override
+        protected List<SdEntity[]> compute() {
+            final List<NodeEntity> starts = pathExecution.starts;
+            final int from = (int) ((long) partition * pathExecution.size);
+            final int to = (int) Math.min((long) from + pathExecution.size, starts.size());
+            final List<SdEntity[]> rows = Lists.newArrayList();
+            final String firstLabel = path.get(0).getFirstLabel();
+            for (int i = from; i < to && !pathExecution.isFull(partition, rows.size()); i++) {
+                final NodeEntity start = starts.get(i);
+                if (!UXDFQueryMatcher.matches(start, execution.params.get(firstLabel))) {
+                    continue;
+                }
+                final SdEntity[] row = new SdEntity[path.size() * 2 + 1];
+                row[0] = start;
+                this.expand(row, 0, start, rows);
+            }
+            pathExecution.complete(partition, rows.size());
+            return rows;
+        }
+
+        /**
+         * 深度优先关联下一跳
+         */
+        private void expand(final SdEntity[] row, final int hop, final NodeEntity current, final List<SdEntity[]> rows) {
+            if (hop == path.size()) {
+                rows.add(row.clone());
+                return;
+            }
+            final UXDFChainItem item = path.get(hop);
+            final boolean fromLeft = item.getChainPath() == ChainPath.LEFT;
+            final String currentLogicId = current.getLogicId();
+            for (EventEntity eventEntity : source.getEvents(current)) {
+                if (pathExecution.isFull(partition, rows.size())) {
+                    return;
+                }
+                if (!item.getEvent().equals(eventEntity.get__Sd())) {
+                    continue;
+                }
+                final String nextLogicId;
+                final String nextSd;
+                if (fromLeft) {
+                    if (!currentLogicId.equals(eventEntity.leftLogicId())) {
+                        continue;
+                    }
+                    nextLogicId = eventEntity.rightLogicId();
+                    nextSd = eventEntity.get__RightSd();
+                } else {
+                    if (!currentLogicId.equals(eventEntity.rightLogicId())) {
+                        continue;
+                    }
+                    nextLogicId = eventEntity.leftLogicId();
+                    nextSd = eventEntity.get__LeftSd();
+                }
+                if (!item.getLastNode().equals(nextSd)
+                        || !UXDFQueryMatcher.matches(eventEntity, execution.params.get(item.getEventLabel()))) {
+                    continue;
+                }
+                final NodeEntity next = source.getNodeByLogicId(nextLogicId);
+                if (next == null || !UXDFQueryMatcher.matches(next, execution.params.get(item.getLastLabel()))) {
+                    continue;
+                }
+                row[hop * 2 + 1] = eventEntity;
+                row[hop * 2 + 2] = next;
+                this.expand(row, hop + 1, next, rows);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package info.ralab.uxdf.query;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDFRegistry;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.instance.SdEntity;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link UXDFChainExecutor}的执行结果。
+ * <p>
+ * 每一行是关系链的一次完整匹配，通过标签获取匹配的实例。
+ * 结果中的实例和原{@link SdData}共享，不建议直接修改。
+ * </p>
+ */
+@Getter
+public class UXDFChainResult {
+
+    /**
+     * 匹配的行，每行通过标签索引实例
+     */
+    private final List<Map<String, SdEntity>> rows;
+
+    /**
+     * 每个标签匹配的所有实例，按行的顺序去重
+     */
+    private final Map<String, Set<SdEntity>> bindings;
+
+    /**
+     * 是否因为达到分页上限提前结束
+     */
+    private final boolean truncated;
+
+    UXDFChainResult(final Set<String> labels, final List<Map<String, SdEntity>> rows, final boolean truncated) {
+        this.rows = Collections.unmodifiableList(rows);
+        this.truncated = truncated;
+        final Map<String, Set<SdEntity>> bindings = Maps.newLinkedHashMap();
+        labels.forEach(label -> bindings.put(label, Sets.newLinkedHashSet()));
+        rows.forEach(row -> row.forEach((label, sdEntity) ->
+                bindings.computeIfAbsent(label, key -> Sets.newLinkedHashSet()).add(sdEntity)
+        ));
+        bindings.replaceAll((label, entities) -> Collections.unmodifiableSet(entities));
+        this.bindings = Collections.unmodifiableMap(bindings);
+    }
+
+    /**
+     * 获取标签匹配的所有实例
+     *
+     * @param label 标签
+     * @return 实例集合
+     */
+    public Set<SdEntity> getBinding(final String label) {
+        return bindings.getOrDefault(label, Collections.emptySet());
+    }
+
+    /**
+     * 将所有匹配的实例合并到一个{@link SdData}中
+     *
+     * @param registry 定义注册表
+     * @return 数据
+     */
+    public SdData toSdData(final UXDFRegistry registry) {
+        final SdData sdData = new SdData(registry);
+        rows.forEach(row -> row.values().forEach(sdEntity -> {
+            if (sdEntity instanceof NodeEntity) {
+                sdData.addNodeIfAbsent((NodeEntity) sdEntity);
+            }
+        }));
+        rows.forEach(row -> row.values().forEach(sdEntity -> {
+            if (sdEntity instanceof EventEntity) {
+                sdData.addEventIfAbsent((EventEntity) sdEntity);
+            }
+        }));
+        return sdData;
+    }
+}
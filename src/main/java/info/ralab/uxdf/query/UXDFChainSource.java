@@ -0,0 +1,40 @@
+package info.ralab.uxdf.query;
+
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link UXDFChainExecutor}逐跳关联时读取的数据源。
+ * <p>
+ * 执行期间会被多个线程同时读取，实现需要保证执行期间数据不变化。
+ * </p>
+ */
+public interface UXDFChainSource {
+
+    /**
+     * 获取指定定义的所有Node，作为路径的起始Node
+     *
+     * @param nodeName Node定义名称
+     * @return Node集合，不存在时返回空集合
+     */
+    List<NodeEntity> getNodes(String nodeName);
+
+    /**
+     * 获取与Node关联的所有Event
+     *
+     * @param nodeEntity Node
+     * @return Event集合，不存在时返回空集合
+     */
+    Collection<EventEntity> getEvents(NodeEntity nodeEntity);
+
+    /**
+     * 通过逻辑ID获取Node
+     *
+     * @param logicId 逻辑ID
+     * @return Node，不存在时返回NULL
+     */
+    NodeEntity getNodeByLogicId(String logicId);
+}
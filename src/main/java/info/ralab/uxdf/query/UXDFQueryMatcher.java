@@ -0,0 +1,156 @@
+package info.ralab.uxdf.query;
+
+import info.ralab.uxdf.instance.SdEntity;
+import info.ralab.uxdf.model.SdDataQueryParam;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 在内存中判断{@link SdEntity}是否符合{@link SdDataQueryParam}。
+ * <p>
+ * 数字按数值比较，日期按时间比较，其它类型不同时按字符串比较。
+ * {@link info.ralab.uxdf.model.SdDataQueryLogic#LIKE}中的"%"匹配任意字符，没有"%"时判断是否包含比较值。
+ * 属性值为NULL时，只有{@link info.ralab.uxdf.model.SdDataQueryLogic#NE}、
+ * {@link info.ralab.uxdf.model.SdDataQueryLogic#NULL}以及存在判断可以成立。
+ * </p>
+ */
+public final class UXDFQueryMatcher {
+
+    private UXDFQueryMatcher() {
+    }
+
+    /**
+     * 判断实例是否符合所有查询参数
+     *
+     * @param sdEntity 实例
+     * @param params   查询参数，为NULL时认为符合
+     * @return 是否符合
+     */
+    public static boolean matches(final SdEntity sdEntity, final List<SdDataQueryParam> params) {
+        if (params == null) {
+            return true;
+        }
+        for (SdDataQueryParam param : params) {
+            if (!matches(sdEntity, param)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 判断实例是否符合查询参数
+     *
+     * @param sdEntity 实例
+     * @param param    查询参数
+     * @return 是否符合
+     */
+    public static boolean matches(final SdEntity sdEntity, final SdDataQueryParam param) {
+        final Object actual = sdEntity.get(param.getProperty());
+        final Object expected = param.getValue();
+        switch (param.getLogic()) {
+            case EXIST:
+                return sdEntity.containsKey(param.getProperty());
+            case NEX:
+                return !sdEntity.containsKey(param.getProperty());
+            case NULL:
+                return actual == null;
+            case NN:
+                return actual != null;
+            case EQ:
+                return actual != null && isEqual(actual, expected);
+            case NE:
+                return actual == null || !isEqual(actual, expected);
+            case GT:
+                return actual != null && expected != null && compare(actual, expected) > 0;
+            case GTE:
+                return actual != null && expected != null && compare(actual, expected) >= 0;
+            case LT:
+                return actual != null && expected != null && compare(actual, expected) < 0;
+            case LTE:
+                return actual != null && expected != null && compare(actual, expected) <= 0;
+            case SW:
+                return actual != null && expected != null && actual.toString().startsWith(expected.toString());
+            case EW:
+                return actual != null && expected != null && actual.toString().endsWith(expected.toString());
+            case LIKE:
+                return actual != null && expected != null && like(actual.toString(), expected.toString());
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 比较两个属性值，规则和范围比较一致，NULL小于任何值
+     *
+     * @param left  属性值
+     * @param right 属性值
+     * @return 比较结果
+     */
+    public static int compareValues(final Object left, final Object right) {
+        if (left == null || right == null) {
+            return left == null ? (right == null ? 0 : -1) : 1;
+        }
+        return compare(left, right);
+    }
+
+    private static boolean isEqual(final Object actual, final Object expected) {
+        if (actual instanceof Number && expected instanceof Number) {
+            return toDecimal((Number) actual).compareTo(toDecimal((Number) expected)) == 0;
+        }
+        if (expected == null || actual.getClass().equals(expected.getClass())) {
+            return Objects.equals(actual, expected);
+        }
+        return actual.toString().equals(expected.toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(final Object actual, final Object expected) {
+        if (actual instanceof Number && expected instanceof Number) {
+            return toDecimal((Number) actual).compareTo(toDecimal((Number) expected));
+        }
+        if (actual instanceof Date && expected instanceof Date) {
+            return ((Date) actual).compareTo((Date) expected);
+        }
+        if (actual instanceof Comparable && actual.getClass().equals(expected.getClass())) {
+            return ((Comparable<Object>) actual).compareTo(expected);
+        }
+        return actual.toString().compareTo(expected.toString());
+    }
+
+    private static BigDecimal toDecimal(final Number number) {
+        return number instanceof BigDecimal ? (BigDecimal) number : new BigDecimal(number.toString());
+    }
+
+    /**
+     * 相似比较，"%"匹配任意字符
+     */
+    private static boolean like(final String actual, final String pattern) {
+        if (pattern.indexOf('%') < 0) {
+            return actual.contains(pattern);
+        }
+        final String[] parts = pattern.split("%", -1);
+        int index = 0;
+        for (int i = 0; i < parts.length; i++) {
+            final String part = parts[i];
+            if (i == 0) {
+                if (!actual.startsWith(part)) {
+                    return false;
+                }
+                index = part.length();
+            } else if (i == parts.length - 1) {
+                return actual.length() - part.length() >= index && actual.endsWith(part);
+            } else {
+                final int found = actual.indexOf(part, index);
+                if (found < 0) {
+                    return false;
+                }
+                index = found + part.length();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,146 @@
+package info.ralab.uxdf.query;
+
+import info.ralab.uxdf.chain.ChainPath;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link UXDFQueryPlanner}生成的查询计划，按执行顺序记录每一步。
+ * <p>
+ * 每条查询链展开后的路径从一个标签开始，{@link StepType#SCAN}通过查询参数获取起始实例，
+ * {@link StepType#BOUND}使用之前查询链已经获取的实例，之后每一步{@link StepType#JOIN}通过Event关联到相邻的标签。
+ * </p>
+ */
+@Getter
+public class UXDFQueryPlan {
+
+    /**
+     * 执行步骤
+     */
+    private final List<Step> steps;
+
+    /**
+     * 第一个查询的标签，没有查询链时为NULL
+     */
+    private final String startLabel;
+
+    UXDFQueryPlan(final List<Step> steps) {
+        this.steps = Collections.unmodifiableList(steps);
+        this.startLabel = steps.isEmpty() ? null : steps.get(0).getLabel();
+    }
+
+    /**
+     * 输出查询计划，每一步一行
+     *
+     * @return 查询计划说明
+     */
+    public String explain() {
+        final StringBuilder builder = new StringBuilder();
+        String chain = null;
+        int path = -1;
+        for (Step step : steps) {
+            if (!step.getChain().equals(chain) || step.getPath() != path) {
+                chain = step.getChain();
+                path = step.getPath();
+                builder.append("chain ").append(chain).append(" path ").append(path).append('\n');
+            }
+            builder.append("  ").append(step).append('\n');
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return this.explain();
+    }
+
+    /**
+     * 步骤类型
+     */
+    public enum StepType {
+        /**
+         * 通过查询参数获取起始标签的实例
+         */
+        SCAN,
+        /**
+         * 起始标签已经由之前的查询链获取
+         */
+        BOUND,
+        /**
+         * 通过Event关联到下一个标签
+         */
+        JOIN
+    }
+
+    /**
+     * 查询计划中的一步
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Step {
+        /**
+         * 步骤类型
+         */
+        private final StepType type;
+        /**
+         * 所在查询链
+         */
+        private final String chain;
+        /**
+         * 所在查询链展开后的路径序号
+         */
+        private final int path;
+        /**
+         * 关联的起始标签，{@link StepType#JOIN}以外为NULL
+         */
+        private final String fromLabel;
+        /**
+         * Event标签，{@link StepType#JOIN}以外为NULL
+         */
+        private final String eventLabel;
+        /**
+         * Event定义名称，{@link StepType#JOIN}以外为NULL
+         */
+        private final String eventName;
+        /**
+         * 关联方向，{@link ChainPath#LEFT}从左Node到右Node，{@link ChainPath#RIGHT}从右Node到左Node
+         */
+        private final ChainPath direction;
+        /**
+         * 当前步骤获取的标签
+         */
+        private final String label;
+        /**
+         * 当前步骤获取的Sd名称
+         */
+        private final String sd;
+        /**
+         * 当前步骤之后的估算记录数
+         */
+        private final double estimatedRows;
+
+        @Override
+        public String toString() {
+            final String rows = String.format("rows=%.1f", estimatedRows);
+            switch (type) {
+                case JOIN:
+                    return String.format(
+                            "JOIN %s %s[%s:%s]%s %s:%s %s",
+                            fromLabel,
+                            direction == ChainPath.LEFT ? "-" : "<",
+                            eventLabel,
+                            eventName,
+                            direction == ChainPath.LEFT ? ">" : "-",
+                            label,
+                            sd,
+                            rows
+                    );
+                default:
+                    return String.format("%s %s:%s %s", type, label, sd, rows);
+            }
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package info.ralab.uxdf.query;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.UXDFRegistry;
+import info.ralab.uxdf.chain.ChainPath;
+import info.ralab.uxdf.chain.UXDFChain;
+import info.ralab.uxdf.chain.UXDFChainItem;
+import info.ralab.uxdf.model.SdDataQueryParam;
+import info.ralab.uxdf.model.SdDataQueryRequest;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于代价的查询链执行计划生成器。
+ * <p>
+ * 查询链的执行顺序不一定从第一个Node开始。生成器通过{@link SdDataStatistics}估算每个标签在查询参数过滤后的记录数，
+ * 从记录数最少的标签开始，每一步选择估算记录数较少的一侧继续关联，关联方向根据{@link UXDFChainItem#getChainPath()}确定。
+ * </p>
+ * <p>
+ * 有多条查询链时，优先执行和已执行查询链有相同标签的查询链，相同标签直接使用之前获取的实例。
+ * 查询参数的选择率在属性有不同值统计时使用统计值，否则使用固定的估算值。
+ * </p>
+ * <p>
+ * 生成器只决定执行顺序，不执行查询，可以由内存执行器和{@link info.ralab.uxdf.service.StorageService}的实现共用。
+ * </p>
+ */
+public class UXDFQueryPlanner {
+
+    /**
+     * 统计未知时的默认记录数
+     */
+    public static final double DEFAULT_ROWS = 1000;
+
+    /**
+     * 统计未知时每个Node关联的默认Event数
+     */
+    public static final double DEFAULT_FANOUT = 10;
+
+    /**
+     * 属性不同值未知时相等条件的默认选择率
+     */
+    public static final double DEFAULT_EQUAL_SELECTIVITY = 0.1;
+
+    /**
+     * 范围条件的默认选择率
+     */
+    public static final double DEFAULT_RANGE_SELECTIVITY = 1.0 / 3;
+
+    /**
+     * 相似条件的默认选择率
+     */
+    public static final double DEFAULT_LIKE_SELECTIVITY = 0.25;
+
+    /**
+     * 为空、不存在条件的默认选择率
+     */
+    public static final double DEFAULT_NULL_SELECTIVITY = 0.1;
+
+    @Getter
+    private final SdDataStatistics statistics;
+
+    /**
+     * 展开查询链使用的定义注册表
+     */
+    @Getter
+    private final UXDFRegistry registry;
+
+    public UXDFQueryPlanner(final SdDataStatistics statistics) {
+        this(statistics, UXDFLoader.getRegistry());
+    }
+
+    public UXDFQueryPlanner(final SdDataStatistics statistics, final UXDFRegistry registry) {
+        this.statistics = statistics;
+        this.registry = registry;
+    }
+
+    /**
+     * 生成查询计划
+     *
+     * @param queryRequest 查询请求
+     * @return 查询计划
+     */
+    public UXDFQueryPlan plan(final SdDataQueryRequest queryRequest) {
+        final Map<String, List<SdDataQueryParam>> params = queryRequest.getParams() == null ?
+                Collections.emptyMap() :
+                queryRequest.getParams();
+        // 展开所有查询链
+        final List<ChainPaths> remaining = Lists.newArrayList();
+        if (queryRequest.getChains() != null) {
+            for (String chainString : queryRequest.getChains()) {
+                final UXDFChain chain = UXDFChain.getInstance(chainString, registry);
+                if (chain != null) {
+                    remaining.add(new ChainPaths(chainString, Lists.newArrayList(chain)));
+                }
+            }
+        }
+
+        final List<UXDFQueryPlan.Step> steps = Lists.newArrayList();
+        // 已经获取的标签和估算记录数
+        final Map<String, Double> bound = Maps.newHashMap();
+        while (!remaining.isEmpty()) {
+            final ChainPaths chainPaths = this.nextChain(remaining, params, bound);
+            remaining.remove(chainPaths);
+            // 同一查询链展开的路径是并列关系，标签记录数累加
+            final Map<String, Double> produced = Maps.newHashMap();
+            for (int i = 0; i < chainPaths.paths.size(); i++) {
+                this.planPath(chainPaths.chain, i, chainPaths.paths.get(i), params, bound, steps, produced);
+            }
+            produced.forEach((label, rows) -> bound.merge(label, rows, Math::min));
+        }
+        return new UXDFQueryPlan(steps);
+    }
+
+    /**
+     * 选择下一条查询链，优先选择包含已获取标签的查询链，其次选择起始记录数最少的查询链
+     */
+    private ChainPaths nextChain(
+            final List<ChainPaths> remaining,
+            final Map<String, List<SdDataQueryParam>> params,
+            final Map<String, Double> bound
+    ) {
+        ChainPaths best = null;
+        boolean bestBound = false;
+        double bestRows = Double.MAX_VALUE;
+        for (ChainPaths chainPaths : remaining) {
+            boolean hasBound = false;
+            double rows = Double.MAX_VALUE;
+            for (List<UXDFChainItem> path : chainPaths.paths) {
+                final Labels labels = Labels.of(path);
+                for (int i = 0; i < labels.size(); i++) {
+                    hasBound |= bound.containsKey(labels.label(i));
+                    rows = Math.min(rows, this.labelRows(labels.label(i), labels.sd(i), params, bound));
+                }
+            }
+            if (best == null || (hasBound && !bestBound) || (hasBound == bestBound && rows < bestRows)) {
+                best = chainPaths;
+                bestBound = hasBound;
+                bestRows = rows;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 生成一条路径的执行步骤
+     */
+    private void planPath(
+            final String chain,
+            final int pathIndex,
+            final List<UXDFChainItem> path,
+            final Map<String, List<SdDataQueryParam>> params,
+            final Map<String, Double> bound,
+            final List<UXDFQueryPlan.Step> steps,
+            final Map<String, Double> produced
+    ) {
+        // 第一跳没有匹配的定义
+        if (path.isEmpty()) {
+            return;
+        }
+        final Labels labels = Labels.of(path);
+
+        // 选择估算记录数最少的标签作为起点
+        int start = 0;
+        double rows = Double.MAX_VALUE;
+        for (int i = 0; i < labels.size(); i++) {
+            final double labelRows = this.labelRows(labels.label(i), labels.sd(i), params, bound);
+            if (labelRows < rows) {
+                start = i;
+                rows = labelRows;
+            }
+        }
+        steps.add(new UXDFQueryPlan.Step(
+                bound.containsKey(labels.label(start)) ? UXDFQueryPlan.StepType.BOUND : UXDFQueryPlan.StepType.SCAN,
+                chain,
+                pathIndex,
+                null,
+                null,
+                null,
+                null,
+                labels.label(start),
+                labels.sd(start),
+                rows
+        ));
+        produced.merge(labels.label(start), rows, Double::sum);
+
+        // 从起点向两侧关联，每次选择估算记录数较少的一侧
+        int low = start;
+        int high = start;
+        while (low > 0 || high < path.size()) {
+            final double rightRows = high < path.size() ?
+                    this.joinRows(rows, path.get(high), path.get(high).getChainPath(), labels, high + 1, params, bound) :
+                    Double.MAX_VALUE;
+            final double leftRows = low > 0 ?
+                    this.joinRows(rows, path.get(low - 1), reverse(path.get(low - 1).getChainPath()), labels, low - 1, params, bound) :
+                    Double.MAX_VALUE;
+            final int from;
+            final int to;
+            final UXDFChainItem item;
+            final ChainPath direction;
+            if (rightRows <= leftRows) {
+                from = high;
+                to = ++high;
+                item = path.get(from);
+                direction = item.getChainPath();
+                rows = rightRows;
+            } else {
+                from = low;
+                to = --low;
+                item = path.get(to);
+                direction = reverse(item.getChainPath());
+                rows = leftRows;
+            }
+            steps.add(new UXDFQueryPlan.Step(
+                    UXDFQueryPlan.StepType.JOIN,
+                    chain,
+                    pathIndex,
+                    labels.label(from),
+                    item.getEventLabel(),
+                    item.getEvent(),
+                    direction,
+                    labels.label(to),
+                    labels.sd(to),
+                    rows
+            ));
+            produced.merge(labels.label(to), rows, Double::sum);
+        }
+    }
+
+    /**
+     * 估算标签的记录数，已获取的标签使用获取时的估算记录数
+     */
+    private double labelRows(
+            final String label,
+            final String sd,
+            final Map<String, List<SdDataQueryParam>> params,
+            final Map<String, Double> bound
+    ) {
+        final Double boundRows = bound.get(label);
+        if (boundRows != null) {
+            return boundRows;
+        }
+        return this.nodeCount(sd) * this.selectivity(sd, params.get(label));
+    }
+
+    /**
+     * 估算关联之后的记录数
+     *
+     * @param rows      关联前的记录数
+     * @param item      关联的关系链项目
+     * @param direction 关联方向
+     * @param labels    路径中的Node标签
+     * @param target    关联到的Node标签位置
+     * @param params    查询参数
+     * @param bound     已获取的标签
+     * @return 关联后的记录数
+     */
+    private double joinRows(
+            final double rows,
+            final UXDFChainItem item,
+            final ChainPath direction,
+            final Labels labels,
+            final int target,
+            final Map<String, List<SdDataQueryParam>> params,
+            final Map<String, Double> bound
+    ) {
+        final String fromSd = direction == ChainPath.LEFT ? item.getLeftNodeName() : item.getRightNodeName();
+        final long eventCount = statistics.getEventCount(item.getEvent(), item.getLeftNodeName(), item.getRightNodeName());
+        final long fromCount = statistics.getNodeCount(fromSd);
+        final double fanout;
+        if (eventCount == SdDataStatistics.UNKNOWN) {
+            fanout = DEFAULT_FANOUT;
+        } else {
+            fanout = fromCount > 0 ? (double) eventCount / fromCount : eventCount;
+        }
+
+        final String targetLabel = labels.label(target);
+        final String targetSd = labels.sd(target);
+        final double targetSelectivity;
+        final Double boundRows = bound.get(targetLabel);
+        if (boundRows != null) {
+            // 已获取的标签，只保留其中的实例
+            targetSelectivity = Math.min(1, boundRows / Math.max(1, this.nodeCount(targetSd)));
+        } else {
+            targetSelectivity = this.selectivity(targetSd, params.get(targetLabel));
+        }
+        final double eventSelectivity = this.selectivity(item.getEvent(), params.get(item.getEventLabel()));
+        return rows * fanout * targetSelectivity * eventSelectivity;
+    }
+
+    private double nodeCount(final String nodeName) {
+        final long count = statistics.getNodeCount(nodeName);
+        return count == SdDataStatistics.UNKNOWN ? DEFAULT_ROWS : count;
+    }
+
+    /**
+     * 估算一组查询参数的选择率，参数之间认为是独立的
+     *
+     * @param sd     Node或Event定义名称
+     * @param params 查询参数
+     * @return 选择率
+     */
+    public double selectivity(final String sd, final List<SdDataQueryParam> params) {
+        double selectivity = 1;
+        if (params != null) {
+            for (SdDataQueryParam param : params) {
+                selectivity *= this.selectivity(sd, param);
+            }
+        }
+        return selectivity;
+    }
+
+    /**
+     * 估算一个查询参数的选择率
+     *
+     * @param sd    Node或Event定义名称
+     * @param param 查询参数
+     * @return 选择率
+     */
+    public double selectivity(final String sd, final SdDataQueryParam param) {
+        switch (param.getLogic()) {
+            case EQ:
+                return this.equalSelectivity(sd, param.getProperty());
+            case NE:
+                return 1 - this.equalSelectivity(sd, param.getProperty());
+            case GT:
+            case LT:
+            case GTE:
+            case LTE:
+                return DEFAULT_RANGE_SELECTIVITY;
+            case LIKE:
+            case SW:
+            case EW:
+                return DEFAULT_LIKE_SELECTIVITY;
+            case NULL:
+            case NEX:
+                return DEFAULT_NULL_SELECTIVITY;
+            case NN:
+            case EXIST:
+                return 1 - DEFAULT_NULL_SELECTIVITY;
+            default:
+                return 1;
+        }
+    }
+
+    private double equalSelectivity(final String sd, final String property) {
+        final long distinct = statistics.getDistinctCount(sd, property);
+        return distinct > 0 ? 1.0 / distinct : DEFAULT_EQUAL_SELECTIVITY;
+    }
+
+    private static ChainPath reverse(final ChainPath path) {
+        return path == ChainPath.LEFT ? ChainPath.RIGHT : ChainPath.LEFT;
+    }
+
+    /**
+     * 查询链和展开后的路径
+     */
+    private static final class ChainPaths {
+        private final String chain;
+        private final List<List<UXDFChainItem>> paths;
+
+        private ChainPaths(final String chain, final List<List<UXDFChainItem>> paths) {
+            this.chain = chain;
+            this.paths = paths;
+        }
+    }
+
+    /**
+     * 路径中按顺序排列的Node标签和Sd名称
+     */
+    private static final class Labels {
+        private final List<String> labels = Lists.newArrayList();
+        private final List<String> sds = Lists.newArrayList();
+
+        private static Labels of(final List<UXDFChainItem> path) {
+            final Labels labels = new Labels();
+            final Iterator<UXDFChainItem> iterator = path.iterator();
+            if (iterator.hasNext()) {
+                final UXDFChainItem first = path.get(0);
+                labels.labels.add(first.getFirstLabel());
+                labels.sds.add(first.getFirstNode());
+            }
+            while (iterator.hasNext()) {
+                final UXDFChainItem item = iterator.next();
+                labels.labels.add(item.getLastLabel());
+                labels.sds.add(item.getLastNode());
+            }
+            return labels;
+        }
+
+        private int size() {
+            return labels.size();
+        }
+
+        private String label(final int index) {
+            return labels.get(index);
+        }
+
+        private String sd(final int index) {
+            return sds.get(index);
+        }
+    }
+}
@@ -0,0 +1,761 @@
+package info.ralab.uxdf.service;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.definition.SdOperateType;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.instance.SdEntity;
+import info.ralab.uxdf.model.SdDataQueryRequest;
+import info.ralab.uxdf.model.SdDataQueryResult;
+import info.ralab.uxdf.model.SdDataSaveResult;
+import info.ralab.uxdf.utils.UXDFBinaryFileInfo;
+import lombok.Getter;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 缓存单个实例查询的{@link StorageService}装饰器。
+ * <p>
+ * 缓存{@link #getNodeEntityById(String, String)}、{@link #getNodeEntityByUUID(String, String)}
+ * 和{@link #getEventEntity(String, String)}的结果，不存在的结果单独缓存。
+ * 缓存按容量上限淘汰最近最少使用的实例，并按Sd名称设置过期时间，过期时间为0的Sd不缓存。
+ * 缓存中保存实例的副本，命中时也返回副本，调用方修改返回的实例不影响缓存。
+ * </p>
+ * <p>
+ * 保存、解除关联和清除Node后，通过实例的Sd名称、逻辑ID和唯一编码失效对应缓存，删除Node时同时失效与其关联的Event。
+ * 缓存的实例按Node逻辑ID、关联的Node、Event逻辑ID和Sd名称记录索引，失效时通过索引找到对应的缓存键，不遍历缓存。
+ * 强制删除可能级联删除其它实例，此时清空全部缓存。
+ * 阻塞查询总是直接调用被装饰的服务，不读取也不写入缓存。
+ * 其它查询不缓存。
+ * </p>
+ */
+public class CachingStorageService implements StorageService {
+
+    /**
+     * 默认缓存容量
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    /**
+     * 默认过期时间，毫秒
+     */
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * 默认不存在结果的过期时间，毫秒
+     */
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final char KEY_DELIMITER = '\u0001';
+    private static final char KEY_NODE_ID = 'N';
+    private static final char KEY_NODE_UUID = 'U';
+    private static final char KEY_EVENT_UUID = 'E';
+
+    /**
+     * Node实例索引前缀，通过Node逻辑ID索引该Node的所有缓存键
+     */
+    private static final char TAG_NODE = 'n';
+    /**
+     * 关联Node索引前缀，通过Node逻辑ID索引与其关联的Event缓存键
+     */
+    private static final char TAG_REFERENCE = 'r';
+    /**
+     * Event实例索引前缀，通过Event定义名称和ID索引
+     */
+    private static final char TAG_EVENT = 'e';
+    /**
+     * Event两端索引前缀，通过Event定义名称和两端Node逻辑ID索引
+     */
+    private static final char TAG_PAIR = 'p';
+    /**
+     * Node定义索引前缀，通过Node定义名称索引该定义的Node和两端包含该定义的Event
+     */
+    private static final char TAG_SD = 's';
+
+    /**
+     * 失效记录的分段数量
+     */
+    private static final int STRIPES = 1024;
+
+    @Getter
+    private final StorageService delegate;
+
+    @Getter
+    private final StorageCacheMetrics metrics = new StorageCacheMetrics();
+
+    private final Ticker ticker;
+
+    /**
+     * 实例缓存
+     */
+    private final Cache<String, CachedEntity> cache;
+
+    /**
+     * 不存在结果缓存，值为过期时间
+     */
+    private final Cache<String, Long> negativeCache;
+
+    /**
+     * 按Sd名称设置的过期时间，纳秒
+     */
+    private final Map<String, Long> ttlNanos = Maps.newConcurrentMap();
+
+    private volatile long defaultTtlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TTL_MILLIS);
+
+    private volatile long negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_NEGATIVE_TTL_MILLIS);
+
+    /**
+     * 缓存键索引，通过索引标签记录对应的实例缓存键
+     */
+    private final ConcurrentMap<String, Set<String>> index = Maps.newConcurrentMap();
+
+    /**
+     * 不存在结果缓存键索引，通过类型和Sd名称组成的键前缀记录
+     */
+    private final ConcurrentMap<String, Set<String>> negativeIndex = Maps.newConcurrentMap();
+
+    /**
+     * 失效序号，每次失效时递增
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 按缓存键或索引标签散列分段的最近失效序号。查询期间结果对应的键或标签被失效时，查询结果不写入缓存
+     */
+    private final AtomicLongArray invalidatedAt = new AtomicLongArray(STRIPES);
+
+    /**
+     * 最近清空全部缓存的失效序号
+     */
+    private volatile long allInvalidatedAt;
+
+    public CachingStorageService(final StorageService delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SIZE, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param delegate            被装饰的服务
+     * @param maximumSize         实例缓存容量
+     * @param negativeMaximumSize 不存在结果缓存容量
+     */
+    public CachingStorageService(final StorageService delegate, final long maximumSize, final long negativeMaximumSize) {
+        this(delegate, maximumSize, negativeMaximumSize, Ticker.systemTicker());
+    }
+
+    CachingStorageService(
+            final StorageService delegate,
+            final long maximumSize,
+            final long negativeMaximumSize,
+            final Ticker ticker
+    ) {
+        if (delegate == null) {
+            throw new UXDFException("Delegate storage service is null.");
+        }
+        this.delegate = delegate;
+        this.ticker = ticker;
+        final RemovalListener<String, CachedEntity> removalListener = notification -> {
+            if (notification.wasEvicted()) {
+                metrics.recordEviction();
+            }
+            final CachedEntity removed = notification.getValue();
+            if (removed != null) {
+                removed.tags.forEach(tag -> this.unindex(index, tag, notification.getKey()));
+            }
+        };
+        final RemovalListener<String, Long> negativeRemovalListener = notification -> {
+            if (notification.wasEvicted()) {
+                metrics.recordEviction();
+            }
+            this.unindex(negativeIndex, negativeTag(notification.getKey()), notification.getKey());
+        };
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .removalListener(removalListener)
+                .build();
+        this.negativeCache = CacheBuilder.newBuilder()
+                .maximumSize(negativeMaximumSize)
+                .removalListener(negativeRemovalListener)
+                .build();
+    }
+
+    /**
+     * 设置默认过期时间
+     *
+     * @param duration 时长，为0时不缓存
+     * @param unit     时间单位
+     */
+    public void setDefaultTtl(final long duration, final TimeUnit unit) {
+        this.defaultTtlNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * 设置Sd的过期时间
+     *
+     * @param sdName   Node或Event定义名称
+     * @param duration 时长，为0时不缓存
+     * @param unit     时间单位
+     */
+    public void setTtl(final String sdName, final long duration, final TimeUnit unit) {
+        this.ttlNanos.put(sdName, unit.toNanos(duration));
+    }
+
+    /**
+     * 设置不存在结果的过期时间
+     *
+     * @param duration 时长，为0时不缓存不存在的结果
+     * @param unit     时间单位
+     */
+    public void setNegativeTtl(final long duration, final TimeUnit unit) {
+        this.negativeTtlNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * 获取缓存的实例数量
+     *
+     * @return 实例数量
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * 清空全部缓存
+     */
+    public void invalidateAll() {
+        allInvalidatedAt = sequence.incrementAndGet();
+        cache.invalidateAll();
+        negativeCache.invalidateAll();
+        metrics.recordInvalidation();
+    }
+
+    @Override
+    public void init() {
+        delegate.init();
+    }
+
+    @Override
+    public void destory() {
+        this.invalidateAll();
+        delegate.destory();
+    }
+
+    @Override
+    public SdDataSaveResult saveData(
+            final SdData sdData,
+            final SdOperateType operate,
+            final UXDFBinaryFileInfo[] files,
+            final boolean sync
+    ) {
+        return this.write(sdData, operate, () -> delegate.saveData(sdData, operate, files, sync));
+    }
+
+    @Override
+    public SdDataSaveResult saveData(final SdData sdData) {
+        return this.write(sdData, null, () -> delegate.saveData(sdData));
+    }
+
+    @Override
+    public SdDataSaveResult saveAndSyncData(final SdData sdData) {
+        return this.write(sdData, null, () -> delegate.saveAndSyncData(sdData));
+    }
+
+    @Override
+    public NodeEntity saveNode(final NodeEntity nodeEntity) {
+        NodeEntity saved = null;
+        try {
+            saved = delegate.saveNode(nodeEntity);
+            return saved;
+        } finally {
+            this.invalidate(nodeEntity, null);
+            if (saved != null && saved != nodeEntity) {
+                this.invalidate(saved, null);
+            }
+        }
+    }
+
+    @Override
+    public EventEntity saveEvent(final EventEntity eventEntity) {
+        EventEntity saved = null;
+        try {
+            saved = delegate.saveEvent(eventEntity);
+            return saved;
+        } finally {
+            this.invalidate(eventEntity, null);
+            if (saved != null && saved != eventEntity) {
+                this.invalidate(saved, null);
+            }
+        }
+    }
+
+    @Override
+    public SdDataQueryResult queryData(final SdDataQueryRequest queryRequest) {
+        return delegate.queryData(queryRequest);
+    }
+
+    @Override
+    public SdDataQueryResult getDataById(final String nodeName, final String nodeId) {
+        return delegate.getDataById(nodeName, nodeId);
+    }
+
+    @Override
+    public SdDataQueryResult getDataById(final String nodeName, final String nodeId, final boolean isBlock) {
+        return delegate.getDataById(nodeName, nodeId, isBlock);
+    }
+
+    @Override
+    public NodeEntity getNodeEntityById(final String nodeName, final String nodeId) {
+        return this.lookup(
+                key(KEY_NODE_ID, nodeName, nodeId),
+                nodeName,
+                () -> delegate.getNodeEntityById(nodeName, nodeId),
+                CachingStorageService::copy
+        );
+    }
+
+    @Override
+    public NodeEntity getNodeEntityById(final String nodeName, final String nodeId, final boolean isBlock) {
+        if (isBlock) {
+            metrics.recordBypass();
+            return delegate.getNodeEntityById(nodeName, nodeId, true);
+        }
+        return this.getNodeEntityById(nodeName, nodeId);
+    }
+
+    @Override
+    public NodeEntity getNodeEntityByUUID(final String nodeName, final String uuid) {
+        return this.lookup(
+                key(KEY_NODE_UUID, nodeName, uuid),
+                nodeName,
+                () -> delegate.getNodeEntityByUUID(nodeName, uuid),
+                CachingStorageService::copy
+        );
+    }
+
+    @Override
+    public NodeEntity getNodeEntityByUUID(final String nodeName, final String uuid, final boolean isBlock) {
+        if (isBlock) {
+            metrics.recordBypass();
+            return delegate.getNodeEntityByUUID(nodeName, uuid, true);
+        }
+        return this.getNodeEntityByUUID(nodeName, uuid);
+    }
+
+    @Override
+    public SdDataQueryResult getData(
+            final String eventName,
+            final String eventId,
+            final String leftNodeName,
+            final String leftNodeId,
+            final String rightNodeName,
+            final String rightNodeId
+    ) {
+        return delegate.getData(eventName, eventId, leftNodeName, leftNodeId, rightNodeName, rightNodeId);
+    }
+
+    @Override
+    public SdDataQueryResult getData(
+            final String eventName,
+            final String eventId,
+            final String leftNodeName,
+            final String leftNodeId,
+            final String rightNodeName,
+            final String rightNodeId,
+            final boolean isBlock
+    ) {
+        return delegate.getData(eventName, eventId, leftNodeName, leftNodeId, rightNodeName, rightNodeId, isBlock);
+    }
+
+    @Override
+    public EventEntity getEventEntity(
+            final String eventName,
+            final String eventId,
+            final String leftNodeName,
+            final String leftNodeId,
+            final String rightNodeName,
+            final String rightNodeId
+    ) {
+        return delegate.getEventEntity(eventName, eventId, leftNodeName, leftNodeId, rightNodeName, rightNodeId);
+    }
+
+    @Override
+    public EventEntity getEventEntity(
+            final String eventName,
+            final String eventId,
+            final String leftNodeName,
+            final String leftNodeId,
+            final String rightNodeName,
+            final String rightNodeId,
+            final boolean isBlock
+    ) {
+        return delegate.getEventEntity(eventName, eventId, leftNodeName, leftNodeId, rightNodeName, rightNodeId, isBlock);
+    }
+
+    @Override
+    public EventEntity getEventEntity(final String eventName, final String uuid) {
+        return this.lookup(
+                key(KEY_EVENT_UUID, eventName, uuid),
+                eventName,
+                () -> delegate.getEventEntity(eventName, uuid),
+                CachingStorageService::copy
+        );
+    }
+
+    @Override
+    public EventEntity getEventEntity(final String eventName, final String uuid, final boolean isBlock) {
+        if (isBlock) {
+            metrics.recordBypass();
+            return delegate.getEventEntity(eventName, uuid, true);
+        }
+        return this.getEventEntity(eventName, uuid);
+    }
+
+    @Override
+    public InputStream getUXDFBinaryFile(final String nodeName, final String property, final String uuid) {
+        return delegate.getUXDFBinaryFile(nodeName, property, uuid);
+    }
+
+    @Override
+    public List<Map<String, Object>> originalQuery(final String expression) {
+        return delegate.originalQuery(expression);
+    }
+
+    @Override
+    public int unlink(final NodeEntity leftNode, final NodeEntity rightNode, final String eventType) {
+        try {
+            return delegate.unlink(leftNode, rightNode, eventType);
+        } finally {
+            this.invalidateTag(tag(TAG_PAIR, eventType, leftNode.getLogicId() + KEY_DELIMITER + rightNode.getLogicId()));
+        }
+    }
+
+    @Override
+    public int clearNode(final String nodeName) {
+        try {
+            return delegate.clearNode(nodeName);
+        } finally {
+            this.invalidateTag(tag(TAG_SD, nodeName, ""));
+        }
+    }
+
+    /**
+     * 查询单个实例，依次检查实例缓存、不存在结果缓存，未命中时调用被装饰的服务
+     *
+     * @param key    缓存键
+     * @param sdName Sd名称
+     * @param loader 查询被装饰的服务
+     * @param copier 复制实例
+     * @param <T>    实例类型
+     * @return 实例
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends SdEntity> T lookup(
+            final String key,
+            final String sdName,
+            final Supplier<T> loader,
+            final Function<T, T> copier
+    ) {
+        final long now = ticker.read();
+        final CachedEntity cached = cache.getIfPresent(key);
+        if (cached != null) {
+            if (cached.expireAt - now > 0) {
+                metrics.recordHit();
+                return copier.apply((T) cached.sdEntity);
+            }
+            // 已过期
+            if (cache.asMap().remove(key, cached)) {
+                metrics.recordEviction();
+            }
+        }
+        final Long negativeExpireAt = negativeCache.getIfPresent(key);
+        if (negativeExpireAt != null) {
+            if (negativeExpireAt - now > 0) {
+                metrics.recordNegativeHit();
+                return null;
+            }
+            if (negativeCache.asMap().remove(key, negativeExpireAt)) {
+                metrics.recordEviction();
+            }
+        }
+
+        metrics.recordMiss();
+        final long start = sequence.get();
+        final T loaded = loader.get();
+        if (loaded == null) {
+            if (negativeTtlNanos > 0) {
+                final String tag = negativeTag(key);
+                if (this.isInvalidatedSince(start, key, tag)) {
+                    // 查询期间已经失效，结果可能已经过期
+                    return null;
+                }
+                final Long expireAt = now + negativeTtlNanos;
+                negativeCache.put(key, expireAt);
+                this.index(negativeIndex, tag, key);
+                if (this.isInvalidatedSince(start, key, tag)) {
+                    negativeCache.asMap().remove(key, expireAt);
+                }
+            }
+            return null;
+        }
+        final long ttl = ttlNanos.getOrDefault(sdName, defaultTtlNanos);
+        if (ttl > 0) {
+            final List<String> tags = tags(loaded);
+            final String[] checked = tags.toArray(new String[tags.size() + 1]);
+            checked[tags.size()] = key;
+            if (this.isInvalidatedSince(start, checked)) {
+                return loaded;
+            }
+            final CachedEntity entry = new CachedEntity(copier.apply(loaded), now + ttl, tags);
+            cache.put(key, entry);
+            tags.forEach(tag -> this.index(index, tag, key));
+            // 写入索引前发生的失效可能没有找到此缓存键
+            if (this.isInvalidatedSince(start, checked)) {
+                cache.asMap().remove(key, entry);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 保存数据，保存后失效数据中所有实例对应的缓存
+     */
+    private SdDataSaveResult write(
+            final SdData sdData,
+            final SdOperateType operate,
+            final Supplier<SdDataSaveResult> saver
+    ) {
+        try {
+            return saver.get();
+        } finally {
+            sdData.getUnmodifiableNode().forEach(nodeEntity -> this.invalidate(nodeEntity, operate));
+            sdData.getUnmodifiableEvent().values().forEach(events ->
+                    events.forEach(eventEntity -> this.invalidate(eventEntity, operate))
+            );
+        }
+    }
+
+    /**
+     * 失效实例对应的缓存
+     *
+     * @param sdEntity 保存的实例
+     * @param operate  默认操作类型
+     */
+    private void invalidate(final SdEntity sdEntity, final SdOperateType operate) {
+        if (sdEntity == null) {
+            return;
+        }
+        final SdOperateType entityOperate = sdEntity.getOperate() == null ? operate : sdEntity.getOperate();
+        if (entityOperate == SdOperateType.delete && sdEntity.isDeleteEnforce()) {
+            // 强制删除会级联删除其它实例
+            this.invalidateAll();
+            return;
+        }
+        final String sdName = sdEntity.get__Sd();
+        final String uuid = sdEntity.get__Uuid();
+        if (sdEntity instanceof NodeEntity) {
+            if (sdEntity.get__Id() != null) {
+                // 通过逻辑ID失效该Node的所有缓存，唯一属性变更时原唯一编码的缓存也一起失效
+                this.invalidateTag(tag(TAG_NODE, sdName, sdEntity.get__Id()));
+                this.invalidateKey(key(KEY_NODE_ID, sdName, sdEntity.get__Id()));
+            }
+            if (uuid != null) {
+                this.invalidateKey(key(KEY_NODE_UUID, sdName, uuid));
+            } else {
+                this.invalidateNegative(KEY_NODE_UUID, sdName);
+            }
+            if (entityOperate == SdOperateType.delete && sdEntity.isEffective()) {
+                // 删除Node时同时删除直接关联的Event
+                this.invalidateTag(tag(TAG_REFERENCE, sdEntity.getLogicId(), ""));
+            }
+        } else {
+            if (uuid != null) {
+                this.invalidateKey(key(KEY_EVENT_UUID, sdName, uuid));
+            } else {
+                this.invalidateNegative(KEY_EVENT_UUID, sdName);
+            }
+            if (sdEntity.get__Id() != null) {
+                // 按逻辑ID更新时唯一编码可能变更
+                this.invalidateTag(tag(TAG_EVENT, sdName, sdEntity.get__Id()));
+            }
+        }
+    }
+
+    private void invalidateKey(final String key) {
+        this.markInvalidated(key);
+        if (cache.asMap().remove(key) != null) {
+            metrics.recordInvalidation();
+        }
+        negativeCache.invalidate(key);
+    }
+
+    /**
+     * 实例没有唯一编码时，无法确定对应的不存在结果缓存，失效该Sd所有不存在结果缓存
+     */
+    private void invalidateNegative(final char type, final String sdName) {
+        final String tag = key(type, sdName, "");
+        this.markInvalidated(tag);
+        final Set<String> keys = negativeIndex.remove(tag);
+        if (keys != null) {
+            negativeCache.invalidateAll(keys);
+        }
+    }
+
+    /**
+     * 失效索引标签对应的实例缓存
+     */
+    private void invalidateTag(final String tag) {
+        this.markInvalidated(tag);
+        final Set<String> keys = index.remove(tag);
+        if (keys == null) {
+            return;
+        }
+        keys.forEach(key -> {
+            if (cache.asMap().remove(key) != null) {
+                metrics.recordInvalidation();
+            }
+        });
+    }
+
+    /**
+     * 记录缓存键或索引标签的失效序号
+     */
+    private void markInvalidated(final String keyOrTag) {
+        invalidatedAt.accumulateAndGet(stripe(keyOrTag), sequence.incrementAndGet(), Math::max);
+    }
+
+    /**
+     * 缓存键或索引标签在指定序号之后是否失效过，散列到同一分段的失效也视为失效
+     */
+    private boolean isInvalidatedSince(final long start, final String... keysOrTags) {
+        if (allInvalidatedAt > start) {
+            return true;
+        }
+        for (String keyOrTag : keysOrTags) {
+            if (invalidatedAt.get(stripe(keyOrTag)) > start) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void index(final ConcurrentMap<String, Set<String>> target, final String tag, final String key) {
+        target.compute(tag, (t, keys) -> {
+            final Set<String> indexed = keys == null ? Sets.newHashSet() : keys;
+            indexed.add(key);
+            return indexed;
+        });
+    }
+
+    /**
+     * 缓存移除后从索引中移除缓存键，缓存键已经重新写入并且仍然使用此标签时保留
+     */
+    private void unindex(final ConcurrentMap<String, Set<String>> target, final String tag, final String key) {
+        target.computeIfPresent(tag, (t, keys) -> {
+            if (target == index) {
+                final CachedEntity current = cache.asMap().get(key);
+                if (current != null && current.tags.contains(tag)) {
+                    return keys;
+                }
+            } else if (negativeCache.asMap().containsKey(key)) {
+                return keys;
+            }
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    /**
+     * 实例缓存的索引标签
+     */
+    private static List<String> tags(final SdEntity sdEntity) {
+        final List<String> tags = Lists.newArrayListWithCapacity(6);
+        final String sdName = sdEntity.get__Sd();
+        if (sdEntity instanceof NodeEntity) {
+            if (sdEntity.get__Id() != null) {
+                tags.add(tag(TAG_NODE, sdName, sdEntity.get__Id()));
+            }
+            tags.add(tag(TAG_SD, sdName, ""));
+        } else {
+            final EventEntity eventEntity = (EventEntity) sdEntity;
+            if (eventEntity.get__Id() != null) {
+                tags.add(tag(TAG_EVENT, sdName, eventEntity.get__Id()));
+            }
+            if (eventEntity.isEffective()) {
+                final String leftLogicId = eventEntity.leftLogicId();
+                final String rightLogicId = eventEntity.rightLogicId();
+                tags.add(tag(TAG_REFERENCE, leftLogicId, ""));
+                tags.add(tag(TAG_REFERENCE, rightLogicId, ""));
+                tags.add(tag(TAG_PAIR, sdName, leftLogicId + KEY_DELIMITER + rightLogicId));
+            }
+            tags.add(tag(TAG_SD, eventEntity.get__LeftSd(), ""));
+            tags.add(tag(TAG_SD, eventEntity.get__RightSd(), ""));
+        }
+        return tags;
+    }
+
+    private static String tag(final char type, final String name, final String id) {
+        return key(type, name, id);
+    }
+
+    /**
+     * 不存在结果缓存键对应的索引标签，即类型和Sd名称组成的键前缀
+     */
+    private static String negativeTag(final String key) {
+        return key.substring(0, key.indexOf(KEY_DELIMITER) + 1);
+    }
+
+    private static int stripe(final String keyOrTag) {
+        final int hash = keyOrTag.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private static NodeEntity copy(final NodeEntity nodeEntity) {
+        final NodeEntity copy = new NodeEntity(nodeEntity);
+        copy.setRegistry(nodeEntity.getRegistry());
+        return copy;
+    }
+
+    private static EventEntity copy(final EventEntity eventEntity) {
+        final EventEntity copy = new EventEntity(eventEntity);
+        copy.setRegistry(eventEntity.getRegistry());
+        return copy;
+    }
+
+    private static String key(final char type, final String sdName, final String id) {
+        return String.valueOf(type) + sdName + KEY_DELIMITER + id;
+    }
+
+    /**
+     * 缓存的实例和过期时间
+     */
+    private static final class CachedEntity {
+        private final SdEntity sdEntity;
+        private final long expireAt;
+        /**
+         * 索引标签
+         */
+        private final List<String> tags;
+
+        private CachedEntity(final SdEntity sdEntity, final long expireAt, final List<String> tags) {
+            this.sdEntity = sdEntity;
+            this.expireAt = expireAt;
+            this.tags = tags;
+        }
+    }
+}
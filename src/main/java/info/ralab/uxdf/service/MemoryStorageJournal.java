@@ -0,0 +1,270 @@
+package info.ralab.uxdf.service;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.collect.Sets;
+import info.ralab.uxdf.persistence.SdDataFsyncPolicy;
+import info.ralab.uxdf.persistence.SdDataWriteAheadLog;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * {@link MemoryStorageService}的持久化文件，包括快照、追加日志和二进制文件。
+ * <p>
+ * 快照每行一个JSON对象，第一行记录快照包含的最后日志序号，之后每行一个操作，写入临时文件后替换。
+ * 日志使用{@link SdDataWriteAheadLog}，每次提交是一条记录，内容为所有操作的JSON数组，日志序号即提交序号。
+ * 恢复时先加载快照，再按顺序重放序号大于快照的提交，末尾不完整的提交截断，损坏的提交之后还有提交时抛出异常。
+ * </p>
+ * <p>
+ * 追加失败时截断本次写入的内容，之后日志不再可用，之后的追加都抛出异常。
+ * </p>
+ * <p>
+ * 二进制文件写入后不再修改，每个文件使用随机名称，快照时删除不再引用的文件。
+ * </p>
+ */
+@Slf4j
+class MemoryStorageJournal implements Closeable {
+
+    static final String SNAPSHOT_FILE = "snapshot.jsonl";
+    static final String LOG_FILE = "data.wal";
+    static final String BINARY_DIRECTORY = "binary";
+
+    private static final String KEY_SEQ = "seq";
+    private static final byte LINE_END = '\n';
+
+    private final File snapshotFile;
+    private final File logFile;
+    private final File binaryDirectory;
+
+    private SdDataWriteAheadLog writeAheadLog;
+
+    /**
+     * 最后提交序号
+     */
+    @Getter
+    private long sequence;
+
+    /**
+     * 上次快照后的提交数量
+     */
+    @Getter
+    private int records;
+
+    MemoryStorageJournal(final File directory) {
+        this.snapshotFile = new File(directory, SNAPSHOT_FILE);
+        this.logFile = new File(directory, LOG_FILE);
+        this.binaryDirectory = new File(directory, BINARY_DIRECTORY);
+    }
+
+    /**
+     * 加载快照并重放日志，之后打开日志等待追加
+     *
+     * @param consumer 按顺序接收每个操作
+     * @throws IOException IO异常
+     */
+    void recover(final Consumer<JSONObject> consumer) throws IOException {
+        Files.createDirectories(binaryDirectory.toPath());
+        long snapshotSequence = 0;
+        if (snapshotFile.exists()) {
+            try (InputStream inputStream = new BufferedInputStream(new FileInputStream(snapshotFile))) {
+                final LineReader reader = new LineReader(inputStream);
+                final String header = reader.next();
+                if (header == null) {
+                    throw new IOException(String.format("快照文件[%s]不完整。", snapshotFile));
+                }
+                snapshotSequence = JSON.parseObject(header).getLongValue(KEY_SEQ);
+                String line;
+                while ((line = reader.next()) != null) {
+                    consumer.accept(JSON.parseObject(line));
+                }
+                if (reader.hasRemaining()) {
+                    throw new IOException(String.format("快照文件[%s]不完整。", snapshotFile));
+                }
+            }
+        }
+        this.sequence = snapshotSequence;
+        this.records = 0;
+        // 强制写入由每次追加决定，不使用定时同步
+        this.writeAheadLog = new SdDataWriteAheadLog(
+                logFile,
+                SdDataFsyncPolicy.NONE,
+                0,
+                snapshotSequence,
+                (lsn, payload) -> {
+                    JSON.parseArray(new String(payload, StandardCharsets.UTF_8))
+                            .forEach(op -> consumer.accept((JSONObject) op));
+                    this.sequence = lsn;
+                    this.records++;
+                }
+        );
+    }
+
+    /**
+     * 追加一次提交，写入失败时截断本次写入的内容，之后日志不再可用
+     *
+     * @param ops   提交的所有操作
+     * @param force 是否强制写入磁盘
+     * @throws IOException IO异常
+     */
+    void append(final List<JSONObject> ops, final boolean force) throws IOException {
+        final JSONArray array = new JSONArray(ops.size());
+        array.addAll(ops);
+        final long lsn = writeAheadLog.append(array.toJSONString().getBytes(StandardCharsets.UTF_8));
+        if (force) {
+            writeAheadLog.sync();
+        } else {
+            writeAheadLog.commit(lsn);
+        }
+        this.sequence = lsn;
+        this.records++;
+    }
+
+    /**
+     * 写入快照，写入成功后清空日志并删除不再引用的二进制文件
+     *
+     * @param ops         快照包含的所有操作
+     * @param binaryFiles 仍在引用的二进制文件名称
+     * @throws IOException IO异常
+     */
+    void checkpoint(final Iterator<JSONObject> ops, final Collection<String> binaryFiles) throws IOException {
+        final File tempFile = new File(snapshotFile.getParentFile(), SNAPSHOT_FILE + ".tmp");
+        try (FileOutputStream outputStream = new FileOutputStream(tempFile);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            final JSONObject header = new JSONObject(true);
+            header.put(KEY_SEQ, this.sequence);
+            writer.write(header.toJSONString());
+            writer.write(LINE_END);
+            while (ops.hasNext()) {
+                writer.write(ops.next().toJSONString());
+                writer.write(LINE_END);
+            }
+            writer.flush();
+            outputStream.getFD().sync();
+        }
+        Files.move(
+                tempFile.toPath(),
+                snapshotFile.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING
+        );
+        // 快照已经包含所有提交，日志中的提交在恢复时会按序号跳过，截断失败不影响数据
+        writeAheadLog.truncate();
+        this.records = 0;
+
+        final Set<String> referenced = Sets.newHashSet(binaryFiles);
+        final File[] files = binaryDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!referenced.contains(file.getName()) && !file.delete()) {
+                    log.warn("删除不再引用的二进制文件[{}]失败。", file);
+                }
+            }
+        }
+    }
+
+    /**
+     * 写入二进制文件
+     *
+     * @param content 文件内容
+     * @param force   是否强制写入磁盘
+     * @return 文件名称
+     * @throws IOException IO异常
+     */
+    String writeBinary(final byte[] content, final boolean force) throws IOException {
+        final String name = UUID.randomUUID().toString();
+        try (FileOutputStream outputStream = new FileOutputStream(new File(binaryDirectory, name))) {
+            outputStream.write(content);
+            if (force) {
+                outputStream.getFD().sync();
+            }
+        }
+        return name;
+    }
+
+    /**
+     * 读取二进制文件
+     *
+     * @param name 文件名称
+     * @return 文件流
+     * @throws IOException IO异常
+     */
+    InputStream readBinary(final String name) throws IOException {
+        return new FileInputStream(new File(binaryDirectory, name));
+    }
+
+    /**
+     * 删除未提交的二进制文件
+     *
+     * @param name 文件名称
+     */
+    void deleteBinary(final String name) {
+        final File file = new File(binaryDirectory, name);
+        if (file.exists() && !file.delete()) {
+            log.warn("删除二进制文件[{}]失败。", file);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writeAheadLog != null) {
+            writeAheadLog.close();
+            writeAheadLog = null;
+        }
+    }
+
+    /**
+     * 按行读取UTF-8内容
+     */
+    private static final class LineReader {
+        private final InputStream inputStream;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        private LineReader(final InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        /**
+         * 读取下一个完整行，没有换行符结尾的内容不作为完整行返回
+         */
+        private String next() throws IOException {
+            line.reset();
+            int read;
+            while ((read = inputStream.read()) != -1) {
+                if (read == LINE_END) {
+                    return new String(line.toByteArray(), StandardCharsets.UTF_8);
+                }
+                line.write(read);
+            }
+            return null;
+        }
+
+        /**
+         * 最后一次读取是否有不完整的行
+         */
+        private boolean hasRemaining() {
+            return line.size() > 0;
+        }
+    }
+}
@@ -0,0 +1,1593 @@
+package info.ralab.uxdf.service;
+
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDF;
+import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.UXDFRegistry;
+import info.ralab.uxdf.definition.SdBaseType;
+import info.ralab.uxdf.definition.SdDefinition;
+import info.ralab.uxdf.definition.SdEventDefinition;
+import info.ralab.uxdf.definition.SdEventRequiredType;
+import info.ralab.uxdf.definition.SdNodeDefinition;
+import info.ralab.uxdf.definition.SdOperateType;
+import info.ralab.uxdf.definition.SdProperty;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.IdMaker;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.instance.SdEntity;
+import info.ralab.uxdf.model.SdDataQueryOrder;
+import info.ralab.uxdf.model.SdDataQueryOrderType;
+import info.ralab.uxdf.model.SdDataQueryPage;
+import info.ralab.uxdf.model.SdDataQueryRequest;
+import info.ralab.uxdf.model.SdDataQueryResult;
+import info.ralab.uxdf.model.SdDataQuerySize;
+import info.ralab.uxdf.model.SdDataSaveResult;
+import info.ralab.uxdf.query.UXDFChainExecutor;
+import info.ralab.uxdf.query.UXDFChainResult;
+import info.ralab.uxdf.query.UXDFChainSource;
+import info.ralab.uxdf.query.UXDFQueryMatcher;
+import info.ralab.uxdf.utils.UXDFBinaryFileInfo;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 基于内存的{@link StorageService}参考实现，用于测试和没有数据库的部署。
+ * <p>
+ * Node和Event分别通过逻辑ID、uuid索引，Node另外按定义名称索引，并维护Node和Event的关联索引。
+ * 存储中的实例不会被修改，每次变更都放入新的实例；读取时返回副本。
+ * 通过ID和uuid的读取持有读锁，只读取已经提交的数据，isBlock不影响读取方式。
+ * 保存、解除关联和清除持有写锁串行执行，执行失败时回滚本次所有变更。
+ * 关系链查询持有读锁，通过{@link UXDFChainExecutor}并行执行。
+ * </p>
+ * <p>
+ * 指定存储目录时，{@link #init()}加载快照并重放追加日志，每次保存成功后追加一条日志，
+ * 日志数量达到{@link #getCheckpointThreshold()}时写入新的快照并清空日志。
+ * {@link #isSyncOnWrite()}为true时每次保存都强制写入磁盘，否则只写入操作系统缓冲。
+ * 未指定存储目录时只保存在内存中。
+ * </p>
+ * <p>
+ * 二进制属性的值可以是files中的下标、byte数组、{@link InputStream}或{@link UXDFBinaryFileInfo}，
+ * 保存后属性值替换为文件信息，包括{@link UXDFBinaryFileInfo#PROP_NAME}、
+ * {@link UXDFBinaryFileInfo#PROP_CONTENT_TYPE}和{@link UXDFBinaryFileInfo#PROP_LENGTH}。
+ * </p>
+ */
+@Slf4j
+public class MemoryStorageService implements StorageService {
+
+    /**
+     * 默认写入快照的日志数量
+     */
+    public static final int DEFAULT_CHECKPOINT_THRESHOLD = 10000;
+
+    private static final char KEY_SEPARATOR = '\u0001';
+
+    private static final String OP_TYPE = "t";
+    private static final String OP_KEY = "k";
+    private static final String OP_VALUE = "v";
+    private static final String OP_NODE = "N";
+    private static final String OP_NODE_REMOVE = "n";
+    private static final String OP_EVENT = "E";
+    private static final String OP_EVENT_REMOVE = "e";
+    private static final String OP_BINARY = "B";
+    private static final String OP_BINARY_REMOVE = "b";
+    private static final String BINARY_FILE = "file";
+
+    @Getter
+    private final UXDFRegistry registry;
+
+    /**
+     * 存储目录，为NULL时不持久化
+     */
+    @Getter
+    private final File directory;
+
+    /**
+     * 写入快照的日志数量
+     */
+    @Getter
+    @Setter
+    private int checkpointThreshold = DEFAULT_CHECKPOINT_THRESHOLD;
+
+    /**
+     * 每次保存是否强制写入磁盘
+     */
+    @Getter
+    @Setter
+    private boolean syncOnWrite = false;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Node，通过逻辑ID索引
+     */
+    private final ConcurrentMap<String, NodeEntity> nodes = Maps.newConcurrentMap();
+    /**
+     * Node逻辑ID，通过定义名称和uuid索引
+     */
+    private final ConcurrentMap<String, String> nodeUUIDs = Maps.newConcurrentMap();
+    /**
+     * Node，通过定义名称和逻辑ID索引，保持保存顺序。只在持有锁时访问
+     */
+    private final Map<String, Map<String, NodeEntity>> nodesBySd = Maps.newHashMap();
+    /**
+     * Event，通过逻辑ID索引
+     */
+    private final ConcurrentMap<String, EventEntity> events = Maps.newConcurrentMap();
+    /**
+     * Event逻辑ID，通过定义名称和uuid索引
+     */
+    private final ConcurrentMap<String, String> eventUUIDs = Maps.newConcurrentMap();
+    /**
+     * Event逻辑ID，通过关联的Node逻辑ID索引。只在持有锁时访问
+     */
+    private final Map<String, Set<String>> nodeEvents = Maps.newHashMap();
+    /**
+     * 二进制文件，通过Node逻辑ID和属性名称索引
+     */
+    private final ConcurrentMap<String, BinaryFile> binaries = Maps.newConcurrentMap();
+
+    /**
+     * 关系链查询执行器
+     */
+    @Getter
+    private final UXDFChainExecutor executor;
+
+    private MemoryStorageJournal journal;
+
+    public MemoryStorageService() {
+        this(UXDFLoader.getRegistry(), null);
+    }
+
+    /**
+     * 创建存储服务
+     *
+     * @param registry  定义注册表
+     * @param directory 存储目录，为NULL时只保存在内存中
+     */
+    public MemoryStorageService(final UXDFRegistry registry, final File directory) {
+        this.registry = registry;
+        this.directory = directory;
+        this.executor = new UXDFChainExecutor(new Source(), registry);
+    }
+
+    @Override
+    public void init() {
+        if (directory == null) {
+            return;
+        }
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (journal != null) {
+                return;
+            }
+            final MemoryStorageJournal recovering = new MemoryStorageJournal(directory);
+            recovering.recover(this::replay);
+            this.journal = recovering;
+            log.info(
+                    "从[{}]恢复Node[{}]个，Event[{}]个，提交序号[{}]。",
+                    directory,
+                    nodes.size(),
+                    events.size(),
+                    recovering.getSequence()
+            );
+        } catch (IOException e) {
+            throw new UXDFException(String.format("从[%s]恢复数据失败。", directory), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void destory() {
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (journal == null) {
+                return;
+            }
+            if (journal.getRecords() > 0) {
+                this.writeCheckpoint();
+            }
+            journal.close();
+            journal = null;
+        } catch (IOException e) {
+            throw new UXDFException(String.format("关闭存储[%s]失败。", directory), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 立即写入快照并清空日志，未指定存储目录时不做处理
+     */
+    public void checkpoint() {
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (journal != null) {
+                this.writeCheckpoint();
+            }
+        } catch (IOException e) {
+            throw new UXDFException(String.format("写入快照[%s]失败。", directory), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public SdDataSaveResult saveData(
+            final SdData sdData,
+            final SdOperateType operate,
+            final UXDFBinaryFileInfo[] files,
+            final boolean sync
+    ) {
+        final SdDataSaveResult result = new SdDataSaveResult();
+        if (sdData == null || sdData.isEmpty()) {
+            return result;
+        }
+        final List<NodeEntity> inputNodes = sdData.getUnmodifiableNode();
+        final List<EventEntity> inputEvents = Lists.newArrayList();
+        sdData.getUnmodifiableEvent().values().forEach(inputEvents::addAll);
+
+        final Transaction transaction = new Transaction(files);
+        final List<Map.Entry<NodeEntity, NodeEntity>> savedNodes = Lists.newArrayList();
+        final List<Map.Entry<EventEntity, EventEntity>> savedEvents = Lists.newArrayList();
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            for (NodeEntity input : inputNodes) {
+                final SdOperateType nodeOperate = operateOf(input, operate);
+                if (nodeOperate == null || nodeOperate == SdOperateType.delete) {
+                    continue;
+                }
+                final NodeEntity saved = this.saveNode(transaction, input, nodeOperate, result);
+                if (saved != null) {
+                    transaction.nodeMapping.put(input.getLogicId(), saved);
+                    savedNodes.add(Maps.immutableEntry(input, saved));
+                }
+            }
+            for (EventEntity input : inputEvents) {
+                final SdOperateType eventOperate = operateOf(input, operate);
+                if (eventOperate == null || eventOperate == SdOperateType.delete) {
+                    continue;
+                }
+                final EventEntity saved = this.saveEvent(transaction, input, eventOperate, result);
+                if (saved != null) {
+                    savedEvents.add(Maps.immutableEntry(input, saved));
+                }
+            }
+            for (EventEntity input : inputEvents) {
+                if (operateOf(input, operate) == SdOperateType.delete) {
+                    this.deleteEvent(transaction, this.resolveEvent(transaction, input), input.isDeleteEnforce(), result);
+                }
+            }
+            for (NodeEntity input : inputNodes) {
+                if (operateOf(input, operate) == SdOperateType.delete) {
+                    this.deleteNode(transaction, nodes.get(input.getLogicId()), input.isDeleteEnforce(), result);
+                }
+            }
+            this.commit(transaction);
+        } catch (RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        } finally {
+            writeLock.unlock();
+        }
+
+        // 更新传入数据中新增的ID，需要同步时使用存储中的内容
+        savedNodes.forEach(entry -> {
+            final NodeEntity input = entry.getKey();
+            final NodeEntity saved = entry.getValue();
+            if (sync || !Objects.equals(input.get__Id(), saved.get__Id())) {
+                final NodeEntity target = sync ? this.copy(saved) : new NodeEntity(input).id(saved.get__Id());
+                sdData.updateNode(input.getLogicId(), input.get__Id(), target);
+            }
+        });
+        savedEvents.forEach(entry -> {
+            final EventEntity input = entry.getKey();
+            final EventEntity saved = entry.getValue();
+            if (sync || !Objects.equals(input.get__Id(), saved.get__Id())) {
+                final EventEntity target = sync ? this.copy(saved) : new EventEntity(input).id(saved.get__Id());
+                if (!sync) {
+                    target.set__Left(saved.get__Left());
+                    target.set__Right(saved.get__Right());
+                }
+                sdData.updateEvent(input.getLogicId(), input.get__Id(), target);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public SdDataSaveResult saveData(final SdData sdData) {
+        return this.saveData(sdData, null, null, false);
+    }
+
+    @Override
+    public SdDataSaveResult saveAndSyncData(final SdData sdData) {
+        return this.saveData(sdData, null, null, true);
+    }
+
+    /**
+     * 保存一个Node，未指定操作类型时新增或更新
+     *
+     * @param nodeEntity Node
+     * @return 存储后的Node，删除时返回NULL
+     */
+    @Override
+    public NodeEntity saveNode(final NodeEntity nodeEntity) {
+        final NodeEntity input = new NodeEntity(nodeEntity);
+        if (input.get__Id() == null) {
+            input.set__Id(IdMaker.temp());
+        }
+        final SdData sdData = new SdData(registry);
+        sdData.addNodeIfAbsent(input);
+        this.saveData(sdData, SdOperateType.createOrUpdate, null, true);
+        final List<NodeEntity> saved = sdData.getUnmodifiableNode();
+        return saved.isEmpty() || input.getOperate() == SdOperateType.delete ? null : saved.get(0);
+    }
+
+    /**
+     * 保存一个Event，未指定操作类型时新增或更新
+     *
+     * @param eventEntity Event
+     * @return 存储后的Event，删除时返回NULL
+     */
+    @Override
+    public EventEntity saveEvent(final EventEntity eventEntity) {
+        final EventEntity input = new EventEntity(eventEntity);
+        if (input.get__Id() == null) {
+            input.set__Id(IdMaker.temp());
+        }
+        final SdData sdData = new SdData(registry);
+        sdData.addEventIfAbsent(input);
+        this.saveData(sdData, SdOperateType.createOrUpdate, null, true);
+        final List<EventEntity> saved = sdData.getUnmodifiableEvent(input.get__Sd());
+        return saved.isEmpty() || input.getOperate() == SdOperateType.delete ? null : saved.get(0);
+    }
+
+    /**
+     * 查询数据。
+     * <p>
+     * 每个关系链分别执行，多个关系链通过相同的标签关联。
+     * 设置主标签时，分页和排序针对主标签去重后的实例，只返回包含当前页实例的行。
+     * </p>
+     *
+     * @param queryRequest 查询请求
+     * @return 查询结果
+     */
+    @Override
+    public SdDataQueryResult queryData(final SdDataQueryRequest queryRequest) {
+        final SdDataQueryResult queryResult = new SdDataQueryResult(new UXDF());
+        final SdData sdData = new SdData(registry);
+        queryResult.getUxdf().setData(sdData);
+        if (queryRequest == null || queryRequest.getChains() == null || queryRequest.getChains().isEmpty()) {
+            return queryResult;
+        }
+
+        List<Map<String, SdEntity>> rows = null;
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            for (String chain : queryRequest.getChains()) {
+                final UXDFChainResult chainResult = executor.execute(chain, queryRequest.getParams(), null);
+                rows = rows == null ? chainResult.getRows() : join(rows, chainResult.getRows());
+            }
+        } finally {
+            readLock.unlock();
+        }
+
+        final SdDataQueryRequest.PageOrder main = queryRequest.getMain();
+        Set<String> labels = queryRequest.getReturns();
+        if (main != null && main.getAlias() != null) {
+            final String alias = main.getAlias();
+            final Set<SdEntity> distinct = Sets.newLinkedHashSet();
+            rows.forEach(row -> {
+                if (row.get(alias) != null) {
+                    distinct.add(row.get(alias));
+                }
+            });
+            final List<SdEntity> mainEntities = Lists.newArrayList(distinct);
+            if (queryRequest.hasOrder()) {
+                mainEntities.sort(comparator(main.getOrders()));
+            }
+            final SdDataQueryPage page = main.getPage();
+            List<SdEntity> current = mainEntities;
+            if (page != null) {
+                final int from = Math.min(page.getStart(), mainEntities.size());
+                final int to = (int) Math.min((long) page.getStart() + page.getLimit(), mainEntities.size());
+                current = mainEntities.subList(from, to);
+            }
+            final SdDataQuerySize mainSize = new SdDataQuerySize();
+            mainSize.setCount(mainEntities.size());
+            mainSize.setCurrent(current.size());
+            queryResult.setMainSize(mainSize);
+
+            final Set<SdEntity> currentSet = Sets.newHashSet(current);
+            final Map<SdEntity, Integer> position = Maps.newHashMap();
+            current.forEach(sdEntity -> position.put(sdEntity, position.size()));
+            rows = rows.stream()
+                    .filter(row -> currentSet.contains(row.get(alias)))
+                    .sorted(Comparator.comparingInt(row -> position.get(row.get(alias))))
+                    .collect(Collectors.toList());
+            if (queryRequest.isOnlyMain()) {
+                labels = Collections.singleton(alias);
+            }
+        }
+
+        final Set<String> returns = labels == null || labels.isEmpty() ? null : labels;
+        rows.forEach(row -> row.forEach((label, sdEntity) -> {
+            if (sdEntity instanceof NodeEntity && (returns == null || returns.contains(label))) {
+                sdData.addNodeIfAbsent(this.copy((NodeEntity) sdEntity));
+            }
+        }));
+        rows.forEach(row -> row.forEach((label, sdEntity) -> {
+            if (sdEntity instanceof EventEntity && (returns == null || returns.contains(label))) {
+                sdData.addEventIfAbsent(this.copy((EventEntity) sdEntity));
+            }
+        }));
+        return queryResult;
+    }
+
+    @Override
+    public SdDataQueryResult getDataById(final String nodeName, final String nodeId) {
+        return this.getDataById(nodeName, nodeId, false);
+    }
+
+    @Override
+    public SdDataQueryResult getDataById(final String nodeName, final String nodeId, final boolean isBlock) {
+        final SdDataQueryResult queryResult = new SdDataQueryResult(new UXDF());
+        final SdData sdData = new SdData(registry);
+        queryResult.getUxdf().setData(sdData);
+        final NodeEntity nodeEntity = this.getNodeEntityById(nodeName, nodeId, isBlock);
+        if (nodeEntity != null) {
+            sdData.addNodeIfAbsent(nodeEntity);
+        }
+        return queryResult;
+    }
+
+    @Override
+    public NodeEntity getNodeEntityById(final String nodeName, final String nodeId) {
+        return this.getNodeEntityById(nodeName, nodeId, false);
+    }
+
+    @Override
+    public NodeEntity getNodeEntityById(final String nodeName, final String nodeId, final boolean isBlock) {
+        if (nodeName == null || nodeId == null) {
+            return null;
+        }
+        return this.read(() -> this.copy(nodes.get(nodeName + nodeId)));
+    }
+
+    @Override
+    public NodeEntity getNodeEntityByUUID(final String nodeName, final String uuid) {
+        return this.getNodeEntityByUUID(nodeName, uuid, false);
+    }
+
+    @Override
+    public NodeEntity getNodeEntityByUUID(final String nodeName, final String uuid, final boolean isBlock) {
+        if (nodeName == null || uuid == null) {
+            return null;
+        }
+        return this.read(() -> {
+            final String logicId = nodeUUIDs.get(uuidKey(nodeName, uuid));
+            return logicId == null ? null : this.copy(nodes.get(logicId));
+        });
+    }
+
+    @Override
+    public SdDataQueryResult getData(
+            final String eventName,
+            final String eventId,
+            final String leftNodeName,
+            final String leftNodeId,
+            final String rightNodeName,
+            final String rightNodeId
+    ) {
+        return this.getData(eventName, eventId, leftNodeName, leftNodeId, rightNodeName, rightNodeId, false);
+    }
+
+    /**
+     * 获取Event以及两侧的Node
+     */
+    @Override
+    public SdDataQueryResult getData(
+            final String eventName,
+            final String eventId,
+            final String leftNodeName,
+            final String leftNodeId,
+            final String rightNodeName,
+            final String rightNodeId,
+            final boolean isBlock
+    ) {
+        final SdDataQueryResult queryResult = new SdDataQueryResult(new UXDF());
+        final SdData sdData = new SdData(registry);
+        queryResult.getUxdf().setData(sdData);
+        this.read(() -> {
+            final EventEntity eventEntity = this.copy(events.get(
+                    eventLogicId(eventName, eventId, leftNodeName, leftNodeId, rightNodeName, rightNodeId)
+            ));
+            if (eventEntity != null) {
+                sdData.addNodeIfAbsent(this.copy(nodes.get(eventEntity.leftLogicId())));
+                sdData.addNodeIfAbsent(this.copy(nodes.get(eventEntity.rightLogicId())));
+                sdData.addEventIfAbsent(eventEntity);
+            }
+            return null;
+        });
+        return queryResult;
+    }
+
+    @Override
+    public EventEntity getEventEntity(
+            final String eventName,
+            final String eventId,
+            final String leftNodeName,
+            final String leftNodeId,
+            final String rightNodeName,
+            final String rightNodeId
+    ) {
+        return this.getEventEntity(eventName, eventId, leftNodeName, leftNodeId, rightNodeName, rightNodeId, false);
+    }
+
+    @Override
+    public EventEntity getEventEntity(
+            final String eventName,
+            final String eventId,
+            final String leftNodeName,
+            final String leftNodeId,
+            final String rightNodeName,
+            final String rightNodeId,
+            final boolean isBlock
+    ) {
+        return this.read(() -> this.copy(events.get(
+                eventLogicId(eventName, eventId, leftNodeName, leftNodeId, rightNodeName, rightNodeId)
+        )));
+    }
+
+    @Override
+    public EventEntity getEventEntity(final String eventName, final String uuid) {
+        return this.getEventEntity(eventName, uuid, false);
+    }
+
+    @Override
+    public EventEntity getEventEntity(final String eventName, final String uuid, final boolean isBlock) {
+        if (eventName == null || uuid == null) {
+            return null;
+        }
+        return this.read(() -> {
+            final String logicId = eventUUIDs.get(uuidKey(eventName, uuid));
+            return logicId == null ? null : this.copy(events.get(logicId));
+        });
+    }
+
+    /**
+     * 获取二进制文件
+     *
+     * @param nodeName Node名称
+     * @param property 属性名称
+     * @param uuid     Node的唯一编码，没有uuid的Node使用逻辑ID中的ID
+     * @return 文件流，不存在时返回NULL
+     */
+    @Override
+    public InputStream getUXDFBinaryFile(final String nodeName, final String property, final String uuid) {
+        if (nodeName == null || property == null || uuid == null) {
+            return null;
+        }
+        final BinaryFile binaryFile = this.read(() -> binaries.get(binaryKey(
+                nodeUUIDs.getOrDefault(uuidKey(nodeName, uuid), nodeName + uuid),
+                property
+        )));
+        if (binaryFile == null) {
+            return null;
+        }
+        if (binaryFile.content != null) {
+            return new ByteArrayInputStream(binaryFile.content);
+        }
+        final MemoryStorageJournal current = journal;
+        if (current == null) {
+            log.error("存储[{}]未初始化，无法读取二进制文件[{}]。", directory, binaryFile.file);
+            return null;
+        }
+        try {
+            return current.readBinary(binaryFile.file);
+        } catch (IOException e) {
+            log.error(String.format("读取二进制文件[%s]失败。", binaryFile.file), e);
+            return null;
+        }
+    }
+
+    /**
+     * 原始查询，表达式作为关系链执行
+     *
+     * @param expression 关系链字符串
+     * @return 每一行匹配的实例，通过标签索引
+     */
+    @Override
+    public List<Map<String, Object>> originalQuery(final String expression) {
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return executor.execute(expression).getRows().stream().map(row -> {
+                final Map<String, Object> result = Maps.newLinkedHashMap();
+                row.forEach((label, sdEntity) -> result.put(label, new JSONObject(true).fluentPutAll(sdEntity)));
+                return result;
+            }).collect(Collectors.toList());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public int unlink(final NodeEntity leftNode, final NodeEntity rightNode, final String eventType) {
+        if (leftNode == null || rightNode == null || !leftNode.isEffective() || !rightNode.isEffective()) {
+            return 0;
+        }
+        final String leftLogicId = leftNode.getLogicId();
+        final String rightLogicId = rightNode.getLogicId();
+        final Transaction transaction = new Transaction(null);
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            final List<EventEntity> linked = this.getEvents(leftLogicId).stream().filter(eventEntity ->
+                    (eventType == null || eventType.equals(eventEntity.get__Sd()))
+                            && leftLogicId.equals(eventEntity.leftLogicId())
+                            && rightLogicId.equals(eventEntity.rightLogicId())
+            ).collect(Collectors.toList());
+            linked.forEach(eventEntity -> this.removeEvent(transaction, eventEntity));
+            this.commit(transaction);
+            return linked.size();
+        } catch (RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int clearNode(final String nodeName) {
+        final Transaction transaction = new Transaction(null);
+        final SdDataSaveResult result = new SdDataSaveResult();
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            final Map<String, NodeEntity> sdNodes = nodesBySd.get(nodeName);
+            if (sdNodes != null) {
+                Lists.newArrayList(sdNodes.values()).forEach(nodeEntity ->
+                        this.deleteNode(transaction, nodeEntity, false, result)
+                );
+            }
+            this.commit(transaction);
+            return result.getNodeDeleteNum().get();
+        } catch (RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 获取当前Node数量
+     *
+     * @return Node数量
+     */
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * 获取当前Event数量
+     *
+     * @return Event数量
+     */
+    public int getEventCount() {
+        return events.size();
+    }
+
+    /**
+     * 按操作类型保存Node
+     *
+     * @return 存储中对应的Node，没有对应的Node时返回NULL
+     */
+    private NodeEntity saveNode(
+            final Transaction transaction,
+            final NodeEntity input,
+            final SdOperateType operate,
+            final SdDataSaveResult result
+    ) {
+        final NodeEntity entity = this.detach(input);
+        switch (operate) {
+            case create:
+                return this.createNode(transaction, entity, input.isCreateOriginalId(), result);
+            case update:
+                return this.updateNode(transaction, entity, result);
+            case createOrUpdate: {
+                final NodeEntity existing = this.findNodeByUUID(entity);
+                return existing == null ?
+                        this.createNode(transaction, entity, input.isCreateOriginalId(), result) :
+                        this.updateNode(transaction, entity.id(existing.get__Id()), result);
+            }
+            case createNotExist: {
+                final NodeEntity existing = this.findNodeByUUID(entity);
+                return existing == null ? this.createNode(transaction, entity, input.isCreateOriginalId(), result) : existing;
+            }
+            case query:
+            case match: {
+                final NodeEntity existing = nodes.get(entity.getLogicId());
+                return existing == null ? this.findNodeByUUID(entity) : existing;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private NodeEntity createNode(
+            final Transaction transaction,
+            final NodeEntity entity,
+            final boolean originalId,
+            final SdDataSaveResult result
+    ) {
+        if (!originalId || StringUtils.isBlank(entity.get__Id())) {
+            entity.set__Id(IdMaker.next());
+        }
+        if (nodes.containsKey(entity.getLogicId())) {
+            throw new UXDFException(String.format("新增的Node[%s]已经存在。", entity.getLogicId()));
+        }
+        final Date now = new Date();
+        entity.set__CreateTime(now);
+        entity.set__UpdateTime(now);
+        this.putNode(transaction, entity);
+        result.getNodeCreateNum().incrementAndGet();
+        return entity;
+    }
+
+    private NodeEntity updateNode(final Transaction transaction, final NodeEntity entity, final SdDataSaveResult result) {
+        final NodeEntity existing = entity.get__Id() == null ? null : nodes.get(entity.getLogicId());
+        if (existing == null) {
+            throw new UXDFException(String.format("更新的Node[%s]不存在。", entity.toJSONString()));
+        }
+        final NodeEntity updated = this.copy(existing).merge(entity);
+        updated.set__UpdateTime(new Date());
+        this.putNode(transaction, updated);
+        result.getNodeUpdateNum().incrementAndGet();
+        return updated;
+    }
+
+    /**
+     * 删除Node以及关联的Event，强制删除时同时删除以被删除Event为必须关系的Node
+     */
+    private void deleteNode(
+            final Transaction transaction,
+            final NodeEntity nodeEntity,
+            final boolean enforce,
+            final SdDataSaveResult result
+    ) {
+        if (nodeEntity == null || !nodes.containsKey(nodeEntity.getLogicId())) {
+            return;
+        }
+        final String logicId = nodeEntity.getLogicId();
+        this.removeNode(transaction, nodeEntity);
+        result.getNodeDeleteNum().incrementAndGet();
+
+        for (EventEntity eventEntity : this.getEvents(logicId)) {
+            if (!events.containsKey(eventEntity.getLogicId())) {
+                continue;
+            }
+            this.removeEvent(transaction, eventEntity);
+            result.getEventDeleteNum().incrementAndGet();
+            if (!enforce) {
+                continue;
+            }
+            final SdEventRequiredType required = this.requiredOf(eventEntity);
+            if (logicId.equals(eventEntity.leftLogicId())
+                    && (required == SdEventRequiredType.right || required == SdEventRequiredType.both)) {
+                this.deleteNode(transaction, nodes.get(eventEntity.rightLogicId()), true, result);
+            }
+            if (logicId.equals(eventEntity.rightLogicId())
+                    && (required == SdEventRequiredType.left || required == SdEventRequiredType.both)) {
+                this.deleteNode(transaction, nodes.get(eventEntity.leftLogicId()), true, result);
+            }
+        }
+    }
+
+    /**
+     * 按操作类型保存Event
+     *
+     * @return 存储中对应的Event，没有对应的Event时返回NULL
+     */
+    private EventEntity saveEvent(
+            final Transaction transaction,
+            final EventEntity input,
+            final SdOperateType operate,
+            final SdDataSaveResult result
+    ) {
+        final EventEntity entity = this.resolveEvent(transaction, input);
+        switch (operate) {
+            case create:
+                return this.createEvent(transaction, entity, input.isCreateOriginalId(), result);
+            case update:
+                return this.updateEvent(transaction, entity, result);
+            case createOrUpdate: {
+                final EventEntity existing = this.findEventByUUID(entity);
+                return existing == null ?
+                        this.createEvent(transaction, entity, input.isCreateOriginalId(), result) :
+                        this.updateEvent(transaction, entity.id(existing.get__Id()), result);
+            }
+            case createNotExist: {
+                final EventEntity existing = this.findEventByUUID(entity);
+                return existing == null ? this.createEvent(transaction, entity, input.isCreateOriginalId(), result) : existing;
+            }
+            case query:
+            case match: {
+                final EventEntity existing = events.get(entity.getLogicId());
+                return existing == null ? this.findEventByUUID(entity) : existing;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private EventEntity createEvent(
+            final Transaction transaction,
+            final EventEntity entity,
+            final boolean originalId,
+            final SdDataSaveResult result
+    ) {
+        this.checkEnds(entity);
+        if (!originalId || StringUtils.isBlank(entity.get__Id())) {
+            entity.set__Id(IdMaker.next());
+        }
+        if (events.containsKey(entity.getLogicId())) {
+            throw new UXDFException(String.format("新增的Event[%s]已经存在。", entity.getLogicId()));
+        }
+        final SdEventDefinition sdEvent = registry.getEvent(entity.get__Sd(), entity.get__LeftSd(), entity.get__RightSd());
+        entity.set__Member(sdEvent != null && sdEvent.getIsMember());
+        final Date now = new Date();
+        entity.set__CreateTime(now);
+        entity.set__UpdateTime(now);
+        this.putEvent(transaction, entity);
+        result.getEventCreateNum().incrementAndGet();
+        return entity;
+    }
+
+    private EventEntity updateEvent(final Transaction transaction, final EventEntity entity, final SdDataSaveResult result) {
+        final EventEntity existing = entity.get__Id() == null ? null : events.get(entity.getLogicId());
+        if (existing == null) {
+            throw new UXDFException(String.format("更新的Event[%s]不存在。", entity.toJSONString()));
+        }
+        final EventEntity updated = this.copy(existing).merge(entity);
+        updated.set__UpdateTime(new Date());
+        this.putEvent(transaction, updated);
+        result.getEventUpdateNum().incrementAndGet();
+        return updated;
+    }
+
+    /**
+     * 删除Event，强制删除时同时删除以此Event为必须关系的Node
+     */
+    private void deleteEvent(
+            final Transaction transaction,
+            final EventEntity entity,
+            final boolean enforce,
+            final SdDataSaveResult result
+    ) {
+        final EventEntity existing = entity.get__Id() == null ? null : events.get(entity.getLogicId());
+        if (existing == null) {
+            return;
+        }
+        this.removeEvent(transaction, existing);
+        result.getEventDeleteNum().incrementAndGet();
+        if (!enforce) {
+            return;
+        }
+        final SdEventRequiredType required = this.requiredOf(existing);
+        if (required == SdEventRequiredType.left || required == SdEventRequiredType.both) {
+            this.deleteNode(transaction, nodes.get(existing.leftLogicId()), true, result);
+        }
+        if (required == SdEventRequiredType.right || required == SdEventRequiredType.both) {
+            this.deleteNode(transaction, nodes.get(existing.rightLogicId()), true, result);
+        }
+    }
+
+    /**
+     * 复制Event，并将两侧Node替换为本次保存后的Node
+     */
+    private EventEntity resolveEvent(final Transaction transaction, final EventEntity input) {
+        final EventEntity entity = new EventEntity(input);
+        entity.removeDynamicAttr();
+        entity.setRegistry(registry);
+        entity.remove(SdEntity.ATTR_UUID);
+        final NodeEntity left = transaction.nodeMapping.get(input.get__LeftSd() + input.get__Left());
+        if (left != null) {
+            entity.leftNode(left);
+        }
+        final NodeEntity right = transaction.nodeMapping.get(input.get__RightSd() + input.get__Right());
+        if (right != null) {
+            entity.rightNode(right);
+        }
+        return entity;
+    }
+
+    private void checkEnds(final EventEntity entity) {
+        final String leftLogicId = entity.get__LeftSd() + entity.get__Left();
+        final String rightLogicId = entity.get__RightSd() + entity.get__Right();
+        if (!nodes.containsKey(leftLogicId) || !nodes.containsKey(rightLogicId)) {
+            throw new UXDFException(String.format(
+                    "Event[%s]关联的Node[%s]或[%s]不存在。",
+                    entity.toJSONString(),
+                    leftLogicId,
+                    rightLogicId
+            ));
+        }
+    }
+
+    private SdEventRequiredType requiredOf(final EventEntity eventEntity) {
+        final SdEventDefinition sdEvent = registry.getEvent(
+                eventEntity.get__Sd(),
+                eventEntity.get__LeftSd(),
+                eventEntity.get__RightSd()
+        );
+        return sdEvent == null || sdEvent.getRequired() == null ? SdEventRequiredType.none : sdEvent.getRequired();
+    }
+
+    /**
+     * 通过uuid查找Node，uuid不依赖ID时使用临时ID计算
+     */
+    private NodeEntity findNodeByUUID(final NodeEntity entity) {
+        final boolean noId = entity.get__Id() == null;
+        if (noId) {
+            entity.set__Id(IdMaker.temp());
+        }
+        try {
+            final String uuid = entity.generateUUID();
+            final String logicId = uuid == null ? null : nodeUUIDs.get(uuidKey(entity.get__Sd(), uuid));
+            return logicId == null ? null : nodes.get(logicId);
+        } finally {
+            entity.remove(SdEntity.ATTR_UUID);
+            if (noId) {
+                entity.remove(SdEntity.ATTR_ID);
+            }
+        }
+    }
+
+    /**
+     * 通过uuid查找Event，uuid不依赖ID时使用临时ID计算
+     */
+    private EventEntity findEventByUUID(final EventEntity entity) {
+        final boolean noId = entity.get__Id() == null;
+        if (noId) {
+            entity.set__Id(IdMaker.temp());
+        }
+        try {
+            final String uuid = entity.generateUUID();
+            final String logicId = uuid == null ? null : eventUUIDs.get(uuidKey(entity.get__Sd(), uuid));
+            return logicId == null ? null : events.get(logicId);
+        } finally {
+            entity.remove(SdEntity.ATTR_UUID);
+            if (noId) {
+                entity.remove(SdEntity.ATTR_ID);
+            }
+        }
+    }
+
+    /**
+     * 放入Node，替换已存在的同一逻辑ID的Node
+     */
+    private void putNode(final Transaction transaction, final NodeEntity entity) {
+        final String logicId = entity.getLogicId();
+        entity.remove(SdEntity.ATTR_UUID);
+        final String uuid = entity.generateUUID();
+        if (uuid != null) {
+            final String owner = nodeUUIDs.get(uuidKey(entity.get__Sd(), uuid));
+            if (owner != null && !owner.equals(logicId)) {
+                throw new UXDFException(String.format(
+                        "存储中已经存在uuid和Node[%s]相同的数据[%s]。",
+                        entity.toJSONString(),
+                        owner
+                ));
+            }
+        }
+        this.putBinaries(transaction, entity);
+        final NodeEntity before = nodes.get(logicId);
+        if (before != null) {
+            this.unindexNode(before);
+        }
+        this.indexNode(entity);
+        transaction.changes.add(new Change(OP_NODE, logicId, before, entity));
+    }
+
+    private void removeNode(final Transaction transaction, final NodeEntity nodeEntity) {
+        final String logicId = nodeEntity.getLogicId();
+        final NodeEntity before = nodes.get(logicId);
+        if (before == null) {
+            return;
+        }
+        this.unindexNode(before);
+        transaction.changes.add(new Change(OP_NODE, logicId, before, null));
+        this.binaryProperties(before.get__Sd()).forEach(property -> {
+            final String key = binaryKey(logicId, property);
+            final BinaryFile binaryFile = binaries.remove(key);
+            if (binaryFile != null) {
+                transaction.changes.add(new Change(OP_BINARY, key, binaryFile, null));
+            }
+        });
+    }
+
+    /**
+     * 放入Event，替换已存在的同一逻辑ID的Event
+     */
+    private void putEvent(final Transaction transaction, final EventEntity entity) {
+        final String logicId = entity.getLogicId();
+        entity.remove(SdEntity.ATTR_UUID);
+        final String uuid = entity.generateUUID();
+        if (uuid != null) {
+            final String owner = eventUUIDs.get(uuidKey(entity.get__Sd(), uuid));
+            if (owner != null && !owner.equals(logicId)) {
+                throw new UXDFException(String.format(
+                        "存储中已经存在uuid和Event[%s]相同的数据[%s]。",
+                        entity.toJSONString(),
+                        owner
+                ));
+            }
+        }
+        final EventEntity before = events.get(logicId);
+        if (before != null) {
+            this.unindexEvent(before);
+        }
+        this.indexEvent(entity);
+        transaction.changes.add(new Change(OP_EVENT, logicId, before, entity));
+    }
+
+    private void removeEvent(final Transaction transaction, final EventEntity eventEntity) {
+        final String logicId = eventEntity.getLogicId();
+        final EventEntity before = events.get(logicId);
+        if (before == null) {
+            return;
+        }
+        this.unindexEvent(before);
+        transaction.changes.add(new Change(OP_EVENT, logicId, before, null));
+    }
+
+    /**
+     * 保存Node中的二进制属性，并将属性值替换为文件信息
+     */
+    private void putBinaries(final Transaction transaction, final NodeEntity entity) {
+        for (String property : this.binaryProperties(entity.get__Sd())) {
+            final Object value = entity.get(property);
+            if (value == null || value instanceof Map) {
+                continue;
+            }
+            final BinaryFile binaryFile = this.readBinary(transaction, property, value);
+            final String key = binaryKey(entity.getLogicId(), property);
+            final BinaryFile before = binaries.put(key, binaryFile);
+            transaction.changes.add(new Change(OP_BINARY, key, before, binaryFile));
+            entity.put(property, binaryFile.toInfo());
+        }
+    }
+
+    private BinaryFile readBinary(final Transaction transaction, final String property, final Object value) {
+        final BinaryFile binaryFile = new BinaryFile();
+        final byte[] content;
+        try {
+            if (value instanceof Number) {
+                final int index = ((Number) value).intValue();
+                if (transaction.files == null || index < 0 || index >= transaction.files.length) {
+                    throw new UXDFException(String.format("二进制属性[%s]的文件下标[%s]无效。", property, value));
+                }
+                final UXDFBinaryFileInfo fileInfo = transaction.files[index];
+                binaryFile.name = fileInfo.getName();
+                binaryFile.contentType = fileInfo.getContentType();
+                try (InputStream inputStream = fileInfo.getInputStream()) {
+                    content = ByteStreams.toByteArray(inputStream);
+                }
+            } else if (value instanceof UXDFBinaryFileInfo) {
+                final UXDFBinaryFileInfo fileInfo = (UXDFBinaryFileInfo) value;
+                binaryFile.name = fileInfo.getName();
+                binaryFile.contentType = fileInfo.getContentType();
+                try (InputStream inputStream = fileInfo.getInputStream()) {
+                    content = ByteStreams.toByteArray(inputStream);
+                }
+            } else if (value instanceof byte[]) {
+                content = (byte[]) value;
+            } else if (value instanceof InputStream) {
+                content = ByteStreams.toByteArray((InputStream) value);
+            } else {
+                throw new UXDFException(String.format("二进制属性[%s]的值[%s]无效。", property, value));
+            }
+            if (binaryFile.contentType == null) {
+                binaryFile.contentType = UXDFBinaryFileInfo.CONTEXT_TYPE;
+            }
+            binaryFile.length = content.length;
+            if (journal == null) {
+                binaryFile.content = content;
+            } else {
+                binaryFile.file = journal.writeBinary(content, syncOnWrite);
+                transaction.writtenFiles.add(binaryFile.file);
+            }
+        } catch (IOException e) {
+            throw new UXDFException(String.format("读取二进制属性[%s]失败。", property), e);
+        }
+        return binaryFile;
+    }
+
+    private List<String> binaryProperties(final String nodeName) {
+        final SdNodeDefinition sdNode = registry.getNode(nodeName);
+        if (sdNode == null || sdNode.getProp() == null) {
+            return Collections.emptyList();
+        }
+        final List<String> properties = Lists.newArrayList();
+        for (Map.Entry<String, SdProperty> entry : sdNode.getProp().entrySet()) {
+            if (entry.getValue() != null && entry.getValue().getBase() == SdBaseType.Binary) {
+                properties.add(entry.getKey());
+            }
+        }
+        return properties;
+    }
+
+    private void indexNode(final NodeEntity entity) {
+        final String logicId = entity.getLogicId();
+        nodes.put(logicId, entity);
+        nodesBySd.computeIfAbsent(entity.get__Sd(), key -> Maps.newLinkedHashMap()).put(logicId, entity);
+        if (entity.get__Uuid() != null) {
+            nodeUUIDs.put(uuidKey(entity.get__Sd(), entity.get__Uuid()), logicId);
+        }
+    }
+
+    private void unindexNode(final NodeEntity entity) {
+        final String logicId = entity.getLogicId();
+        nodes.remove(logicId);
+        final Map<String, NodeEntity> sdNodes = nodesBySd.get(entity.get__Sd());
+        if (sdNodes != null) {
+            sdNodes.remove(logicId);
+        }
+        if (entity.get__Uuid() != null) {
+            nodeUUIDs.remove(uuidKey(entity.get__Sd(), entity.get__Uuid()), logicId);
+        }
+    }
+
+    private void indexEvent(final EventEntity entity) {
+        final String logicId = entity.getLogicId();
+        events.put(logicId, entity);
+        if (entity.get__Uuid() != null) {
+            eventUUIDs.put(uuidKey(entity.get__Sd(), entity.get__Uuid()), logicId);
+        }
+        nodeEvents.computeIfAbsent(entity.leftLogicId(), key -> Sets.newLinkedHashSet()).add(logicId);
+        nodeEvents.computeIfAbsent(entity.rightLogicId(), key -> Sets.newLinkedHashSet()).add(logicId);
+    }
+
+    private void unindexEvent(final EventEntity entity) {
+        final String logicId = entity.getLogicId();
+        events.remove(logicId);
+        if (entity.get__Uuid() != null) {
+            eventUUIDs.remove(uuidKey(entity.get__Sd(), entity.get__Uuid()), logicId);
+        }
+        for (String nodeLogicId : new String[]{entity.leftLogicId(), entity.rightLogicId()}) {
+            final Set<String> eventLogicIds = nodeEvents.get(nodeLogicId);
+            if (eventLogicIds != null) {
+                eventLogicIds.remove(logicId);
+                if (eventLogicIds.isEmpty()) {
+                    nodeEvents.remove(nodeLogicId);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取与Node关联的所有Event。只在持有锁时调用
+     */
+    private List<EventEntity> getEvents(final String nodeLogicId) {
+        final Set<String> eventLogicIds = nodeEvents.get(nodeLogicId);
+        if (eventLogicIds == null) {
+            return Collections.emptyList();
+        }
+        final List<EventEntity> results = Lists.newArrayListWithCapacity(eventLogicIds.size());
+        eventLogicIds.forEach(logicId -> {
+            final EventEntity eventEntity = events.get(logicId);
+            if (eventEntity != null) {
+                results.add(eventEntity);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * 写入日志，日志达到数量时写入快照
+     */
+    private void commit(final Transaction transaction) {
+        if (journal == null || transaction.changes.isEmpty()) {
+            return;
+        }
+        final List<JSONObject> ops = transaction.changes.stream().map(Change::toOp).collect(Collectors.toList());
+        try {
+            journal.append(ops, syncOnWrite);
+        } catch (IOException e) {
+            throw new UXDFException(String.format("写入日志[%s]失败。", directory), e);
+        }
+        transaction.writtenFiles.clear();
+        if (journal.getRecords() >= checkpointThreshold) {
+            try {
+                this.writeCheckpoint();
+            } catch (IOException e) {
+                // 日志已经写入，快照失败不影响本次提交
+                log.error(String.format("写入快照[%s]失败。", directory), e);
+            }
+        }
+    }
+
+    private void writeCheckpoint() throws IOException {
+        final Iterator<JSONObject> ops = Iterators.concat(
+                Iterators.transform(nodes.values().iterator(), nodeEntity -> op(OP_NODE, null, nodeEntity)),
+                Iterators.transform(events.values().iterator(), eventEntity -> op(OP_EVENT, null, eventEntity)),
+                Iterators.transform(binaries.entrySet().iterator(), entry -> op(OP_BINARY, entry.getKey(), entry.getValue().toJSON()))
+        );
+        final List<String> files = binaries.values().stream().map(binaryFile -> binaryFile.file).collect(Collectors.toList());
+        journal.checkpoint(ops, files);
+    }
+
+    /**
+     * 恢复时应用快照或日志中的操作
+     */
+    private void replay(final JSONObject op) {
+        final String key = op.getString(OP_KEY);
+        switch (op.getString(OP_TYPE)) {
+            case OP_NODE: {
+                final NodeEntity entity = this.restore(new NodeEntity(op.getJSONObject(OP_VALUE)));
+                final NodeEntity before = nodes.get(entity.getLogicId());
+                if (before != null) {
+                    this.unindexNode(before);
+                }
+                this.indexNode(entity);
+                break;
+            }
+            case OP_NODE_REMOVE: {
+                final NodeEntity before = nodes.get(key);
+                if (before != null) {
+                    this.unindexNode(before);
+                }
+                break;
+            }
+            case OP_EVENT: {
+                final EventEntity entity = this.restore(new EventEntity(op.getJSONObject(OP_VALUE)));
+                final EventEntity before = events.get(entity.getLogicId());
+                if (before != null) {
+                    this.unindexEvent(before);
+                }
+                this.indexEvent(entity);
+                break;
+            }
+            case OP_EVENT_REMOVE: {
+                final EventEntity before = events.get(key);
+                if (before != null) {
+                    this.unindexEvent(before);
+                }
+                break;
+            }
+            case OP_BINARY:
+                binaries.put(key, BinaryFile.fromJSON(op.getJSONObject(OP_VALUE)));
+                break;
+            case OP_BINARY_REMOVE:
+                binaries.remove(key);
+                break;
+            default:
+                throw new UXDFException(String.format("无法识别的操作[%s]。", op.toJSONString()));
+        }
+    }
+
+    /**
+     * 恢复JSON中的实例，时间属性转换为{@link Date}
+     */
+    private <T extends SdEntity> T restore(final T entity) {
+        entity.setRegistry(registry);
+        final List<String> dateProperties = Lists.newArrayList(SdEntity.ATTR_CREATE_TIME, SdEntity.ATTR_UPDATE_TIME);
+        final SdDefinition sdDefinition = entity instanceof NodeEntity ?
+                registry.getNode(entity.get__Sd()) :
+                registry.getEvent(
+                        entity.get__Sd(),
+                        ((EventEntity) entity).get__LeftSd(),
+                        ((EventEntity) entity).get__RightSd()
+                );
+        if (sdDefinition != null && sdDefinition.getProp() != null) {
+            sdDefinition.getProp().forEach((property, sdProperty) -> {
+                if (sdProperty != null && sdProperty.getBase() == SdBaseType.Datetime) {
+                    dateProperties.add(property);
+                }
+            });
+        }
+        dateProperties.forEach(property -> {
+            if (entity.get(property) != null) {
+                entity.put(property, entity.getDate(property));
+            }
+        });
+        return entity;
+    }
+
+    /**
+     * 持有读锁执行读取。保存过程中索引会被修改，不加锁读取可能读到未提交或回滚的数据
+     */
+    private <T> T read(final Supplier<T> reader) {
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return reader.get();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private NodeEntity detach(final NodeEntity input) {
+        final NodeEntity entity = new NodeEntity(input);
+        entity.removeDynamicAttr();
+        entity.remove(SdEntity.ATTR_UUID);
+        entity.setRegistry(registry);
+        return entity;
+    }
+
+    private NodeEntity copy(final NodeEntity nodeEntity) {
+        if (nodeEntity == null) {
+            return null;
+        }
+        final NodeEntity copy = new NodeEntity(nodeEntity);
+        copy.setRegistry(registry);
+        return copy;
+    }
+
+    private EventEntity copy(final EventEntity eventEntity) {
+        if (eventEntity == null) {
+            return null;
+        }
+        final EventEntity copy = new EventEntity(eventEntity);
+        copy.setRegistry(registry);
+        return copy;
+    }
+
+    private static SdOperateType operateOf(final SdEntity sdEntity, final SdOperateType operate) {
+        final SdOperateType entityOperate = sdEntity.getOperate();
+        return entityOperate == null ? operate : entityOperate;
+    }
+
+    private static String uuidKey(final String sd, final String uuid) {
+        return sd + KEY_SEPARATOR + uuid;
+    }
+
+    private static String binaryKey(final String logicId, final String property) {
+        return logicId + KEY_SEPARATOR + property;
+    }
+
+    private static String eventLogicId(
+            final String eventName,
+            final String eventId,
+            final String leftNodeName,
+            final String leftNodeId,
+            final String rightNodeName,
+            final String rightNodeId
+    ) {
+        final EventEntity eventEntity = new EventEntity()
+                .sd(eventName)
+                .id(eventId)
+                .leftSd(leftNodeName)
+                .left(leftNodeId)
+                .rightSd(rightNodeName)
+                .right(rightNodeId);
+        return eventEntity.isEffective() ? eventEntity.getLogicId() : null;
+    }
+
+    private static JSONObject op(final String type, final String key, final JSONObject value) {
+        final JSONObject op = new JSONObject(true);
+        op.put(OP_TYPE, type);
+        if (key != null) {
+            op.put(OP_KEY, key);
+        }
+        if (value != null) {
+            op.put(OP_VALUE, value);
+        }
+        return op;
+    }
+
+    /**
+     * 通过相同标签关联两组行，没有相同标签时做笛卡尔积
+     */
+    private static List<Map<String, SdEntity>> join(
+            final List<Map<String, SdEntity>> left,
+            final List<Map<String, SdEntity>> right
+    ) {
+        if (left.isEmpty() || right.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final Set<String> shared = Sets.newLinkedHashSet(left.get(0).keySet());
+        shared.retainAll(right.get(0).keySet());
+        final Map<List<String>, List<Map<String, SdEntity>>> rightIndex = Maps.newHashMap();
+        right.forEach(row -> rightIndex.computeIfAbsent(joinKey(row, shared), key -> Lists.newArrayList()).add(row));
+        final List<Map<String, SdEntity>> joined = Lists.newArrayList();
+        left.forEach(leftRow -> rightIndex.getOrDefault(joinKey(leftRow, shared), Collections.emptyList()).forEach(rightRow -> {
+            final Map<String, SdEntity> row = Maps.newLinkedHashMap(leftRow);
+            row.putAll(rightRow);
+            joined.add(row);
+        }));
+        return joined;
+    }
+
+    private static List<String> joinKey(final Map<String, SdEntity> row, final Set<String> labels) {
+        final List<String> key = Lists.newArrayListWithCapacity(labels.size());
+        labels.forEach(label -> key.add(row.get(label).getLogicId()));
+        return key;
+    }
+
+    private static Comparator<SdEntity> comparator(final List<SdDataQueryOrder> orders) {
+        Comparator<SdEntity> comparator = (left, right) -> 0;
+        for (SdDataQueryOrder order : orders) {
+            final Comparator<SdEntity> property = (left, right) ->
+                    UXDFQueryMatcher.compareValues(left.get(order.getProperty()), right.get(order.getProperty()));
+            comparator = comparator.thenComparing(
+                    order.getType() == SdDataQueryOrderType.DESC ? property.reversed() : property
+            );
+        }
+        return comparator;
+    }
+
+    /**
+     * 一次写入中的所有变更，失败时按相反顺序回滚
+     */
+    private final class Transaction {
+        private final UXDFBinaryFileInfo[] files;
+        /**
+         * 保存前的Node逻辑ID和存储中的Node
+         */
+        private final Map<String, NodeEntity> nodeMapping = Maps.newHashMap();
+        private final List<Change> changes = Lists.newArrayList();
+        private final List<String> writtenFiles = Lists.newArrayList();
+
+        private Transaction(final UXDFBinaryFileInfo[] files) {
+            this.files = files;
+        }
+
+        private void rollback() {
+            Lists.reverse(changes).forEach(Change::undo);
+            changes.clear();
+            if (journal != null) {
+                writtenFiles.forEach(journal::deleteBinary);
+            }
+            writtenFiles.clear();
+        }
+    }
+
+    /**
+     * 一次变更，before和after为NULL时分别表示新增和移除
+     */
+    private final class Change {
+        private final String type;
+        private final String key;
+        private final Object before;
+        private final Object after;
+
+        private Change(final String type, final String key, final Object before, final Object after) {
+            this.type = type;
+            this.key = key;
+            this.before = before;
+            this.after = after;
+        }
+
+        private void undo() {
+            switch (type) {
+                case OP_NODE:
+                    if (after != null) {
+                        unindexNode((NodeEntity) after);
+                    }
+                    if (before != null) {
+                        indexNode((NodeEntity) before);
+                    }
+                    break;
+                case OP_EVENT:
+                    if (after != null) {
+                        unindexEvent((EventEntity) after);
+                    }
+                    if (before != null) {
+                        indexEvent((EventEntity) before);
+                    }
+                    break;
+                default:
+                    if (before == null) {
+                        binaries.remove(key);
+                    } else {
+                        binaries.put(key, (BinaryFile) before);
+                    }
+            }
+        }
+
+        private JSONObject toOp() {
+            switch (type) {
+                case OP_NODE:
+                    return after == null ? op(OP_NODE_REMOVE, key, null) : op(OP_NODE, null, (NodeEntity) after);
+                case OP_EVENT:
+                    return after == null ? op(OP_EVENT_REMOVE, key, null) : op(OP_EVENT, null, (EventEntity) after);
+                default:
+                    return after == null ? op(OP_BINARY_REMOVE, key, null) : op(OP_BINARY, key, ((BinaryFile) after).toJSON());
+            }
+        }
+    }
+
+    /**
+     * 二进制文件，持久化时内容保存在文件中
+     */
+    private static final class BinaryFile {
+        private String name;
+        private String contentType;
+        private long length;
+        private byte[] content;
+        private String file;
+
+        private JSONObject toInfo() {
+            final JSONObject info = new JSONObject(true);
+            info.put(UXDFBinaryFileInfo.PROP_NAME, name);
+            info.put(UXDFBinaryFileInfo.PROP_CONTENT_TYPE, contentType);
+            info.put(UXDFBinaryFileInfo.PROP_LENGTH, length);
+            return info;
+        }
+
+        private JSONObject toJSON() {
+            final JSONObject json = this.toInfo();
+            json.put(BINARY_FILE, file);
+            return json;
+        }
+
+        private static BinaryFile fromJSON(final JSONObject json) {
+            final BinaryFile binaryFile = new BinaryFile();
+            binaryFile.name = json.getString(UXDFBinaryFileInfo.PROP_NAME);
+            binaryFile.contentType = json.getString(UXDFBinaryFileInfo.PROP_CONTENT_TYPE);
+            binaryFile.length = json.getLongValue(UXDFBinaryFileInfo.PROP_LENGTH);
+            binaryFile.file = json.getString(BINARY_FILE);
+            return binaryFile;
+        }
+    }
+
+    /**
+     * 关系链查询的数据源，执行期间持有读锁
+     */
+    private final class Source implements UXDFChainSource {
+
+        @Override
+        public List<NodeEntity> getNodes(final String nodeName) {
+            final Map<String, NodeEntity> sdNodes = nodesBySd.get(nodeName);
+            return sdNodes == null ? Collections.emptyList() : Lists.newArrayList(sdNodes.values());
+        }
+
+        @Override
+        public Collection<EventEntity> getEvents(final NodeEntity nodeEntity) {
+            return MemoryStorageService.this.getEvents(nodeEntity.getLogicId());
+        }
+
+        @Override
+        public NodeEntity getNodeByLogicId(final String logicId) {
+            return nodes.get(logicId);
+        }
+    }
+}
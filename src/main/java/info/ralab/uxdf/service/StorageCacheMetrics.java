@@ -0,0 +1,110 @@
+package info.ralab.uxdf.service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link CachingStorageService}的缓存统计。
+ * <p>
+ * 统计值在调用线程中累加，读取时不加锁，读取到的各项数值之间不保证是同一时刻的快照。
+ * </p>
+ */
+public class StorageCacheMetrics {
+
+    /**
+     * 命中次数
+     */
+    private final LongAdder hits = new LongAdder();
+    /**
+     * 命中不存在缓存的次数
+     */
+    private final LongAdder negativeHits = new LongAdder();
+    /**
+     * 未命中次数
+     */
+    private final LongAdder misses = new LongAdder();
+    /**
+     * 阻塞查询绕过缓存的次数
+     */
+    private final LongAdder bypasses = new LongAdder();
+    /**
+     * 因容量上限或过期移除的次数
+     */
+    private final LongAdder evictions = new LongAdder();
+    /**
+     * 因写入失效的次数
+     */
+    private final LongAdder invalidations = new LongAdder();
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordNegativeHit() {
+        negativeHits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordBypass() {
+        bypasses.increment();
+    }
+
+    void recordEviction() {
+        evictions.increment();
+    }
+
+    void recordInvalidation() {
+        invalidations.increment();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getBypasses() {
+        return bypasses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * 获取命中率，包括命中不存在缓存
+     *
+     * @return 命中率。没有查询时返回1
+     */
+    public double getHitRate() {
+        final long hit = this.getHits() + this.getNegativeHits();
+        final long total = hit + this.getMisses();
+        return total == 0 ? 1 : (double) hit / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "hits=%d, negativeHits=%d, misses=%d, bypasses=%d, evictions=%d, invalidations=%d, hitRate=%.2f",
+                this.getHits(),
+                this.getNegativeHits(),
+                this.getMisses(),
+                this.getBypasses(),
+                this.getEvictions(),
+                this.getInvalidations(),
+                this.getHitRate()
+        );
+    }
+}
@@ -82,6 +82,10 @@ public interface StorageService {
      * 对于其两侧的{@link NodeEntity}有必填定义。
      * 则会基于{@link EventEntity#getOperateDeleteEnforce()}删除其两侧必填的{@link NodeEntity}。
      * </p>
+     * <p>
+     * 保存前可以通过{@link info.ralab.uxdf.validation.UXDFValidator#validateRelationship(SdData)}检查必须关系，
+     * 避免保存到一半时失败。
+     * </p>
      *
      * <p>
      * 保存结束后，返回{@link SdDataSaveResult}。
@@ -1,7 +1,10 @@
 package info.ralab.uxdf.utils;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import info.ralab.uxdf.UXDFException;
 import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.UXDFRegistry;
 import info.ralab.uxdf.chain.ChainPath;
 import info.ralab.uxdf.chain.UXDFChain;
 import info.ralab.uxdf.chain.UXDFChainItem;
@@ -10,16 +13,28 @@ import info.ralab.uxdf.definition.SdDefinition;
 import info.ralab.uxdf.definition.SdNodeDefinition;
 import info.ralab.uxdf.definition.SdProperty;
 
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * 关联唯一属性辅助类
+ * <p>
+ * 不带注册表参数的方法使用默认注册表{@link UXDFLoader#getRegistry()}。
+ * </p>
  */
 public class AssociateUniquePropertyUtil {
     private static final Pattern PROPERTY_PATTERN = Pattern.compile("^unique(\\w+)Id$");
 
+    /**
+     * 关联唯一属性名称缓存，通过Sd定义实例索引，Sd定义不再使用后自动移除
+     */
+    private static final Cache<SdDefinition, PropertyName> PROPERTY_NAME_CACHE = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
     /**
      * 判断属性名称是否是符合关联唯一属性命名规范
      *
@@ -27,7 +42,18 @@ public class AssociateUniquePropertyUtil {
      * @return 是否符合
      */
     public static boolean isAssociateUniquePropertyName(final String propertyName) {
-        SdNodeDefinition nodeDefinition = getNodeDefinitionByPropertyName(propertyName);
+        return isAssociateUniquePropertyName(propertyName, UXDFLoader.getRegistry());
+    }
+
+    /**
+     * 判断属性名称是否是符合关联唯一属性命名规范
+     *
+     * @param propertyName 属性名称
+     * @param registry     定义注册表
+     * @return 是否符合
+     */
+    public static boolean isAssociateUniquePropertyName(final String propertyName, final UXDFRegistry registry) {
+        SdNodeDefinition nodeDefinition = getNodeDefinitionByPropertyName(propertyName, registry);
         return nodeDefinition != null;
     }
 
@@ -37,7 +63,18 @@ public class AssociateUniquePropertyUtil {
      * @return 关联唯一属性定义
      */
     public static SdProperty getProperty(final String propertyName) {
-        if (!isAssociateUniquePropertyName(propertyName)) {
+        return getProperty(propertyName, UXDFLoader.getRegistry());
+    }
+
+    /**
+     * 构造关联唯一属性的SdProperty
+     *
+     * @param propertyName 属性名称
+     * @param registry     定义注册表
+     * @return 关联唯一属性定义
+     */
+    public static SdProperty getProperty(final String propertyName, final UXDFRegistry registry) {
+        if (!isAssociateUniquePropertyName(propertyName, registry)) {
             return null;
         }
         SdProperty sdProperty = new SdProperty();
@@ -53,9 +90,47 @@ public class AssociateUniquePropertyUtil {
      * @return 关联唯一的属性名称
      */
     public static String getPropertyName(final SdDefinition sdDefinition) {
+        return getPropertyName(sdDefinition, UXDFLoader.getRegistry());
+    }
+
+    /**
+     * 根据指定注册表中的定义得到关联唯一属性名称
+     *
+     * @param sdDefinition Sd定义
+     * @param registry     定义注册表
+     * @return 关联唯一的属性名称
+     */
+    public static String getPropertyName(final SdDefinition sdDefinition, final UXDFRegistry registry) {
         if (sdDefinition == null) {
             return null;
         }
+        // 注册表、唯一属性或定义版本变化后重新解析
+        final long definitionVersion = registry.getDefinitionVersion();
+        final String[] uniqueIndex = sdDefinition.getUniqueIndex();
+        PropertyName propertyName = PROPERTY_NAME_CACHE.getIfPresent(sdDefinition);
+        if (propertyName == null ||
+                propertyName.registry != registry ||
+                propertyName.definitionVersion != definitionVersion ||
+                propertyName.uniqueIndex != uniqueIndex) {
+            propertyName = new PropertyName(
+                    registry,
+                    definitionVersion,
+                    uniqueIndex,
+                    resolvePropertyName(sdDefinition, registry)
+            );
+            PROPERTY_NAME_CACHE.put(sdDefinition, propertyName);
+        }
+        return propertyName.name;
+    }
+
+    /**
+     * 解析Sd定义的关联唯一属性名称
+     *
+     * @param sdDefinition Sd定义
+     * @param registry     定义注册表
+     * @return 关联唯一的属性名称
+     */
+    private static String resolvePropertyName(final SdDefinition sdDefinition, final UXDFRegistry registry) {
         // 获取唯一属性
         String[] uniqueIndexs = sdDefinition.getUniqueIndex();
         if (uniqueIndexs == null) {
@@ -73,8 +148,9 @@ public class AssociateUniquePropertyUtil {
             }
 
             // 获取语法链
-            UXDFChain uxdfChain = UXDFChain.getInstance(uniqueIndex);
-            List<UXDFChainItem> items = uxdfChain.iterator().next();
+            UXDFChain uxdfChain = UXDFChain.getInstance(uniqueIndex, registry);
+            Iterator<List<UXDFChainItem>> paths = uxdfChain.iterator();
+            List<UXDFChainItem> items = paths.hasNext() ? paths.next() : Collections.emptyList();
             if (items.isEmpty()) {
                 throw new UXDFException(String.format("语法链 [%s] 错误", uniqueIndex));
             }
@@ -106,7 +182,18 @@ public class AssociateUniquePropertyUtil {
      * @return 关联唯一属性标题
      */
     public static String getPropertyTitle(String propertyName) {
-        SdNodeDefinition nodeDefinition = getNodeDefinitionByPropertyName(propertyName);
+        return getPropertyTitle(propertyName, UXDFLoader.getRegistry());
+    }
+
+    /**
+     * 根据关联唯一属性名称得到标题
+     *
+     * @param propertyName 关联唯一属性名
+     * @param registry     定义注册表
+     * @return 关联唯一属性标题
+     */
+    public static String getPropertyTitle(final String propertyName, final UXDFRegistry registry) {
+        SdNodeDefinition nodeDefinition = getNodeDefinitionByPropertyName(propertyName, registry);
         if (nodeDefinition == null) {
             return null;
         }
@@ -117,9 +204,13 @@ public class AssociateUniquePropertyUtil {
      * 根据关联唯一属性名称获取关联的SdNode定义{@link SdNodeDefinition}
      *
      * @param propertyName 关联唯一属性名称
+     * @param registry     定义注册表
      * @return SdNode定义
      */
-    private static SdNodeDefinition getNodeDefinitionByPropertyName(final String propertyName) {
+    private static SdNodeDefinition getNodeDefinitionByPropertyName(
+            final String propertyName,
+            final UXDFRegistry registry
+    ) {
 
         if (propertyName == null) {
             return null;
@@ -129,6 +220,28 @@ public class AssociateUniquePropertyUtil {
             return null;
         }
 
-        return UXDFLoader.getNode(matcher.group(1));
+        return registry.getNode(matcher.group(1));
+    }
+
+    /**
+     * 缓存的关联唯一属性名称
+     */
+    private static final class PropertyName {
+        private final UXDFRegistry registry;
+        private final long definitionVersion;
+        private final String[] uniqueIndex;
+        private final String name;
+
+        private PropertyName(
+                final UXDFRegistry registry,
+                final long definitionVersion,
+                final String[] uniqueIndex,
+                final String name
+        ) {
+            this.registry = registry;
+            this.definitionVersion = definitionVersion;
+            this.uniqueIndex = uniqueIndex;
+            this.name = name;
+        }
     }
 }
@@ -0,0 +1,67 @@
+package info.ralab.uxdf.utils;
+
+import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFLoader;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * UXDF定义包生成工具，在构建时将class path中的所有定义编译为一个定义包文件。
+ * <p>
+ * 定义包需要输出到class path下的<b>uxdf/uxdf.bundle.json</b>，{@link UXDFLoader}加载时如果class path中所有的定义文件
+ * 都已包含在定义包中，则不再扫描定义文件。定义包包含生成时class path中的所有定义，只应在最终的应用项目中生成，
+ * 不要打包到被其他项目依赖的Jar中。可以在应用项目的<b>process-classes</b>阶段通过exec-maven-plugin执行：
+ * </p>
+ * <pre>
+ * &lt;plugin&gt;
+ *     &lt;groupId&gt;org.codehaus.mojo&lt;/groupId&gt;
+ *     &lt;artifactId&gt;exec-maven-plugin&lt;/artifactId&gt;
+ *     &lt;executions&gt;
+ *         &lt;execution&gt;
+ *             &lt;id&gt;uxdf-bundle&lt;/id&gt;
+ *             &lt;phase&gt;process-classes&lt;/phase&gt;
+ *             &lt;goals&gt;&lt;goal&gt;java&lt;/goal&gt;&lt;/goals&gt;
+ *             &lt;configuration&gt;
+ *                 &lt;mainClass&gt;info.ralab.uxdf.utils.UXDFBundleWriter&lt;/mainClass&gt;
+ *                 &lt;arguments&gt;&lt;argument&gt;${project.build.outputDirectory}/uxdf/uxdf.bundle.json&lt;/argument&gt;&lt;/arguments&gt;
+ *             &lt;/configuration&gt;
+ *         &lt;/execution&gt;
+ *     &lt;/executions&gt;
+ * &lt;/plugin&gt;
+ * </pre>
+ */
+@Slf4j
+public class UXDFBundleWriter {
+
+    private UXDFBundleWriter() {
+    }
+
+    /**
+     * 生成定义包文件
+     *
+     * @param bundleFile 定义包文件
+     */
+    public static void write(final File bundleFile) {
+        File parentDir = bundleFile.getParentFile();
+        if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs()) {
+            throw new UXDFException(String.format("Create uxdf bundle dir [%s] fail.", parentDir.getAbsolutePath()));
+        }
+        try (OutputStream outputStream = new FileOutputStream(bundleFile)) {
+            UXDFLoader.writeBundle(outputStream);
+        } catch (IOException e) {
+            throw new UXDFException(e);
+        }
+        log.info("uxdf bundle: {}", bundleFile.getAbsolutePath());
+    }
+
+    public static void main(String[] args) {
+        if (args == null || args.length < 1) {
+            throw new UXDFException("Usage: UXDFBundleWriter <bundle file>");
+        }
+        write(new File(args[0]));
+    }
+}
@@ -13,14 +13,17 @@ import info.ralab.uxdf.UXDF;
 import info.ralab.uxdf.UXDFException;
 import info.ralab.uxdf.UXDFLoader;
 import info.ralab.uxdf.definition.SdEventDefinition;
+import info.ralab.uxdf.definition.SdEventKey;
 import info.ralab.uxdf.definition.SdNodeDefinition;
+import info.ralab.uxdf.definition.SdProperty;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * UXDF定义结构缓存
@@ -31,6 +34,17 @@ public class UXDFDefinitionCache {
     private static final String FILE_NODES = "nodes";
     private static final String FILE_EVENTS = "events";
 
+    /**
+     * 缓存版本序列，所有缓存实例共享，保证版本号全局递增
+     */
+    private static final AtomicLong VERSION_SEQUENCE = new AtomicLong();
+
+    /**
+     * 缓存版本，每次修改定义后递增
+     */
+    @Getter
+    private volatile long version = VERSION_SEQUENCE.incrementAndGet();
+
     /**
      * 基本UXDF结构缓存，只包含attr部分内容
      */
@@ -38,10 +52,14 @@ public class UXDFDefinitionCache {
     private JSONObject CACHE_UXDF_BASE = new JSONObject();
 
     /**
-     * 完整UXDF结构缓存，包含了impl部分内容
+     * 完整UXDF文档缓存，包含了impl部分内容。第一次获取时生成，定义变更后失效
      */
-    @Getter
-    private JSONObject CACHE_UXDF_ALL = new JSONObject();
+    private volatile UXDFSchemaDocument schemaDocument;
+
+    /**
+     * Sd定义关系图缓存。第一次获取时生成，定义变更后失效
+     */
+    private volatile UXDFSchemaGraph schemaGraph;
 
     /**
      * Node定义缓存，通过Node定义名称索引
@@ -50,16 +68,29 @@ public class UXDFDefinitionCache {
     private Map<String, SdNodeDefinition> CACHE_NODE = Maps.newHashMap();
 
     /**
-     * Event定义缓存，通过Event定义名称、左Node定义名称和右Node定义名称索引
+     * Node定义自身声明的属性缓存，不包含继承的属性，通过Node定义名称索引
      */
     @Getter
-    private Map<String, Map<String, Map<String, SdEventDefinition>>> CACHE_EVENT_LEFT = Maps.newHashMap();
+    private Map<String, Map<String, SdProperty>> CACHE_NODE_DECLARED_PROP = Maps.newHashMap();
+
+    /**
+     * Node定义继承关系缓存，通过父Node定义名称索引直接继承它的子Node定义名称
+     */
+    @Getter
+    private Map<String, Set<String>> CACHE_NODE_CHILDREN = Maps.newHashMap();
+
+    /**
+     * Event定义缓存，通过Event定义复合键{@link SdEventKey}索引，单次hash即可定位
+     */
+    @Getter
+    private Map<SdEventKey, SdEventDefinition> CACHE_EVENT = Maps.newHashMap();
 
     /**
-     * Event定义缓存，通过Event定义名称、右Node定义名称和左Node定义名称索引
+     * Event定义缓存，通过Event定义名称、左Node定义名称和右Node定义名称分组。
+     * 用于按Event定义名称获取和输出完整Sd结构，单个定义的查找使用{@link #CACHE_EVENT}
      */
     @Getter
-    private Map<String, Map<String, Map<String, SdEventDefinition>>> CACHE_EVENT_RIGHT = Maps.newHashMap();
+    private Map<String, Map<String, Map<String, SdEventDefinition>>> CACHE_EVENT_LEFT = Maps.newHashMap();
 
     /**
      * Node定义和Event定义关系缓存，通过Node定义名称索引
@@ -67,6 +98,13 @@ public class UXDFDefinitionCache {
     @Getter
     private Map<String, Set<SdEventDefinition>> CACHE_NODE_EVENT = Maps.newHashMap();
 
+    /**
+     * Node定义和Event定义复合键的反向索引，通过Node定义名称索引。
+     * 用于移除定义时只处理受影响的Event定义
+     */
+    @Getter
+    private Map<String, Set<SdEventKey>> CACHE_NODE_EVENT_KEY = Maps.newHashMap();
+
     /**
      * Event定义和Node定义关系缓存，通过Event定义名称索引
      */
@@ -94,6 +132,40 @@ public class UXDFDefinitionCache {
      */
     public void clear() {
         CACHE.forEach(Map::clear);
+        this.nextVersion();
+    }
+
+    /**
+     * 递增缓存版本
+     */
+    private void nextVersion() {
+        this.version = VERSION_SEQUENCE.incrementAndGet();
+    }
+
+    /**
+     * 创建当前缓存的副本，用于在不影响当前缓存的情况下构建新的缓存。
+     * <p>
+     * {@link SdNodeDefinition}为浅拷贝，解析继承关系时不会修改当前缓存中的定义；
+     * {@link SdEventDefinition}和已经解析的属性集合不会被修改，与当前缓存共享。副本的版本与当前缓存相同。
+     * </p>
+     *
+     * @return 缓存副本
+     */
+    public UXDFDefinitionCache copy() {
+        UXDFDefinitionCache cache = new UXDFDefinitionCache();
+        cache.CACHE_UXDF_BASE.putAll(CACHE_UXDF_BASE);
+        CACHE_NODE.forEach((nodeName, nodeDefinition) -> {
+            cache.putNodeDefinition(nodeDefinition.copy(), Boolean.FALSE);
+            cache.CACHE_NODE_DECLARED_PROP.put(nodeName, CACHE_NODE_DECLARED_PROP.get(nodeName));
+        });
+        // 按分组缓存的顺序加入，副本输出的完整UXDF结构与当前缓存相同
+        CACHE_EVENT_LEFT.values().forEach(eventLeft -> eventLeft.values().forEach(eventRight -> eventRight.values().forEach(
+                eventDefinition -> cache.putEventDefinition(eventDefinition, Boolean.FALSE)
+        )));
+        cache.schemaDocument = schemaDocument;
+        cache.fillCache();
+        cache.version = this.version;
+        return cache;
     }
 
     /**
@@ -115,7 +187,17 @@ public class UXDFDefinitionCache {
             writer.config(SerializerFeature.UseISO8601DateFormat, Boolean.TRUE);
             writer.config(SerializerFeature.DisableCircularReferenceDetect, Boolean.TRUE);
             writer.config(SerializerFeature.SortField, Boolean.TRUE);
-            writer.writeObject(CACHE_NODE.values());
+            // 按Node定义名称写出，只写出自身声明的属性，反序列化后重新解析继承关系
+            writer.startObject();
+            CACHE_NODE.forEach((nodeName, nodeDefinition) -> {
+                SdNodeDefinition declared = nodeDefinition.copy();
+                declared.setProp(new LinkedHashMap<>(
+                        CACHE_NODE_DECLARED_PROP.getOrDefault(nodeName, Collections.emptyMap())
+                ));
+                writer.writeKey(nodeName);
+                writer.writeValue(declared);
+            });
+            writer.endObject();
         } catch (IOException e) {
             log.error(e.getLocalizedMessage(), e);
             return false;
@@ -127,9 +209,8 @@ public class UXDFDefinitionCache {
             writer.config(SerializerFeature.UseISO8601DateFormat, Boolean.TRUE);
             writer.config(SerializerFeature.DisableCircularReferenceDetect, Boolean.TRUE);
             writer.config(SerializerFeature.SortField, Boolean.TRUE);
-            writer.startArray();
-            CACHE_NODE_EVENT.values().forEach(sdEventDefinitions -> sdEventDefinitions.forEach(writer::writeObject));
-            writer.endArray();
+            // 按Event定义名称、左Node定义名称和右Node定义名称分组写出
+            writer.writeObject(CACHE_EVENT_LEFT);
         } catch (IOException e) {
             log.error(e.getLocalizedMessage(), e);
             return false;
@@ -151,12 +232,8 @@ public class UXDFDefinitionCache {
             return false;
         }
 
-        // 临时缓存集合，用于存储反序列化内容，全部读取成功后，替换已有缓存
-        Map<String, SdNodeDefinition> cacheNode = Maps.newHashMap();
-        Map<String, Map<String, Map<String, SdEventDefinition>>> cacheEventLeft = Maps.newHashMap();
-        Map<String, Map<String, Map<String, SdEventDefinition>>> cacheEventRight = Maps.newHashMap();
-        Map<String, Set<SdEventDefinition>> cacheNodeEvent = Maps.newHashMap();
-        Map<String, Set<SdNodeDefinition>> cacheEventNode = Maps.newHashMap();
+        // 临时缓存，用于存储反序列化内容，全部读取成功后，替换已有缓存
+        UXDFDefinitionCache cache = new UXDFDefinitionCache();
 
         // 反序列化Node文件
         File cacheFileNodes = new File(dirPoint, FILE_NODES);
@@ -172,12 +249,22 @@ public class UXDFDefinitionCache {
             reader.config(Feature.AllowISO8601DateFormat, Boolean.TRUE);
             reader.config(Feature.OrderedField, Boolean.TRUE);
 
-            reader.startArray();
+            reader.startObject();
             while (reader.hasNext()) {
-                this.putNodeDefinition(cacheNode, reader.readObject(SdNodeDefinition.class), Boolean.FALSE);
+                final String nodeName = reader.readString();
+                SdNodeDefinition nodeDefinition = reader.readObject(SdNodeDefinition.class);
+                nodeDefinition.setNodeName(nodeName);
+                cache.putNodeDefinition(nodeDefinition, Boolean.FALSE);
             }
-            reader.endArray();
-        } catch (IOException e) {
+            reader.endObject();
+        } catch (IOException | UXDFException e) {
+            log.error(e.getLocalizedMessage(), e);
+            return false;
+        }
+        // Node文件中只有自身声明的属性，重新解析继承关系
+        try {
+            cache.resolveNodeDefinition(cache.CACHE_NODE.keySet());
+        } catch (UXDFException e) {
             log.error(e.getLocalizedMessage(), e);
             return false;
         }
@@ -196,33 +283,44 @@ public class UXDFDefinitionCache {
             reader.config(Feature.AllowISO8601DateFormat, Boolean.TRUE);
             reader.config(Feature.OrderedField, Boolean.TRUE);
 
-            reader.startArray();
+            reader.startObject();
             while (reader.hasNext()) {
-                this.putEventDefinition(
-                        cacheNode,
-                        cacheEventLeft,
-                        cacheEventRight,
-                        cacheNodeEvent,
-                        cacheEventNode,
-                        reader.readObject(SdEventDefinition.class),
-                        Boolean.FALSE
-                );
+                final String eventName = reader.readString();
+                reader.startObject();
+                while (reader.hasNext()) {
+                    final String leftNodeName = reader.readString();
+                    reader.startObject();
+                    while (reader.hasNext()) {
+                        final String rightNodeName = reader.readString();
+                        SdEventDefinition eventDefinition = reader.readObject(SdEventDefinition.class);
+                        eventDefinition.setEventName(eventName);
+                        eventDefinition.setLeftNodeName(leftNodeName);
+                        eventDefinition.setRightNodeName(rightNodeName);
+                        cache.putEventDefinition(eventDefinition, Boolean.FALSE);
+                    }
+                    reader.endObject();
+                }
+                reader.endObject();
             }
-            reader.endArray();
-        } catch (IOException e) {
+            reader.endObject();
+        } catch (IOException | UXDFException e) {
             log.error(e.getLocalizedMessage(), e);
             return false;
         }
 
         // 替换当前缓存
-        CACHE_NODE = cacheNode;
-        CACHE_EVENT_LEFT = cacheEventLeft;
-        CACHE_EVENT_RIGHT = cacheEventRight;
-        CACHE_NODE_EVENT = cacheNodeEvent;
-        CACHE_EVENT_NODE = cacheEventNode;
+        CACHE_NODE = cache.CACHE_NODE;
+        CACHE_NODE_DECLARED_PROP = cache.CACHE_NODE_DECLARED_PROP;
+        CACHE_NODE_CHILDREN = cache.CACHE_NODE_CHILDREN;
+        CACHE_EVENT = cache.CACHE_EVENT;
+        CACHE_EVENT_LEFT = cache.CACHE_EVENT_LEFT;
+        CACHE_NODE_EVENT = cache.CACHE_NODE_EVENT;
+        CACHE_NODE_EVENT_KEY = cache.CACHE_NODE_EVENT_KEY;
+        CACHE_EVENT_NODE = cache.CACHE_EVENT_NODE;
 
         this.initUXDFAll();
         this.fillCache();
+        this.nextVersion();
         return true;
     }
 
@@ -241,55 +339,196 @@ public class UXDFDefinitionCache {
      * @param overwrite      是否覆盖已有定义
      */
     public void putNodeDefinition(final SdNodeDefinition nodeDefinition, final boolean overwrite) {
-        this.putNodeDefinition(CACHE_NODE, nodeDefinition, overwrite);
+        // 检查是否为NULL
+        if (nodeDefinition == null) {
+            throw new UXDFException("Node definition is null.");
+        }
+
+        final String nodeName = nodeDefinition.getNodeName();
+
+        // 不覆盖 并且 已存在
+        if (!overwrite && CACHE_NODE.containsKey(nodeName)) {
+            throw new UXDFException(String.format("Node [%s] exist.", nodeName));
+        }
+
+        // 覆盖 并且 不存在
+        if (overwrite && !CACHE_NODE.containsKey(nodeName)) {
+            throw new UXDFException(String.format("Node [%s] not exist.", nodeName));
+        }
+
+        // 覆盖时先移除已有的继承关系
+        if (overwrite) {
+            this.unlinkNodeExtend(CACHE_NODE.get(nodeName));
+        }
+
+        // 加入Node缓存
+        CACHE_NODE.put(nodeName, nodeDefinition);
+
+        // 记录自身声明的属性，继承的属性在解析时合并
+        CACHE_NODE_DECLARED_PROP.put(
+                nodeName,
+                nodeDefinition.getProp() == null ? Maps.newLinkedHashMap() : Maps.newLinkedHashMap(nodeDefinition.getProp())
+        );
+
+        // 记录继承关系
+        String[] extendArray = nodeDefinition.getExtend();
+        if (extendArray != null) {
+            for (String parentNodeName : extendArray) {
+                CACHE_NODE_CHILDREN.computeIfAbsent(parentNodeName, key -> Sets.newLinkedHashSet()).add(nodeName);
+            }
+        }
+        this.nextVersion();
+    }
+
+    /**
+     * 向当前{@link UXDFDefinitionCache}中添加已经解析继承关系的{@link SdNodeDefinition}，不再重新解析。
+     * <p>
+     * 用于从预编译的定义包中恢复，{@link SdNodeDefinition#getProp()}为解析后的属性，
+     * 自身声明的属性单独传入，之后修改父Node定义时据此重新解析。
+     * </p>
+     *
+     * @param nodeDefinition 已经解析继承关系的Node定义
+     * @param declaredProp   Node定义自身声明的属性
+     */
+    public void putResolvedNodeDefinition(
+            final SdNodeDefinition nodeDefinition,
+            final Map<String, SdProperty> declaredProp
+    ) {
+        this.putNodeDefinition(nodeDefinition, Boolean.FALSE);
+        CACHE_NODE_DECLARED_PROP.put(
+                nodeDefinition.getNodeName(),
+                declaredProp == null ? Maps.newLinkedHashMap() : Maps.newLinkedHashMap(declaredProp)
+        );
+        nodeDefinition.setProp(new ResolvedPropertyMap(
+                nodeDefinition.getProp() == null ? Collections.emptyMap() : nodeDefinition.getProp()
+        ));
     }
 
     /**
-     * 向缓存集合中设置{@link SdNodeDefinition}。
+     * 移除{@link SdNodeDefinition}对父Node定义的继承关系
+     *
+     * @param nodeDefinition Node定义
+     */
+    private void unlinkNodeExtend(final SdNodeDefinition nodeDefinition) {
+        if (nodeDefinition == null || nodeDefinition.getExtend() == null) {
+            return;
+        }
+        for (String parentNodeName : nodeDefinition.getExtend()) {
+            Set<String> children = CACHE_NODE_CHILDREN.get(parentNodeName);
+            if (children != null) {
+                children.remove(nodeDefinition.getNodeName());
+                if (children.isEmpty()) {
+                    CACHE_NODE_CHILDREN.remove(parentNodeName);
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析{@link SdNodeDefinition}的继承关系和唯一约束。
+     * <p>
+     * 只处理指定的Node定义以及继承它们的所有子Node定义，父Node定义先于子Node定义解析。<br />
+     * 子Node定义未声明的属性从父Node定义继承，多个父Node定义时以<b>extend</b>中靠后的为准。
+     * 解析结果作为不可修改的新实例替换{@link SdNodeDefinition#getProp()}，不会修改已有的属性集合。
+     * </p>
      * <p>
      * 以下情况会引起异常：
      * <ol>
-     * <li>{@link SdNodeDefinition}为NULL。</li>
-     * <li>如果不覆盖已存在的{@link SdNodeDefinition}，但添加的{@link SdNodeDefinition}已经在缓存中存在。</li>
-     * <li>如果覆盖已存在的{@link SdNodeDefinition}，但添加的{@link SdNodeDefinition}已经在缓存中不存在。</li>
+     * <li>继承的父Node定义不存在。</li>
+     * <li>继承关系存在循环。</li>
      * </ol>
      * </p>
      *
-     * @param cacheMap       缓存集合
-     * @param nodeDefinition Node定义
-     * @param overwrite      是否覆盖已有定义
+     * @param nodeNames 发生变化的Node定义名称集合
+     * @return 重新解析的Node定义名称集合
      */
-    private void putNodeDefinition(
-            final Map<String, SdNodeDefinition> cacheMap,
-            final SdNodeDefinition nodeDefinition,
-            final boolean overwrite
+    public Set<String> resolveNodeDefinition(final Collection<String> nodeNames) {
+        // 收集受影响的Node定义，包括所有后代
+        Set<String> affectedNames = Sets.newLinkedHashSet();
+        Deque<String> pendingNames = new ArrayDeque<>(nodeNames);
+        while (!pendingNames.isEmpty()) {
+            String nodeName = pendingNames.poll();
+            if (affectedNames.add(nodeName)) {
+                pendingNames.addAll(CACHE_NODE_CHILDREN.getOrDefault(nodeName, Collections.emptySet()));
+            }
+        }
+
+        // 按继承顺序解析
+        Set<String> resolvedNames = Sets.newHashSet();
+        for (String nodeName : affectedNames) {
+            this.resolveNodeDefinition(nodeName, affectedNames, resolvedNames, Sets.newHashSet());
+        }
+        this.nextVersion();
+        return resolvedNames;
+    }
+
+    /**
+     * 解析单个{@link SdNodeDefinition}，受影响的父Node定义会先被解析。
+     *
+     * @param nodeName      Node定义名称
+     * @param affectedNames 受影响的Node定义名称集合
+     * @param resolvedNames 已经解析的Node定义名称集合
+     * @param visitingNames 当前解析路径上的Node定义名称集合，用于检查循环继承
+     */
+    private void resolveNodeDefinition(
+            final String nodeName,
+            final Set<String> affectedNames,
+            final Set<String> resolvedNames,
+            final Set<String> visitingNames
     ) {
-        // 检查是否为NULL
-        if (cacheMap == null) {
-            throw new UXDFException("Cache Map is null.");
+        SdNodeDefinition nodeDefinition = CACHE_NODE.get(nodeName);
+        // 已经被移除或已经解析
+        if (nodeDefinition == null || resolvedNames.contains(nodeName)) {
+            return;
         }
-        if (nodeDefinition == null) {
-            throw new UXDFException("Node definition is null.");
+        if (!visitingNames.add(nodeName)) {
+            throw new UXDFException(String.format("Node [%s] extend cycle.", nodeName));
         }
 
-        final String nodeName = nodeDefinition.getNodeName();
+        // 以自身声明的属性为基础，构建新的属性集合
+        Map<String, SdProperty> prop = Maps.newLinkedHashMap(
+                CACHE_NODE_DECLARED_PROP.getOrDefault(nodeName, Collections.emptyMap())
+        );
 
-        // 不覆盖 并且 已存在
-        if (!overwrite && cacheMap.containsKey(nodeName)) {
-            throw new UXDFException(String.format("Node [%s] exist.", nodeName));
+        // 处理继承，倒序继承顺序从后向前继承
+        String[] extendArray = nodeDefinition.getExtend();
+        if (extendArray != null) {
+            for (int i = extendArray.length - 1; i >= 0; i--) {
+                String parentNodeName = extendArray[i];
+                SdNodeDefinition parentNode = CACHE_NODE.get(parentNodeName);
+                if (parentNode == null) {
+                    throw new UXDFException(String.format(
+                            "Node [%s] extend node [%s] not exist.", nodeName, parentNodeName
+                    ));
+                }
+                // 父Node受影响时，先解析父Node
+                if (affectedNames.contains(parentNodeName)) {
+                    this.resolveNodeDefinition(parentNodeName, affectedNames, resolvedNames, visitingNames);
+                }
+                // 子未实现，则使用父
+                if (parentNode.getProp() != null) {
+                    parentNode.getProp().forEach(prop::putIfAbsent);
+                }
+            }
         }
+        nodeDefinition.setProp(new ResolvedPropertyMap(prop));
 
-        // 覆盖 并且 不存在
-        if (overwrite && !cacheMap.containsKey(nodeName)) {
-            throw new UXDFException(String.format("Node [%s] not exist.", nodeName));
+        // 处理唯一约束
+        String[] uniqueIndex = nodeDefinition.getUniqueIndex();
+        if (uniqueIndex != null && uniqueIndex.length > 0) {
+            Set<String> uniqueIndexSet = Sets.newLinkedHashSet(Arrays.asList(uniqueIndex));
+            nodeDefinition.setUniqueIndex(uniqueIndexSet.toArray(new String[]{}));
         }
 
-        // 加入Node缓存
-        cacheMap.put(nodeName, nodeDefinition);
+        visitingNames.remove(nodeName);
+        resolvedNames.add(nodeName);
     }
 
     /**
      * 从当前{@link UXDFDefinitionCache}中移除一个{@link SdNodeDefinition}。以及相关的所有{@link SdEventDefinition}。
+     * <p>
+     * 通过Node定义的反向索引{@link #CACHE_NODE_EVENT_KEY}定位相关的Event定义，只处理受影响的部分。
+     * </p>
      *
      * @param nodeName Node定义名称
      */
@@ -301,29 +540,20 @@ public class UXDFDefinitionCache {
             return;
         }
 
-        // 从Event对应Node缓存中移除
-        CACHE_EVENT_NODE.forEach((eventName, sdNodeDefinitions) -> sdNodeDefinitions.remove(sdNodeDefinition));
+        // 移除声明的属性和继承关系
+        CACHE_NODE_DECLARED_PROP.remove(nodeName);
+        this.unlinkNodeExtend(sdNodeDefinition);
+        this.nextVersion();
 
-        // 移除所有对应的Event缓存
-        Set<SdEventDefinition> sdEventDefinitions = CACHE_NODE_EVENT.remove(nodeName);
+        // 获取所有关联的Event复合键
+        Set<SdEventKey> eventKeys = CACHE_NODE_EVENT_KEY.get(nodeName);
         // Node没有对应的Event
-        if (sdEventDefinitions == null || sdEventDefinitions.isEmpty()) {
+        if (eventKeys == null || eventKeys.isEmpty()) {
             return;
         }
 
-        // 遍历被移除的Event定义，从其它缓存中同样移除
-        sdEventDefinitions.forEach(sdEventDefinition -> {
-            CACHE_EVENT_RIGHT.values().forEach(
-                    rightMap -> rightMap.values().forEach(
-                            leftMap -> leftMap.values().remove(sdEventDefinition)
-                    )
-            );
-            CACHE_EVENT_LEFT.values().forEach(
-                    leftMap -> leftMap.values().forEach(
-                            rightMap -> rightMap.values().remove(sdEventDefinition)
-                    )
-            );
-        });
+        // 复制一份复合键，移除过程中会修改反向索引
+        Lists.newArrayList(eventKeys).forEach(this::removeEventDefinition);
     }
 
     /**
@@ -345,42 +575,6 @@ public class UXDFDefinitionCache {
     public void putEventDefinition(
             final SdEventDefinition eventDefinition,
             final boolean overwrite
-    ) {
-        this.putEventDefinition(
-                CACHE_NODE,
-                CACHE_EVENT_LEFT,
-                CACHE_EVENT_RIGHT,
-                CACHE_NODE_EVENT,
-                CACHE_EVENT_NODE,
-                eventDefinition,
-                overwrite
-        );
-    }
-
-    /**
-     * 向缓存中设置{@link SdEventDefinition}。
-     * <p>
-     * 以下情况会引起异常：
-     * <ol>
-     * <li>{@link SdEventDefinition}为NULL。</li>
-     * <li>如果不覆盖已存在的{@link SdEventDefinition}，但添加的{@link SdEventDefinition}已经在缓存中存在。</li>
-     * <li>如果覆盖已存在的{@link SdEventDefinition}，但添加的{@link SdEventDefinition}已经在缓存中不存在。</li>
-     * <li>{@link SdEventDefinition#getLeftNodeName()}对应的{@link SdNodeDefinition}不存在。</li>
-     * <li>{@link SdEventDefinition#getRightNodeName()}对应的{@link SdNodeDefinition}不存在。</li>
-     * </ol>
-     * </p>
-     *
-     * @param eventDefinition Event定义
-     * @param overwrite       是否覆盖已有定义
-     */
-    private void putEventDefinition(
-            final Map<String, SdNodeDefinition> cacheNode,
-            final Map<String, Map<String, Map<String, SdEventDefinition>>> cacheEventLeft,
-            final Map<String, Map<String, Map<String, SdEventDefinition>>> cacheEventRight,
-            final Map<String, Set<SdEventDefinition>> cacheNodeEvent,
-            final Map<String, Set<SdNodeDefinition>> cacheEventNode,
-            final SdEventDefinition eventDefinition,
-            final boolean overwrite
     ) {
         // 检查是否为NULL
         if (eventDefinition == null) {
@@ -390,67 +584,72 @@ public class UXDFDefinitionCache {
         final String eventName = eventDefinition.getEventName();
         final String leftNodeName = eventDefinition.getLeftNodeName();
         final String rightNodeName = eventDefinition.getRightNodeName();
+        final SdEventKey eventKey = SdEventKey.of(eventDefinition);
+        final boolean exist = CACHE_EVENT.containsKey(eventKey);
 
         // 不覆盖 并且 已存在
-        if (!overwrite &&
-                cacheEventLeft.containsKey(eventName) &&
-                cacheEventLeft.get(eventName).containsKey(leftNodeName) &&
-                cacheEventLeft.get(eventName).get(leftNodeName).containsKey(rightNodeName)
-        ) {
+        if (!overwrite && exist) {
             throw new UXDFException(String.format("Event [%s-%s>%s] exist.", eventName, leftNodeName, rightNodeName));
         }
 
         // 覆盖 并且 不存在
-        if (overwrite &&
-                (!cacheEventLeft.containsKey(eventName) ||
-                        !cacheEventLeft.get(eventName).containsKey(leftNodeName) ||
-                        !cacheEventLeft.get(eventName).get(leftNodeName).containsKey(rightNodeName))
-        ) {
+        if (overwrite && !exist) {
             throw new UXDFException(String.format("Event [%s-%s>%s] not exist.", eventName, leftNodeName, rightNodeName));
         }
 
         // 左Node定义不存在
-        if (!cacheNode.containsKey(leftNodeName)) {
+        if (!CACHE_NODE.containsKey(leftNodeName)) {
             throw new UXDFException(String.format("Left node [%s] not exist.", leftNodeName));
         }
 
         // 右Node定义不存在
-        if (!cacheNode.containsKey(rightNodeName)) {
+        if (!CACHE_NODE.containsKey(rightNodeName)) {
             throw new UXDFException(String.format("Right node [%s] not exist.", rightNodeName));
         }
 
+        // 覆盖时先移除已有定义，Set中的定义基于名称判断相等，直接加入不会替换
+        if (exist) {
+            this.removeEventDefinition(eventKey);
+        }
+
+        // 加入复合键Event缓存
+        CACHE_EVENT.put(eventKey, eventDefinition);
+
         // 加入Node到Event缓存
-        Set<SdEventDefinition> eventLeftSet = cacheNodeEvent.computeIfAbsent(leftNodeName, key -> Sets.newHashSet());
-        eventLeftSet.add(eventDefinition);
-        Set<SdEventDefinition> eventRightSet = cacheNodeEvent.computeIfAbsent(rightNodeName, key -> Sets.newHashSet());
-        eventRightSet.add(eventDefinition);
+        CACHE_NODE_EVENT.computeIfAbsent(leftNodeName, key -> Sets.newHashSet()).add(eventDefinition);
+        CACHE_NODE_EVENT.computeIfAbsent(rightNodeName, key -> Sets.newHashSet()).add(eventDefinition);
+
+        // 加入Node到Event复合键的反向索引
+        CACHE_NODE_EVENT_KEY.computeIfAbsent(leftNodeName, key -> Sets.newHashSet()).add(eventKey);
+        CACHE_NODE_EVENT_KEY.computeIfAbsent(rightNodeName, key -> Sets.newHashSet()).add(eventKey);
 
         // 加入Event到Node缓存
-        Set<SdNodeDefinition> nodeSet = cacheEventNode.computeIfAbsent(eventName, key -> Sets.newHashSet());
-        nodeSet.add(cacheNode.get(leftNodeName));
-        nodeSet.add(cacheNode.get(rightNodeName));
-
-        // 加入左到右的Event缓存
-        Map<String, Map<String, SdEventDefinition>> eventLeftRightMap = cacheEventLeft.computeIfAbsent(
-                eventName,
-                key -> Maps.newHashMap()
-        );
-        Map<String, SdEventDefinition> eventRightMap = eventLeftRightMap.computeIfAbsent(
-                leftNodeName,
-                key -> Maps.newHashMap()
-        );
-        eventRightMap.put(rightNodeName, eventDefinition);
+        Set<SdNodeDefinition> nodeSet = CACHE_EVENT_NODE.computeIfAbsent(eventName, key -> Sets.newHashSet());
+        nodeSet.add(CACHE_NODE.get(leftNodeName));
+        nodeSet.add(CACHE_NODE.get(rightNodeName));
+
+        // 加入按Event名称分组的缓存
+        CACHE_EVENT_LEFT
+                .computeIfAbsent(eventName, key -> Maps.newHashMap())
+                .computeIfAbsent(leftNodeName, key -> Maps.newHashMap())
+                .put(rightNodeName, eventDefinition);
+        this.nextVersion();
+    }
 
-        // 加入右到左的Event缓存
-        Map<String, Map<String, SdEventDefinition>> eventRightLeftMap = cacheEventRight.computeIfAbsent(
-                eventName,
-                key -> Maps.newHashMap()
-        );
-        Map<String, SdEventDefinition> eventLeftMap = eventRightLeftMap.computeIfAbsent(
-                rightNodeName,
-                key -> Maps.newHashMap()
-        );
-        eventLeftMap.put(leftNodeName, eventDefinition);
+    /**
+     * 获取符合Event定义名称、左Node定义名称和右Node定义名称的{@link SdEventDefinition}
+     *
+     * @param eventName     Event定义名称
+     * @param leftNodeName  左Node定义名称
+     * @param rightNodeName 右Node定义名称
+     * @return Event定义，不存在时返回NULL
+     */
+    public SdEventDefinition getEventDefinition(
+            final String eventName,
+            final String leftNodeName,
+            final String rightNodeName
+    ) {
+        return CACHE_EVENT.get(SdEventKey.probe(eventName, leftNodeName, rightNodeName));
     }
 
     /**
@@ -459,52 +658,150 @@ public class UXDFDefinitionCache {
      * @param eventNameArray Event定义名称集合，依次是eventName，leftNodeName，rightNodeName
      */
     public void removeEventDefinition(final String[] eventNameArray) {
-        final String eventName = eventNameArray[0];
-        final String leftNodeName = eventNameArray[1];
-        final String rightNodeName = eventNameArray[2];
+        this.removeEventDefinition(SdEventKey.probe(eventNameArray[0], eventNameArray[1], eventNameArray[2]));
+    }
+
+    /**
+     * 通过复合键移除一个{@link SdEventDefinition}，并同步清理所有关联索引。
+     *
+     * @param eventKey Event定义复合键
+     */
+    private void removeEventDefinition(final SdEventKey eventKey) {
         // 移除Event缓存
-        Set<SdEventDefinition> sdEventDefinitionSet = Sets.newHashSet();
-        if (
-                CACHE_EVENT_LEFT.containsKey(eventName) &&
-                        CACHE_EVENT_LEFT.get(eventName).containsKey(leftNodeName) &&
-                        CACHE_EVENT_LEFT.get(eventName).get(leftNodeName).containsKey(rightNodeName)
-        ) {
-            sdEventDefinitionSet.add(CACHE_EVENT_LEFT.get(eventName).get(leftNodeName).remove(rightNodeName));
+        SdEventDefinition sdEventDefinition = CACHE_EVENT.remove(eventKey);
+        if (sdEventDefinition == null) {
+            return;
         }
-
-        if (
-                CACHE_EVENT_RIGHT.containsKey(eventName) &&
-                        CACHE_EVENT_RIGHT.get(eventName).containsKey(rightNodeName) &&
-                        CACHE_EVENT_RIGHT.get(eventName).get(rightNodeName).containsKey(leftNodeName)
-        ) {
-            sdEventDefinitionSet.add(CACHE_EVENT_RIGHT.get(eventName).get(rightNodeName).remove(leftNodeName));
+        this.nextVersion();
+
+        final String eventName = eventKey.getEventName();
+        final String leftNodeName = eventKey.getLeftNodeName();
+        final String rightNodeName = eventKey.getRightNodeName();
+
+        // 从按Event名称分组的缓存中移除，并清理空的分组
+        Map<String, Map<String, SdEventDefinition>> leftMap = CACHE_EVENT_LEFT.get(eventName);
+        if (leftMap != null) {
+            Map<String, SdEventDefinition> rightMap = leftMap.get(leftNodeName);
+            if (rightMap != null) {
+                rightMap.remove(rightNodeName);
+                if (rightMap.isEmpty()) {
+                    leftMap.remove(leftNodeName);
+                }
+            }
+            if (leftMap.isEmpty()) {
+                CACHE_EVENT_LEFT.remove(eventName);
+            }
         }
 
-        sdEventDefinitionSet.forEach(sdEventDefinition -> {
-            if (sdEventDefinition == null) {
-                return;
+        // 从两侧Node的关系缓存中移除
+        for (String nodeName : new String[]{leftNodeName, rightNodeName}) {
+            Set<SdEventDefinition> nodeEvents = CACHE_NODE_EVENT.get(nodeName);
+            if (nodeEvents != null) {
+                nodeEvents.remove(sdEventDefinition);
+                if (nodeEvents.isEmpty()) {
+                    CACHE_NODE_EVENT.remove(nodeName);
+                }
             }
-
-            if (CACHE_NODE_EVENT.containsKey(leftNodeName)) {
-                CACHE_NODE_EVENT.get(leftNodeName).remove(sdEventDefinition);
+            Set<SdEventKey> nodeEventKeys = CACHE_NODE_EVENT_KEY.get(nodeName);
+            if (nodeEventKeys != null) {
+                nodeEventKeys.remove(eventKey);
+                if (nodeEventKeys.isEmpty()) {
+                    CACHE_NODE_EVENT_KEY.remove(nodeName);
+                }
             }
+        }
 
-            if (CACHE_NODE_EVENT.containsKey(rightNodeName)) {
-                CACHE_NODE_EVENT.get(rightNodeName).remove(sdEventDefinition);
+        // Node不再通过同名Event关联时，从Event到Node缓存中移除
+        Set<SdNodeDefinition> eventNodes = CACHE_EVENT_NODE.get(eventName);
+        if (eventNodes != null) {
+            eventNodes.removeIf(nodeDefinition -> {
+                final String nodeName = nodeDefinition.getNodeName();
+                if (!nodeName.equals(leftNodeName) && !nodeName.equals(rightNodeName)) {
+                    return false;
+                }
+                Set<SdEventKey> nodeEventKeys = CACHE_NODE_EVENT_KEY.get(nodeName);
+                return nodeEventKeys == null ||
+                        nodeEventKeys.stream().noneMatch(key -> eventName.equals(key.getEventName()));
+            });
+            if (eventNodes.isEmpty()) {
+                CACHE_EVENT_NODE.remove(eventName);
             }
-        });
+        }
     }
 
     /**
-     * 填充UXDF全集缓存
+     * 重置UXDF全集缓存，下一次获取时重新生成
      */
     public void initUXDFAll() {
-        UXDF uxdf = JSON.toJavaObject(CACHE_UXDF_BASE, UXDF.class);
-        uxdf.getSd().getNode().getImpl().putAll(CACHE_NODE);
-        uxdf.getSd().getEvent().getImpl().putAll(CACHE_EVENT_LEFT);
-        uxdf.setData(null);
-        final String jsonText = JSON.toJSONString(uxdf, SerializerFeature.DisableCircularReferenceDetect);
-        CACHE_UXDF_ALL = JSON.parseObject(jsonText);
+        this.schemaDocument = null;
+    }
+
+    /**
+     * 获取完整UXDF结构，包含了impl部分内容
+     *
+     * @return 完整UXDF结构，每次调用返回新的副本
+     * @deprecated 使用{@link #getSchemaDocument()}，避免每次解析完整文档
+     */
+    @Deprecated
+    public JSONObject getCACHE_UXDF_ALL() {
+        return JSON.parseObject(this.getSchemaDocument().toJSONString());
+    }
+
+    /**
+     * 获取完整UXDF文档。
+     * <p>
+     * 文档在第一次获取时生成，缓存版本变化或调用{@link #initUXDFAll()}后重新生成。
+     * 调用方需要保证生成期间没有并发修改定义。
+     * </p>
+     *
+     * @return 完整UXDF文档
+     */
+    public UXDFSchemaDocument getSchemaDocument() {
+        UXDFSchemaDocument document = this.schemaDocument;
+        if (document != null && document.getVersion() == this.version) {
+            return document;
+        }
+        synchronized (this) {
+            document = this.schemaDocument;
+            final long currentVersion = this.version;
+            if (document == null || document.getVersion() != currentVersion) {
+                UXDF uxdf = JSON.toJavaObject(CACHE_UXDF_BASE, UXDF.class);
+                uxdf.getSd().getNode().getImpl().putAll(CACHE_NODE);
+                uxdf.getSd().getEvent().getImpl().putAll(CACHE_EVENT_LEFT);
+                uxdf.setData(null);
+                document = new UXDFSchemaDocument(
+                        JSON.toJSONBytes(uxdf, SerializerFeature.DisableCircularReferenceDetect),
+                        currentVersion
+                );
+                this.schemaDocument = document;
+            }
+            return document;
+        }
+    }
+
+    /**
+     * 获取Sd定义关系图。
+     * <p>
+     * 关系图在第一次获取时生成，缓存版本变化后重新生成。
+     * 调用方需要保证生成期间没有并发修改定义。
+     * </p>
+     *
+     * @return Sd定义关系图
+     */
+    public UXDFSchemaGraph getSchemaGraph() {
+        UXDFSchemaGraph graph = this.schemaGraph;
+        if (graph != null && graph.getVersion() == this.version) {
+            return graph;
+        }
+        synchronized (this) {
+            graph = this.schemaGraph;
+            final long currentVersion = this.version;
+            if (graph == null || graph.getVersion() != currentVersion) {
+                graph = new UXDFSchemaGraph(currentVersion, CACHE_NODE.keySet(), CACHE_EVENT.values());
+                this.schemaGraph = graph;
+            }
+            return graph;
+        }
     }
 
     /**
@@ -513,12 +810,106 @@ public class UXDFDefinitionCache {
     private void fillCache() {
         CACHE = Lists.newArrayList(
                 CACHE_UXDF_BASE,
-                CACHE_UXDF_ALL,
                 CACHE_NODE,
+                CACHE_NODE_DECLARED_PROP,
+                CACHE_NODE_CHILDREN,
+                CACHE_EVENT,
                 CACHE_EVENT_LEFT,
-                CACHE_EVENT_RIGHT,
                 CACHE_NODE_EVENT,
+                CACHE_NODE_EVENT_KEY,
                 CACHE_EVENT_NODE
         );
     }
+
+    /**
+     * 解析继承后的属性集合，创建后不可修改
+     */
+    private static final class ResolvedPropertyMap extends LinkedHashMap<String, SdProperty> {
+
+        private static final long serialVersionUID = 1L;
+
+        private ResolvedPropertyMap(final Map<String, SdProperty> prop) {
+            super(prop);
+        }
+
+        @Override
+        public SdProperty put(final String key, final SdProperty value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void putAll(final Map<? extends String, ? extends SdProperty> map) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SdProperty remove(final Object key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SdProperty putIfAbsent(final String key, final SdProperty value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean remove(final Object key, final Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean replace(final String key, final SdProperty oldValue, final SdProperty newValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SdProperty replace(final String key, final SdProperty value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void replaceAll(final BiFunction<? super String, ? super SdProperty, ? extends SdProperty> function) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SdProperty computeIfAbsent(final String key, final Function<? super String, ? extends SdProperty> mappingFunction) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SdProperty computeIfPresent(final String key, final BiFunction<? super String, ? super SdProperty, ? extends SdProperty> remappingFunction) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SdProperty compute(final String key, final BiFunction<? super String, ? super SdProperty, ? extends SdProperty> remappingFunction) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SdProperty merge(final String key, final SdProperty value, final BiFunction<? super SdProperty, ? super SdProperty, ? extends SdProperty> remappingFunction) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return Collections.unmodifiableSet(super.keySet());
+        }
+
+        @Override
+        public Collection<SdProperty> values() {
+            return Collections.unmodifiableCollection(super.values());
+        }
+
+        @Override
+        public Set<Map.Entry<String, SdProperty>> entrySet() {
+            return Collections.unmodifiableSet(super.entrySet());
+        }
+    }
 }
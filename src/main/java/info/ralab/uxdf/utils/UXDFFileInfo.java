@@ -1,8 +1,10 @@
 package info.ralab.uxdf.utils;
 
+import info.ralab.uxdf.UXDFException;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
@@ -17,11 +19,74 @@ public class UXDFFileInfo {
      */
     private String name;
     /**
-     * 文件输入流
+     * 文件输入流提供者，读取文件时才打开输入流
      */
-    private InputStream inputStream;
+    private InputStreamSupplier inputStreamSupplier;
     /**
      * 文件路径
      */
     private String path;
+
+    /**
+     * 使用已经打开的输入流创建定义文件信息，输入流只能读取一次
+     *
+     * @param name        文件名称
+     * @param inputStream 文件输入流
+     * @param path        文件路径
+     * @deprecated 使用{@link #UXDFFileInfo(String, InputStreamSupplier, String)}，读取文件时才打开输入流
+     */
+    @Deprecated
+    public UXDFFileInfo(final String name, final InputStream inputStream, final String path) {
+        this(name, () -> inputStream, path);
+    }
+
+    /**
+     * 获取文件输入流，每次调用都会打开新的输入流，由调用方负责关闭
+     *
+     * @return 文件输入流
+     * @deprecated 使用{@link #openInputStream()}
+     */
+    @Deprecated
+    public InputStream getInputStream() {
+        try {
+            return this.openInputStream();
+        } catch (IOException e) {
+            throw new UXDFException(e);
+        }
+    }
+
+    /**
+     * 设置文件输入流，输入流只能读取一次
+     *
+     * @param inputStream 文件输入流
+     * @deprecated 使用{@link #setInputStreamSupplier(InputStreamSupplier)}
+     */
+    @Deprecated
+    public void setInputStream(final InputStream inputStream) {
+        this.inputStreamSupplier = () -> inputStream;
+    }
+
+    /**
+     * 打开文件输入流，由调用方负责关闭
+     *
+     * @return 文件输入流
+     * @throws IOException 文件打开异常
+     */
+    public InputStream openInputStream() throws IOException {
+        return inputStreamSupplier.open();
+    }
+
+    /**
+     * 文件输入流提供者
+     */
+    @FunctionalInterface
+    public interface InputStreamSupplier {
+        /**
+         * 打开输入流
+         *
+         * @return 输入流
+         * @throws IOException 打开异常
+         */
+        InputStream open() throws IOException;
+    }
 }
@@ -0,0 +1,84 @@
+package info.ralab.uxdf.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link UXDFLoaderListener}的调用统计，记录监听器被调用的次数、失败次数和耗时。
+ * <p>
+ * 统计值在调用线程中累加，读取时不加锁，读取到的各项数值之间不保证是同一时刻的快照。
+ * </p>
+ */
+public class UXDFListenerMetrics {
+
+    /**
+     * 调用次数
+     */
+    private final LongAdder invocations = new LongAdder();
+    /**
+     * 失败次数
+     */
+    private final LongAdder failures = new LongAdder();
+    /**
+     * 累计耗时，纳秒
+     */
+    private final LongAdder totalNanos = new LongAdder();
+    /**
+     * 单次最大耗时，纳秒
+     */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * 记录一次调用
+     *
+     * @param nanos  调用耗时，纳秒
+     * @param failed 调用是否失败
+     */
+    public void record(final long nanos, final boolean failed) {
+        invocations.increment();
+        if (failed) {
+            failures.increment();
+        }
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * 获取平均耗时
+     *
+     * @return 平均耗时，纳秒。没有调用时返回0
+     */
+    public long getAverageNanos() {
+        final long count = this.getInvocations();
+        return count == 0 ? 0 : this.getTotalNanos() / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "invocations=%d, failures=%d, total=%dms, average=%dms, max=%dms",
+                this.getInvocations(),
+                this.getFailures(),
+                TimeUnit.NANOSECONDS.toMillis(this.getTotalNanos()),
+                TimeUnit.NANOSECONDS.toMillis(this.getAverageNanos()),
+                TimeUnit.NANOSECONDS.toMillis(this.getMaxNanos())
+        );
+    }
+}
@@ -5,7 +5,9 @@ import info.ralab.uxdf.definition.SdNodeDefinition;
 
 /**
  * UXDF加载监听器，用于监听UXDF定义在一个{@link info.ralab.uxdf.UXDFLoader}中的变更。<br/>
- * 监听器抛出的异常，都会引起{@link info.ralab.uxdf.UXDFLoader}的变更回滚。
+ * 监听器抛出的异常，都会引起{@link info.ralab.uxdf.UXDFLoader}的变更回滚。<br/>
+ * 开启异步通知{@link info.ralab.uxdf.UXDFRegistry#setAsyncNotification(boolean)}后，<b>on*After</b>方法在通知线程中执行，
+ * 抛出的异常只记录日志，不会引起变更回滚。
  */
 public interface UXDFLoaderListener {
 
@@ -0,0 +1,89 @@
+package info.ralab.uxdf.utils;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 全局正则缓存，通过正则表达式缓存编译后的{@link Pattern}。
+ * <p>
+ * 缓存有容量上限，默认{@link #DEFAULT_MAXIMUM_SIZE}，可以通过系统属性{@link #PROPERTY_MAXIMUM_SIZE}设置，
+ * 超过上限后淘汰最近最少使用的正则。<br />
+ * 无法编译的正则也会被缓存，编译错误只记录一次。
+ * </p>
+ */
+@Slf4j
+public final class UXDFPatternCache {
+
+    /**
+     * 设置缓存容量上限的系统属性
+     */
+    public static final String PROPERTY_MAXIMUM_SIZE = "uxdf.pattern.cache.maximumSize";
+
+    /**
+     * 默认缓存容量上限
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    private static final LoadingCache<String, Optional<Pattern>> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(Integer.getInteger(PROPERTY_MAXIMUM_SIZE, DEFAULT_MAXIMUM_SIZE))
+            .recordStats()
+            .build(new CacheLoader<String, Optional<Pattern>>() {
+                @Override
+                public Optional<Pattern> load(final String regex) {
+                    try {
+                        return Optional.of(Pattern.compile(regex));
+                    } catch (PatternSyntaxException e) {
+                        log.error(String.format("Compile regex [%s] fail.", regex), e);
+                        return Optional.empty();
+                    }
+                }
+            });
+
+    private UXDFPatternCache() {
+    }
+
+    /**
+     * 获取编译后的正则
+     *
+     * @param regex 正则表达式
+     * @return 编译后的正则，正则为NULL或无法编译时返回NULL
+     */
+    public static Pattern get(final String regex) {
+        if (regex == null) {
+            return null;
+        }
+        return CACHE.getUnchecked(regex).orElse(null);
+    }
+
+    /**
+     * 获取缓存统计，包括命中率{@link CacheStats#hitRate()}
+     *
+     * @return 缓存统计
+     */
+    public static CacheStats getStats() {
+        return CACHE.stats();
+    }
+
+    /**
+     * 获取缓存的正则数量
+     *
+     * @return 正则数量
+     */
+    public static long size() {
+        return CACHE.size();
+    }
+
+    /**
+     * 清空缓存
+     */
+    public static void clear() {
+        CACHE.invalidateAll();
+    }
+}
@@ -0,0 +1,83 @@
+package info.ralab.uxdf.utils;
+
+import com.google.common.hash.Hashing;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 完整UXDF定义文档，保存已经编码为UTF-8的JSON内容。
+ * <p>
+ * 文档创建后不可修改，可以被多个线程共享。<b>eTag</b>为内容的SHA-256摘要，内容相同的文档<b>eTag</b>相同，
+ * 可以直接作为HTTP响应的ETag使用。
+ * </p>
+ */
+public final class UXDFSchemaDocument {
+
+    /**
+     * UTF-8编码的JSON内容
+     */
+    private final byte[] content;
+
+    /**
+     * 内容摘要，带双引号的强校验ETag格式
+     */
+    @Getter
+    private final String eTag;
+
+    /**
+     * 生成文档时的缓存版本
+     */
+    @Getter
+    private final long version;
+
+    UXDFSchemaDocument(final byte[] content, final long version) {
+        this.content = content;
+        this.eTag = "\"" + Hashing.sha256().hashBytes(content).toString() + "\"";
+        this.version = version;
+    }
+
+    /**
+     * 获取内容字节长度
+     *
+     * @return 字节长度
+     */
+    public int getContentLength() {
+        return content.length;
+    }
+
+    /**
+     * 获取内容副本
+     *
+     * @return UTF-8编码的JSON内容
+     */
+    public byte[] getContent() {
+        return content.clone();
+    }
+
+    /**
+     * 将内容写入输出流，不关闭输出流
+     *
+     * @param outputStream 输出流
+     * @throws IOException 写入异常
+     */
+    public void writeTo(final OutputStream outputStream) throws IOException {
+        outputStream.write(content);
+    }
+
+    /**
+     * 获取JSON字符串内容
+     *
+     * @return JSON字符串
+     */
+    public String toJSONString() {
+        return new String(content, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return this.toJSONString();
+    }
+}
@@ -0,0 +1,252 @@
+package info.ralab.uxdf.utils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import info.ralab.uxdf.chain.ChainPath;
+import info.ralab.uxdf.definition.SdEventDefinition;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Sd定义关系图，Node定义作为顶点，Event定义作为从左Node指向右Node的边。
+ * <p>
+ * 每个Node定义分别记录作为左Node的出边和作为右Node的入边，并按Event定义名称分组，通配解析时直接查找。
+ * 邻接集合按Event定义名称和另一端Node定义名称排序，结果顺序稳定。
+ * </p>
+ * <p>
+ * 关系图不可修改，由{@link UXDFDefinitionCache#getSchemaGraph()}按定义版本生成。
+ * 多跳可达的查询结果在第一次查询后缓存。
+ * </p>
+ */
+public final class UXDFSchemaGraph {
+
+    private static final Comparator<SdEventDefinition> EVENT_ORDER = Comparator
+            .comparing(SdEventDefinition::getEventName)
+            .thenComparing(SdEventDefinition::getLeftNodeName)
+            .thenComparing(SdEventDefinition::getRightNodeName);
+
+    /**
+     * 生成时的定义版本
+     */
+    @Getter
+    private final long version;
+
+    /**
+     * 所有Node定义名称
+     */
+    private final Set<String> nodes;
+
+    /**
+     * 出边，通过左Node定义名称索引
+     */
+    private final Map<String, List<SdEventDefinition>> outgoing;
+
+    /**
+     * 入边，通过右Node定义名称索引
+     */
+    private final Map<String, List<SdEventDefinition>> incoming;
+
+    /**
+     * 按Event定义名称分组的出边，通过左Node定义名称和Event定义名称索引
+     */
+    private final Map<String, Map<String, List<SdEventDefinition>>> outgoingByEvent;
+
+    /**
+     * 按Event定义名称分组的入边，通过右Node定义名称和Event定义名称索引
+     */
+    private final Map<String, Map<String, List<SdEventDefinition>>> incomingByEvent;
+
+    /**
+     * 多跳可达查询缓存
+     */
+    private final ConcurrentMap<String, Set<String>> reachable = Maps.newConcurrentMap();
+
+    /**
+     * 创建关系图
+     *
+     * @param version          定义版本
+     * @param nodeNames        Node定义名称集合
+     * @param eventDefinitions Event定义集合
+     */
+    UXDFSchemaGraph(
+            final long version,
+            final Collection<String> nodeNames,
+            final Collection<SdEventDefinition> eventDefinitions
+    ) {
+        this.version = version;
+        this.nodes = ImmutableSet.copyOf(nodeNames);
+
+        final Map<String, ImmutableList.Builder<SdEventDefinition>> outgoingBuilder = Maps.newHashMap();
+        final Map<String, ImmutableList.Builder<SdEventDefinition>> incomingBuilder = Maps.newHashMap();
+        final Map<String, Map<String, ImmutableList.Builder<SdEventDefinition>>> outgoingByEventBuilder = Maps.newHashMap();
+        final Map<String, Map<String, ImmutableList.Builder<SdEventDefinition>>> incomingByEventBuilder = Maps.newHashMap();
+        eventDefinitions.stream().sorted(EVENT_ORDER).forEach(eventDefinition -> {
+            final String eventName = eventDefinition.getEventName();
+            final String leftNodeName = eventDefinition.getLeftNodeName();
+            final String rightNodeName = eventDefinition.getRightNodeName();
+            outgoingBuilder.computeIfAbsent(leftNodeName, key -> ImmutableList.builder()).add(eventDefinition);
+            incomingBuilder.computeIfAbsent(rightNodeName, key -> ImmutableList.builder()).add(eventDefinition);
+            outgoingByEventBuilder.computeIfAbsent(leftNodeName, key -> Maps.newHashMap())
+                    .computeIfAbsent(eventName, key -> ImmutableList.builder())
+                    .add(eventDefinition);
+            incomingByEventBuilder.computeIfAbsent(rightNodeName, key -> Maps.newHashMap())
+                    .computeIfAbsent(eventName, key -> ImmutableList.builder())
+                    .add(eventDefinition);
+        });
+        this.outgoing = build(outgoingBuilder);
+        this.incoming = build(incomingBuilder);
+        final ImmutableMap.Builder<String, Map<String, List<SdEventDefinition>>> outgoingByEventMap = ImmutableMap.builder();
+        outgoingByEventBuilder.forEach((nodeName, byEvent) -> outgoingByEventMap.put(nodeName, build(byEvent)));
+        this.outgoingByEvent = outgoingByEventMap.build();
+        final ImmutableMap.Builder<String, Map<String, List<SdEventDefinition>>> incomingByEventMap = ImmutableMap.builder();
+        incomingByEventBuilder.forEach((nodeName, byEvent) -> incomingByEventMap.put(nodeName, build(byEvent)));
+        this.incomingByEvent = incomingByEventMap.build();
+    }
+
+    private static Map<String, List<SdEventDefinition>> build(
+            final Map<String, ImmutableList.Builder<SdEventDefinition>> builders
+    ) {
+        final ImmutableMap.Builder<String, List<SdEventDefinition>> map = ImmutableMap.builder();
+        builders.forEach((key, builder) -> map.put(key, builder.build()));
+        return map.build();
+    }
+
+    /**
+     * Node定义是否存在
+     *
+     * @param nodeName Node定义名称
+     * @return 是否存在
+     */
+    public boolean containsNode(final String nodeName) {
+        return nodes.contains(nodeName);
+    }
+
+    /**
+     * 获取Node定义作为左Node的所有Event定义
+     *
+     * @param nodeName Node定义名称
+     * @return Event定义集合
+     */
+    public List<SdEventDefinition> getOutgoing(final String nodeName) {
+        return outgoing.getOrDefault(nodeName, ImmutableList.of());
+    }
+
+    /**
+     * 获取Node定义作为左Node，并且名称符合的Event定义
+     *
+     * @param nodeName  Node定义名称
+     * @param eventName Event定义名称
+     * @return Event定义集合
+     */
+    public List<SdEventDefinition> getOutgoing(final String nodeName, final String eventName) {
+        return outgoingByEvent.getOrDefault(nodeName, ImmutableMap.of()).getOrDefault(eventName, ImmutableList.of());
+    }
+
+    /**
+     * 获取Node定义作为右Node的所有Event定义
+     *
+     * @param nodeName Node定义名称
+     * @return Event定义集合
+     */
+    public List<SdEventDefinition> getIncoming(final String nodeName) {
+        return incoming.getOrDefault(nodeName, ImmutableList.of());
+    }
+
+    /**
+     * 获取Node定义作为右Node，并且名称符合的Event定义
+     *
+     * @param nodeName  Node定义名称
+     * @param eventName Event定义名称
+     * @return Event定义集合
+     */
+    public List<SdEventDefinition> getIncoming(final String nodeName, final String eventName) {
+        return incomingByEvent.getOrDefault(nodeName, ImmutableMap.of()).getOrDefault(eventName, ImmutableList.of());
+    }
+
+    /**
+     * 获取从Node定义出发，在指定跳数内可以到达的Node定义。
+     * <p>
+     * {@link ChainPath#LEFT}沿左Node到右Node的方向，{@link ChainPath#RIGHT}沿右Node到左Node的方向，
+     * {@link ChainPath#BOTH}不区分方向。出发的Node定义只有在经过至少一跳后可以回到自身时才包含在结果中。
+     * </p>
+     *
+     * @param nodeName Node定义名称
+     * @param hops     最大跳数
+     * @param path     方向
+     * @return 可到达的Node定义名称集合
+     */
+    public Set<String> getReachableNodes(final String nodeName, final int hops, final ChainPath path) {
+        return this.search(nodeName, hops, path);
+    }
+
+    /**
+     * 获取在指定跳数内可以到达Node定义的所有Node定义，用于由目标反向构建关系链。
+     *
+     * @param nodeName Node定义名称
+     * @param hops     最大跳数
+     * @param path     从出发Node定义到目标Node定义的方向
+     * @return 可以到达目标的Node定义名称集合
+     * @see #getReachableNodes(String, int, ChainPath)
+     */
+    public Set<String> getNodesReaching(final String nodeName, final int hops, final ChainPath path) {
+        return this.search(nodeName, hops, reverse(path));
+    }
+
+    /**
+     * 广度优先查找指定跳数内的Node定义
+     */
+    private Set<String> search(final String nodeName, final int hops, final ChainPath path) {
+        if (hops <= 0 || !nodes.contains(nodeName)) {
+            return ImmutableSet.of();
+        }
+        return reachable.computeIfAbsent(path + ":" + hops + ":" + nodeName, key -> {
+            final Set<String> result = Sets.newLinkedHashSet();
+            final Set<String> visited = Sets.newHashSet(nodeName);
+            Set<String> frontier = Sets.newLinkedHashSet();
+            frontier.add(nodeName);
+            for (int hop = 0; hop < hops && !frontier.isEmpty(); hop++) {
+                final Set<String> nextFrontier = Sets.newLinkedHashSet();
+                for (String current : frontier) {
+                    if (path != ChainPath.RIGHT) {
+                        this.getOutgoing(current).forEach(event -> {
+                            result.add(event.getRightNodeName());
+                            if (visited.add(event.getRightNodeName())) {
+                                nextFrontier.add(event.getRightNodeName());
+                            }
+                        });
+                    }
+                    if (path != ChainPath.LEFT) {
+                        this.getIncoming(current).forEach(event -> {
+                            result.add(event.getLeftNodeName());
+                            if (visited.add(event.getLeftNodeName())) {
+                                nextFrontier.add(event.getLeftNodeName());
+                            }
+                        });
+                    }
+                }
+                frontier = nextFrontier;
+            }
+            return ImmutableSet.copyOf(result);
+        });
+    }
+
+    private static ChainPath reverse(final ChainPath path) {
+        switch (path) {
+            case LEFT:
+                return ChainPath.RIGHT;
+            case RIGHT:
+                return ChainPath.LEFT;
+            default:
+                return ChainPath.BOTH;
+        }
+    }
+}
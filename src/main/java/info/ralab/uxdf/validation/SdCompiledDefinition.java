@@ -0,0 +1,410 @@
+package info.ralab.uxdf.validation;
+
+import com.alibaba.fastjson.util.TypeUtils;
+import com.google.common.collect.Lists;
+import info.ralab.uxdf.definition.SdBaseType;
+import info.ralab.uxdf.definition.SdOperateType;
+import info.ralab.uxdf.definition.SdProperty;
+import info.ralab.uxdf.definition.SdPropertyValidRule;
+import info.ralab.uxdf.definition.SdPropertyValidRuleType;
+import info.ralab.uxdf.instance.SdEntity;
+import info.ralab.uxdf.utils.UXDFPatternCache;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 编译后的Sd定义校验。
+ * <p>
+ * 每个属性编译为一个{@link PropertyCheck}，其中的值检查按上限、下限、校验规则的顺序排列为数组。
+ * 校验规则的比较值在编译时转换为对应的基本类型，正则在编译时从{@link UXDFPatternCache}获取，校验时不再解析定义。
+ * 编译后的对象不可修改，可以在多个线程中同时使用。
+ * </p>
+ */
+final class SdCompiledDefinition {
+
+    /**
+     * 编译时的定义版本
+     */
+    final long version;
+
+    /**
+     * 属性检查
+     */
+    private final PropertyCheck[] checks;
+
+    private SdCompiledDefinition(final long version, final PropertyCheck[] checks) {
+        this.version = version;
+        this.checks = checks;
+    }
+
+    /**
+     * 编译Sd定义的属性
+     *
+     * @param version 定义版本
+     * @param prop    属性定义
+     * @return 编译后的校验
+     */
+    static SdCompiledDefinition compile(final long version, final Map<String, SdProperty> prop) {
+        final List<PropertyCheck> checks = Lists.newArrayList();
+        if (prop != null) {
+            prop.forEach((name, property) -> {
+                if (property != null) {
+                    checks.add(new PropertyCheck(name, property));
+                }
+            });
+        }
+        return new SdCompiledDefinition(version, checks.toArray(new PropertyCheck[0]));
+    }
+
+    /**
+     * 校验数据
+     *
+     * @param entity    数据
+     * @param collector 错误收集
+     */
+    void validate(final SdEntity entity, final ErrorCollector collector) {
+        // 更新、删除、查询的数据只包含部分属性，不检查必填
+        final boolean checkRequired = checkRequired(entity.getOperate());
+        for (PropertyCheck check : checks) {
+            if (!check.validate(entity, checkRequired, collector)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 是否需要检查必填，只有新增的数据是完整的
+     *
+     * @param operate 数据操作类型
+     * @return 是否需要检查必填
+     */
+    static boolean checkRequired(final SdOperateType operate) {
+        return operate == null ||
+                operate == SdOperateType.create ||
+                operate == SdOperateType.createOrUpdate ||
+                operate == SdOperateType.createNotExist;
+    }
+
+    /**
+     * 错误收集
+     */
+    @FunctionalInterface
+    interface ErrorCollector {
+        /**
+         * 收集错误
+         *
+         * @param entity   数据
+         * @param property 属性名称
+         * @param type     错误类型
+         * @param message  错误信息
+         * @return 是否继续校验
+         */
+        boolean collect(SdEntity entity, String property, UXDFValidationErrorType type, String message);
+    }
+
+    /**
+     * 单个属性的检查
+     */
+    private static final class PropertyCheck {
+        private final String name;
+        private final SdBaseType base;
+        private final boolean required;
+        private final boolean collection;
+        private final Function<Object, Object> converter;
+        private final ValueCheck[] valueChecks;
+
+        private PropertyCheck(final String name, final SdProperty property) {
+            this.name = name;
+            this.base = property.getBase() == null ? SdBaseType.String : property.getBase();
+            this.required = property.isRequired();
+            this.collection = property.isCollection();
+            this.converter = converter(this.base);
+
+            final List<ValueCheck> valueChecks = Lists.newArrayList();
+            final Object upperLimit = limit(this.base, property.getUpperLimit());
+            if (upperLimit != null) {
+                valueChecks.add(new ValueCheck(
+                        UXDFValidationErrorType.upperLimit,
+                        String.format("属性[%s]超过上限[%s]。", name, property.getUpperLimit()),
+                        value -> compare(this.base, value, upperLimit) <= 0
+                ));
+            }
+            final Object lowerLimit = limit(this.base, property.getLowerLimit());
+            if (lowerLimit != null) {
+                valueChecks.add(new ValueCheck(
+                        UXDFValidationErrorType.lowerLimit,
+                        String.format("属性[%s]低于下限[%s]。", name, property.getLowerLimit()),
+                        value -> compare(this.base, value, lowerLimit) >= 0
+                ));
+            }
+            final SdPropertyValidRule[][] validRule = compileRule(this.base, property.getValidRule());
+            if (validRule.length > 0) {
+                valueChecks.add(new ValueCheck(
+                        UXDFValidationErrorType.rule,
+                        ruleMessage(name, validRule),
+                        value -> checkRule(this.base, validRule, value)
+                ));
+            }
+            this.valueChecks = valueChecks.toArray(new ValueCheck[0]);
+        }
+
+        /**
+         * 校验属性
+         *
+         * @return 是否继续校验
+         */
+        private boolean validate(final SdEntity entity, final boolean checkRequired, final ErrorCollector collector) {
+            final Object value = entity.get(name);
+            if (isEmpty(value)) {
+                return !(checkRequired && required) || collector.collect(
+                        entity, name, UXDFValidationErrorType.required, String.format("属性[%s]不能为空。", name)
+                );
+            }
+            // 二进制内容可以是byte[]，不作为集合
+            final boolean isCollection = value instanceof Collection ||
+                    value.getClass().isArray() && !(value instanceof byte[]);
+            if (collection != isCollection) {
+                return collector.collect(
+                        entity,
+                        name,
+                        UXDFValidationErrorType.collection,
+                        String.format(collection ? "属性[%s]必须是集合。" : "属性[%s]不能是集合。", name)
+                );
+            }
+            if (!isCollection) {
+                return validateValue(entity, value, collector);
+            }
+            if (value instanceof Collection) {
+                for (Object element : (Collection<?>) value) {
+                    if (element != null && !validateValue(entity, element, collector)) {
+                        return false;
+                    }
+                }
+            } else {
+                for (int i = 0, length = Array.getLength(value); i < length; i++) {
+                    final Object element = Array.get(value, i);
+                    if (element != null && !validateValue(entity, element, collector)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 校验单个值
+         *
+         * @return 是否继续校验
+         */
+        private boolean validateValue(final SdEntity entity, final Object value, final ErrorCollector collector) {
+            final Object converted = converter.apply(value);
+            if (converted == null) {
+                return collector.collect(
+                        entity,
+                        name,
+                        UXDFValidationErrorType.type,
+                        String.format("属性[%s]的值[%s]不是[%s]类型。", name, value, base)
+                );
+            }
+            for (ValueCheck valueCheck : valueChecks) {
+                if (!valueCheck.predicate.test(converted) &&
+                        !collector.collect(entity, name, valueCheck.type, valueCheck.message)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 值检查
+     */
+    private static final class ValueCheck {
+        private final UXDFValidationErrorType type;
+        private final String message;
+        private final Predicate<Object> predicate;
+
+        private ValueCheck(final UXDFValidationErrorType type, final String message, final Predicate<Object> predicate) {
+            this.type = type;
+            this.message = message;
+            this.predicate = predicate;
+        }
+    }
+
+    /**
+     * 值是否为空
+     */
+    private static boolean isEmpty(final Object value) {
+        if (value == null) {
+            return true;
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).toString().trim().isEmpty();
+        }
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).isEmpty();
+        }
+        return value.getClass().isArray() && Array.getLength(value) == 0;
+    }
+
+    /**
+     * 获取基本类型的值转换，不能转换时返回NULL
+     */
+    private static Function<Object, Object> converter(final SdBaseType base) {
+        switch (base) {
+            case Integer:
+                return value -> {
+                    try {
+                        return SdEntity.getBaseInteger(value);
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                };
+            case Float:
+                return value -> {
+                    try {
+                        return SdEntity.getBaseFloat(value);
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                };
+            case Boolean:
+                return value -> {
+                    if (value instanceof Boolean) {
+                        return value;
+                    }
+                    if ("true".equalsIgnoreCase(value.toString()) || "false".equalsIgnoreCase(value.toString())) {
+                        return Boolean.valueOf(value.toString());
+                    }
+                    return null;
+                };
+            case Datetime:
+                return SdCompiledDefinition::toDate;
+            case Binary:
+                return value -> value;
+            case String:
+            default:
+                return value -> value instanceof Map ? null : value.toString();
+        }
+    }
+
+    /**
+     * 转换日期。
+     * {@link SdEntity#getBaseDate(Object, info.ralab.uxdf.utils.UXDFValueConvert[])}使用共享的
+     * {@link java.text.SimpleDateFormat}，不能在多个线程中同时使用，这里使用线程安全的转换。
+     */
+    private static Date toDate(final Object value) {
+        try {
+            return TypeUtils.castToDate(value);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 转换上下限。字符类型的上下限为长度
+     */
+    private static Object limit(final SdBaseType base, final Object limit) {
+        if (limit == null || limit.toString().trim().isEmpty()) {
+            return null;
+        }
+        switch (base) {
+            case String:
+                return converter(SdBaseType.Integer).apply(limit);
+            case Binary:
+            case Boolean:
+                return null;
+            default:
+                return converter(base).apply(limit);
+        }
+    }
+
+    /**
+     * 比较转换后的值和上下限
+     */
+    @SuppressWarnings("unchecked")
+    private static int compare(final SdBaseType base, final Object value, final Object limit) {
+        if (base == SdBaseType.String) {
+            return Long.compare(value.toString().length(), (Long) limit);
+        }
+        return ((Comparable<Object>) value).compareTo(limit);
+    }
+
+    /**
+     * 编译校验规则。比较值转换为基本类型，正则预先编译。
+     */
+    private static SdPropertyValidRule[][] compileRule(final SdBaseType base, final SdPropertyValidRule[][] validRule) {
+        if (validRule == null) {
+            return new SdPropertyValidRule[0][];
+        }
+        final List<SdPropertyValidRule[]> rows = Lists.newArrayList();
+        for (SdPropertyValidRule[] row : validRule) {
+            if (row == null || row.length == 0) {
+                continue;
+            }
+            final List<SdPropertyValidRule> rules = Lists.newArrayList();
+            for (SdPropertyValidRule rule : row) {
+                if (rule == null || rule.getType() == null) {
+                    continue;
+                }
+                final SdPropertyValidRule compiled = new SdPropertyValidRule();
+                compiled.setTarget(rule.getTarget());
+                compiled.setType(rule.getType());
+                compiled.setMessage(rule.getMessage());
+                if (rule.getType() == SdPropertyValidRuleType.regex) {
+                    compiled.setValue(rule.getValue());
+                    compiled.setRegexPattern(UXDFPatternCache.get(String.valueOf(rule.getValue())));
+                } else if (base == SdBaseType.Integer || base == SdBaseType.Float || base == SdBaseType.Datetime) {
+                    final Object value = rule.getValue() == null ? null : converter(base).apply(rule.getValue());
+                    compiled.setValue(value);
+                } else {
+                    compiled.setValue(rule.getValue());
+                }
+                rules.add(compiled);
+            }
+            if (!rules.isEmpty()) {
+                rows.add(rules.toArray(new SdPropertyValidRule[0]));
+            }
+        }
+        return rows.toArray(new SdPropertyValidRule[0][]);
+    }
+
+    /**
+     * 检查校验规则，任意一组规则全部通过即为通过
+     */
+    private static boolean checkRule(final SdBaseType base, final SdPropertyValidRule[][] validRule, final Object value) {
+        for (SdPropertyValidRule[] row : validRule) {
+            boolean passed = true;
+            for (SdPropertyValidRule rule : row) {
+                if (!rule.check(base, value)) {
+                    passed = false;
+                    break;
+                }
+            }
+            if (passed) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 校验规则的错误信息，使用第一个设置了信息的规则
+     */
+    private static String ruleMessage(final String name, final SdPropertyValidRule[][] validRule) {
+        for (SdPropertyValidRule[] row : validRule) {
+            for (SdPropertyValidRule rule : row) {
+                if (rule.getMessage() != null && !rule.getMessage().isEmpty()) {
+                    return rule.getMessage();
+                }
+            }
+        }
+        return String.format("属性[%s]不符合校验规则。", name);
+    }
+}
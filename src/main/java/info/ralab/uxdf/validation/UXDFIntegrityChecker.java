@@ -0,0 +1,500 @@
+package info.ralab.uxdf.validation;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import info.ralab.uxdf.Sd;
+import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.UXDFReaderListener;
+import info.ralab.uxdf.UXDFRegistry;
+import info.ralab.uxdf.definition.SdEventDefinition;
+import info.ralab.uxdf.definition.SdEventRequiredType;
+import info.ralab.uxdf.definition.SdOperateType;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.utils.UXDFDefinitionCache;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * UXDF流式引用完整性检查，作为{@link UXDFReaderListener}使用，也可以装饰另一个监听器。
+ * <p>
+ * 检查内容包括：
+ * <ol>
+ * <li>Event两端的Node是否在同一个UXDF的数据中。</li>
+ * <li>Event对应的{@link SdEventDefinition}是否存在。</li>
+ * <li>新增的Node是否具有{@link SdEventRequiredType}要求的Event，删除的Event不计算在内。</li>
+ * </ol>
+ * </p>
+ * <p>
+ * 读取Node时，Node逻辑ID记录到布隆过滤器和精确集合中。读取Event时，布隆过滤器判断不存在的Node直接报告错误，
+ * 其余的引用在精确集合中确认。精确集合按逻辑ID散列分区，超过{@link #getMemoryLimit()}后写入
+ * {@link #getSpillDirectory()}中的临时文件，此时的引用和必须关系在读取结束后按分区逐个确认，内存中只保留一个分区。
+ * </p>
+ * <p>
+ * 使用UXDF中的sd和{@link UXDFRegistry}合并后的定义检查，见{@link UXDFValidatingReaderListener#mergeDefinition(Sd, UXDFRegistry)}。
+ * </p>
+ */
+public class UXDFIntegrityChecker implements UXDFReaderListener {
+
+    /**
+     * 默认预计Node数量
+     */
+    public static final int DEFAULT_EXPECTED_NODES = 1_000_000;
+
+    /**
+     * 默认内存中保存的记录数量上限
+     */
+    public static final int DEFAULT_MEMORY_LIMIT = 100_000;
+
+    /**
+     * 默认分区数量
+     */
+    public static final int DEFAULT_BUCKET_COUNT = 64;
+
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * 被装饰的监听器，可以为NULL
+     */
+    private final UXDFReaderListener delegate;
+
+    /**
+     * 合并时使用的定义注册表
+     */
+    private final UXDFRegistry registry;
+
+    /**
+     * 预计Node数量，用于创建布隆过滤器
+     */
+    @Getter
+    @Setter
+    private int expectedNodes = DEFAULT_EXPECTED_NODES;
+
+    /**
+     * 布隆过滤器误判率
+     */
+    @Getter
+    @Setter
+    private double falsePositiveProbability = 0.01;
+
+    /**
+     * 每类记录在内存中保存的数量上限，超过后写入磁盘
+     */
+    @Getter
+    @Setter
+    private int memoryLimit = DEFAULT_MEMORY_LIMIT;
+
+    /**
+     * 分区数量
+     */
+    @Getter
+    @Setter
+    private int bucketCount = DEFAULT_BUCKET_COUNT;
+
+    /**
+     * 临时文件目录
+     */
+    @Getter
+    @Setter
+    private File spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+
+    /**
+     * 错误数量上限
+     */
+    @Getter
+    @Setter
+    private int maxErrors = UXDFValidator.DEFAULT_MAX_ERRORS;
+
+    private UXDFDefinitionCache definition;
+
+    /**
+     * Node定义对应的必须关系记录前缀，通过Node定义名称索引
+     */
+    private final Map<String, List<String>> requiredPrefix = Maps.newHashMap();
+
+    private BloomFilter<CharSequence> nodeFilter;
+
+    private File directory;
+
+    private UXDFSpillBuckets nodes;
+
+    private UXDFSpillBuckets references;
+
+    private UXDFSpillBuckets obligations;
+
+    private UXDFSpillBuckets satisfied;
+
+    /**
+     * Node是否已经读取完成，完成前Event的引用全部延迟确认
+     */
+    private boolean nodesDone;
+
+    private final List<UXDFValidationError> errors = Lists.newArrayList();
+
+    private int checkedCount;
+
+    private boolean truncated;
+
+    /**
+     * 创建使用默认注册表的检查
+     */
+    public UXDFIntegrityChecker() {
+        this(null, UXDFLoader.getRegistry());
+    }
+
+    /**
+     * 创建使用指定注册表的检查
+     *
+     * @param registry 定义注册表
+     */
+    public UXDFIntegrityChecker(final UXDFRegistry registry) {
+        this(null, registry);
+    }
+
+    /**
+     * 创建装饰指定监听器的检查
+     *
+     * @param delegate 被装饰的监听器
+     * @param registry 定义注册表
+     */
+    public UXDFIntegrityChecker(final UXDFReaderListener delegate, final UXDFRegistry registry) {
+        this.delegate = delegate;
+        this.registry = registry;
+    }
+
+    @Override
+    public void startReadUXDF() {
+        if (expectedNodes <= 0 || memoryLimit <= 0 || bucketCount <= 0 || maxErrors <= 0) {
+            throw new UXDFException("expectedNodes, memoryLimit, bucketCount and maxErrors must be greater than 0.");
+        }
+        this.close();
+        this.errors.clear();
+        this.checkedCount = 0;
+        this.truncated = false;
+        this.nodesDone = false;
+        this.definition = null;
+        this.requiredPrefix.clear();
+        try {
+            this.directory = Files.createTempDirectory(spillDirectory.toPath(), "uxdf-integrity").toFile();
+        } catch (IOException e) {
+            throw new UXDFException("Create spill directory fail.", e);
+        }
+        this.nodeFilter = BloomFilter.create(
+                Funnels.stringFunnel(StandardCharsets.UTF_8), expectedNodes, falsePositiveProbability
+        );
+        this.nodes = new UXDFSpillBuckets(directory, "node", bucketCount, memoryLimit);
+        this.references = new UXDFSpillBuckets(directory, "reference", bucketCount, memoryLimit);
+        this.obligations = new UXDFSpillBuckets(directory, "obligation", bucketCount, memoryLimit);
+        this.satisfied = new UXDFSpillBuckets(directory, "satisfied", bucketCount, memoryLimit);
+        if (delegate != null) {
+            delegate.startReadUXDF();
+        }
+    }
+
+    @Override
+    public void readSd(final Sd sd) {
+        this.definition = UXDFValidatingReaderListener.mergeDefinition(sd, registry);
+        if (delegate != null) {
+            delegate.readSd(sd);
+        }
+    }
+
+    @Override
+    public void startReadNode() {
+        if (delegate != null) {
+            delegate.startReadNode();
+        }
+    }
+
+    @Override
+    public void readNode(final NodeEntity nodeEntity) throws UXDFException {
+        checkedCount++;
+        if (nodeEntity.isEffective()) {
+            final String logicId = nodeEntity.getLogicId();
+            nodeFilter.put(logicId);
+            nodes.add(logicId, logicId);
+            // 与UXDFValidator一致，只有新增的Node需要具有必须的Event
+            if (SdCompiledDefinition.checkRequired(nodeEntity.getOperate())) {
+                for (String prefix : this.getRequiredPrefix(nodeEntity.get__Sd())) {
+                    obligations.add(logicId, prefix + logicId);
+                }
+            }
+        }
+        if (delegate != null) {
+            delegate.readNode(nodeEntity);
+        }
+    }
+
+    @Override
+    public void endReadNode() {
+        nodesDone = true;
+        if (delegate != null) {
+            delegate.endReadNode();
+        }
+    }
+
+    @Override
+    public void startReadEvent() {
+        if (delegate != null) {
+            delegate.startReadEvent();
+        }
+    }
+
+    @Override
+    public void readEvent(final EventEntity eventEntity) throws UXDFException {
+        checkedCount++;
+        // 缺少两端信息的Event没有逻辑ID，使用ID报告错误
+        final String eventLogicId = eventEntity.isEffective() ? eventEntity.getLogicId() : eventEntity.get__Id();
+        final SdEventDefinition eventDefinition = this.getDefinition().getEventDefinition(
+                eventEntity.get__Sd(), eventEntity.get__LeftSd(), eventEntity.get__RightSd()
+        );
+        if (eventDefinition == null) {
+            this.addError(
+                    eventLogicId,
+                    eventEntity.get__Sd(),
+                    null,
+                    UXDFValidationErrorType.definition,
+                    String.format(
+                            "未找到Event定义[%s-%s>%s]。",
+                            eventEntity.get__Sd(), eventEntity.get__LeftSd(), eventEntity.get__RightSd()
+                    )
+            );
+        }
+        final String leftLogicId = this.checkReference(
+                eventEntity, eventLogicId, EventEntity.ATTR_LEFT, eventEntity.get__Left(), eventEntity.get__LeftSd()
+        );
+        final String rightLogicId = this.checkReference(
+                eventEntity, eventLogicId, EventEntity.ATTR_RIGHT, eventEntity.get__Right(), eventEntity.get__RightSd()
+        );
+        // 删除的Event不能满足必须关系
+        if (eventDefinition != null && eventEntity.getOperate() != SdOperateType.delete) {
+            final SdEventRequiredType required = eventDefinition.getRequired();
+            if (leftLogicId != null && (required == SdEventRequiredType.left || required == SdEventRequiredType.both)) {
+                satisfied.add(leftLogicId, requiredPrefix(eventDefinition, EventEntity.ATTR_LEFT) + leftLogicId);
+            }
+            if (rightLogicId != null && (required == SdEventRequiredType.right || required == SdEventRequiredType.both)) {
+                satisfied.add(rightLogicId, requiredPrefix(eventDefinition, EventEntity.ATTR_RIGHT) + rightLogicId);
+            }
+        }
+        if (delegate != null) {
+            delegate.readEvent(eventEntity);
+        }
+    }
+
+    @Override
+    public void endReadEvent() {
+        if (delegate != null) {
+            delegate.endReadEvent();
+        }
+    }
+
+    @Override
+    public void endReadUXDF(final Throwable error) {
+        Throwable readError = error;
+        try {
+            if (readError == null) {
+                this.resolve();
+            }
+        } catch (RuntimeException e) {
+            readError = e;
+        } finally {
+            this.close();
+            if (delegate != null) {
+                delegate.endReadUXDF(readError);
+            }
+        }
+    }
+
+    /**
+     * 获取检查报告，读取结束后为完整报告
+     *
+     * @return 检查报告
+     */
+    public UXDFValidationReport getReport() {
+        return new UXDFValidationReport(checkedCount, maxErrors, truncated, Lists.newArrayList(errors));
+    }
+
+    /**
+     * 检查Event一端的Node引用
+     *
+     * @return Node逻辑ID，缺少引用时返回NULL
+     */
+    private String checkReference(
+            final EventEntity eventEntity,
+            final String eventLogicId,
+            final String endpoint,
+            final String nodeId,
+            final String nodeName
+    ) {
+        if (nodeId == null || nodeName == null) {
+            this.addError(
+                    eventLogicId,
+                    eventEntity.get__Sd(),
+                    endpoint,
+                    UXDFValidationErrorType.reference,
+                    String.format("Event[%s]缺少[%s]。", eventEntity.get__Id(), endpoint)
+            );
+            return null;
+        }
+        final String logicId = nodeName + nodeId;
+        if (nodesDone && !nodeFilter.mightContain(logicId)) {
+            this.addReferenceError(eventLogicId, eventEntity.get__Sd(), endpoint, logicId);
+        } else if (nodesDone && !nodes.isSpilled()) {
+            if (!nodes.containsInMemory(logicId, logicId)) {
+                this.addReferenceError(eventLogicId, eventEntity.get__Sd(), endpoint, logicId);
+            }
+        } else {
+            // 无法在内存中确认，读取结束后按分区确认
+            references.add(logicId, String.join(
+                    SEPARATOR, eventLogicId, eventEntity.get__Sd(), endpoint, logicId
+            ));
+        }
+        return logicId;
+    }
+
+    /**
+     * 按分区确认延迟的引用和必须关系
+     */
+    private void resolve() {
+        if (nodes == null) {
+            return;
+        }
+        for (int bucket = 0; bucket < nodes.bucketCount(); bucket++) {
+            final Set<String> nodeLogicIds = Sets.newHashSet();
+            nodes.forEach(bucket, nodeLogicIds::add);
+            references.forEach(bucket, line -> {
+                final String[] parts = line.split(SEPARATOR, 4);
+                if (!nodeLogicIds.contains(parts[3])) {
+                    this.addReferenceError(parts[0], parts[1], parts[2], parts[3]);
+                }
+            });
+            nodeLogicIds.clear();
+
+            final Set<String> satisfiedLines = Sets.newHashSet();
+            satisfied.forEach(bucket, satisfiedLines::add);
+            obligations.forEach(bucket, line -> {
+                if (satisfiedLines.contains(line)) {
+                    return;
+                }
+                final String[] parts = line.split(SEPARATOR, 5);
+                final boolean left = EventEntity.ATTR_LEFT.equals(parts[3]);
+                this.addError(
+                        parts[4],
+                        left ? parts[1] : parts[2],
+                        parts[0],
+                        UXDFValidationErrorType.relationship,
+                        String.format(
+                                "Node[%s]缺少必须的Event[%s-%s>%s]。", parts[4], parts[0], parts[1], parts[2]
+                        )
+                );
+            });
+        }
+    }
+
+    /**
+     * 获取Node定义对应的必须关系记录前缀
+     */
+    private List<String> getRequiredPrefix(final String nodeName) {
+        return requiredPrefix.computeIfAbsent(nodeName, key -> {
+            final Set<SdEventDefinition> eventDefinitions = this.getDefinition().getCACHE_NODE_EVENT().get(key);
+            if (eventDefinitions == null || eventDefinitions.isEmpty()) {
+                return Collections.emptyList();
+            }
+            final List<String> prefixes = Lists.newArrayList();
+            for (SdEventDefinition eventDefinition : eventDefinitions) {
+                final SdEventRequiredType required = eventDefinition.getRequired();
+                if (key.equals(eventDefinition.getLeftNodeName()) &&
+                        (required == SdEventRequiredType.left || required == SdEventRequiredType.both)) {
+                    prefixes.add(requiredPrefix(eventDefinition, EventEntity.ATTR_LEFT));
+                }
+                if (key.equals(eventDefinition.getRightNodeName()) &&
+                        (required == SdEventRequiredType.right || required == SdEventRequiredType.both)) {
+                    prefixes.add(requiredPrefix(eventDefinition, EventEntity.ATTR_RIGHT));
+                }
+            }
+            return prefixes;
+        });
+    }
+
+    /**
+     * 必须关系记录前缀：Event定义名称、左Node定义名称、右Node定义名称、必须的一端
+     */
+    private static String requiredPrefix(final SdEventDefinition eventDefinition, final String endpoint) {
+        return String.join(
+                SEPARATOR,
+                eventDefinition.getEventName(),
+                eventDefinition.getLeftNodeName(),
+                eventDefinition.getRightNodeName(),
+                endpoint
+        ) + SEPARATOR;
+    }
+
+    private UXDFDefinitionCache getDefinition() {
+        if (definition == null) {
+            definition = UXDFValidatingReaderListener.mergeDefinition(null, registry);
+        }
+        return definition;
+    }
+
+    private void addReferenceError(
+            final String logicId,
+            final String sd,
+            final String endpoint,
+            final String nodeLogicId
+    ) {
+        this.addError(
+                logicId,
+                sd,
+                endpoint,
+                UXDFValidationErrorType.reference,
+                String.format("Event[%s]引用的Node[%s]不在数据中。", logicId, nodeLogicId)
+        );
+    }
+
+    private void addError(
+            final String logicId,
+            final String sd,
+            final String property,
+            final UXDFValidationErrorType type,
+            final String message
+    ) {
+        if (errors.size() >= maxErrors) {
+            truncated = true;
+            return;
+        }
+        errors.add(new UXDFValidationError(logicId, sd, property, type, message));
+    }
+
+    /**
+     * 关闭临时文件并删除临时目录
+     */
+    private void close() {
+        for (UXDFSpillBuckets buckets : new UXDFSpillBuckets[]{nodes, references, obligations, satisfied}) {
+            if (buckets != null) {
+                buckets.close();
+            }
+        }
+        nodes = null;
+        references = null;
+        obligations = null;
+        satisfied = null;
+        nodeFilter = null;
+        if (directory != null) {
+            directory.delete();
+            directory = null;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package info.ralab.uxdf.validation;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import info.ralab.uxdf.UXDFException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 按分区键散列的行集合，超过内存上限后写入磁盘。
+ * <p>
+ * 未超过上限时，每个分区在内存中保存为去重的集合，可以直接判断是否包含。
+ * 超过上限后，所有分区写入目录中的分区文件，之后的行直接追加到文件，不再去重。
+ * 相同分区键的行总是在同一个分区中，可以按分区逐个加载，内存中只保留一个分区。
+ * </p>
+ */
+final class UXDFSpillBuckets implements Closeable {
+
+    private final File directory;
+    private final String name;
+    private final int memoryLimit;
+    private final List<Set<String>> memory;
+    private final BufferedWriter[] writers;
+    private long size;
+    private boolean spilled;
+
+    /**
+     * @param directory   分区文件目录
+     * @param name        分区文件名称前缀
+     * @param bucketCount 分区数量
+     * @param memoryLimit 内存中保存的行数上限
+     */
+    UXDFSpillBuckets(final File directory, final String name, final int bucketCount, final int memoryLimit) {
+        this.directory = directory;
+        this.name = name;
+        this.memoryLimit = memoryLimit;
+        this.memory = Lists.newArrayListWithCapacity(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            this.memory.add(Sets.newHashSet());
+        }
+        this.writers = new BufferedWriter[bucketCount];
+    }
+
+    /**
+     * 分区数量
+     */
+    int bucketCount() {
+        return writers.length;
+    }
+
+    /**
+     * 是否已经写入磁盘
+     */
+    boolean isSpilled() {
+        return spilled;
+    }
+
+    /**
+     * 获取分区键所在分区
+     */
+    int bucket(final String partitionKey) {
+        return Math.floorMod(partitionKey.hashCode(), writers.length);
+    }
+
+    /**
+     * 添加一行
+     *
+     * @param partitionKey 分区键
+     * @param line         行内容，不能包含换行
+     */
+    void add(final String partitionKey, final String line) {
+        final int bucket = this.bucket(partitionKey);
+        if (spilled) {
+            this.write(bucket, line);
+            return;
+        }
+        if (memory.get(bucket).add(line) && ++size > memoryLimit) {
+            this.spill();
+        }
+    }
+
+    /**
+     * 未写入磁盘时，判断是否包含某行
+     *
+     * @param partitionKey 分区键
+     * @param line         行内容
+     * @return 是否包含
+     */
+    boolean containsInMemory(final String partitionKey, final String line) {
+        if (spilled) {
+            throw new IllegalStateException(String.format("Buckets [%s] spilled.", name));
+        }
+        return memory.get(this.bucket(partitionKey)).contains(line);
+    }
+
+    /**
+     * 遍历分区中的所有行
+     *
+     * @param bucket   分区
+     * @param consumer 行处理
+     */
+    void forEach(final int bucket, final Consumer<String> consumer) {
+        if (!spilled) {
+            memory.get(bucket).forEach(consumer);
+            return;
+        }
+        try {
+            writers[bucket].flush();
+            try (BufferedReader reader = Files.newBufferedReader(this.file(bucket).toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    consumer.accept(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UXDFException(String.format("Read buckets [%s] fail.", name), e);
+        }
+    }
+
+    /**
+     * 将内存中的所有行写入分区文件
+     */
+    private void spill() {
+        try {
+            for (int i = 0; i < writers.length; i++) {
+                writers[i] = Files.newBufferedWriter(
+                        this.file(i).toPath(),
+                        StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING
+                );
+            }
+        } catch (IOException e) {
+            throw new UXDFException(String.format("Create buckets [%s] fail.", name), e);
+        }
+        spilled = true;
+        for (int i = 0; i < writers.length; i++) {
+            for (String line : memory.get(i)) {
+                this.write(i, line);
+            }
+            memory.get(i).clear();
+        }
+    }
+
+    private void write(final int bucket, final String line) {
+        try {
+            final Writer writer = writers[bucket];
+            writer.write(line);
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UXDFException(String.format("Write buckets [%s] fail.", name), e);
+        }
+    }
+
+    private File file(final int bucket) {
+        return new File(directory, name + "-" + bucket);
+    }
+
+    @Override
+    public void close() {
+        memory.forEach(Set::clear);
+        for (int i = 0; i < writers.length; i++) {
+            if (writers[i] == null) {
+                continue;
+            }
+            try {
+                writers[i].close();
+            } catch (IOException e) {
+                // 关闭失败不影响删除
+            }
+            writers[i] = null;
+            this.file(i).delete();
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package info.ralab.uxdf.validation;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import info.ralab.uxdf.Sd;
+import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.UXDFReaderListener;
+import info.ralab.uxdf.UXDFRegistry;
+import info.ralab.uxdf.definition.SdEventKey;
+import info.ralab.uxdf.definition.SdNodeDefinition;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.instance.SdEntity;
+import info.ralab.uxdf.utils.UXDFDefinitionCache;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * 带数据校验的UXDF流式读取监听器，装饰另一个{@link UXDFReaderListener}。
+ * <p>
+ * 读取到sd时，将UXDF文件中的sd与{@link UXDFRegistry}中的定义合并一次，文件中的定义优先。
+ * 之后读取到的每个{@link NodeEntity}和{@link EventEntity}都基于合并后的定义，
+ * 通过{@link UXDFValidator}在工作线程池中并行校验。
+ * </p>
+ * <p>
+ * 校验中的数据保存在有序窗口中，窗口大小为{@link #getWindow()}。窗口已满时等待最早的数据校验完成。
+ * 校验通过的数据按读取顺序在读取线程中传递给被装饰的监听器，未通过的数据不会传递。<br />
+ * {@link #isFailFast()}为{@code true}时，第一个未通过校验的数据会以{@link UXDFException}结束读取；
+ * 否则继续读取，错误在{@link #getReport()}中汇总，最多收集{@link #getMaxErrors()}个错误。
+ * </p>
+ * <p>
+ * 只校验单个数据自身，Event两端的Node是否存在于同一个UXDF中需要读取全部数据后才能确定，不在此处校验。
+ * </p>
+ */
+public class UXDFValidatingReaderListener implements UXDFReaderListener {
+
+    /**
+     * 默认校验窗口大小
+     */
+    public static final int DEFAULT_WINDOW = 1024;
+
+    /**
+     * 被装饰的监听器
+     */
+    private final UXDFReaderListener delegate;
+
+    /**
+     * 合并时使用的定义注册表
+     */
+    private final UXDFRegistry registry;
+
+    /**
+     * 是否在第一个校验错误时结束读取
+     */
+    @Getter
+    @Setter
+    private boolean failFast = true;
+
+    /**
+     * 错误数量上限
+     */
+    @Getter
+    @Setter
+    private int maxErrors = UXDFValidator.DEFAULT_MAX_ERRORS;
+
+    /**
+     * 校验线程数量
+     */
+    @Getter
+    @Setter
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 校验窗口大小，即同时校验的数据数量
+     */
+    @Getter
+    @Setter
+    private int window = DEFAULT_WINDOW;
+
+    /**
+     * 合并后的定义
+     */
+    @Getter
+    private UXDFDefinitionCache definition;
+
+    private UXDFValidator validator;
+
+    private ForkJoinPool pool;
+
+    private final Deque<Pending> pending = new ArrayDeque<>();
+
+    private final List<UXDFValidationError> errors = Lists.newArrayList();
+
+    private int checkedCount;
+
+    private boolean truncated;
+
+    /**
+     * 创建使用默认注册表的校验监听器
+     *
+     * @param delegate 被装饰的监听器
+     */
+    public UXDFValidatingReaderListener(final UXDFReaderListener delegate) {
+        this(delegate, UXDFLoader.getRegistry());
+    }
+
+    /**
+     * 创建使用指定注册表的校验监听器
+     *
+     * @param delegate 被装饰的监听器
+     * @param registry 定义注册表
+     */
+    public UXDFValidatingReaderListener(final UXDFReaderListener delegate, final UXDFRegistry registry) {
+        if (delegate == null) {
+            throw new UXDFException("Delegate listener is null.");
+        }
+        this.delegate = delegate;
+        this.registry = registry;
+    }
+
+    @Override
+    public void startReadUXDF() {
+        if (parallelism <= 0 || window <= 0 || maxErrors <= 0) {
+            throw new UXDFException("parallelism, window and maxErrors must be greater than 0.");
+        }
+        this.pending.clear();
+        this.errors.clear();
+        this.checkedCount = 0;
+        this.truncated = false;
+        this.definition = null;
+        this.validator = null;
+        this.pool = new ForkJoinPool(parallelism);
+        delegate.startReadUXDF();
+    }
+
+    @Override
+    public void readSd(final Sd sd) {
+        this.prepare(sd);
+        delegate.readSd(sd);
+    }
+
+    @Override
+    public void startReadNode() {
+        delegate.startReadNode();
+    }
+
+    @Override
+    public void readNode(final NodeEntity nodeEntity) throws UXDFException {
+        this.submit(nodeEntity, entity -> delegate.readNode((NodeEntity) entity));
+    }
+
+    @Override
+    public void endReadNode() {
+        this.drain(0);
+        delegate.endReadNode();
+    }
+
+    @Override
+    public void startReadEvent() {
+        delegate.startReadEvent();
+    }
+
+    @Override
+    public void readEvent(final EventEntity eventEntity) throws UXDFException {
+        this.submit(eventEntity, entity -> delegate.readEvent((EventEntity) entity));
+    }
+
+    @Override
+    public void endReadEvent() {
+        this.drain(0);
+        delegate.endReadEvent();
+    }
+
+    @Override
+    public void endReadUXDF(final Throwable error) {
+        Throwable readError = error;
+        try {
+            if (readError == null) {
+                this.drain(0);
+            }
+        } catch (RuntimeException e) {
+            readError = e;
+        } finally {
+            // 出错时丢弃未完成的校验
+            pending.forEach(item -> item.future.cancel(false));
+            pending.clear();
+            if (pool != null) {
+                pool.shutdownNow();
+                pool = null;
+            }
+            delegate.endReadUXDF(readError);
+        }
+    }
+
+    /**
+     * 获取当前的校验报告，读取结束后为完整报告
+     *
+     * @return 校验报告
+     */
+    public UXDFValidationReport getReport() {
+        return new UXDFValidationReport(checkedCount, maxErrors, truncated, Lists.newArrayList(errors));
+    }
+
+    /**
+     * 合并UXDF中的sd和注册表中的定义，创建校验器
+     *
+     * @param sd UXDF中的sd
+     */
+    private void prepare(final Sd sd) {
+        this.definition = mergeDefinition(sd, registry);
+        this.validator = new UXDFValidator(definition);
+        // 数据逐个校验，每次只有一个数据，不需要再并行
+        this.validator.setParallelThreshold(Integer.MAX_VALUE);
+    }
+
+    /**
+     * 提交数据校验，窗口已满时先处理最早的数据
+     *
+     * @param entity  数据
+     * @param forward 校验通过后传递数据
+     */
+    private void submit(final SdEntity entity, final Consumer<SdEntity> forward) {
+        if (validator == null) {
+            this.prepare(null);
+        }
+        this.drain(window - 1);
+        final UXDFValidator currentValidator = this.validator;
+        pending.add(new Pending(
+                entity,
+                forward,
+                CompletableFuture.supplyAsync(() -> currentValidator.validate(entity), pool)
+        ));
+    }
+
+    /**
+     * 按读取顺序处理已提交的数据，直到窗口中剩余指定数量
+     *
+     * @param remain 窗口中剩余的数据数量
+     */
+    private void drain(final int remain) {
+        while (pending.size() > remain) {
+            final Pending item = pending.poll();
+            final UXDFValidationReport report;
+            try {
+                report = item.future.join();
+            } catch (CompletionException e) {
+                throw new UXDFException(
+                        String.format("Validate [%s] fail.", item.entity.getLogicId()),
+                        e.getCause() instanceof Exception ? (Exception) e.getCause() : e
+                );
+            }
+            checkedCount++;
+            if (report.isValid()) {
+                item.forward.accept(item.entity);
+                continue;
+            }
+            for (UXDFValidationError validationError : report.getErrors()) {
+                if (errors.size() >= maxErrors) {
+                    truncated = true;
+                    break;
+                }
+                errors.add(validationError);
+            }
+            if (failFast) {
+                throw new UXDFException(String.format(
+                        "Validate [%s] fail: %s", item.entity.getLogicId(), report.getErrors().get(0).getMessage()
+                ));
+            }
+        }
+    }
+
+    /**
+     * 合并UXDF中的sd和注册表中的定义。
+     * <p>
+     * 注册表中的定义作为基础，sd中的同名定义覆盖注册表中的定义。sd中的Node定义重新解析继承关系，
+     * 可以继承注册表中的Node定义。sd中的Event定义两端的Node定义必须存在于合并后的定义中。
+     * </p>
+     *
+     * @param sd       UXDF中的sd，可以为NULL
+     * @param registry 定义注册表，可以为NULL
+     * @return 合并后的定义
+     */
+    public static UXDFDefinitionCache mergeDefinition(final Sd sd, final UXDFRegistry registry) {
+        // 从注册表缓存的副本开始，保留Node定义自身声明的属性，sd中的定义覆盖后继承关系才能正确解析
+        final UXDFDefinitionCache cache = registry != null ? registry.copyCache() : new UXDFDefinitionCache();
+
+        final Set<String> embeddedNodeNames = Sets.newLinkedHashSet();
+        if (sd != null && sd.getNode() != null && sd.getNode().getImpl() != null) {
+            sd.getNode().getImpl().forEach((nodeName, nodeDefinition) -> {
+                final SdNodeDefinition copy = nodeDefinition.copy();
+                copy.setNodeName(nodeName);
+                cache.putNodeDefinition(copy, cache.getCACHE_NODE().containsKey(nodeName));
+                embeddedNodeNames.add(nodeName);
+            });
+        }
+        cache.resolveNodeDefinition(embeddedNodeNames);
+
+        if (sd != null && sd.getEvent() != null && sd.getEvent().getImpl() != null) {
+            sd.getEvent().getImpl().values().forEach(leftMap -> leftMap.values().forEach(rightMap ->
+                    rightMap.values().forEach(eventDefinition -> cache.putEventDefinition(
+                            eventDefinition,
+                            cache.getCACHE_EVENT().containsKey(SdEventKey.of(eventDefinition))
+                    ))
+            ));
+        }
+        return cache;
+    }
+
+    /**
+     * 校验中的数据
+     */
+    private static final class Pending {
+        private final SdEntity entity;
+        private final Consumer<SdEntity> forward;
+        private final CompletableFuture<UXDFValidationReport> future;
+
+        private Pending(
+                final SdEntity entity,
+                final Consumer<SdEntity> forward,
+                final CompletableFuture<UXDFValidationReport> future
+        ) {
+            this.entity = entity;
+            this.forward = forward;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package info.ralab.uxdf.validation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 数据校验错误
+ */
+@Data
+@AllArgsConstructor
+public class UXDFValidationError {
+    /**
+     * 数据的逻辑主键
+     */
+    private String logicId;
+    /**
+     * 数据的Sd定义名称
+     */
+    private String sd;
+    /**
+     * 属性名称，数据本身的错误为NULL
+     */
+    private String property;
+    /**
+     * 错误类型
+     */
+    private UXDFValidationErrorType type;
+    /**
+     * 错误信息
+     */
+    private String message;
+}
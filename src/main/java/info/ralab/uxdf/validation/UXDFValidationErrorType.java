@@ -0,0 +1,47 @@
+package info.ralab.uxdf.validation;
+
+/**
+ * 数据校验错误类型
+ */
+public enum UXDFValidationErrorType {
+    /**
+     * 未找到数据对应的Sd定义
+     */
+    definition,
+    /**
+     * Event两端的Node缺失或Node类型未定义
+     */
+    endpoint,
+    /**
+     * Event两端的Node不在数据中
+     */
+    reference,
+    /**
+     * Node缺少必须的Event
+     */
+    relationship,
+    /**
+     * 必填属性为空
+     */
+    required,
+    /**
+     * 属性值不能转换为定义的基本类型
+     */
+    type,
+    /**
+     * 属性值与是否集合的定义不符
+     */
+    collection,
+    /**
+     * 属性值超过上限
+     */
+    upperLimit,
+    /**
+     * 属性值低于下限
+     */
+    lowerLimit,
+    /**
+     * 属性值不符合校验规则
+     */
+    rule
+}
@@ -0,0 +1,56 @@
+package info.ralab.uxdf.validation;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 数据校验报告。
+ * <p>
+ * 错误按数据在{@link info.ralab.uxdf.SdData}中的顺序排列。错误数量达到上限后停止校验，
+ * 此时{@link #isTruncated()}为{@code true}，报告中只包含部分错误。
+ * </p>
+ */
+@Getter
+@ToString
+public class UXDFValidationReport {
+    /**
+     * 校验的数据数量
+     */
+    private final int checkedCount;
+    /**
+     * 错误数量上限
+     */
+    private final int maxErrors;
+    /**
+     * 错误是否因达到上限被截断
+     */
+    private final boolean truncated;
+    /**
+     * 校验错误
+     */
+    private final List<UXDFValidationError> errors;
+
+    UXDFValidationReport(
+            final int checkedCount,
+            final int maxErrors,
+            final boolean truncated,
+            final List<UXDFValidationError> errors
+    ) {
+        this.checkedCount = checkedCount;
+        this.maxErrors = maxErrors;
+        this.truncated = truncated;
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * 数据是否全部通过校验
+     *
+     * @return 是否通过校验
+     */
+    public boolean isValid() {
+        return errors.isEmpty();
+    }
+}
@@ -0,0 +1,488 @@
+package info.ralab.uxdf.validation;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.UXDFRegistry;
+import info.ralab.uxdf.definition.SdEventDefinition;
+import info.ralab.uxdf.definition.SdEventKey;
+import info.ralab.uxdf.definition.SdEventRequiredType;
+import info.ralab.uxdf.definition.SdNodeDefinition;
+import info.ralab.uxdf.definition.SdOperateType;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.instance.SdEntity;
+import info.ralab.uxdf.utils.UXDFDefinitionCache;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * {@link SdData}数据校验器，根据{@link info.ralab.uxdf.definition.SdProperty}的定义检查数据的合法性。
+ * <p>
+ * 检查内容包括：
+ * <ol>
+ * <li>数据对应的Node定义或Event定义是否存在，Event两端的Node类型是否已定义。</li>
+ * <li>必填属性是否为空，只检查新增的数据。</li>
+ * <li>属性值是否可以转换为定义的基本类型，是否与集合定义一致。</li>
+ * <li>属性值是否在上下限内，字符类型的上下限为长度。</li>
+ * <li>属性值是否符合校验规则，任意一组规则全部通过即为通过。</li>
+ * </ol>
+ * </p>
+ * <p>
+ * 每个Sd定义只编译一次，编译结果按定义版本{@link UXDFRegistry#getDefinitionVersion()}缓存，定义变更后重新编译。
+ * 数据量超过{@link #getParallelThreshold()}时并行校验。
+ * </p>
+ * <p>
+ * Node之间的必须关系和成员关系通过{@link #validateRelationship(SdData)}单独检查。
+ * </p>
+ */
+public class UXDFValidator {
+
+    /**
+     * 默认错误数量上限
+     */
+    public static final int DEFAULT_MAX_ERRORS = 1000;
+
+    /**
+     * 通过Node定义名称获取Node定义
+     */
+    private final Function<String, SdNodeDefinition> nodeLookup;
+
+    /**
+     * 通过Event定义复合键获取Event定义
+     */
+    private final Function<SdEventKey, SdEventDefinition> eventLookup;
+
+    /**
+     * 通过Node定义名称获取相关的Event定义
+     */
+    private final Function<String, Set<SdEventDefinition>> nodeEventLookup;
+
+    /**
+     * 获取定义版本
+     */
+    private final LongSupplier versionSupplier;
+
+    /**
+     * 并行校验的数据量阈值
+     */
+    @Getter
+    @Setter
+    private int parallelThreshold = 256;
+
+    /**
+     * 编译后的Node定义，通过Node定义名称索引
+     */
+    private final Map<String, SdCompiledDefinition> COMPILED_NODE = Maps.newConcurrentMap();
+
+    /**
+     * 编译后的Event定义，通过Event定义复合键索引
+     */
+    private final Map<SdEventKey, SdCompiledDefinition> COMPILED_EVENT = Maps.newConcurrentMap();
+
+    /**
+     * 创建使用默认注册表的校验器
+     */
+    public UXDFValidator() {
+        this(UXDFLoader.getRegistry());
+    }
+
+    /**
+     * 创建使用指定注册表的校验器
+     *
+     * @param registry 定义注册表
+     */
+    public UXDFValidator(final UXDFRegistry registry) {
+        this(
+                registry::getNode,
+                eventKey -> registry.getEvent(
+                        eventKey.getEventName(), eventKey.getLeftNodeName(), eventKey.getRightNodeName()
+                ),
+                registry::getEventsByNodeName,
+                registry::getDefinitionVersion
+        );
+    }
+
+    /**
+     * 创建使用指定定义缓存的校验器，用于校验不在注册表中的定义，如UXDF文件中的sd部分
+     *
+     * @param cache 定义缓存
+     */
+    public UXDFValidator(final UXDFDefinitionCache cache) {
+        this(
+                nodeName -> cache.getCACHE_NODE().get(nodeName),
+                eventKey -> cache.getEventDefinition(
+                        eventKey.getEventName(), eventKey.getLeftNodeName(), eventKey.getRightNodeName()
+                ),
+                nodeName -> cache.getCACHE_NODE_EVENT().getOrDefault(nodeName, Collections.emptySet()),
+                cache::getVersion
+        );
+    }
+
+    private UXDFValidator(
+            final Function<String, SdNodeDefinition> nodeLookup,
+            final Function<SdEventKey, SdEventDefinition> eventLookup,
+            final Function<String, Set<SdEventDefinition>> nodeEventLookup,
+            final LongSupplier versionSupplier
+    ) {
+        this.nodeLookup = nodeLookup;
+        this.eventLookup = eventLookup;
+        this.nodeEventLookup = nodeEventLookup;
+        this.versionSupplier = versionSupplier;
+    }
+
+    /**
+     * 校验{@link SdData}中的所有数据，最多收集{@link #DEFAULT_MAX_ERRORS}个错误
+     *
+     * @param sdData 数据
+     * @return 校验报告
+     */
+    public UXDFValidationReport validate(final SdData sdData) {
+        return this.validate(sdData, DEFAULT_MAX_ERRORS);
+    }
+
+    /**
+     * 校验{@link SdData}中的所有数据
+     *
+     * @param sdData    数据
+     * @param maxErrors 错误数量上限，达到上限后停止校验
+     * @return 校验报告
+     */
+    public UXDFValidationReport validate(final SdData sdData, final int maxErrors) {
+        final List<SdEntity> entities = Lists.newArrayList();
+        if (sdData != null) {
+            entities.addAll(sdData.getUnmodifiableNode());
+            sdData.getUnmodifiableEvent().values().forEach(entities::addAll);
+        }
+        return this.validate(entities, maxErrors, this::validate);
+    }
+
+    /**
+     * 校验单个数据
+     *
+     * @param entity 数据
+     * @return 校验报告
+     */
+    public UXDFValidationReport validate(final SdEntity entity) {
+        return this.validate(Lists.newArrayList(entity), DEFAULT_MAX_ERRORS, this::validate);
+    }
+
+    /**
+     * 检查{@link SdData}中Node的必须关系，最多收集{@link #DEFAULT_MAX_ERRORS}个错误
+     *
+     * @param sdData 数据
+     * @return 校验报告
+     * @see #validateRelationship(SdData, int)
+     */
+    public UXDFValidationReport validateRelationship(final SdData sdData) {
+        return this.validateRelationship(sdData, DEFAULT_MAX_ERRORS);
+    }
+
+    /**
+     * 检查{@link SdData}中Node的必须关系。
+     * <p>
+     * 通过{@link SdData}中Node和Event之间的索引，检查每个Node的相关Event定义：
+     * <ol>
+     * <li>对于新增的Node，{@link SdEventDefinition#isRequired(String)}的Event定义在必须的一端至少有一个Event。</li>
+     * <li>{@link SdEventDefinition#isMember(String)}的成员Node最多只属于一个Event，即只有一个主。</li>
+     * </ol>
+     * 删除的Event不计算在内。Node数量超过{@link #getParallelThreshold()}时按分区并行检查，检查期间不能修改{@link SdData}。
+     * </p>
+     *
+     * @param sdData    数据
+     * @param maxErrors 错误数量上限，达到上限后停止检查
+     * @return 校验报告
+     */
+    public UXDFValidationReport validateRelationship(final SdData sdData, final int maxErrors) {
+        final List<NodeEntity> nodes = sdData == null ? Lists.newArrayList() : sdData.getUnmodifiableNode();
+        return this.validate(
+                nodes,
+                maxErrors,
+                (entity, version, collector) -> this.validateRelationship(sdData, (NodeEntity) entity, collector)
+        );
+    }
+
+    /**
+     * 校验数据集合
+     *
+     * @param entities  数据集合
+     * @param maxErrors 错误数量上限
+     * @param check     单个数据的检查
+     * @return 校验报告
+     */
+    private UXDFValidationReport validate(
+            final List<? extends SdEntity> entities,
+            final int maxErrors,
+            final EntityCheck check
+    ) {
+        if (maxErrors <= 0) {
+            throw new IllegalArgumentException("maxErrors must be greater than 0.");
+        }
+        final long version = versionSupplier.getAsLong();
+        final ConcurrentLinkedQueue<IndexedError> errors = new ConcurrentLinkedQueue<>();
+        final AtomicInteger errorCount = new AtomicInteger();
+        // 是否有数据因达到错误上限而未校验
+        final AtomicBoolean skipped = new AtomicBoolean();
+
+        IntStream indexes = IntStream.range(0, entities.size());
+        if (entities.size() > parallelThreshold) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(index -> {
+            if (errorCount.get() >= maxErrors) {
+                skipped.set(true);
+                return;
+            }
+            final int[] sequence = {0};
+            check.check(entities.get(index), version, (entity, property, type, message) -> {
+                if (errorCount.getAndIncrement() >= maxErrors) {
+                    return false;
+                }
+                errors.add(new IndexedError(
+                        index,
+                        sequence[0]++,
+                        new UXDFValidationError(entity.getLogicId(), entity.get__Sd(), property, type, message)
+                ));
+                return true;
+            });
+        });
+
+        final List<UXDFValidationError> sortedErrors = Lists.newArrayListWithCapacity(errors.size());
+        errors.stream()
+                .sorted(Comparator.<IndexedError>comparingInt(error -> error.index).thenComparingInt(error -> error.sequence))
+                .forEach(error -> sortedErrors.add(error.error));
+        return new UXDFValidationReport(
+                entities.size(),
+                maxErrors,
+                errorCount.get() > maxErrors || skipped.get(),
+                sortedErrors
+        );
+    }
+
+    /**
+     * 校验单个数据
+     */
+    private void validate(final SdEntity entity, final long version, final SdCompiledDefinition.ErrorCollector collector) {
+        final SdCompiledDefinition compiled;
+        if (entity instanceof NodeEntity) {
+            compiled = this.getCompiledNode(entity.get__Sd(), version);
+        } else if (entity instanceof EventEntity) {
+            final EventEntity eventEntity = (EventEntity) entity;
+            // 两端都检查，任意一端不合法时不再查找Event定义
+            final boolean leftValid = this.validateEndpoint(
+                    eventEntity, EventEntity.ATTR_LEFT, eventEntity.get__Left(), eventEntity.get__LeftSd(), collector
+            );
+            final boolean rightValid = this.validateEndpoint(
+                    eventEntity, EventEntity.ATTR_RIGHT, eventEntity.get__Right(), eventEntity.get__RightSd(), collector
+            );
+            if (!leftValid || !rightValid) {
+                return;
+            }
+            compiled = this.getCompiledEvent(
+                    SdEventKey.probe(eventEntity.get__Sd(), eventEntity.get__LeftSd(), eventEntity.get__RightSd()),
+                    version
+            );
+        } else {
+            compiled = null;
+        }
+        if (compiled == null) {
+            collector.collect(
+                    entity,
+                    null,
+                    UXDFValidationErrorType.definition,
+                    String.format("未找到数据[%s]的Sd定义[%s]。", entity.getLogicId(), entity.get__Sd())
+            );
+            return;
+        }
+        compiled.validate(entity, collector);
+    }
+
+    /**
+     * 检查单个Node的必须关系
+     */
+    private void validateRelationship(
+            final SdData sdData,
+            final NodeEntity nodeEntity,
+            final SdCompiledDefinition.ErrorCollector collector
+    ) {
+        final String nodeName = nodeEntity.get__Sd();
+        if (nodeName == null || !nodeEntity.isEffective()) {
+            return;
+        }
+        final Set<SdEventDefinition> eventDefinitions = nodeEventLookup.apply(nodeName);
+        if (eventDefinitions == null || eventDefinitions.isEmpty()) {
+            return;
+        }
+        // 只有新增的Node需要在同一个数据中具有必须的Event
+        final boolean checkRequired = SdCompiledDefinition.checkRequired(nodeEntity.getOperate());
+        final String nodeId = nodeEntity.get__Id();
+        List<EventEntity> eventEntities = null;
+        for (SdEventDefinition eventDefinition : eventDefinitions) {
+            final boolean required = checkRequired && eventDefinition.isRequired(nodeName);
+            final boolean member = eventDefinition.isMember(nodeName);
+            if (!required && !member) {
+                continue;
+            }
+            if (eventEntities == null) {
+                eventEntities = sdData.getUnmodifiableEvent(nodeEntity);
+            }
+            final SdEventRequiredType requiredType = eventDefinition.getRequired();
+            int requiredCount = 0;
+            int memberCount = 0;
+            for (EventEntity eventEntity : eventEntities) {
+                if (eventEntity.getOperate() == SdOperateType.delete ||
+                        !eventDefinition.getEventName().equals(eventEntity.get__Sd()) ||
+                        !eventDefinition.getLeftNodeName().equals(eventEntity.get__LeftSd()) ||
+                        !eventDefinition.getRightNodeName().equals(eventEntity.get__RightSd())) {
+                    continue;
+                }
+                final boolean asLeft = nodeName.equals(eventEntity.get__LeftSd()) && nodeId.equals(eventEntity.get__Left());
+                final boolean asRight = nodeName.equals(eventEntity.get__RightSd()) && nodeId.equals(eventEntity.get__Right());
+                if (asLeft && (requiredType == SdEventRequiredType.left || requiredType == SdEventRequiredType.both) ||
+                        asRight && (requiredType == SdEventRequiredType.right || requiredType == SdEventRequiredType.both)) {
+                    requiredCount++;
+                }
+                if (asLeft) {
+                    memberCount++;
+                }
+            }
+            if (required && requiredCount == 0 && !collector.collect(
+                    nodeEntity,
+                    eventDefinition.getEventName(),
+                    UXDFValidationErrorType.relationship,
+                    String.format(
+                            "Node[%s]缺少必须的Event[%s-%s>%s]。",
+                            nodeEntity.getLogicId(),
+                            eventDefinition.getEventName(),
+                            eventDefinition.getLeftNodeName(),
+                            eventDefinition.getRightNodeName()
+                    )
+            )) {
+                return;
+            }
+            if (member && memberCount > 1 && !collector.collect(
+                    nodeEntity,
+                    eventDefinition.getEventName(),
+                    UXDFValidationErrorType.relationship,
+                    String.format(
+                            "成员Node[%s]只能属于一个主，但有[%d]个Event[%s-%s>%s]。",
+                            nodeEntity.getLogicId(),
+                            memberCount,
+                            eventDefinition.getEventName(),
+                            eventDefinition.getLeftNodeName(),
+                            eventDefinition.getRightNodeName()
+                    )
+            )) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 校验Event一端的Node
+     *
+     * @return 是否合法
+     */
+    private boolean validateEndpoint(
+            final EventEntity eventEntity,
+            final String endpoint,
+            final String nodeId,
+            final String nodeName,
+            final SdCompiledDefinition.ErrorCollector collector
+    ) {
+        if (nodeId == null || nodeId.isEmpty()) {
+            collector.collect(
+                    eventEntity,
+                    endpoint,
+                    UXDFValidationErrorType.endpoint,
+                    String.format("Event[%s]缺少[%s]。", eventEntity.getLogicId(), endpoint)
+            );
+            return false;
+        }
+        if (nodeName == null || nodeLookup.apply(nodeName) == null) {
+            collector.collect(
+                    eventEntity,
+                    endpoint,
+                    UXDFValidationErrorType.endpoint,
+                    String.format("Event[%s]的Node类型[%s]未定义。", eventEntity.getLogicId(), nodeName)
+            );
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 获取编译后的Node定义
+     */
+    private SdCompiledDefinition getCompiledNode(final String nodeName, final long version) {
+        if (nodeName == null) {
+            return null;
+        }
+        SdCompiledDefinition compiled = COMPILED_NODE.get(nodeName);
+        if (compiled != null && compiled.version == version) {
+            return compiled;
+        }
+        final SdNodeDefinition nodeDefinition = nodeLookup.apply(nodeName);
+        if (nodeDefinition == null) {
+            COMPILED_NODE.remove(nodeName);
+            return null;
+        }
+        compiled = SdCompiledDefinition.compile(version, nodeDefinition.getProp());
+        COMPILED_NODE.put(nodeName, compiled);
+        return compiled;
+    }
+
+    /**
+     * 获取编译后的Event定义
+     */
+    private SdCompiledDefinition getCompiledEvent(final SdEventKey eventKey, final long version) {
+        SdCompiledDefinition compiled = COMPILED_EVENT.get(eventKey);
+        if (compiled != null && compiled.version == version) {
+            return compiled;
+        }
+        final SdEventDefinition eventDefinition = eventLookup.apply(eventKey);
+        if (eventDefinition == null) {
+            COMPILED_EVENT.remove(eventKey);
+            return null;
+        }
+        compiled = SdCompiledDefinition.compile(version, eventDefinition.getProp());
+        COMPILED_EVENT.put(SdEventKey.of(eventDefinition), compiled);
+        return compiled;
+    }
+
+    /**
+     * 单个数据的检查
+     */
+    @FunctionalInterface
+    private interface EntityCheck {
+        void check(SdEntity entity, long version, SdCompiledDefinition.ErrorCollector collector);
+    }
+
+    /**
+     * 带有数据位置的错误，用于并行校验后按数据顺序排列错误
+     */
+    private static final class IndexedError {
+        private final int index;
+        private final int sequence;
+        private final UXDFValidationError error;
+
+        private IndexedError(final int index, final int sequence, final UXDFValidationError error) {
+            this.index = index;
+            this.sequence = sequence;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package info.ralab.uxdf;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.collect.Lists;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.IdMaker;
+import info.ralab.uxdf.instance.NodeEntity;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * UXDF二进制格式读写测试
+ */
+public class UXDFCompactTest {
+
+    @Before
+    public void before() {
+        UXDFLoader.reloadForced();
+    }
+
+    /**
+     * 测试和JSON格式互相转换不丢失信息，并且比JSON格式小
+     */
+    @Test
+    public void testJsonRoundTrip() throws IOException {
+        final byte[] json = writeJson(uxdf(200));
+        final UXDF fromJson = new UXDFReader(new ByteArrayInputStream(json)).readUXDF();
+        final byte[] compact = writeCompact(fromJson);
+        final UXDF fromCompact = new UXDFCompactReader(new ByteArrayInputStream(compact)).readUXDF();
+
+        Assert.assertEquals(JSON.parseObject(new String(json, UXDF.CHARSET)), JSON.parseObject(new String(writeJson(fromCompact), UXDF.CHARSET)));
+        Assert.assertTrue(compact.length * 3 < json.length * 2);
+    }
+
+    /**
+     * 测试属性值的Java类型不变，包括和定义类型不一致的值
+     */
+    @Test
+    public void testValueTypes() throws IOException {
+        final UXDF uxdf = uxdf(2);
+        final UXDF read = new UXDFCompactReader(new ByteArrayInputStream(writeCompact(uxdf))).readUXDF();
+
+        Assert.assertEquals(uxdf.getData().getUnmodifiableNode().size(), read.getData().getUnmodifiableNode().size());
+        for (NodeEntity expected : uxdf.getData().getUnmodifiableNode()) {
+            final NodeEntity actual = read.getData().getNodeByLogicId(expected.getLogicId());
+            Assert.assertEquals(expected.keySet(), actual.keySet());
+            expected.forEach((key, value) -> {
+                Assert.assertEquals(key, value, actual.get(key));
+                Assert.assertEquals(key, value.getClass(), actual.get(key).getClass());
+            });
+        }
+        final List<EventEntity> events = read.getData().getUnmodifiableEvent("BELONG_TO");
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals("User", events.get(0).get__LeftSd());
+        Assert.assertEquals("Department", events.get(0).get__RightSd());
+    }
+
+    /**
+     * 测试流式读取的通知顺序，以及按sd名称跳过块
+     */
+    @Test
+    public void testListener() throws IOException {
+        final byte[] compact = writeCompact(uxdf(2));
+        final List<String> calls = Lists.newArrayList();
+        new UXDFCompactReader(new ByteArrayInputStream(compact)).readUXDF(new RecordingListener(calls), "User"::equals);
+        Assert.assertEquals(
+                Lists.newArrayList(
+                        "startReadUXDF", "readSd", "startReadNode", "readNode:User", "readNode:User", "endReadNode",
+                        "startReadEvent", "endReadEvent", "endReadUXDF:null"
+                ),
+                calls
+        );
+
+        calls.clear();
+        new UXDFCompactReader(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5})).readUXDF(new RecordingListener(calls));
+        Assert.assertEquals("endReadUXDF:UXDFException", calls.get(calls.size() - 1));
+        try {
+            new UXDFCompactReader(new ByteArrayInputStream(new byte[0])).readUXDF();
+            Assert.fail();
+        } catch (UXDFException e) {
+            // 内容不完整
+        }
+    }
+
+    private static UXDF uxdf(final int userCount) {
+        final SdData sdData = new SdData();
+        final NodeEntity department = new NodeEntity("Department", IdMaker.next());
+        department.put("code", "D01");
+        department.put("name", "研发部");
+        sdData.addNodeIfAbsent(department);
+        for (int i = 0; i < userCount; i++) {
+            final NodeEntity user = new NodeEntity("User", IdMaker.next());
+            user.put("userName", "user" + i);
+            user.put(NodeEntity.ATTR_CREATE_TIME, new Date(1000000L));
+            user.put("salary", new BigDecimal("1234.50"));
+            user.put("loginCount", 42L);
+            sdData.addNodeIfAbsent(user);
+            sdData.addEventIfAbsent(
+                    new EventEntity().sd("BELONG_TO").id(IdMaker.next()).leftNode(user).rightNode(department)
+            );
+        }
+        final NodeEntity menuItem = new NodeEntity("MenuItem", IdMaker.next());
+        menuItem.put("name", "首页");
+        menuItem.put("isRoot", true);
+        menuItem.put("sortIndex", 3);
+        menuItem.put("config", new JSONObject().fluentPut("path", "/").fluentPut("tags", new JSONArray().fluentAdd("a").fluentAdd(1)));
+        sdData.addNodeIfAbsent(menuItem);
+        final NodeEntity otherItem = new NodeEntity("MenuItem", IdMaker.next());
+        // 和定义类型不一致
+        otherItem.put("sortIndex", 5000000000L);
+        otherItem.put("isRoot", "false");
+        sdData.addNodeIfAbsent(otherItem);
+
+        final UXDF uxdf = new UXDF();
+        uxdf.setSd(new Sd());
+        uxdf.setData(sdData);
+        return uxdf;
+    }
+
+    private static byte[] writeJson(final UXDF uxdf) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (UXDFWriter writer = new UXDFWriter(outputStream)) {
+            writer.writeUXDF(uxdf);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] writeCompact(final UXDF uxdf) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (UXDFCompactWriter writer = new UXDFCompactWriter(outputStream)) {
+            writer.writeUXDF(uxdf);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static final class RecordingListener implements UXDFReaderListener {
+        private final List<String> calls;
+
+        private RecordingListener(final List<String> calls) {
+            this.calls = calls;
+        }
+
+        @Override
+        public void startReadUXDF() {
+            calls.add("startReadUXDF");
+        }
+
+        @Override
+        public void readSd(final Sd sd) {
+            calls.add("readSd");
+        }
+
+        @Override
+        public void startReadNode() {
+            calls.add("startReadNode");
+        }
+
+        @Override
+        public void readNode(final NodeEntity nodeEntity) {
+            calls.add("readNode:" + nodeEntity.get__Sd());
+        }
+
+        @Override
+        public void endReadNode() {
+            calls.add("endReadNode");
+        }
+
+        @Override
+        public void startReadEvent() {
+            calls.add("startReadEvent");
+        }
+
+        @Override
+        public void readEvent(final EventEntity eventEntity) {
+            calls.add("readEvent:" + eventEntity.get__Sd());
+        }
+
+        @Override
+        public void endReadEvent() {
+            calls.add("endReadEvent");
+        }
+
+        @Override
+        public void endReadUXDF(final Throwable error) {
+            calls.add("endReadUXDF:" + (error == null ? null : error.getClass().getSimpleName()));
+        }
+    }
+}
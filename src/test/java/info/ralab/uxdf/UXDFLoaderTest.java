@@ -1,12 +1,30 @@
 package info.ralab.uxdf;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.collect.Lists;
+import info.ralab.uxdf.definition.SdEventDefinition;
+import info.ralab.uxdf.definition.SdNodeDefinition;
+import info.ralab.uxdf.definition.SdProperty;
+import info.ralab.uxdf.utils.UXDFBundleWriter;
+import info.ralab.uxdf.utils.UXDFLoaderListener;
+import info.ralab.uxdf.utils.UXDFSchemaDocument;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Slf4j
 public class UXDFLoaderTest {
@@ -34,4 +52,274 @@ public class UXDFLoaderTest {
         Assert.assertTrue(UXDFLoader.isCached());
     }
 
+    /**
+     * 测试Event定义查找和移除
+     */
+    @Test
+    public void testEventLookupAndRemove() {
+        UXDFLoader.reloadForced();
+
+        SdEventDefinition eventDefinition = UXDFLoader.getEvent("BELONG_TO", "MetadataField", "MetadataTable");
+        Assert.assertNotNull(eventDefinition);
+        Assert.assertSame(eventDefinition, UXDFLoader.getEvent("BELONG_TO").get("MetadataField").get("MetadataTable"));
+        Assert.assertNull(UXDFLoader.getEvent("BELONG_TO", "MetadataTable", "MetadataField"));
+        Assert.assertNull(UXDFLoader.getEvent(null, "MetadataField", "MetadataTable"));
+
+        UXDFLoader.removeEventDefinition(Lists.newArrayList(
+                new String[][]{{"BELONG_TO", "MetadataField", "MetadataTable"}}
+        ));
+        Assert.assertNull(UXDFLoader.getEvent("BELONG_TO", "MetadataField", "MetadataTable"));
+        Assert.assertFalse(UXDFLoader.getEventsByNodeName("MetadataField").contains(eventDefinition));
+        Assert.assertFalse(UXDFLoader.getEventsByNodeName("MetadataTable").contains(eventDefinition));
+
+        // 移除Node后，关联的Event定义同时被移除
+        UXDFLoader.removeNodeDefinition(Lists.newArrayList("MetadataTable"));
+        Assert.assertNull(UXDFLoader.getEvent("BELONG_TO", "MetadataTable", "Schema"));
+        Assert.assertTrue(UXDFLoader.getEventsByNodeName("Schema").stream()
+                .noneMatch(event -> "MetadataTable".equals(event.getTargetNodeName("Schema"))));
+    }
+
+    /**
+     * 测试Node定义继承解析
+     */
+    @Test
+    public void testNodeExtend() {
+        UXDFLoader.reloadForced();
+
+        // 加载后属性保持定义文件中的顺序
+        Assert.assertArrayEquals(
+                new String[]{"name", "userName", "password", "email", "photo"},
+                UXDFLoader.getNode("User").getProp().keySet().toArray(new String[]{})
+        );
+
+        UXDFLoader.addNodeDefinition(Lists.newArrayList(
+                createNode("TestParent", new String[]{}, "a", "b"),
+                createNode("TestChild", new String[]{"TestParent"}, "b", "c"),
+                createNode("TestGrandChild", new String[]{"TestChild"}, "d")
+        ));
+
+        SdNodeDefinition grandChild = UXDFLoader.getNode("TestGrandChild");
+        Assert.assertArrayEquals(
+                new String[]{"d", "b", "c", "a"},
+                grandChild.getProp().keySet().toArray(new String[]{})
+        );
+        // 子Node声明的属性覆盖父Node
+        Assert.assertEquals("TestChild.b", grandChild.getProp().get("b").getTitle());
+        // 解析后的属性不可修改
+        try {
+            grandChild.getProp().put("e", new SdProperty());
+            Assert.fail();
+        } catch (UnsupportedOperationException ignored) {
+        }
+
+        // 修改父Node后，子孙Node重新解析
+        Map<String, SdProperty> userProp = UXDFLoader.getNode("User").getProp();
+        UXDFLoader.updateNodeDefinition(Lists.newArrayList(
+                createNode("TestParent", new String[]{}, "a", "e")
+        ));
+        Assert.assertArrayEquals(
+                new String[]{"d", "b", "c", "a", "e"},
+                UXDFLoader.getNode("TestGrandChild").getProp().keySet().toArray(new String[]{})
+        );
+        // 未受影响的Node不重新解析
+        Assert.assertSame(userProp, UXDFLoader.getNode("User").getProp());
+
+        // 被继承的Node不能移除
+        try {
+            UXDFLoader.removeNodeDefinition(Lists.newArrayList("TestParent"));
+            Assert.fail();
+        } catch (UXDFException ignored) {
+        }
+
+        // 回滚后继承关系不变，父Node的修改和移除的属性仍然传递到子孙Node
+        UXDFLoader.updateNodeDefinition(Lists.newArrayList(
+                createNode("TestParent", new String[]{}, "f")
+        ));
+        Assert.assertArrayEquals(
+                new String[]{"d", "b", "c", "f"},
+                UXDFLoader.getNode("TestGrandChild").getProp().keySet().toArray(new String[]{})
+        );
+    }
+
+    /**
+     * 测试从预编译的定义包加载
+     */
+    @Test
+    public void testBundle() throws IOException {
+        UXDFLoader.reloadForced();
+        UXDFLoader.addNodeDefinition(Lists.newArrayList(createNode("TestBundle", new String[]{}, "a")));
+        final List<String> notifications = Lists.newArrayList();
+        final UXDFLoaderListener listener = (UXDFLoaderListener) Proxy.newProxyInstance(
+                UXDFLoaderListener.class.getClassLoader(),
+                new Class[]{UXDFLoaderListener.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            notifications.add(method.getName() + ":" + args[0]);
+                            return null;
+                    }
+                }
+        );
+        UXDFLoader.registerListener(listener);
+        File bundleDir = Files.createTempDirectory("uxdf-bundle").toFile();
+        File bundleFile = new File(bundleDir, "uxdf/uxdf.bundle.json");
+        try {
+            UXDFBundleWriter.write(bundleFile);
+        } finally {
+            UXDFLoader.unregisterListener(listener);
+        }
+        final String scanned = UXDFLoader.getAllUxdfJSON();
+        // 替换缓存后按变化通知，未变化的定义不通知
+        Assert.assertEquals(Lists.newArrayList("onRemoveNodeAfter:TestBundle"), notifications);
+
+        // 定义包中同时保存解析后的属性和自身声明的属性
+        JSONObject bundleUser = JSON.parseObject(new String(Files.readAllBytes(bundleFile.toPath()), UXDF.CHARSET))
+                .getJSONObject("node").getJSONObject("User");
+        Assert.assertTrue(bundleUser.containsKey("prop"));
+        Assert.assertTrue(bundleUser.containsKey("declaredProp"));
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader bundleClassLoader = new URLClassLoader(new URL[]{bundleDir.toURI().toURL()}, classLoader)) {
+            Assert.assertNotNull(bundleClassLoader.getResource("uxdf/uxdf.bundle.json"));
+            Thread.currentThread().setContextClassLoader(bundleClassLoader);
+            UXDFLoader.reloadForced();
+
+            Assert.assertEquals(JSON.parseObject(scanned), JSON.parseObject(UXDFLoader.getAllUxdfJSON()));
+            Assert.assertNotNull(UXDFLoader.getEvent("BELONG_TO", "MetadataField", "MetadataTable"));
+        } finally {
+            Thread.currentThread().setContextClassLoader(classLoader);
+        }
+    }
+
+    /**
+     * 测试合并多个定义包，存在定义包之外的定义文件时扫描定义文件
+     */
+    @Test
+    public void testMultipleBundles() throws IOException {
+        UXDFLoader.reloadForced();
+        File bundleDir = Files.createTempDirectory("uxdf-bundle").toFile();
+        File bundleFile = new File(bundleDir, "uxdf/uxdf.bundle.json");
+        UXDFBundleWriter.write(bundleFile);
+        final JSONObject bundle = JSON.parseObject(new String(Files.readAllBytes(bundleFile.toPath()), UXDF.CHARSET));
+
+        // 第二个定义包包含继承第一个定义包中Node的定义
+        JSONObject child = new JSONObject();
+        child.put("title", "TestBundleChild");
+        child.put("extend", new String[]{"User"});
+        child.put("prop", new JSONObject());
+        child.put("declaredProp", new JSONObject());
+        JSONObject other = new JSONObject();
+        other.put("uxdf", bundle.getJSONObject("uxdf"));
+        other.put("node", new JSONObject());
+        other.getJSONObject("node").put("TestBundleChild", child);
+        other.getJSONObject("node").put("User", bundle.getJSONObject("node").getJSONObject("User"));
+        other.put("event", new JSONObject());
+        File otherDir = Files.createTempDirectory("uxdf-bundle").toFile();
+        writeBundle(new File(otherDir, "uxdf/uxdf.bundle.json"), other);
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader bundleClassLoader = new URLClassLoader(
+                new URL[]{bundleDir.toURI().toURL(), otherDir.toURI().toURL()}, classLoader
+        )) {
+            Thread.currentThread().setContextClassLoader(bundleClassLoader);
+            UXDFLoader.reloadForced();
+
+            Assert.assertNotNull(UXDFLoader.getEvent("BELONG_TO", "MetadataField", "MetadataTable"));
+            Assert.assertArrayEquals(
+                    UXDFLoader.getNode("User").getProp().keySet().toArray(new String[]{}),
+                    UXDFLoader.getNode("TestBundleChild").getProp().keySet().toArray(new String[]{})
+            );
+        } finally {
+            Thread.currentThread().setContextClassLoader(classLoader);
+        }
+
+        // 没有定义包的根路径中存在定义文件，扫描定义文件
+        File looseDir = Files.createTempDirectory("uxdf-loose").toFile();
+        File looseFile = new File(looseDir, "uxdf/node/TestLooseNode.json");
+        Files.createDirectories(looseFile.getParentFile().toPath());
+        Files.write(looseFile.toPath(), "{\"title\":\"TestLooseNode\",\"extend\":[],\"prop\":{}}".getBytes(UXDF.CHARSET));
+        try (URLClassLoader bundleClassLoader = new URLClassLoader(
+                new URL[]{bundleDir.toURI().toURL(), looseDir.toURI().toURL()}, classLoader
+        )) {
+            Thread.currentThread().setContextClassLoader(bundleClassLoader);
+            UXDFLoader.reloadForced();
+
+            Assert.assertNotNull(UXDFLoader.getNode("TestLooseNode"));
+            Assert.assertNotNull(UXDFLoader.getNode("User"));
+        } finally {
+            Thread.currentThread().setContextClassLoader(classLoader);
+        }
+    }
+
+    /**
+     * 测试并行解析定义文件
+     */
+    @Test
+    public void testParallel() {
+        UXDFLoader.reloadForced();
+        final String sequential = UXDFLoader.getAllUxdfJSON();
+
+        UXDFLoader.setParallel(true);
+        try {
+            UXDFLoader.reloadForced();
+            Assert.assertEquals(sequential, UXDFLoader.getAllUxdfJSON());
+        } finally {
+            UXDFLoader.setParallel(false);
+        }
+    }
+
+    /**
+     * 测试完整UXDF文档缓存
+     */
+    @Test
+    public void testSchemaDocument() throws IOException {
+        UXDFLoader.reloadForced();
+
+        UXDFSchemaDocument document = UXDFLoader.getSchemaDocument();
+        // 定义未变更时复用同一个文档
+        Assert.assertSame(document, UXDFLoader.getSchemaDocument());
+        Assert.assertEquals(document.toJSONString(), UXDFLoader.getAllUxdfJSON());
+        Assert.assertTrue(JSON.parseObject(document.toJSONString()).getJSONObject("sd").containsKey("node"));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        UXDFLoader.writeAllUxdfJSON(outputStream);
+        Assert.assertArrayEquals(document.getContent(), outputStream.toByteArray());
+        Assert.assertEquals(document.getContentLength(), outputStream.size());
+
+        // 定义变更后重新生成
+        UXDFLoader.addNodeDefinition(Lists.newArrayList(createNode("TestSchema", new String[]{}, "a")));
+        UXDFSchemaDocument changed = UXDFLoader.getSchemaDocument();
+        Assert.assertNotSame(document, changed);
+        Assert.assertNotEquals(document.getETag(), changed.getETag());
+        Assert.assertTrue(changed.toJSONString().contains("TestSchema"));
+
+        // 内容相同的文档ETag相同
+        UXDFLoader.removeNodeDefinition(Lists.newArrayList("TestSchema"));
+        Assert.assertEquals(document.getETag(), UXDFLoader.getSchemaDocument().getETag());
+    }
+
+    private static void writeBundle(final File bundleFile, final JSONObject bundle) throws IOException {
+        Files.createDirectories(bundleFile.getParentFile().toPath());
+        Files.write(bundleFile.toPath(), bundle.toJSONString().getBytes(UXDF.CHARSET));
+    }
+
+    private static SdNodeDefinition createNode(final String nodeName, final String[] extend, final String... props) {
+        SdNodeDefinition nodeDefinition = new SdNodeDefinition();
+        nodeDefinition.setNodeName(nodeName);
+        nodeDefinition.setTitle(nodeName);
+        nodeDefinition.setExtend(extend);
+        LinkedHashMap<String, SdProperty> prop = new LinkedHashMap<>();
+        for (String propName : props) {
+            SdProperty property = new SdProperty();
+            property.setTitle(nodeName + "." + propName);
+            prop.put(propName, property);
+        }
+        nodeDefinition.setProp(prop);
+        return nodeDefinition;
+    }
+
 }
@@ -0,0 +1,127 @@
+package info.ralab.uxdf;
+
+import com.google.common.collect.Lists;
+import info.ralab.uxdf.definition.SdNodeDefinition;
+import info.ralab.uxdf.utils.UXDFLoaderListener;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+@Slf4j
+public class UXDFLoaderWatcherTest {
+
+    private final List<String> notifications = new CopyOnWriteArrayList<>();
+
+    private UXDFLoaderListener listener;
+
+    @Before
+    public void before() {
+        UXDFLoader.clear();
+        listener = (UXDFLoaderListener) Proxy.newProxyInstance(
+                UXDFLoaderListener.class.getClassLoader(),
+                new Class[]{UXDFLoaderListener.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "testListener";
+                        default:
+                            if (method.getName().endsWith("Before")) {
+                                if (args[0] instanceof SdNodeDefinition) {
+                                    final String nodeName = ((SdNodeDefinition) args[0]).getNodeName();
+                                    notifications.add(method.getName() + ":" + nodeName);
+                                    // 取消VetoNode的添加，其他变化保持不变
+                                    if ("VetoNode".equals(nodeName)) {
+                                        return null;
+                                    }
+                                }
+                                return args[0];
+                            }
+                            if (method.getName().endsWith("After")) {
+                                notifications.add(method.getName() + ":" + (args[0] instanceof String[] ?
+                                        Arrays.toString((String[]) args[0]) : String.valueOf(args[0])));
+                            }
+                            return null;
+                    }
+                }
+        );
+        UXDFLoader.registerListener(listener);
+    }
+
+    @After
+    public void after() {
+        UXDFLoader.unregisterListener(listener);
+        UXDFLoader.clear();
+    }
+
+    /**
+     * 测试定义文件变化后热加载
+     */
+    @Test
+    public void testHotReload() throws IOException {
+        UXDFLoader.reloadForced();
+        final File nodeDir = Files.createTempDirectory("uxdf-node").toFile();
+        final File eventDir = Files.createTempDirectory("uxdf-event").toFile();
+
+        try (UXDFLoaderWatcher ignored = UXDFLoaderWatcher.start(Lists.newArrayList(nodeDir), Lists.newArrayList(eventDir))) {
+            // 新增Node定义，被监听器取消的Node定义不加载
+            write(new File(nodeDir, "VetoNode.json"), "{\"title\":\"取消\",\"prop\":{}}");
+            write(new File(nodeDir, "WatchNode.json"), "{\"title\":\"监听\",\"prop\":{\"name\":{\"title\":\"名称\",\"base\":\"String\"}}}");
+            waitFor(() -> UXDFLoader.getNode("WatchNode") != null);
+            Assert.assertTrue(UXDFLoader.getNode("WatchNode").getProp().containsKey("name"));
+            Assert.assertNull(UXDFLoader.getNode("VetoNode"));
+            // 其他定义保持不变
+            Assert.assertNotNull(UXDFLoader.getNode("User"));
+
+            // 新增Event定义
+            write(new File(eventDir, "WATCH.json"), "{\"WatchNode\":{\"User\":{\"title\":\"监听\",\"prop\":{}}}}");
+            waitFor(() -> UXDFLoader.getEvent("WATCH", "WatchNode", "User") != null);
+
+            // 删除Node定义，关联的Event定义同时被移除
+            Assert.assertTrue(new File(nodeDir, "WatchNode.json").delete());
+            waitFor(() -> UXDFLoader.getNode("WatchNode") == null);
+            Assert.assertNull(UXDFLoader.getEvent("WATCH", "WatchNode", "User"));
+        }
+
+        Assert.assertTrue(notifications.stream().anyMatch(notification -> notification.startsWith("onAddEventAfter:")));
+        Assert.assertTrue(notifications.stream().anyMatch(notification -> notification.startsWith("onAddNodeAfter:")));
+        Assert.assertTrue(notifications.contains("onRemoveNodeAfter:WatchNode"));
+        Assert.assertTrue(notifications.contains("onRemoveEventAfter:[WATCH, WatchNode, User]"));
+        // 每个变化只通知一次修改前事件
+        Assert.assertEquals(1, notifications.stream().filter("onAddNodeBefore:WatchNode"::equals).count());
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void waitFor(final BooleanSupplier condition) {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("wait for hot reload timeout.");
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Assert.fail();
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package info.ralab.uxdf;
+
+import com.google.common.collect.Lists;
+import info.ralab.uxdf.chain.UXDFChain;
+import info.ralab.uxdf.definition.SdNodeDefinition;
+import info.ralab.uxdf.definition.SdProperty;
+import info.ralab.uxdf.instance.IdMaker;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.utils.UXDFListenerMetrics;
+import info.ralab.uxdf.utils.UXDFLoaderListener;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+public class UXDFRegistryTest {
+
+    @Before
+    public void before() {
+        UXDFLoader.clear();
+    }
+
+    @After
+    public void after() {
+        UXDFLoader.clear();
+    }
+
+    /**
+     * 测试多个注册表之间定义互不影响
+     */
+    @Test
+    public void testIsolation() {
+        UXDFRegistry registry = new UXDFRegistry();
+        Assert.assertNotSame(UXDFLoader.getRegistry(), registry);
+        Assert.assertFalse(registry.isCached());
+
+        registry.reloadForced();
+        registry.addNodeDefinition(Lists.newArrayList(createNode("RegistryOnly", "code")));
+
+        Assert.assertTrue(registry.isCached());
+        Assert.assertFalse(UXDFLoader.isCached());
+        Assert.assertNotNull(registry.getNode("RegistryOnly"));
+        Assert.assertNotNull(registry.getNode("User"));
+        Assert.assertNull(UXDFLoader.getNode("RegistryOnly"));
+        Assert.assertNotNull(UXDFLoader.getNode("User"));
+
+        // 关系链按注册表解析和缓存
+        Assert.assertNotNull(UXDFChain.getInstance("RegistryOnly-*>*", registry));
+        try {
+            UXDFChain.getInstance("RegistryOnly-*>*");
+            Assert.fail();
+        } catch (UXDFException ignored) {
+        }
+
+        registry.clear();
+        Assert.assertFalse(registry.isCached());
+        Assert.assertTrue(UXDFLoader.isCached());
+    }
+
+    /**
+     * 测试{@link SdData}和其中的实体使用绑定的注册表
+     */
+    @Test
+    public void testSdDataRegistry() {
+        UXDFRegistry registry = new UXDFRegistry();
+        registry.reloadForced();
+        registry.addNodeDefinition(Lists.newArrayList(createNode("RegistryOnly", "code")));
+
+        SdData sdData = new SdData(registry);
+        NodeEntity first = createNodeEntity();
+        Assert.assertSame(UXDFLoader.getRegistry(), first.getRegistry());
+        Assert.assertTrue(sdData.addNodeIfAbsent(first));
+        Assert.assertSame(registry, first.getRegistry());
+        Assert.assertSame(registry, first.clone().getRegistry());
+        Assert.assertSame(registry, sdData.clone().getRegistry());
+
+        // 注册表中定义了唯一属性，相同code的数据冲突
+        try {
+            sdData.addNodeIfAbsent(createNodeEntity());
+            Assert.fail();
+        } catch (UXDFException ignored) {
+        }
+
+        // 默认注册表中没有该定义，不会冲突
+        SdData defaultData = new SdData();
+        Assert.assertSame(UXDFLoader.getRegistry(), defaultData.getRegistry());
+        Assert.assertTrue(defaultData.addNodeIfAbsent(createNodeEntity()));
+        Assert.assertTrue(defaultData.addNodeIfAbsent(createNodeEntity()));
+    }
+
+    /**
+     * 测试异步通知修改后事件
+     */
+    @Test
+    public void testAsyncNotification() throws InterruptedException {
+        UXDFRegistry registry = new UXDFRegistry();
+        registry.reloadForced();
+        registry.setAsyncNotification(true);
+
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final List<String> notifications = new CopyOnWriteArrayList<>();
+        final UXDFLoaderListener listener = (UXDFLoaderListener) Proxy.newProxyInstance(
+                UXDFLoaderListener.class.getClassLoader(),
+                new Class[]{UXDFLoaderListener.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "asyncListener";
+                        default:
+                            if (method.getName().endsWith("Before")) {
+                                // 修改前事件同步执行
+                                notifications.add(method.getName() + ":" + Thread.currentThread().getName());
+                                return args[0];
+                            }
+                            if (method.getName().endsWith("After")) {
+                                blocker.await();
+                                notifications.add(method.getName() + ":" + args[0]);
+                            }
+                            return null;
+                    }
+                }
+        );
+        registry.registerListener(listener);
+        try {
+            registry.addNodeDefinition(Lists.newArrayList(createNode("AsyncFirst", "code")));
+            registry.removeNodeDefinition(Lists.newArrayList("AsyncFirst"));
+
+            // 监听器阻塞时，定义的修改和读取不受影响
+            Assert.assertNull(registry.getNode("AsyncFirst"));
+            Assert.assertFalse(registry.awaitNotification(50, TimeUnit.MILLISECONDS));
+            Assert.assertEquals(
+                    Lists.newArrayList(
+                            "onAddNodeBefore:" + Thread.currentThread().getName(),
+                            "onRemoveNodeBefore:" + Thread.currentThread().getName()
+                    ),
+                    notifications
+            );
+
+            blocker.countDown();
+            Assert.assertTrue(registry.awaitNotification(5, TimeUnit.SECONDS));
+            // 修改后事件按变更顺序通知
+            Assert.assertEquals(4, notifications.size());
+            Assert.assertTrue(notifications.get(2).startsWith("onAddNodeAfter:"));
+            Assert.assertEquals("onRemoveNodeAfter:AsyncFirst", notifications.get(3));
+
+            UXDFListenerMetrics metrics = registry.getListenerMetrics().get(listener);
+            Assert.assertEquals(4, metrics.getInvocations());
+            Assert.assertEquals(0, metrics.getFailures());
+            Assert.assertTrue(metrics.getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+        } finally {
+            blocker.countDown();
+            registry.unregisterListener(listener);
+            registry.close();
+        }
+        Assert.assertFalse(registry.isAsyncNotification());
+        Assert.assertNull(registry.getListenerMetrics().get(listener));
+    }
+
+    /**
+     * 测试异步通知执行期间移除监听器，不再记录调用统计
+     */
+    @Test
+    public void testUnregisterDuringNotification() throws InterruptedException {
+        try (UXDFRegistry registry = new UXDFRegistry()) {
+            registry.reloadForced();
+            registry.setAsyncNotification(true);
+
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch blocker = new CountDownLatch(1);
+            final UXDFLoaderListener listener = (UXDFLoaderListener) Proxy.newProxyInstance(
+                    UXDFLoaderListener.class.getClassLoader(),
+                    new Class[]{UXDFLoaderListener.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            default:
+                                if (method.getName().endsWith("Before")) {
+                                    return args[0];
+                                }
+                                started.countDown();
+                                blocker.await();
+                                return null;
+                        }
+                    }
+            );
+            registry.registerListener(listener);
+            registry.addNodeDefinition(Lists.newArrayList(createNode("AsyncRemoved", "code")));
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            registry.unregisterListener(listener);
+            blocker.countDown();
+            Assert.assertTrue(registry.awaitNotification(5, TimeUnit.SECONDS));
+            Assert.assertNull(registry.getListenerMetrics().get(listener));
+        }
+    }
+
+    private static NodeEntity createNodeEntity() {
+        NodeEntity nodeEntity = new NodeEntity("RegistryOnly", IdMaker.next());
+        nodeEntity.put("code", "same");
+        return nodeEntity;
+    }
+
+    private static SdNodeDefinition createNode(final String nodeName, final String uniqueProp) {
+        SdNodeDefinition nodeDefinition = new SdNodeDefinition();
+        nodeDefinition.setNodeName(nodeName);
+        nodeDefinition.setTitle(nodeName);
+        nodeDefinition.setExtend(new String[]{});
+        nodeDefinition.setUniqueIndex(new String[]{uniqueProp});
+        LinkedHashMap<String, SdProperty> prop = new LinkedHashMap<>();
+        SdProperty property = new SdProperty();
+        property.setTitle(nodeName + "." + uniqueProp);
+        prop.put(uniqueProp, property);
+        nodeDefinition.setProp(prop);
+        return nodeDefinition;
+    }
+}
@@ -1,5 +1,6 @@
 package info.ralab.uxdf.chain;
 
+import info.ralab.uxdf.UXDFException;
 import info.ralab.uxdf.UXDFLoader;
 import org.junit.Assert;
 import org.junit.Before;
@@ -43,4 +44,33 @@ public class UXDFChainItemTest {
 
     }
 
+    /**
+     * 测试解析完成后不可修改，以及按属性比较
+     */
+    @Test
+    public void testIdentity() {
+        UXDFChainItem item = UXDFChainItem.valueOf("U:User", UXDFChain.PATH_LINE, "E:HAVE", UXDFChain.PATH_LEFT, "R:Role");
+        UXDFChainItem same = UXDFChainItem.valueOf("U:User", UXDFChain.PATH_LINE, "E:HAVE", UXDFChain.PATH_LEFT, "R:Role");
+        UXDFChainItem other = UXDFChainItem.valueOf("U:User", UXDFChain.PATH_LINE, "E:HAVE", UXDFChain.PATH_LEFT, "X:Role");
+
+        Assert.assertEquals("U:User-E:HAVE>R:Role", item.toString());
+        Assert.assertSame(item.toString(), item.toString());
+        Assert.assertEquals(ChainPath.LEFT, item.getChainPath());
+        Assert.assertEquals(item, same);
+        Assert.assertEquals(item.hashCode(), same.hashCode());
+        Assert.assertNotEquals(item, other);
+
+        try {
+            item.addSd("Department");
+            Assert.fail();
+        } catch (UXDFException e) {
+            // 解析完成后不可修改
+        }
+        try {
+            item.addPath(UXDFChain.PATH_LINE);
+            Assert.fail();
+        } catch (UXDFException e) {
+            // 解析完成后不可修改
+        }
+    }
 }
@@ -3,6 +3,7 @@ package info.ralab.uxdf.chain;
 import com.google.common.collect.Lists;
 import info.ralab.uxdf.SdData;
 import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.UXDFRegistry;
 import info.ralab.uxdf.instance.EventEntity;
 import info.ralab.uxdf.instance.NodeEntity;
 import org.junit.Assert;
@@ -66,6 +67,80 @@ public class UXDFChainTest {
         Assert.assertEquals(chainItemTwo.getChainPath(), ChainPath.RIGHT);
     }
 
+    /**
+     * 测试关系链缓存
+     */
+    @Test
+    public void testCache() {
+        final String chainString = "Signifier-AS_MEMBER-Signifier";
+        UXDFChain chain = UXDFChain.getInstance(chainString);
+        Assert.assertSame(chain, UXDFChain.getInstance(chainString));
+
+        // 解析后的关系链不可修改
+        try {
+            chain.iterator().next().clear();
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // 不可修改
+        }
+
+        // 定义变更后重新解析
+        UXDFLoader.reloadForced();
+        UXDFChain reloaded = UXDFChain.getInstance(chainString);
+        Assert.assertNotSame(chain, reloaded);
+        Assert.assertSame(reloaded, UXDFChain.getInstance(chainString));
+
+        // 每个注册表持有自己的关系链缓存
+        UXDFRegistry registry = new UXDFRegistry();
+        registry.reloadForced();
+        UXDFChain registryChain = UXDFChain.getInstance(chainString, registry);
+        Assert.assertNotSame(reloaded, registryChain);
+        Assert.assertSame(registryChain, registry.getChainCache().getIfPresent(chainString));
+        UXDFChain.clearCache(registry);
+        Assert.assertEquals(0, registry.getChainCache().size());
+        Assert.assertSame(reloaded, UXDFChain.getInstance(chainString));
+    }
+
+    /**
+     * 测试多跳通配按路径逐个展开
+     */
+    @Test
+    public void testWildcardsPath() {
+        UXDFChain chain = UXDFChain.getInstance("UserGroup-HAVE>*-*>*");
+        Assert.assertNotNull(chain);
+
+        int count = 0;
+        for (List<UXDFChainItem> chainItemList : chain) {
+            count++;
+            Assert.assertEquals(2, chainItemList.size());
+            UXDFChainItem first = chainItemList.get(0);
+            UXDFChainItem second = chainItemList.get(1);
+            Assert.assertEquals("UserGroup", first.getFirstNode());
+            Assert.assertEquals("HAVE", first.getEvent());
+            // 相邻的关系链项目首尾相连，并且属于当前路径
+            Assert.assertEquals(first.getLastNode(), second.getFirstNode());
+            Assert.assertEquals(first.getLastLabel(), second.getFirstLabel());
+            Assert.assertSame(second, first.next());
+            Assert.assertSame(chainItemList, second.getChainItems());
+            Assert.assertEquals(1, second.getItemIndex());
+            Assert.assertFalse(second.hasNext());
+        }
+        Assert.assertEquals(6, count);
+
+        // 单一路径
+        List<UXDFChainItem> chainItemList = UXDFChain.getInstance("MetadataField-*>*-*>*-*>*").iterator().next();
+        Assert.assertEquals(3, chainItemList.size());
+        Assert.assertEquals("DataSource", chainItemList.get(2).getLastNode());
+
+        // 通配没有匹配定义的前缀不作为路径返回，DimensionSignifier-BELONG_TO>Dimension之后没有Event定义
+        List<String> lastNodes = Lists.newArrayList();
+        for (List<UXDFChainItem> path : UXDFChain.getInstance("DimensionSignifier-*>*-*>*")) {
+            Assert.assertEquals(2, path.size());
+            lastNodes.add(path.get(1).getLastNode());
+        }
+        Assert.assertEquals(Lists.newArrayList("DimensionSignifier", "Dimension", "Signifier", "Signifier"), lastNodes);
+    }
+
     private void getChildSd(SdData chainData, NodeEntity mainNode) {
         List<NodeEntity> nextGetNodes = Lists.newArrayList();
 
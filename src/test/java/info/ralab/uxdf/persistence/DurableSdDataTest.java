@@ -0,0 +1,231 @@
+package info.ralab.uxdf.persistence;
+
+import com.google.common.collect.Lists;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.IdMaker;
+import info.ralab.uxdf.instance.NodeEntity;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static info.ralab.uxdf.persistence.SdDataFixtures.belongTo;
+import static info.ralab.uxdf.persistence.SdDataFixtures.department;
+import static info.ralab.uxdf.persistence.SdDataFixtures.user;
+
+public class DurableSdDataTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void before() throws IOException {
+        UXDFLoader.reloadForced();
+        directory = folder.newFolder("sddata");
+    }
+
+    /**
+     * 测试重新打开后恢复所有变更，属性值类型不变
+     */
+    @Test
+    public void testRecover() {
+        final Date birthday = new Date(1000000L);
+        final String departmentUUID;
+        final String newId = IdMaker.next();
+        try (DurableSdData sdData = open()) {
+            NodeEntity alice = user("alice");
+            alice.put("birthday", birthday);
+            alice.put("salary", new BigDecimal("1234.50"));
+            alice.put("loginCount", 42L);
+            alice.put("level", 3);
+            NodeEntity bob = user("bob");
+            NodeEntity department = department("D01");
+            Assert.assertTrue(sdData.addNodeIfAbsent(alice));
+            Assert.assertTrue(sdData.addNodeIfAbsent(bob));
+            Assert.assertTrue(sdData.addNodeIfAbsent(department));
+            Assert.assertFalse(sdData.addNodeIfAbsent(department));
+            sdData.addEventIfAbsent(belongTo(IdMaker.next(), alice, department));
+            sdData.addEventIfAbsent(belongTo(IdMaker.next(), bob, department));
+            departmentUUID = department.getUUID();
+
+            // 更新alice的id，关联的Event随之更新
+            NodeEntity target = new NodeEntity();
+            target.putAll(alice);
+            target.id(newId);
+            sdData.updateNode(alice.getLogicId(), alice.get__Id(), target);
+
+            // 移除bob和关联的Event
+            sdData.removeEvent(sdData.getUnmodifiableEvent(bob).get(0));
+            Assert.assertNotNull(sdData.removeNode(bob));
+        }
+
+        try (DurableSdData recovered = open()) {
+            Assert.assertEquals(2, recovered.getUnmodifiableNode().size());
+            NodeEntity alice = recovered.getNodeByLogicId("User" + newId);
+            Assert.assertNotNull(alice);
+            Assert.assertEquals(birthday, alice.get("birthday"));
+            Assert.assertEquals(new BigDecimal("1234.50"), alice.get("salary"));
+            Assert.assertEquals(42L, alice.get("loginCount"));
+            Assert.assertEquals(3, alice.get("level"));
+            Assert.assertNotNull(recovered.getNode(departmentUUID));
+
+            List<EventEntity> events = recovered.getUnmodifiableEvent("BELONG_TO");
+            Assert.assertEquals(1, events.size());
+            Assert.assertEquals(newId, events.get(0).get__Left());
+            Assert.assertEquals(1, recovered.getUnmodifiableEvent(alice).size());
+        }
+    }
+
+    /**
+     * 测试快照后清空日志，快照和之后的日志一起恢复
+     */
+    @Test
+    public void testCheckpoint() {
+        try (DurableSdData sdData = open()) {
+            sdData.setNode(Lists.newArrayList(user("alice"), user("bob")));
+            sdData.checkpoint();
+            Assert.assertEquals(0, new File(directory, DurableSdData.LOG_FILE).length());
+            Assert.assertTrue(new File(directory, DurableSdData.SNAPSHOT_FILE).exists());
+
+            sdData.addNodeIfAbsent(user("carol"));
+            sdData.removeNode(sdData.getUnmodifiableNode().get(0));
+
+            // 超过阈值自动快照
+            sdData.setCheckpointSize(1);
+            sdData.addNodeIfAbsent(user("dave"));
+            Assert.assertEquals(0, new File(directory, DurableSdData.LOG_FILE).length());
+            sdData.setCheckpointSize(0);
+            sdData.addNodeIfAbsent(user("eve"));
+        }
+
+        try (DurableSdData recovered = open()) {
+            List<Object> names = Lists.newArrayList();
+            recovered.getUnmodifiableNode().forEach(nodeEntity -> names.add(nodeEntity.get("userName")));
+            Assert.assertEquals(Lists.newArrayList("bob", "carol", "dave", "eve"), names);
+        }
+    }
+
+    /**
+     * 测试日志末尾不完整的记录在恢复时被忽略并截断
+     */
+    @Test
+    public void testTornTail() throws IOException {
+        try (DurableSdData sdData = open()) {
+            sdData.addNodeIfAbsent(user("alice"));
+            sdData.addNodeIfAbsent(user("bob"));
+        }
+        final File logFile = new File(directory, DurableSdData.LOG_FILE);
+        final long length = logFile.length();
+        try (FileOutputStream outputStream = new FileOutputStream(logFile, true)) {
+            outputStream.write(new byte[]{0, 0, 0, 100, 1, 2, 3});
+        }
+
+        try (DurableSdData recovered = open()) {
+            Assert.assertEquals(2, recovered.getUnmodifiableNode().size());
+            Assert.assertEquals(length, logFile.length());
+            recovered.addNodeIfAbsent(user("carol"));
+        }
+        try (DurableSdData recovered = open()) {
+            Assert.assertEquals(3, recovered.getUnmodifiableNode().size());
+        }
+    }
+
+    /**
+     * 测试并发变更全部持久化
+     */
+    @Test
+    public void testConcurrentCommit() throws Exception {
+        final int threads = 8;
+        final int perThread = 50;
+        try (DurableSdData sdData = open()) {
+            final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            final List<Future<?>> futures = Lists.newArrayList();
+            for (int i = 0; i < threads; i++) {
+                final int thread = i;
+                futures.add(executorService.submit(() -> {
+                    for (int j = 0; j < perThread; j++) {
+                        sdData.addNodeIfAbsent(user("user-" + thread + "-" + j));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executorService.shutdown();
+            Assert.assertFalse(sdData.clone() instanceof DurableSdData);
+            Assert.assertEquals(threads * perThread, sdData.clone().getUnmodifiableNode().size());
+        }
+
+        try (DurableSdData recovered = open()) {
+            Assert.assertEquals(threads * perThread, recovered.getUnmodifiableNode().size());
+        }
+    }
+
+    /**
+     * 测试内容未变化的更新不写日志，日志写入失败后撤销变更并停止接受变更
+     */
+    @Test
+    public void testLogFailure() throws Exception {
+        final File logFile = new File(directory, DurableSdData.LOG_FILE);
+        try (DurableSdData sdData = open()) {
+            NodeEntity alice = user("alice");
+            sdData.addNodeIfAbsent(alice);
+            final long length = logFile.length();
+            NodeEntity same = new NodeEntity();
+            same.putAll(alice);
+            sdData.updateNode(alice.getLogicId(), alice.get__Id(), same);
+            Assert.assertEquals(length, logFile.length());
+
+            // 关闭日志文件使下一次写入失败
+            Field walField = DurableSdData.class.getDeclaredField("writeAheadLog");
+            walField.setAccessible(true);
+            Field channelField = SdDataWriteAheadLog.class.getDeclaredField("channel");
+            channelField.setAccessible(true);
+            ((FileChannel) channelField.get(walField.get(sdData))).close();
+
+            NodeEntity bob = user("bob");
+            try {
+                sdData.addNodeIfAbsent(bob);
+                Assert.fail();
+            } catch (UXDFException ignored) {
+            }
+            Assert.assertNull(sdData.getNodeByLogicId(bob.getLogicId()));
+            Assert.assertNotNull(sdData.getNodeByLogicId(alice.getLogicId()));
+
+            NodeEntity carol = user("carol");
+            try {
+                sdData.addNodeIfAbsent(carol);
+                Assert.fail();
+            } catch (UXDFException ignored) {
+            }
+            Assert.assertNull(sdData.getNodeByLogicId(carol.getLogicId()));
+            Assert.assertEquals(1, sdData.getUnmodifiableNode().size());
+        }
+
+        try (DurableSdData recovered = open()) {
+            Assert.assertEquals(1, recovered.getUnmodifiableNode().size());
+        }
+    }
+
+    private DurableSdData open() {
+        return new DurableSdData(directory, null, SdDataFsyncPolicy.ALWAYS, DurableSdData.DEFAULT_FSYNC_INTERVAL);
+    }
+}
@@ -0,0 +1,255 @@
+package info.ralab.uxdf.persistence;
+
+import com.google.common.collect.Lists;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.definition.SdOperateType;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.IdMaker;
+import info.ralab.uxdf.instance.NodeEntity;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+import static info.ralab.uxdf.persistence.SdDataFixtures.belongTo;
+import static info.ralab.uxdf.persistence.SdDataFixtures.department;
+import static info.ralab.uxdf.persistence.SdDataFixtures.user;
+import static info.ralab.uxdf.persistence.SdDataFixtures.userNames;
+
+public class OffHeapSdDataTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private OffHeapSdData sdData;
+
+    @Before
+    public void before() {
+        UXDFLoader.reloadForced();
+        sdData = new OffHeapSdData(null, null, 256);
+    }
+
+    @After
+    public void after() {
+        sdData.close();
+    }
+
+    /**
+     * 测试视图读取属性类型不变，修改立即写回，被替换后的视图不再写回
+     */
+    @Test
+    public void testView() {
+        final Date birthday = new Date(1000000L);
+        NodeEntity alice = user("alice");
+        alice.put("birthday", birthday);
+        alice.put("salary", new BigDecimal("1234.50"));
+        alice.put("loginCount", 42L);
+        alice.put("undefinedProp", "value");
+        Assert.assertTrue(sdData.addNodeIfAbsent(alice));
+        Assert.assertFalse(sdData.addNodeIfAbsent(alice));
+
+        NodeEntity view = sdData.getNode(alice.getUUID());
+        Assert.assertNotSame(alice, view);
+        Assert.assertEquals(alice, view);
+        Assert.assertEquals(birthday, view.get("birthday"));
+        Assert.assertEquals(new BigDecimal("1234.50"), view.get("salary"));
+        Assert.assertEquals(42L, view.get("loginCount"));
+        Assert.assertEquals("value", view.get("undefinedProp"));
+        Assert.assertNull(view.get("email"));
+        Assert.assertEquals(alice.size(), view.size());
+
+        view.put("email", "alice@example.com");
+        Assert.assertEquals("alice@example.com", sdData.getNodeByLogicId(alice.getLogicId()).get("email"));
+        Assert.assertTrue(sdData.getGarbageBytes() > 0);
+
+        // 替换后旧视图的修改不再写回
+        NodeEntity stale = sdData.getNodeByLogicId(alice.getLogicId());
+        NodeEntity overwrite = alice.clone();
+        overwrite.put("email", "new@example.com");
+        sdData.overwriteNode(overwrite);
+        stale.put("email", "stale@example.com");
+        Assert.assertEquals("new@example.com", sdData.getNodeByLogicId(alice.getLogicId()).get("email"));
+
+        // 传入的视图重新添加后继续写回
+        sdData.computeNode(alice, exist -> {
+            exist.put("level", 1);
+            return exist;
+        });
+        NodeEntity computed = sdData.getNodeByLogicId(alice.getLogicId());
+        Assert.assertEquals(1, computed.get("level"));
+        Assert.assertEquals("new@example.com", computed.get("email"));
+
+        sdData.setOperate(SdOperateType.update);
+        sdData.forEachNode(nodeEntity -> Assert.assertEquals(SdOperateType.update, nodeEntity.getOperate()));
+
+        try {
+            sdData.addNodeIfAbsent(user("alice"));
+            Assert.fail();
+        } catch (UXDFException e) {
+            // 唯一属性相同，uuid相同
+        }
+    }
+
+    /**
+     * 测试视图的多次修改只写回一次，垃圾记录较多时压缩，压缩后视图的修改继续写回
+     */
+    @Test
+    public void testBatchAndCompact() {
+        NodeEntity alice = user("alice");
+        sdData.addNodeIfAbsent(alice);
+        NodeEntity view = sdData.getNodeByLogicId(alice.getLogicId());
+        final long storedBytes = sdData.getStoredBytes();
+        view.put("email", "alice@example.com");
+        view.put("level", 1);
+        view.remove("email");
+        final long written = sdData.getStoredBytes() - storedBytes;
+        Assert.assertTrue(written > 0);
+        Assert.assertEquals(1, sdData.getNodeByLogicId(alice.getLogicId()).get("level"));
+        Assert.assertNull(sdData.getNodeByLogicId(alice.getLogicId()).get("email"));
+        Assert.assertEquals(storedBytes + written, sdData.getStoredBytes());
+
+        // 反复覆盖产生垃圾记录，超过段大小和已写入的一半后压缩
+        NodeEntity bob = user("bob");
+        sdData.addNodeIfAbsent(bob);
+        for (int i = 0; i < 20; i++) {
+            NodeEntity overwrite = bob.clone();
+            overwrite.put("level", i);
+            sdData.overwriteNode(overwrite);
+        }
+        Assert.assertTrue(sdData.getGarbageBytes() * 2 < sdData.getStoredBytes());
+        Assert.assertEquals(19, sdData.getNode(bob.getUUID()).get("level"));
+
+        view.put("level", 2);
+        Assert.assertEquals(2, sdData.getNodeByLogicId(alice.getLogicId()).get("level"));
+        Assert.assertEquals(Lists.newArrayList("alice", "bob"), userNames(sdData));
+    }
+
+    /**
+     * 测试索引扩容、移除后重新添加和遍历顺序
+     */
+    @Test
+    public void testIndex() {
+        final List<NodeEntity> users = Lists.newArrayList();
+        for (int i = 0; i < 500; i++) {
+            NodeEntity user = user("user" + i);
+            users.add(user);
+            Assert.assertTrue(sdData.addNodeIfAbsent(user));
+        }
+        for (int i = 0; i < 500; i += 2) {
+            Assert.assertNotNull(sdData.removeNode(users.get(i).getUUID()));
+        }
+        Assert.assertNull(sdData.removeNode(users.get(0)));
+        Assert.assertTrue(sdData.addNodeIfAbsent(users.get(0)));
+
+        final List<Object> expected = Lists.newArrayList();
+        for (int i = 1; i < 500; i += 2) {
+            expected.add("user" + i);
+        }
+        expected.add("user0");
+        Assert.assertEquals(expected, userNames(sdData));
+        for (int i = 0; i < 500; i++) {
+            Assert.assertEquals(i == 0 || i % 2 == 1, sdData.containsNode(users.get(i)));
+            Assert.assertEquals(i == 0 || i % 2 == 1, sdData.containsNode(users.get(i).getUUID()));
+        }
+        Assert.assertTrue(sdData.getIndexBytes() > 0);
+
+        sdData.clearNode();
+        Assert.assertTrue(sdData.isNodeEmpty());
+        Assert.assertNull(sdData.getNode(users.get(1).getUUID()));
+    }
+
+    /**
+     * 测试Node更新后关联的Event随之更新，以及移除Event
+     */
+    @Test
+    public void testEvent() {
+        NodeEntity department = department("D01");
+        sdData.addNodeIfAbsent(department);
+        final List<NodeEntity> users = Lists.newArrayList();
+        for (int i = 0; i < 5; i++) {
+            NodeEntity user = user("user" + i);
+            users.add(user);
+            sdData.addNodeIfAbsent(user);
+            sdData.addEventIfAbsent(belongTo(user, department));
+        }
+        Assert.assertEquals(5, sdData.getUnmodifiableEvent(department).size());
+        Assert.assertEquals(5, sdData.getUnmodifiableEvent("BELONG_TO").size());
+        Assert.assertEquals(2, sdData.getDetachedNode(sdData.getUnmodifiableEvent(users.get(0)).get(0)).size());
+
+        final String newId = IdMaker.next();
+        NodeEntity target = new NodeEntity();
+        target.putAll(department);
+        target.remove(NodeEntity.ATTR_UUID);
+        target.id(newId);
+        sdData.updateNode(department.getLogicId(), department.get__Id(), target);
+        Assert.assertFalse(sdData.containsNode(department));
+        Assert.assertTrue(sdData.getUnmodifiableEvent(department).isEmpty());
+        Assert.assertEquals(5, sdData.getUnmodifiableEvent(target).size());
+        sdData.getUnmodifiableEvent("BELONG_TO").forEach(eventEntity -> Assert.assertEquals(newId, eventEntity.get__Right()));
+        Assert.assertEquals(1, sdData.getUnmodifiableEvent(users.get(0)).size());
+
+        EventEntity removed = sdData.removeEvent(sdData.getUnmodifiableEvent(users.get(0)).get(0));
+        Assert.assertNotNull(removed);
+        Assert.assertFalse(sdData.containsEvent(removed));
+        Assert.assertEquals(4, sdData.getUnmodifiableEvent(target).size());
+        Assert.assertTrue(sdData.getUnmodifiableEvent(users.get(0)).isEmpty());
+
+        sdData.clearEvent();
+        Assert.assertTrue(sdData.isEventEmpty());
+        Assert.assertFalse(sdData.containsEventSd("BELONG_TO"));
+        Assert.assertFalse(sdData.isNodeEmpty());
+    }
+
+    /**
+     * 测试使用内存映射文件时和{@link SdData}执行相同操作后数据一致
+     */
+    @Test
+    public void testSameAsSdData() throws IOException {
+        final File directory = folder.newFolder("offheap");
+        try (OffHeapSdData mapped = new OffHeapSdData(null, directory, 256)) {
+            final SdData expected = new SdData();
+            final List<NodeEntity> users = Lists.newArrayList();
+            for (int i = 0; i < 10; i++) {
+                users.add(user("user" + i));
+            }
+            NodeEntity department = department("D01");
+            for (SdData target : Lists.newArrayList(expected, mapped)) {
+                target.addNodeIfAbsent(department.clone());
+                users.forEach(user -> {
+                    target.addNodeIfAbsent(user.clone());
+                    target.addEventIfAbsent(belongTo(user, department));
+                });
+                target.removeNode(users.get(3).clone());
+                target.removeNode(users.get(4).getUUID());
+                NodeEntity overwrite = users.get(5).clone();
+                overwrite.put("email", "user5@example.com");
+                target.overwriteNode(overwrite);
+                target.computeNode(users.get(6).clone(), exist -> null);
+            }
+            Assert.assertTrue(directory.list().length > 1);
+
+            Assert.assertEquals(userNames(expected), userNames(mapped));
+            Assert.assertEquals(
+                    expected.getNodeByLogicId(users.get(5).getLogicId()).get("email"),
+                    mapped.getNodeByLogicId(users.get(5).getLogicId()).get("email")
+            );
+            Assert.assertEquals(expected.getUnmodifiableEvent(department).size(), mapped.getUnmodifiableEvent(department).size());
+
+            SdData merged = new SdData();
+            merged.setNode(mapped.getDetachedNode());
+            Assert.assertEquals(userNames(expected), userNames(merged));
+            Assert.assertEquals(userNames(expected), userNames(mapped.clone()));
+        }
+        Assert.assertEquals(0, directory.list().length);
+    }
+}
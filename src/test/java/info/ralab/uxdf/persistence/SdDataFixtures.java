@@ -0,0 +1,55 @@
+package info.ralab.uxdf.persistence;
+
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.IdMaker;
+import info.ralab.uxdf.instance.NodeEntity;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * 持久化{@link SdData}测试共用的数据
+ */
+final class SdDataFixtures {
+
+    private SdDataFixtures() {
+    }
+
+    static NodeEntity user(final String userName) {
+        NodeEntity user = new NodeEntity("User", IdMaker.next());
+        user.put("userName", userName);
+        return user;
+    }
+
+    static NodeEntity department(final String code) {
+        NodeEntity department = new NodeEntity("Department", IdMaker.next());
+        department.put("code", code);
+        return department;
+    }
+
+    /**
+     * 创建User属于Department的Event，使用User的ID，可以重新创建相同的Event用于查找
+     */
+    static EventEntity belongTo(final NodeEntity user, final NodeEntity department) {
+        return belongTo(user.get__Id(), user, department);
+    }
+
+    /**
+     * 创建指定ID的User属于Department的Event
+     */
+    static EventEntity belongTo(final String id, final NodeEntity user, final NodeEntity department) {
+        return new EventEntity().sd("BELONG_TO").id(id).leftNode(user).rightNode(department);
+    }
+
+    /**
+     * 按顺序获取所有User的名称
+     */
+    static List<Object> userNames(final SdData sdData) {
+        return sdData.getUnmodifiableNode().stream()
+                .map(nodeEntity -> nodeEntity.get("userName"))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+}
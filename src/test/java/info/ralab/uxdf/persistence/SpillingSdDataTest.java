@@ -0,0 +1,196 @@
+package info.ralab.uxdf.persistence;
+
+import com.google.common.collect.Lists;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.definition.SdOperateType;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.IdMaker;
+import info.ralab.uxdf.instance.NodeEntity;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.List;
+
+import static info.ralab.uxdf.persistence.SdDataFixtures.belongTo;
+import static info.ralab.uxdf.persistence.SdDataFixtures.department;
+import static info.ralab.uxdf.persistence.SdDataFixtures.user;
+import static info.ralab.uxdf.persistence.SdDataFixtures.userNames;
+
+public class SpillingSdDataTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SpillingSdData sdData;
+
+    @Before
+    public void before() throws IOException {
+        UXDFLoader.reloadForced();
+        sdData = new SpillingSdData(null, folder.newFolder("spill"), 2, 256);
+    }
+
+    @After
+    public void after() {
+        sdData.close();
+    }
+
+    /**
+     * 测试超过缓存数量的实例溢出到段文件，并可以按需加载
+     */
+    @Test
+    public void testSpillAndLoad() {
+        final List<NodeEntity> users = Lists.newArrayList();
+        for (int i = 0; i < 20; i++) {
+            NodeEntity user = user("user" + i);
+            user.put("level", i);
+            users.add(user);
+            Assert.assertTrue(sdData.addNodeIfAbsent(user));
+        }
+        Assert.assertFalse(sdData.addNodeIfAbsent(new NodeEntity("User", users.get(0).get__Id())));
+        Assert.assertTrue(sdData.getSpilledBytes() > 256);
+        Assert.assertEquals(20, sdData.getUnmodifiableNode().size());
+
+        for (int i = 0; i < 20; i++) {
+            NodeEntity loaded = sdData.getNode(users.get(i).getUUID());
+            Assert.assertEquals("user" + i, loaded.get("userName"));
+            Assert.assertEquals(i, loaded.get("level"));
+            Assert.assertTrue(sdData.containsNode(users.get(i)));
+        }
+        Assert.assertTrue(sdData.getLoadCount() > 0);
+
+        // 唯一属性冲突
+        try {
+            sdData.addNodeIfAbsent(user("user3"));
+            Assert.fail();
+        } catch (UXDFException e) {
+            // uuid相同
+        }
+    }
+
+    /**
+     * 测试缓存中被修改的实例在淘汰时写回
+     */
+    @Test
+    public void testWriteBack() {
+        NodeEntity alice = user("alice");
+        sdData.addNodeIfAbsent(alice);
+        for (int i = 0; i < 5; i++) {
+            sdData.addNodeIfAbsent(user("user" + i));
+        }
+
+        NodeEntity loaded = sdData.getNodeByLogicId(alice.getLogicId());
+        loaded.put("email", "alice@example.com");
+        final long writeBackCount = sdData.getWriteBackCount();
+        for (int i = 5; i < 10; i++) {
+            sdData.addNodeIfAbsent(user("user" + i));
+        }
+        Assert.assertTrue(sdData.getWriteBackCount() > writeBackCount);
+        Assert.assertEquals("alice@example.com", sdData.getNodeByLogicId(alice.getLogicId()).get("email"));
+
+        // 遍历时修改全部实例
+        sdData.setOperate(SdOperateType.update);
+        sdData.forEachNode(nodeEntity -> Assert.assertEquals(SdOperateType.update, nodeEntity.getOperate()));
+    }
+
+    /**
+     * 测试只读访问不改变缓存顺序，最久未使用的实例先被淘汰
+     */
+    @Test
+    public void testPeekKeepsOrder() {
+        NodeEntity department = department("D01");
+        NodeEntity alice = user("alice");
+        sdData.addNodeIfAbsent(department);
+        sdData.addNodeIfAbsent(alice);
+
+        // 按alice、department的顺序读取副本，缓存顺序不变，department仍然最先淘汰
+        Assert.assertEquals(2, sdData.getDetachedNode(belongTo(alice, department)).size());
+        sdData.addNodeIfAbsent(user("bob"));
+        final long loadCount = sdData.getLoadCount();
+        Assert.assertNotNull(sdData.getNodeByLogicId(alice.getLogicId()));
+        Assert.assertEquals(loadCount, sdData.getLoadCount());
+        Assert.assertNotNull(sdData.getNodeByLogicId(department.getLogicId()));
+        Assert.assertEquals(loadCount + 1, sdData.getLoadCount());
+    }
+
+    /**
+     * 测试Node更新后关联的Event随之更新，以及移除Event
+     */
+    @Test
+    public void testEvent() {
+        NodeEntity department = department("D01");
+        sdData.addNodeIfAbsent(department);
+        final List<NodeEntity> users = Lists.newArrayList();
+        for (int i = 0; i < 5; i++) {
+            NodeEntity user = user("user" + i);
+            users.add(user);
+            sdData.addNodeIfAbsent(user);
+            sdData.addEventIfAbsent(belongTo(user, department));
+        }
+        Assert.assertEquals(5, sdData.getUnmodifiableEvent(department).size());
+        Assert.assertEquals(5, sdData.getUnmodifiableEvent("BELONG_TO").size());
+
+        final String newId = IdMaker.next();
+        NodeEntity target = new NodeEntity();
+        target.putAll(department);
+        target.id(newId);
+        sdData.updateNode(department.getLogicId(), department.get__Id(), target);
+        Assert.assertFalse(sdData.containsNode(department));
+        Assert.assertEquals(5, sdData.getUnmodifiableEvent(target).size());
+        sdData.getUnmodifiableEvent("BELONG_TO").forEach(eventEntity -> Assert.assertEquals(newId, eventEntity.get__Right()));
+
+        EventEntity removed = sdData.removeEvent(sdData.getUnmodifiableEvent(users.get(0)).get(0));
+        Assert.assertNotNull(removed);
+        Assert.assertFalse(sdData.containsEvent(removed));
+        Assert.assertEquals(4, sdData.getUnmodifiableEvent(target).size());
+        Assert.assertTrue(sdData.getUnmodifiableEvent(users.get(0)).isEmpty());
+
+        sdData.clearEvent();
+        Assert.assertTrue(sdData.isEventEmpty());
+        Assert.assertFalse(sdData.isNodeEmpty());
+    }
+
+    /**
+     * 测试和{@link SdData}执行相同操作后数据一致
+     */
+    @Test
+    public void testSameAsSdData() {
+        final SdData expected = new SdData();
+        final List<NodeEntity> users = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            users.add(user("user" + i));
+        }
+        NodeEntity department = department("D01");
+        for (SdData target : Lists.newArrayList(expected, sdData)) {
+            target.addNodeIfAbsent(department.clone());
+            users.forEach(user -> {
+                target.addNodeIfAbsent(user.clone());
+                target.addEventIfAbsent(belongTo(user, department));
+            });
+            target.removeNode(users.get(3).clone());
+            target.removeNode(users.get(4).getUUID());
+            NodeEntity overwrite = users.get(5).clone();
+            overwrite.put("email", "user5@example.com");
+            target.overwriteNode(overwrite);
+            target.computeNode(users.get(6).clone(), exist -> null);
+        }
+
+        Assert.assertEquals(userNames(expected), userNames(sdData));
+        Assert.assertEquals(
+                expected.getNodeByLogicId(users.get(5).getLogicId()).get("email"),
+                sdData.getNodeByLogicId(users.get(5).getLogicId()).get("email")
+        );
+        Assert.assertEquals(expected.getUnmodifiableEvent(department).size(), sdData.getUnmodifiableEvent(department).size());
+
+        SdData merged = new SdData();
+        merged.merge(sdData);
+        Assert.assertEquals(userNames(expected), userNames(merged));
+        Assert.assertEquals(userNames(expected), userNames(sdData.clone()));
+    }
+}
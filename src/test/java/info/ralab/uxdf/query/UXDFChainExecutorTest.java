@@ -0,0 +1,144 @@
+package info.ralab.uxdf.query;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.instance.SdEntity;
+import info.ralab.uxdf.model.SdDataQueryPage;
+import info.ralab.uxdf.model.SdDataQueryParam;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class UXDFChainExecutorTest {
+
+    private static final String CHAIN = "g:UserGroup-h:HAVE>u:User-b:BELONG_TO>d:Department";
+
+    private SdData sdData;
+
+    @Before
+    public void before() {
+        UXDFLoader.reloadForced();
+        // 1000个User分别属于10个Department，并且分别在5个UserGroup中
+        sdData = new SdData();
+        for (int i = 0; i < 10; i++) {
+            sdData.addNodeIfAbsent(new NodeEntity("Department", "D" + i));
+        }
+        for (int i = 0; i < 5; i++) {
+            sdData.addNodeIfAbsent(new NodeEntity("UserGroup", "G" + i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            NodeEntity user = new NodeEntity("User", "U" + i);
+            user.put("age", i % 50);
+            sdData.addNodeIfAbsent(user);
+            EventEntity belong = new EventEntity();
+            belong.sd("BELONG_TO").id("B" + i).leftNode(user).rightNode(sdData.getNodeByLogicId("DepartmentD" + (i % 10)));
+            sdData.addEventIfAbsent(belong);
+            EventEntity have = new EventEntity();
+            have.sd("HAVE").id("H" + i).leftNode(sdData.getNodeByLogicId("UserGroupG" + (i % 5))).rightNode(user);
+            sdData.addEventIfAbsent(have);
+        }
+    }
+
+    /**
+     * 测试并行执行和单线程执行的结果一致
+     */
+    @Test
+    public void testParallel() {
+        UXDFChainExecutor single = new UXDFChainExecutor(sdData);
+        single.setParallelism(1);
+        single.setPartitionSize(Integer.MAX_VALUE);
+        UXDFChainExecutor parallel = new UXDFChainExecutor(sdData);
+        parallel.setParallelism(4);
+        parallel.setPartitionSize(1);
+
+        UXDFChainResult expected = single.execute(CHAIN);
+        UXDFChainResult actual = parallel.execute(CHAIN);
+        Assert.assertEquals(1000, expected.getRows().size());
+        Assert.assertEquals(ids(expected.getRows()), ids(actual.getRows()));
+        Assert.assertFalse(actual.isTruncated());
+        Assert.assertEquals(5, actual.getBinding("g").size());
+        Assert.assertEquals(1000, actual.getBinding("u").size());
+        Assert.assertEquals(10, actual.getBinding("d").size());
+        Assert.assertEquals(2000, actual.getBinding("h").size() + actual.getBinding("b").size());
+    }
+
+    /**
+     * 测试查询参数和分页提前结束
+     */
+    @Test
+    public void testParamsAndPage() {
+        UXDFChainExecutor executor = new UXDFChainExecutor(sdData);
+        executor.setPartitionSize(8);
+        Map<String, List<SdDataQueryParam>> params = Maps.newHashMap();
+        params.put("d", Lists.newArrayList(SdDataQueryParam.equal(SdEntity.ATTR_ID, "D1")));
+        params.put("u", Lists.newArrayList(SdDataQueryParam.less("age", 20)));
+
+        UXDFChainResult all = executor.execute(CHAIN, params, null);
+        // D1中的User编号除以10余1，其中年龄小于20的编号除以50余1或11
+        Assert.assertEquals(40, all.getRows().size());
+        all.getRows().forEach(row -> {
+            Assert.assertEquals("D1", row.get("d").get__Id());
+            Assert.assertTrue(((Integer) row.get("u").get("age")) < 20);
+        });
+
+        UXDFChainResult page = executor.execute(CHAIN, params, new SdDataQueryPage(5, 10));
+        Assert.assertEquals(10, page.getRows().size());
+        Assert.assertTrue(page.isTruncated());
+        // 提前结束时仍然返回单线程执行时的同一页
+        Assert.assertEquals(ids(all.getRows()).subList(5, 15), ids(page.getRows()));
+
+        SdData result = page.toSdData(UXDFLoader.getRegistry());
+        Assert.assertTrue(result.containsNode((NodeEntity) page.getRows().get(0).get("u")));
+        Assert.assertEquals(20, result.getUnmodifiableEvent().values().stream().mapToInt(List::size).sum());
+    }
+
+    /**
+     * 测试只有一个Node的关系链
+     */
+    @Test
+    public void testSingleNode() {
+        UXDFChainExecutor executor = new UXDFChainExecutor(sdData);
+        Map<String, List<SdDataQueryParam>> params = Maps.newHashMap();
+        params.put("u", Lists.newArrayList(SdDataQueryParam.equal("age", 7)));
+
+        UXDFChainResult result = executor.execute("u:User", params, null);
+        Assert.assertEquals(20, result.getRows().size());
+        Assert.assertEquals(20, result.getBinding("u").size());
+        Assert.assertEquals(10, executor.execute("Department").getBinding("Department").size());
+        Assert.assertEquals(3, executor.execute("u:User", params, new SdDataQueryPage(0, 3)).getRows().size());
+    }
+
+    /**
+     * 测试查询参数匹配
+     */
+    @Test
+    public void testMatcher() {
+        NodeEntity user = new NodeEntity("User", "U1");
+        user.put("name", "Alice");
+        user.put("age", 30L);
+        Assert.assertTrue(UXDFQueryMatcher.matches(user, SdDataQueryParam.equal("age", 30)));
+        Assert.assertTrue(UXDFQueryMatcher.matches(user, SdDataQueryParam.greaterAndEqual("age", 30.0)));
+        Assert.assertFalse(UXDFQueryMatcher.matches(user, SdDataQueryParam.greater("age", 30)));
+        Assert.assertTrue(UXDFQueryMatcher.matches(user, SdDataQueryParam.like("name", "A%ce")));
+        Assert.assertTrue(UXDFQueryMatcher.matches(user, SdDataQueryParam.like("name", "lic")));
+        Assert.assertFalse(UXDFQueryMatcher.matches(user, SdDataQueryParam.like("name", "A%x")));
+        Assert.assertTrue(UXDFQueryMatcher.matches(user, SdDataQueryParam.startWith("name", "Al")));
+        Assert.assertTrue(UXDFQueryMatcher.matches(user, SdDataQueryParam.isNull("email")));
+        Assert.assertTrue(UXDFQueryMatcher.matches(user, SdDataQueryParam.notExist("email")));
+        Assert.assertTrue(UXDFQueryMatcher.matches(user, SdDataQueryParam.notEqual("email", "a")));
+    }
+
+    private static List<String> ids(final List<Map<String, SdEntity>> rows) {
+        return rows.stream()
+                .map(row -> row.values().stream().map(SdEntity::get__Id).collect(Collectors.joining(",")))
+                .collect(Collectors.toList());
+    }
+}
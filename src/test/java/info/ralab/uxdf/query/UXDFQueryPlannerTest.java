@@ -0,0 +1,105 @@
+package info.ralab.uxdf.query;
+
+import com.google.common.collect.Lists;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.chain.ChainPath;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.model.SdDataQueryParam;
+import info.ralab.uxdf.model.SdDataQueryRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+@Slf4j
+public class UXDFQueryPlannerTest {
+
+    private UXDFQueryPlanner planner;
+
+    @Before
+    public void before() {
+        UXDFLoader.reloadForced();
+        // 100个User分别属于5个Department
+        SdData sdData = new SdData();
+        for (int i = 0; i < 5; i++) {
+            sdData.addNodeIfAbsent(new NodeEntity("Department", "D" + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            NodeEntity user = new NodeEntity("User", "U" + i);
+            user.put("userName", "user" + i);
+            user.put("name", "name" + (i % 10));
+            sdData.addNodeIfAbsent(user);
+            EventEntity event = new EventEntity();
+            event.sd("BELONG_TO").id("E" + i).leftNode(user).rightNode(sdData.getNodeByLogicId("DepartmentD" + (i % 5)));
+            sdData.addEventIfAbsent(event);
+        }
+        planner = new UXDFQueryPlanner(SdDataCardinality.of(sdData));
+    }
+
+    /**
+     * 测试没有查询参数时从记录数少的标签开始
+     */
+    @Test
+    public void testSmallestStart() {
+        SdDataQueryRequest request = new SdDataQueryRequest(Lists.newArrayList("u:User-b:BELONG_TO>d:Department"));
+        UXDFQueryPlan plan = planner.plan(request);
+        log.info(plan.explain());
+
+        Assert.assertEquals("d", plan.getStartLabel());
+        List<UXDFQueryPlan.Step> steps = plan.getSteps();
+        Assert.assertEquals(2, steps.size());
+        Assert.assertEquals(UXDFQueryPlan.StepType.SCAN, steps.get(0).getType());
+        Assert.assertEquals(5, steps.get(0).getEstimatedRows(), 0.01);
+        Assert.assertEquals(UXDFQueryPlan.StepType.JOIN, steps.get(1).getType());
+        Assert.assertEquals(ChainPath.RIGHT, steps.get(1).getDirection());
+        Assert.assertEquals("u", steps.get(1).getLabel());
+        Assert.assertEquals(100, steps.get(1).getEstimatedRows(), 0.01);
+    }
+
+    /**
+     * 测试从查询参数选择率高的标签开始，之后的查询链使用已获取的标签
+     */
+    @Test
+    public void testSelectiveStart() {
+        SdDataQueryRequest request = new SdDataQueryRequest(Lists.newArrayList(
+                "g:UserGroup-h:HAVE>u:User",
+                "u:User-b:BELONG_TO>d:Department"
+        ));
+        request.getParams().put("u", Lists.newArrayList(SdDataQueryParam.equal("userName", "user1")));
+        UXDFQueryPlan plan = planner.plan(request);
+        log.info(plan.explain());
+
+        Assert.assertEquals("u", plan.getStartLabel());
+        List<UXDFQueryPlan.Step> steps = plan.getSteps();
+        Assert.assertEquals(4, steps.size());
+        Assert.assertEquals("g:UserGroup-h:HAVE>u:User", steps.get(0).getChain());
+        Assert.assertEquals(UXDFQueryPlan.StepType.SCAN, steps.get(0).getType());
+        Assert.assertEquals(1, steps.get(0).getEstimatedRows(), 0.01);
+        Assert.assertEquals(ChainPath.RIGHT, steps.get(1).getDirection());
+        Assert.assertEquals("g", steps.get(1).getLabel());
+        Assert.assertEquals("u:User-b:BELONG_TO>d:Department", steps.get(2).getChain());
+        Assert.assertEquals(UXDFQueryPlan.StepType.BOUND, steps.get(2).getType());
+        Assert.assertEquals("u", steps.get(2).getLabel());
+        Assert.assertEquals(ChainPath.LEFT, steps.get(3).getDirection());
+        Assert.assertEquals("d", steps.get(3).getLabel());
+        Assert.assertEquals(1, steps.get(3).getEstimatedRows(), 0.01);
+    }
+
+    /**
+     * 测试查询参数选择率
+     */
+    @Test
+    public void testSelectivity() {
+        Assert.assertEquals(0.01, planner.selectivity("User", SdDataQueryParam.equal("userName", "user1")), 0.0001);
+        Assert.assertEquals(0.9, planner.selectivity("User", SdDataQueryParam.notEqual("name", "name1")), 0.0001);
+        Assert.assertEquals(
+                UXDFQueryPlanner.DEFAULT_EQUAL_SELECTIVITY,
+                planner.selectivity("User", SdDataQueryParam.equal("unknown", "value")),
+                0.0001
+        );
+    }
+}
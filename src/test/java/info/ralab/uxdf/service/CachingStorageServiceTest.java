@@ -0,0 +1,325 @@
+package info.ralab.uxdf.service;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Maps;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.definition.SdOperateType;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.model.SdDataQueryRequest;
+import info.ralab.uxdf.model.SdDataQueryResult;
+import info.ralab.uxdf.model.SdDataSaveResult;
+import info.ralab.uxdf.utils.UXDFBinaryFileInfo;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CachingStorageServiceTest {
+
+    private StubStorageService stub;
+    private AtomicLong nanos;
+    private CachingStorageService service;
+
+    @Before
+    public void before() {
+        UXDFLoader.reloadForced();
+        stub = new StubStorageService();
+        nanos = new AtomicLong();
+        service = new CachingStorageService(stub, 100, 100, new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
+        stub.saveNode(user("U1", "u1"));
+    }
+
+    /**
+     * 测试命中和返回副本
+     */
+    @Test
+    public void testHit() {
+        NodeEntity first = service.getNodeEntityById("User", "U1");
+        first.put("name", "changed");
+        NodeEntity second = service.getNodeEntityById("User", "U1");
+        Assert.assertNull(second.get("name"));
+        Assert.assertEquals(1, stub.reads.get());
+        Assert.assertEquals(1, service.getMetrics().getHits());
+        Assert.assertEquals(1, service.getMetrics().getMisses());
+
+        service.getNodeEntityByUUID("User", "u1");
+        service.getNodeEntityByUUID("User", "u1");
+        Assert.assertEquals(2, stub.reads.get());
+
+        // 阻塞查询绕过缓存
+        service.getNodeEntityById("User", "U1", true);
+        Assert.assertEquals(3, stub.reads.get());
+        Assert.assertEquals(1, service.getMetrics().getBypasses());
+    }
+
+    /**
+     * 测试不存在结果缓存，以及新增后失效
+     */
+    @Test
+    public void testNegative() {
+        Assert.assertNull(service.getNodeEntityById("User", "U2"));
+        Assert.assertNull(service.getNodeEntityById("User", "U2"));
+        Assert.assertEquals(1, stub.reads.get());
+        Assert.assertEquals(1, service.getMetrics().getNegativeHits());
+
+        service.saveNode(user("U2", "u2"));
+        Assert.assertNotNull(service.getNodeEntityById("User", "U2"));
+        Assert.assertEquals(2, stub.reads.get());
+    }
+
+    /**
+     * 测试更新和删除后失效
+     */
+    @Test
+    public void testInvalidate() {
+        service.getNodeEntityById("User", "U1");
+        NodeEntity updated = user("U1", "u1");
+        updated.put("name", "updated");
+        service.saveNode(updated);
+        Assert.assertEquals("updated", service.getNodeEntityById("User", "U1").get("name"));
+        Assert.assertEquals(2, stub.reads.get());
+
+        // 删除Node时失效关联的Event
+        NodeEntity role = new NodeEntity("Role", "R1");
+        stub.saveNode(role);
+        EventEntity have = new EventEntity();
+        have.sd("HAVE").id("H1").leftNode(stub.getNodeEntityById("User", "U1")).rightNode(role);
+        have.set__Uuid("h1");
+        stub.saveEvent(have);
+        Assert.assertNotNull(service.getEventEntity("HAVE", "h1"));
+        Assert.assertEquals(2, service.size());
+
+        SdData sdData = new SdData();
+        NodeEntity deleted = user("U1", "u1");
+        sdData.addNodeIfAbsent(deleted);
+        service.saveData(sdData, SdOperateType.delete, null, false);
+        Assert.assertEquals(0, service.size());
+    }
+
+    /**
+     * 测试通过索引失效，不依赖其它缓存键是否存在
+     */
+    @Test
+    public void testInvalidateByIndex() {
+        // 只缓存了唯一编码查询的结果，更新后原唯一编码的缓存失效
+        Assert.assertNotNull(service.getNodeEntityByUUID("User", "u1"));
+        service.saveNode(user("U1", "u1-changed"));
+        Assert.assertNull(service.getNodeEntityByUUID("User", "u1"));
+        Assert.assertEquals(2, stub.reads.get());
+        Assert.assertNotNull(service.getNodeEntityByUUID("User", "u1-changed"));
+
+        // 解除关联时失效两端匹配的Event
+        NodeEntity role = new NodeEntity("Role", "R1");
+        stub.saveNode(role);
+        EventEntity have = new EventEntity();
+        have.sd("HAVE").id("H1").leftNode(stub.getNodeEntityById("User", "U1")).rightNode(role);
+        have.set__Uuid("h1");
+        stub.saveEvent(have);
+        Assert.assertNotNull(service.getEventEntity("HAVE", "h1"));
+        Assert.assertEquals(1, service.unlink(stub.getNodeEntityById("User", "U1"), role, "HAVE"));
+        Assert.assertNull(service.getEventEntity("HAVE", "h1"));
+
+        // 清除Node时失效该定义的Node
+        Assert.assertNotNull(service.getNodeEntityById("Role", "R1"));
+        Assert.assertEquals(2, service.size());
+        service.clearNode("Role");
+        Assert.assertEquals(1, service.size());
+        Assert.assertNull(service.getNodeEntityById("Role", "R1"));
+    }
+
+    /**
+     * 测试按Sd设置过期时间和容量淘汰
+     */
+    @Test
+    public void testTtlAndEviction() {
+        service.setTtl("User", 1, TimeUnit.SECONDS);
+        service.setTtl("Role", 0, TimeUnit.SECONDS);
+        stub.saveNode(new NodeEntity("Role", "R1"));
+
+        service.getNodeEntityById("User", "U1");
+        service.getNodeEntityById("Role", "R1");
+        Assert.assertEquals(1, service.size());
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        service.getNodeEntityById("User", "U1");
+        Assert.assertEquals(3, service.getMetrics().getMisses());
+        Assert.assertEquals(1, service.getMetrics().getEvictions());
+
+        CachingStorageService small = new CachingStorageService(stub, 1, 1);
+        stub.saveNode(user("U2", "u2"));
+        small.getNodeEntityById("User", "U1");
+        small.getNodeEntityById("User", "U2");
+        Assert.assertEquals(1, small.size());
+        Assert.assertEquals(1, small.getMetrics().getEvictions());
+    }
+
+    private static NodeEntity user(final String id, final String uuid) {
+        NodeEntity user = new NodeEntity("User", id);
+        user.set__Uuid(uuid);
+        return user;
+    }
+
+    /**
+     * 只支持单个实例存取的存储服务
+     */
+    private static class StubStorageService implements StorageService {
+        private final Map<String, NodeEntity> nodes = Maps.newConcurrentMap();
+        private final Map<String, EventEntity> events = Maps.newConcurrentMap();
+        private final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public void destory() {
+        }
+
+        @Override
+        public SdDataSaveResult saveData(SdData sdData, SdOperateType operate, UXDFBinaryFileInfo[] files, boolean sync) {
+            sdData.getUnmodifiableNode().forEach(nodeEntity -> {
+                if (operate == SdOperateType.delete) {
+                    nodes.remove(nodeEntity.getLogicId());
+                    events.values().removeIf(eventEntity -> eventEntity.leftLogicId().equals(nodeEntity.getLogicId())
+                            || eventEntity.rightLogicId().equals(nodeEntity.getLogicId()));
+                } else {
+                    saveNode(nodeEntity);
+                }
+            });
+            return new SdDataSaveResult();
+        }
+
+        @Override
+        public SdDataSaveResult saveData(SdData sdData) {
+            return saveData(sdData, null, null, false);
+        }
+
+        @Override
+        public SdDataSaveResult saveAndSyncData(SdData sdData) {
+            return saveData(sdData, null, null, true);
+        }
+
+        @Override
+        public NodeEntity saveNode(NodeEntity nodeEntity) {
+            nodes.put(nodeEntity.getLogicId(), nodeEntity);
+            return nodeEntity;
+        }
+
+        @Override
+        public EventEntity saveEvent(EventEntity eventEntity) {
+            events.put(eventEntity.get__Uuid(), eventEntity);
+            return eventEntity;
+        }
+
+        @Override
+        public SdDataQueryResult queryData(SdDataQueryRequest queryRequest) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SdDataQueryResult getDataById(String nodeName, String nodeId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SdDataQueryResult getDataById(String nodeName, String nodeId, boolean isBlock) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public NodeEntity getNodeEntityById(String nodeName, String nodeId) {
+            reads.incrementAndGet();
+            return nodes.get(nodeName + nodeId);
+        }
+
+        @Override
+        public NodeEntity getNodeEntityById(String nodeName, String nodeId, boolean isBlock) {
+            return getNodeEntityById(nodeName, nodeId);
+        }
+
+        @Override
+        public NodeEntity getNodeEntityByUUID(String nodeName, String uuid) {
+            reads.incrementAndGet();
+            return nodes.values().stream()
+                    .filter(nodeEntity -> nodeName.equals(nodeEntity.get__Sd()) && uuid.equals(nodeEntity.get__Uuid()))
+                    .findFirst()
+                    .orElse(null);
+        }
+
+        @Override
+        public NodeEntity getNodeEntityByUUID(String nodeName, String uuid, boolean isBlock) {
+            return getNodeEntityByUUID(nodeName, uuid);
+        }
+
+        @Override
+        public SdDataQueryResult getData(String eventName, String eventId, String leftNodeName, String leftNodeId, String rightNodeName, String rightNodeId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SdDataQueryResult getData(String eventName, String eventId, String leftNodeName, String leftNodeId, String rightNodeName, String rightNodeId, boolean isBlock) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public EventEntity getEventEntity(String eventName, String eventId, String leftNodeName, String leftNodeId, String rightNodeName, String rightNodeId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public EventEntity getEventEntity(String eventName, String eventId, String leftNodeName, String leftNodeId, String rightNodeName, String rightNodeId, boolean isBlock) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public EventEntity getEventEntity(String eventName, String uuid) {
+            reads.incrementAndGet();
+            return events.get(uuid);
+        }
+
+        @Override
+        public EventEntity getEventEntity(String eventName, String uuid, boolean isBlock) {
+            return getEventEntity(eventName, uuid);
+        }
+
+        @Override
+        public InputStream getUXDFBinaryFile(String nodeName, String property, String uuid) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Map<String, Object>> originalQuery(String expression) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int unlink(NodeEntity leftNode, NodeEntity rightNode, String eventType) {
+            final int size = events.size();
+            events.values().removeIf(eventEntity -> eventType.equals(eventEntity.get__Sd())
+                    && eventEntity.leftLogicId().equals(leftNode.getLogicId())
+                    && eventEntity.rightLogicId().equals(rightNode.getLogicId()));
+            return size - events.size();
+        }
+
+        @Override
+        public int clearNode(String nodeName) {
+            final int size = nodes.size();
+            nodes.values().removeIf(nodeEntity -> nodeName.equals(nodeEntity.get__Sd()));
+            events.values().removeIf(eventEntity -> nodeName.equals(eventEntity.get__LeftSd())
+                    || nodeName.equals(eventEntity.get__RightSd()));
+            return size - nodes.size();
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package info.ralab.uxdf.service;
+
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.definition.SdOperateType;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.instance.SdEntity;
+import info.ralab.uxdf.model.SdDataQueryOrder;
+import info.ralab.uxdf.model.SdDataQueryPage;
+import info.ralab.uxdf.model.SdDataQueryParam;
+import info.ralab.uxdf.model.SdDataQueryRequest;
+import info.ralab.uxdf.model.SdDataQueryResult;
+import info.ralab.uxdf.model.SdDataSaveResult;
+import info.ralab.uxdf.utils.UXDFBinaryFileInfo;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class MemoryStorageServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MemoryStorageService service;
+
+    @Before
+    public void before() {
+        UXDFLoader.reloadForced();
+        service = new MemoryStorageService();
+        service.init();
+    }
+
+    /**
+     * 测试新增后返回存储ID，以及通过ID和uuid获取
+     */
+    @Test
+    public void testCreate() {
+        SdData sdData = new SdData();
+        NodeEntity user = user("t1", "alice");
+        NodeEntity department = department("t2", "D01");
+        sdData.addNodeIfAbsent(user);
+        sdData.addNodeIfAbsent(department);
+        sdData.addEventIfAbsent(new EventEntity().sd("BELONG_TO").id("t3").leftNode(user).rightNode(department));
+        sdData.setOperate(SdOperateType.create);
+
+        SdDataSaveResult result = service.saveAndSyncData(sdData);
+        Assert.assertEquals(2, result.getNodeCreateNum().get());
+        Assert.assertEquals(1, result.getEventCreateNum().get());
+
+        NodeEntity savedUser = sdData.getUnmodifiableNode().stream()
+                .filter(nodeEntity -> "User".equals(nodeEntity.get__Sd()))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+        Assert.assertNotEquals("t1", savedUser.get__Id());
+        Assert.assertNotNull(savedUser.get__CreateTime());
+        EventEntity savedEvent = sdData.getUnmodifiableEvent("BELONG_TO").get(0);
+        Assert.assertEquals(savedUser.get__Id(), savedEvent.get__Left());
+
+        NodeEntity byId = service.getNodeEntityById("User", savedUser.get__Id());
+        Assert.assertEquals("alice", byId.get("userName"));
+        Assert.assertEquals(byId.get__Id(), service.getNodeEntityByUUID("User", byId.get__Uuid(), true).get__Id());
+        Assert.assertEquals(savedEvent.get__Id(), service.getEventEntity("BELONG_TO", savedEvent.get__Uuid()).get__Id());
+
+        SdDataQueryResult data = service.getData(
+                "BELONG_TO",
+                savedEvent.get__Id(),
+                "User",
+                savedEvent.get__Left(),
+                "Department",
+                savedEvent.get__Right()
+        );
+        Assert.assertEquals(2, data.getUxdf().getData().getUnmodifiableNode().size());
+
+        // 返回副本
+        byId.put("userName", "changed");
+        Assert.assertEquals("alice", service.getNodeEntityById("User", savedUser.get__Id()).get("userName"));
+    }
+
+    /**
+     * 测试通过唯一属性新增或修改、不存在时新增
+     */
+    @Test
+    public void testCreateOrUpdate() {
+        NodeEntity saved = service.saveNode(user("t1", "alice"));
+        NodeEntity update = user("t2", "alice");
+        update.put("email", "alice@example.com");
+        NodeEntity updated = service.saveNode(update);
+        Assert.assertEquals(saved.get__Id(), updated.get__Id());
+        Assert.assertEquals("alice@example.com", updated.get("email"));
+        Assert.assertEquals(1, service.getNodeCount());
+
+        SdData sdData = new SdData();
+        NodeEntity notExist = user("t3", "alice");
+        notExist.put("email", "ignored");
+        sdData.addNodeIfAbsent(notExist);
+        SdDataSaveResult result = service.saveData(sdData, SdOperateType.createNotExist, null, false);
+        Assert.assertEquals(0, result.getNodeCreateNum().get() + result.getNodeUpdateNum().get());
+        Assert.assertEquals(saved.get__Id(), sdData.getUnmodifiableNode().get(0).get__Id());
+        Assert.assertEquals("alice@example.com", service.getNodeEntityById("User", saved.get__Id()).get("email"));
+    }
+
+    /**
+     * 测试保存失败时回滚所有变更
+     */
+    @Test
+    public void testRollback() {
+        SdData sdData = new SdData();
+        NodeEntity user = user("t1", "alice");
+        NodeEntity department = department("t2", "D01");
+        sdData.addNodeIfAbsent(user);
+        sdData.addEventIfAbsent(new EventEntity().sd("BELONG_TO").id("t3").leftNode(user).rightNode(department));
+        sdData.setOperate(SdOperateType.create);
+        try {
+            service.saveData(sdData);
+            Assert.fail();
+        } catch (UXDFException e) {
+            // Department不存在
+        }
+        Assert.assertEquals(0, service.getNodeCount());
+        Assert.assertEquals(0, service.getEventCount());
+        Assert.assertNull(service.getNodeEntityById("User", "t1"));
+    }
+
+    /**
+     * 测试强制删除必须关系另一侧的Node
+     */
+    @Test
+    public void testDeleteEnforce() {
+        NodeEntity tower = service.saveNode(node("Tower", "t1", "code", "T1"));
+        NodeEntity line = service.saveNode(node("Line", "t2", "display", "L1"));
+        service.saveEvent(new EventEntity().sd("BELONG_TO").id("t3").leftNode(line).rightNode(tower));
+        Assert.assertEquals(1, service.getEventCount());
+
+        SdData sdData = new SdData();
+        NodeEntity delete = new NodeEntity("Tower", tower.get__Id());
+        delete.setOperateDeleteEnforce(true);
+        sdData.addNodeIfAbsent(delete);
+        SdDataSaveResult result = service.saveData(sdData, SdOperateType.delete, null, false);
+        // Line必须属于Tower，强制删除Tower时删除Line
+        Assert.assertEquals(2, result.getNodeDeleteNum().get());
+        Assert.assertEquals(1, result.getEventDeleteNum().get());
+        Assert.assertEquals(0, service.getNodeCount());
+        Assert.assertEquals(0, service.getEventCount());
+    }
+
+    /**
+     * 测试关系链查询、主Sd分页排序以及返回标签
+     */
+    @Test
+    public void testQuery() {
+        NodeEntity department = service.saveNode(department("t0", "D01"));
+        for (int i = 0; i < 10; i++) {
+            NodeEntity user = service.saveNode(node("User", "t" + (i + 1), "userName", "user" + i, "name", "n" + (i % 3)));
+            service.saveEvent(new EventEntity().sd("BELONG_TO").id("e" + i).leftNode(user).rightNode(department));
+        }
+        SdDataQueryRequest request = new SdDataQueryRequest(Lists.newArrayList("u:User-b:BELONG_TO>d:Department"));
+        request.getParams().put("u", Lists.newArrayList(SdDataQueryParam.notEqual("name", "n0")));
+        SdDataQueryRequest.PageOrder main = new SdDataQueryRequest.PageOrder();
+        main.setAlias("u");
+        main.setOrders(Lists.newArrayList(SdDataQueryOrder.desc("userName")));
+        main.setPage(new SdDataQueryPage(1, 3));
+        request.setMain(main);
+
+        SdDataQueryResult result = service.queryData(request);
+        Assert.assertEquals(6, result.getMainSize().getCount());
+        Assert.assertEquals(3, result.getMainSize().getCurrent());
+        List<String> userNames = result.getUxdf().getData().getUnmodifiableNode().stream()
+                .filter(nodeEntity -> "User".equals(nodeEntity.get__Sd()))
+                .map(nodeEntity -> nodeEntity.getString("userName"))
+                .collect(Collectors.toList());
+        Assert.assertEquals(Lists.newArrayList("user7", "user5", "user4"), userNames);
+        Assert.assertEquals(3, result.getUxdf().getData().getUnmodifiableEvent("BELONG_TO").size());
+
+        request.setReturns(Sets.newHashSet("d"));
+        request.setMain(null);
+        SdData departments = service.queryData(request).getUxdf().getData();
+        Assert.assertEquals(1, departments.getUnmodifiableNode().size());
+        Assert.assertTrue(departments.isEventEmpty());
+
+        Assert.assertEquals(10, service.originalQuery("User-BELONG_TO>d:Department").size());
+    }
+
+    /**
+     * 测试解除关联和清除Node
+     */
+    @Test
+    public void testUnlinkAndClear() {
+        NodeEntity department = service.saveNode(department("t0", "D01"));
+        NodeEntity user = service.saveNode(user("t1", "alice"));
+        service.saveEvent(new EventEntity().sd("BELONG_TO").id("e1").leftNode(user).rightNode(department));
+        Assert.assertEquals(0, service.unlink(department, user, "BELONG_TO"));
+        Assert.assertEquals(1, service.unlink(user, department, "BELONG_TO"));
+        Assert.assertEquals(0, service.getEventCount());
+
+        service.saveEvent(new EventEntity().sd("BELONG_TO").id("e2").leftNode(user).rightNode(department));
+        Assert.assertEquals(1, service.clearNode("User"));
+        Assert.assertEquals(1, service.getNodeCount());
+        Assert.assertEquals(0, service.getEventCount());
+    }
+
+    /**
+     * 测试通过快照和日志恢复，包括二进制文件
+     */
+    @Test
+    public void testRecover() throws IOException {
+        File directory = folder.newFolder("storage");
+        MemoryStorageService storage = new MemoryStorageService(UXDFLoader.getRegistry(), directory);
+        storage.setCheckpointThreshold(3);
+        storage.init();
+
+        NodeEntity department = storage.saveNode(department("t0", "D01"));
+        SdData sdData = new SdData();
+        NodeEntity user = user("t1", "alice");
+        user.put("photo", 0);
+        sdData.addNodeIfAbsent(user);
+        sdData.setOperate(SdOperateType.create);
+        storage.saveData(sdData, null, new UXDFBinaryFileInfo[]{file("photo.png", "content")}, true);
+        NodeEntity savedUser = sdData.getUnmodifiableNode().get(0);
+        Assert.assertEquals(7L, ((Number) savedUser.getJSONObject("photo").get(UXDFBinaryFileInfo.PROP_LENGTH)).longValue());
+        // 第3次提交后写入快照，之后的提交只在日志中
+        EventEntity event = storage.saveEvent(new EventEntity().sd("BELONG_TO").id("e1").leftNode(savedUser).rightNode(department));
+        storage.saveNode(node("Department", department.get__Id(), "code", "D01", "name", "changed"));
+        Assert.assertTrue(new File(directory, MemoryStorageJournal.SNAPSHOT_FILE).exists());
+
+        // 不关闭直接恢复，模拟进程退出
+        MemoryStorageService recovered = new MemoryStorageService(UXDFLoader.getRegistry(), directory);
+        recovered.init();
+        Assert.assertEquals(2, recovered.getNodeCount());
+        Assert.assertEquals(1, recovered.getEventCount());
+        Assert.assertEquals("changed", recovered.getNodeEntityById("Department", department.get__Id()).get("name"));
+        Assert.assertNotNull(recovered.getNodeEntityById("User", savedUser.get__Id()).get__CreateTime());
+        Assert.assertEquals(event.get__Id(), recovered.getEventEntity("BELONG_TO", event.get__Uuid()).get__Id());
+        try (InputStream inputStream = recovered.getUXDFBinaryFile("User", "photo", savedUser.get__Uuid())) {
+            Assert.assertEquals("content", new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals(
+                Collections.singletonList(savedUser.get__Id()),
+                recovered.originalQuery("u:User-BELONG_TO>Department").stream()
+                        .map(row -> ((JSONObject) row.get("u")).getString(SdEntity.ATTR_ID))
+                        .collect(Collectors.toList())
+        );
+        recovered.destory();
+        storage.destory();
+    }
+
+    /**
+     * 测试日志末尾不完整的提交被截断，校验失败的提交之后还有提交时拒绝恢复
+     */
+    @Test
+    public void testRecoverPartialLog() throws IOException {
+        File directory = folder.newFolder("partial");
+        MemoryStorageService storage = new MemoryStorageService(UXDFLoader.getRegistry(), directory);
+        storage.init();
+        NodeEntity department = storage.saveNode(department("t0", "D01"));
+
+        // 不关闭存储，模拟追加到一半时进程退出
+        File logFile = new File(directory, MemoryStorageJournal.LOG_FILE);
+        long committed = logFile.length();
+        Assert.assertTrue(committed > 0);
+        Files.write(logFile.toPath(), new byte[]{0, 0, 0, 100, 1, 2, 3}, StandardOpenOption.APPEND);
+        MemoryStorageService recovered = new MemoryStorageService(UXDFLoader.getRegistry(), directory);
+        recovered.init();
+        Assert.assertNotNull(recovered.getNodeEntityById("Department", department.get__Id()));
+        Assert.assertEquals(committed, logFile.length());
+
+        // 第一条提交损坏，之后还有完整的提交，截断会丢失已提交的数据
+        recovered.saveNode(department("t1", "D02"));
+        byte[] content = Files.readAllBytes(logFile.toPath());
+        content[16] ^= 1;
+        Files.write(logFile.toPath(), content);
+        try {
+            new MemoryStorageService(UXDFLoader.getRegistry(), directory).init();
+            Assert.fail();
+        } catch (UXDFException ignored) {
+        }
+        Assert.assertEquals(content.length, logFile.length());
+        recovered.destory();
+        storage.destory();
+    }
+
+    private static NodeEntity node(final String sd, final String id, final Object... properties) {
+        NodeEntity nodeEntity = new NodeEntity(sd, id);
+        for (int i = 0; i < properties.length; i += 2) {
+            nodeEntity.put((String) properties[i], properties[i + 1]);
+        }
+        return nodeEntity;
+    }
+
+    private static NodeEntity user(final String id, final String userName) {
+        NodeEntity user = new NodeEntity("User", id);
+        user.put("userName", userName);
+        return user;
+    }
+
+    private static NodeEntity department(final String id, final String code) {
+        NodeEntity department = new NodeEntity("Department", id);
+        department.put("code", code);
+        return department;
+    }
+
+    private static UXDFBinaryFileInfo file(final String name, final String content) {
+        final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return new UXDFBinaryFileInfo() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public String getContentType() {
+                return "image/png";
+            }
+
+            @Override
+            public long getLength() {
+                return bytes.length;
+            }
+
+            @Override
+            public InputStream getInputStream() {
+                return new ByteArrayInputStream(bytes);
+            }
+
+            @Override
+            public boolean isFile() {
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package info.ralab.uxdf.utils;
+
+import info.ralab.uxdf.definition.SdBaseType;
+import info.ralab.uxdf.definition.SdPropertyValidRule;
+import info.ralab.uxdf.definition.SdPropertyValidRuleTarget;
+import info.ralab.uxdf.definition.SdPropertyValidRuleType;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+@Slf4j
+public class UXDFPatternCacheTest {
+
+    /**
+     * 测试正则缓存
+     */
+    @Test
+    public void testCache() {
+        final String regex = "[a-z]+-pattern-cache";
+        final long hitCount = UXDFPatternCache.getStats().hitCount();
+
+        Pattern pattern = UXDFPatternCache.get(regex);
+        Assert.assertNotNull(pattern);
+        Assert.assertSame(pattern, UXDFPatternCache.get(regex));
+        Assert.assertTrue(UXDFPatternCache.getStats().hitCount() > hitCount);
+
+        // 无法编译的正则返回NULL，并被缓存
+        final long loadCount = UXDFPatternCache.getStats().loadCount();
+        Assert.assertNull(UXDFPatternCache.get("[invalid"));
+        Assert.assertNull(UXDFPatternCache.get("[invalid"));
+        Assert.assertEquals(loadCount + 1, UXDFPatternCache.getStats().loadCount());
+        Assert.assertNull(UXDFPatternCache.get(null));
+    }
+
+    /**
+     * 测试校验规则使用正则缓存
+     */
+    @Test
+    public void testValidRule() {
+        SdPropertyValidRule rule = new SdPropertyValidRule();
+        rule.setTarget(SdPropertyValidRuleTarget.value);
+        rule.setType(SdPropertyValidRuleType.regex);
+        rule.setValue("[0-9]+");
+
+        Assert.assertTrue(rule.check(SdBaseType.String, "123"));
+        Assert.assertFalse(rule.check(SdBaseType.String, "abc"));
+        Assert.assertSame(UXDFPatternCache.get("[0-9]+"), rule.getRegexPattern());
+
+        // 修改正则后重新获取
+        rule.setValue("[a-z]+");
+        Assert.assertNull(rule.getRegexPattern());
+        Assert.assertTrue(rule.check(SdBaseType.String, "abc"));
+
+        // 无法编译的正则不通过检查
+        rule.setValue("[invalid");
+        Assert.assertFalse(rule.check(SdBaseType.String, "abc"));
+    }
+}
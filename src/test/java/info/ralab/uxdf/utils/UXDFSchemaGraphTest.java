@@ -0,0 +1,96 @@
+package info.ralab.uxdf.utils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import info.ralab.uxdf.UXDFLoader;
+import info.ralab.uxdf.chain.ChainPath;
+import info.ralab.uxdf.definition.SdEventDefinition;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class UXDFSchemaGraphTest {
+
+    @Before
+    public void before() {
+        UXDFLoader.reloadForced();
+    }
+
+    /**
+     * 测试出边和入边查找
+     */
+    @Test
+    public void testAdjacency() {
+        UXDFSchemaGraph graph = UXDFLoader.getSchemaGraph();
+        Assert.assertTrue(graph.containsNode("User"));
+        Assert.assertFalse(graph.containsNode("NotExists"));
+
+        Assert.assertEquals(
+                Lists.newArrayList("BELONG_TO>Department", "HAVE>Role"),
+                names(graph.getOutgoing("User"), true)
+        );
+        Assert.assertEquals(
+                Lists.newArrayList("HAVE<User", "HAVE<UserGroup"),
+                names(graph.getIncoming("Role", "HAVE"), false)
+        );
+        Assert.assertTrue(graph.getOutgoing("User", "LINK_TO").isEmpty());
+        Assert.assertTrue(graph.getIncoming("NotExists").isEmpty());
+    }
+
+    /**
+     * 测试多跳可达查找
+     */
+    @Test
+    public void testReachable() {
+        UXDFSchemaGraph graph = UXDFLoader.getSchemaGraph();
+        Assert.assertEquals(
+                Sets.newHashSet("Role", "User", "UserGroup"),
+                graph.getReachableNodes("UserGroup", 1, ChainPath.LEFT)
+        );
+        Assert.assertEquals(
+                Sets.newHashSet("Role", "User", "UserGroup", "MenuItem", "Department"),
+                graph.getReachableNodes("UserGroup", 2, ChainPath.LEFT)
+        );
+        Assert.assertEquals(
+                Sets.newHashSet("MetadataTable", "Schema", "DataSource"),
+                graph.getReachableNodes("MetadataField", 3, ChainPath.LEFT)
+        );
+        Assert.assertEquals(
+                Sets.newHashSet("MenuItem", "User", "UserGroup"),
+                graph.getReachableNodes("Role", 1, ChainPath.BOTH)
+        );
+        Assert.assertEquals(
+                Sets.newHashSet("MetadataField", "MetadataTable", "Schema"),
+                graph.getNodesReaching("DataSource", 3, ChainPath.LEFT)
+        );
+        Assert.assertEquals(
+                Sets.newHashSet("User", "UserGroup"),
+                graph.getNodesReaching("Role", 2, ChainPath.LEFT)
+        );
+        Assert.assertTrue(graph.getReachableNodes("UserGroup", 0, ChainPath.LEFT).isEmpty());
+    }
+
+    /**
+     * 测试定义变更后重新生成
+     */
+    @Test
+    public void testVersion() {
+        UXDFSchemaGraph graph = UXDFLoader.getSchemaGraph();
+        Assert.assertSame(graph, UXDFLoader.getSchemaGraph());
+        UXDFLoader.reloadForced();
+        UXDFSchemaGraph reloaded = UXDFLoader.getSchemaGraph();
+        Assert.assertNotSame(graph, reloaded);
+        Assert.assertEquals(UXDFLoader.getDefinitionVersion(), reloaded.getVersion());
+    }
+
+    private static List<String> names(final List<SdEventDefinition> events, final boolean outgoing) {
+        return events.stream()
+                .map(event -> outgoing ?
+                        event.getEventName() + ">" + event.getRightNodeName() :
+                        event.getEventName() + "<" + event.getLeftNodeName())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,109 @@
+package info.ralab.uxdf.validation;
+
+import com.google.common.collect.Sets;
+import info.ralab.uxdf.UXDFReader;
+import info.ralab.uxdf.UXDFRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Slf4j
+public class UXDFIntegrityCheckerTest {
+
+    private static final String SD = "{" +
+            "\"node\":{\"attr\":{},\"impl\":{" +
+            "\"Emp\":{\"title\":\"员工\",\"extend\":[],\"prop\":{}}," +
+            "\"Dept\":{\"title\":\"部门\",\"extend\":[],\"prop\":{}}}}," +
+            "\"event\":{\"attr\":{},\"impl\":{\"BELONG\":{\"Emp\":{\"Dept\":{\"title\":\"属于\",\"required\":\"left\",\"prop\":{}}}}}}" +
+            "}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private UXDFRegistry registry;
+
+    @Before
+    public void before() {
+        registry = new UXDFRegistry();
+        registry.reloadForced();
+    }
+
+    /**
+     * 测试内存中检查
+     */
+    @Test
+    public void testInMemory() throws IOException {
+        UXDFIntegrityChecker checker = new UXDFIntegrityChecker(registry);
+        read(checker);
+        assertErrors(checker.getReport());
+    }
+
+    /**
+     * 测试写入磁盘后按分区检查
+     */
+    @Test
+    public void testSpill() throws IOException {
+        UXDFIntegrityChecker checker = new UXDFIntegrityChecker(registry);
+        checker.setMemoryLimit(1);
+        checker.setBucketCount(4);
+        checker.setSpillDirectory(folder.getRoot());
+        read(checker);
+        assertErrors(checker.getReport());
+        // 临时文件已删除
+        Assert.assertEquals(0, folder.getRoot().list().length);
+    }
+
+    private static void assertErrors(final UXDFValidationReport report) {
+        Assert.assertEquals(10, report.getCheckedCount());
+        Set<String> errors = report.getErrors().stream()
+                .map(error -> error.getLogicId() + ":" + error.getProperty() + ":" + error.getType())
+                .collect(Collectors.toSet());
+        Assert.assertEquals(
+                Sets.newHashSet(
+                        "BELONGE3EmpD1DeptV2:__left:reference",
+                        "BELONGE1EmpD9DeptV3:__right:reference",
+                        "OTHERE1EmpD1DeptV4:null:definition",
+                        "EmpE2:BELONG:relationship",
+                        // 删除的Event不满足必须关系
+                        "EmpE5:BELONG:relationship"
+                ),
+                errors
+        );
+    }
+
+    private static void read(final UXDFIntegrityChecker checker) throws IOException {
+        // 更新的Node E4不检查必须关系
+        String uxdf = "{\"sd\":" + SD + ",\"data\":{" +
+                "\"node\":[" + node("Emp", "E1", null) + "," + node("Emp", "E2", null) + "," +
+                node("Emp", "E4", "update") + "," + node("Emp", "E5", null) + "," + node("Dept", "D1", null) + "]," +
+                "\"event\":{" +
+                "\"BELONG\":[" + event("BELONG", "V1", "E1", "D1") + "," + event("BELONG", "V2", "E3", "D1") + "," +
+                event("BELONG", "V3", "E1", "D9") + "," +
+                event("BELONG", "V5", "E5", "D1").replace("}", ",\"$operate\":\"delete\"}") + "]," +
+                "\"OTHER\":[" + event("OTHER", "V4", "E1", "D1") + "]" +
+                "}}}";
+        try (UXDFReader reader = new UXDFReader(new ByteArrayInputStream(uxdf.getBytes(StandardCharsets.UTF_8)))) {
+            reader.readUXDF(checker);
+        }
+    }
+
+    private static String node(final String sd, final String id, final String operate) {
+        return "{\"__id\":\"" + id + "\",\"__sd\":\"" + sd + "\"" +
+                (operate == null ? "" : ",\"$operate\":\"" + operate + "\"") + "}";
+    }
+
+    private static String event(final String sd, final String id, final String left, final String right) {
+        return "{\"__id\":\"" + id + "\",\"__sd\":\"" + sd + "\"," +
+                "\"__left\":\"" + left + "\",\"__leftSd\":\"Emp\"," +
+                "\"__right\":\"" + right + "\",\"__rightSd\":\"Dept\"}";
+    }
+}
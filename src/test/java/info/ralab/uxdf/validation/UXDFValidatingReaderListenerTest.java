@@ -0,0 +1,201 @@
+package info.ralab.uxdf.validation;
+
+import com.alibaba.fastjson.JSON;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import info.ralab.uxdf.Sd;
+import info.ralab.uxdf.UXDFException;
+import info.ralab.uxdf.UXDFReader;
+import info.ralab.uxdf.UXDFReaderListener;
+import info.ralab.uxdf.UXDFRegistry;
+import info.ralab.uxdf.definition.SdEventKey;
+import info.ralab.uxdf.definition.SdNodeDefinition;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.NodeEntity;
+import info.ralab.uxdf.utils.UXDFDefinitionCache;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Slf4j
+public class UXDFValidatingReaderListenerTest {
+
+    private static final String SD = "{" +
+            "\"node\":{\"attr\":{},\"impl\":{\"Book\":{\"title\":\"书\",\"extend\":[]," +
+            "\"prop\":{\"name\":{\"title\":\"名称\",\"base\":\"String\",\"required\":true,\"upperLimit\":10}}}}}," +
+            "\"event\":{\"attr\":{},\"impl\":{\"Cite\":{\"Book\":{\"Book\":{\"title\":\"引用\"," +
+            "\"prop\":{\"page\":{\"title\":\"页码\",\"base\":\"Integer\",\"lowerLimit\":1}}}}}}}" +
+            "}";
+
+    private UXDFRegistry registry;
+
+    @Before
+    public void before() {
+        registry = new UXDFRegistry();
+        registry.reloadForced();
+    }
+
+    /**
+     * 测试基于UXDF中的sd流式校验，校验通过的数据按顺序传递
+     */
+    @Test
+    public void testCollectErrors() throws IOException {
+        StringBuilder nodes = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            if (i > 0) {
+                nodes.append(",");
+            }
+            // 每50个数据中有一个名称超长
+            nodes.append(node("B" + i, i % 50 == 0 ? "ABCDEFGHIJKL" : "Book" + i));
+        }
+        String events = event("E1", "B1", "Book", "B2", 3) + "," +
+                event("E2", "B1", "Book", "B2", 0) + "," +
+                event("E3", "B1", "Unknown", "B2", 3);
+
+        RecordListener delegate = new RecordListener();
+        UXDFValidatingReaderListener listener = new UXDFValidatingReaderListener(delegate, registry);
+        listener.setFailFast(false);
+        listener.setParallelism(4);
+        listener.setWindow(16);
+        read(uxdf(nodes.toString(), events), listener);
+
+        Assert.assertNull(delegate.error);
+        Assert.assertEquals(490, delegate.nodes.size());
+        Assert.assertEquals("B1", delegate.nodes.get(0).get__Id());
+        Assert.assertEquals("B499", delegate.nodes.get(489).get__Id());
+        Assert.assertEquals(Lists.newArrayList("E1"), delegate.events);
+
+        UXDFValidationReport report = listener.getReport();
+        Assert.assertEquals(503, report.getCheckedCount());
+        List<String> errors = report.getErrors().stream()
+                .map(error -> error.getProperty() + ":" + error.getType())
+                .collect(Collectors.toList());
+        Assert.assertEquals(12, errors.size());
+        Assert.assertEquals("name:upperLimit", errors.get(0));
+        Assert.assertEquals("page:lowerLimit", errors.get(10));
+        Assert.assertEquals(EventEntity.ATTR_LEFT + ":" + UXDFValidationErrorType.endpoint, errors.get(11));
+    }
+
+    /**
+     * 测试第一个错误结束读取
+     */
+    @Test
+    public void testFailFast() throws IOException {
+        RecordListener delegate = new RecordListener();
+        UXDFValidatingReaderListener listener = new UXDFValidatingReaderListener(delegate, registry);
+        read(uxdf(node("B1", "Book") + "," + node("B2", null) + "," + node("B3", "Book"), ""), listener);
+
+        Assert.assertTrue(delegate.error instanceof UXDFException);
+        Assert.assertEquals(1, delegate.nodes.size());
+        Assert.assertEquals(1, listener.getReport().getErrors().size());
+        Assert.assertEquals(UXDFValidationErrorType.required, listener.getReport().getErrors().get(0).getType());
+    }
+
+    /**
+     * 测试合并定义时保留注册表中Node定义自身声明的属性，sd覆盖父Node后子Node重新解析
+     */
+    @Test
+    public void testMergeDefinition() {
+        registry.addNodeDefinition(Lists.newArrayList(
+                nodeDefinition("MergeParent", "{\"title\":\"父\",\"extend\":[],\"prop\":{\"a\":{\"title\":\"a\"}}}"),
+                nodeDefinition("MergeChild", "{\"title\":\"子\",\"extend\":[\"MergeParent\"],\"prop\":{\"b\":{\"title\":\"b\"}}}")
+        ));
+        Sd sd = JSON.parseObject("{\"node\":{\"attr\":{},\"impl\":{\"MergeParent\":{\"title\":\"父\"," +
+                "\"extend\":[],\"prop\":{\"c\":{\"title\":\"c\",\"base\":\"String\"}}}}}}", Sd.class);
+
+        UXDFDefinitionCache cache = UXDFValidatingReaderListener.mergeDefinition(sd, registry);
+        // 父Node被覆盖的属性不再保留在子Node中
+        Assert.assertEquals(
+                Sets.newHashSet("b", "c"),
+                cache.getCACHE_NODE().get("MergeChild").getProp().keySet()
+        );
+        Assert.assertNotNull(cache.getCACHE_EVENT().get(SdEventKey.of("BELONG_TO", "MetadataField", "MetadataTable")));
+        // 注册表中的定义不受影响
+        Assert.assertEquals(Sets.newHashSet("a", "b"), registry.getNode("MergeChild").getProp().keySet());
+    }
+
+    private static SdNodeDefinition nodeDefinition(final String nodeName, final String json) {
+        SdNodeDefinition nodeDefinition = JSON.parseObject(json, SdNodeDefinition.class);
+        nodeDefinition.setNodeName(nodeName);
+        return nodeDefinition;
+    }
+
+    private static void read(final String uxdf, final UXDFReaderListener listener) throws IOException {
+        // 读取中断时JSON未读取完整，不关闭读取对象
+        new UXDFReader(new ByteArrayInputStream(uxdf.getBytes(StandardCharsets.UTF_8))).readUXDF(listener);
+    }
+
+    private static String uxdf(final String nodes, final String events) {
+        return "{\"sd\":" + SD + ",\"data\":{\"node\":[" + nodes + "]" +
+                (events.isEmpty() ? "" : ",\"event\":{\"Cite\":[" + events + "]}") + "}}";
+    }
+
+    private static String node(final String id, final String name) {
+        return "{\"__id\":\"" + id + "\",\"__sd\":\"Book\"" +
+                (name == null ? "" : ",\"name\":\"" + name + "\"") + "}";
+    }
+
+    private static String event(
+            final String id,
+            final String left,
+            final String leftSd,
+            final String right,
+            final int page
+    ) {
+        return "{\"__id\":\"" + id + "\",\"__sd\":\"Cite\"," +
+                "\"__left\":\"" + left + "\",\"__leftSd\":\"" + leftSd + "\"," +
+                "\"__right\":\"" + right + "\",\"__rightSd\":\"Book\",\"page\":" + page + "}";
+    }
+
+    private static class RecordListener implements UXDFReaderListener {
+        private final List<NodeEntity> nodes = Lists.newArrayList();
+        private final List<String> events = Lists.newArrayList();
+        private Throwable error;
+
+        @Override
+        public void startReadUXDF() {
+        }
+
+        @Override
+        public void readSd(final Sd sd) {
+        }
+
+        @Override
+        public void startReadNode() {
+        }
+
+        @Override
+        public void readNode(final NodeEntity nodeEntity) {
+            nodes.add(nodeEntity);
+        }
+
+        @Override
+        public void endReadNode() {
+        }
+
+        @Override
+        public void startReadEvent() {
+        }
+
+        @Override
+        public void readEvent(final EventEntity eventEntity) {
+            events.add(eventEntity.get__Id());
+        }
+
+        @Override
+        public void endReadEvent() {
+        }
+
+        @Override
+        public void endReadUXDF(final Throwable error) {
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package info.ralab.uxdf.validation;
+
+import com.google.common.collect.Lists;
+import info.ralab.uxdf.SdData;
+import info.ralab.uxdf.UXDFRegistry;
+import info.ralab.uxdf.definition.*;
+import info.ralab.uxdf.instance.EventEntity;
+import info.ralab.uxdf.instance.IdMaker;
+import info.ralab.uxdf.instance.NodeEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Slf4j
+public class UXDFValidatorTest {
+
+    private UXDFRegistry registry;
+
+    private UXDFValidator validator;
+
+    @Before
+    public void before() {
+        registry = new UXDFRegistry();
+        registry.reloadForced();
+        registry.addNodeDefinition(Lists.newArrayList(createNode()));
+        validator = new UXDFValidator(registry);
+    }
+
+    /**
+     * 测试合法数据
+     */
+    @Test
+    public void testValid() {
+        SdData sdData = new SdData(registry);
+        sdData.addNodeIfAbsent(createEntity("ABC", 20, "2010-05-01"));
+        sdData.addNodeIfAbsent(createEntity("XYZ", 0, "2000-01-01"));
+
+        UXDFValidationReport report = validator.validate(sdData);
+        Assert.assertTrue(report.getErrors().toString(), report.isValid());
+        Assert.assertEquals(2, report.getCheckedCount());
+        Assert.assertFalse(report.isTruncated());
+    }
+
+    /**
+     * 测试各类错误
+     */
+    @Test
+    public void testErrors() {
+        NodeEntity missing = createEntity(null, 20, "2010-05-01");
+        NodeEntity invalid = createEntity("abcdef", 200, "1999-12-31");
+        invalid.put("tags", "single");
+        NodeEntity wrongType = createEntity("ABC", 20, "2010-05-01");
+        wrongType.put("age", "old");
+        // 更新的数据不检查必填
+        NodeEntity update = new NodeEntity("ValidNode", IdMaker.next());
+        update.setOperate(SdOperateType.update);
+        update.put("age", 30);
+
+        SdData sdData = new SdData(registry);
+        sdData.addNodeIfAbsent(missing);
+        sdData.addNodeIfAbsent(invalid);
+        sdData.addNodeIfAbsent(wrongType);
+        sdData.addNodeIfAbsent(update);
+        sdData.addNodeIfAbsent(new NodeEntity("UnknownNode", IdMaker.next()));
+        sdData.addEventIfAbsent(new EventEntity().sd("UNKNOWN").id(IdMaker.next())
+                .leftNode(missing).rightNode(invalid));
+
+        UXDFValidationReport report = validator.validate(sdData);
+        Assert.assertFalse(report.isValid());
+        Assert.assertEquals(
+                Lists.newArrayList(
+                        missing.getLogicId() + ":code:required",
+                        invalid.getLogicId() + ":code:upperLimit",
+                        invalid.getLogicId() + ":code:rule",
+                        invalid.getLogicId() + ":age:upperLimit",
+                        invalid.getLogicId() + ":born:lowerLimit",
+                        invalid.getLogicId() + ":tags:collection",
+                        wrongType.getLogicId() + ":age:type",
+                        sdData.getUnmodifiableNode().get(4).getLogicId() + ":null:definition",
+                        sdData.getUnmodifiableEvent("UNKNOWN").get(0).getLogicId() + ":null:definition"
+                ),
+                report.getErrors().stream()
+                        .map(error -> error.getLogicId() + ":" + error.getProperty() + ":" + error.getType())
+                        .collect(Collectors.toList())
+        );
+        Assert.assertEquals("编码必须是大写字母", report.getErrors().get(2).getMessage());
+    }
+
+    /**
+     * 测试并行校验和错误上限
+     */
+    @Test
+    public void testParallelAndMaxErrors() {
+        SdData sdData = new SdData(registry);
+        for (int i = 0; i < 2000; i++) {
+            sdData.addNodeIfAbsent(createEntity(i % 2 == 0 ? "ABC" : "abc", i % 150, "2010-05-01"));
+        }
+        validator.setParallelThreshold(100);
+
+        UXDFValidationReport report = validator.validate(sdData);
+        Assert.assertEquals(1000, report.getErrors().size());
+        Assert.assertFalse(report.isTruncated());
+
+        UXDFValidationReport limited = validator.validate(sdData, 10);
+        Assert.assertEquals(10, limited.getErrors().size());
+        Assert.assertTrue(limited.isTruncated());
+
+        // 定义变更后重新编译
+        SdNodeDefinition nodeDefinition = createNode();
+        nodeDefinition.getProp().get("code").setValidRule(null);
+        registry.updateNodeDefinition(Lists.newArrayList(nodeDefinition));
+        Assert.assertTrue(validator.validate(sdData).isValid());
+    }
+
+    /**
+     * 测试必须关系和成员关系
+     */
+    @Test
+    public void testRelationship() {
+        SdNodeDefinition dept = new SdNodeDefinition();
+        dept.setNodeName("ValidDept");
+        dept.setTitle("部门");
+        dept.setExtend(new String[]{});
+        dept.setProp(new LinkedHashMap<>());
+        registry.addNodeDefinition(Lists.newArrayList(dept));
+        SdEventDefinition belong = new SdEventDefinition();
+        belong.setEventName("VALID_BELONG");
+        belong.setLeftNodeName("ValidNode");
+        belong.setRightNodeName("ValidDept");
+        belong.setTitle("属于");
+        belong.setRequired(SdEventRequiredType.left);
+        belong.setIsMember(true);
+        belong.setProp(new LinkedHashMap<>());
+        registry.addEventDefinition(Lists.newArrayList(belong));
+
+        NodeEntity dept1 = new NodeEntity("ValidDept", IdMaker.next());
+        NodeEntity dept2 = new NodeEntity("ValidDept", IdMaker.next());
+        NodeEntity valid = createEntity("ABC", 20, "2010-05-01");
+        NodeEntity missing = createEntity("ABC", 20, "2010-05-01");
+        NodeEntity multiple = createEntity("ABC", 20, "2010-05-01");
+        NodeEntity update = new NodeEntity("ValidNode", IdMaker.next());
+        update.setOperate(SdOperateType.update);
+
+        SdData sdData = new SdData(registry);
+        for (NodeEntity nodeEntity : Lists.newArrayList(dept1, dept2, valid, missing, multiple, update)) {
+            sdData.addNodeIfAbsent(nodeEntity);
+        }
+        sdData.addEventIfAbsent(new EventEntity().sd("VALID_BELONG").id(IdMaker.next()).leftNode(valid).rightNode(dept1));
+        sdData.addEventIfAbsent(new EventEntity().sd("VALID_BELONG").id(IdMaker.next()).leftNode(multiple).rightNode(dept1));
+        sdData.addEventIfAbsent(new EventEntity().sd("VALID_BELONG").id(IdMaker.next()).leftNode(multiple).rightNode(dept2));
+        // 删除的Event不计算在内
+        EventEntity deleted = new EventEntity().sd("VALID_BELONG").id(IdMaker.next()).leftNode(missing).rightNode(dept1);
+        deleted.setOperate(SdOperateType.delete);
+        sdData.addEventIfAbsent(deleted);
+
+        UXDFValidationReport report = validator.validateRelationship(sdData);
+        Assert.assertEquals(6, report.getCheckedCount());
+        Assert.assertEquals(
+                Lists.newArrayList(
+                        missing.getLogicId() + ":VALID_BELONG:relationship",
+                        multiple.getLogicId() + ":VALID_BELONG:relationship"
+                ),
+                report.getErrors().stream()
+                        .map(error -> error.getLogicId() + ":" + error.getProperty() + ":" + error.getType())
+                        .collect(Collectors.toList())
+        );
+
+        validator.setParallelThreshold(1);
+        Assert.assertEquals(report.getErrors(), validator.validateRelationship(sdData).getErrors());
+    }
+
+    private static NodeEntity createEntity(final String code, final int age, final String born) {
+        NodeEntity nodeEntity = new NodeEntity("ValidNode", IdMaker.next());
+        nodeEntity.setOperate(SdOperateType.create);
+        if (code != null) {
+            nodeEntity.put("code", code);
+        }
+        nodeEntity.put("age", age);
+        nodeEntity.put("born", born);
+        nodeEntity.put("tags", Lists.newArrayList("a", "b"));
+        return nodeEntity;
+    }
+
+    private static SdNodeDefinition createNode() {
+        LinkedHashMap<String, SdProperty> prop = new LinkedHashMap<>();
+
+        SdProperty code = createProperty(SdBaseType.String);
+        code.setRequired(true);
+        code.setUpperLimit(5);
+        SdPropertyValidRule rule = new SdPropertyValidRule();
+        rule.setTarget(SdPropertyValidRuleTarget.value);
+        rule.setType(SdPropertyValidRuleType.regex);
+        rule.setValue("[A-Z]+");
+        rule.setMessage("编码必须是大写字母");
+        code.setValidRule(new SdPropertyValidRule[][]{{rule}});
+        prop.put("code", code);
+
+        SdProperty age = createProperty(SdBaseType.Integer);
+        age.setLowerLimit(0);
+        age.setUpperLimit("150");
+        prop.put("age", age);
+
+        SdProperty born = createProperty(SdBaseType.Datetime);
+        born.setLowerLimit("2000-01-01");
+        prop.put("born", born);
+
+        SdProperty tags = createProperty(SdBaseType.String);
+        tags.setCollection(true);
+        prop.put("tags", tags);
+
+        SdNodeDefinition nodeDefinition = new SdNodeDefinition();
+        nodeDefinition.setNodeName("ValidNode");
+        nodeDefinition.setTitle("校验");
+        nodeDefinition.setExtend(new String[]{});
+        nodeDefinition.setProp(prop);
+        return nodeDefinition;
+    }
+
+    private static SdProperty createProperty(final SdBaseType base) {
+        SdProperty property = new SdProperty();
+        property.setTitle(base.name());
+        property.setBase(base);
+        return property;
+    }
+}